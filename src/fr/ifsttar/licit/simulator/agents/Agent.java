@@ -10,6 +10,7 @@ import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlType;
 
+import fr.ifsttar.licit.simulator.agents.action.Action;
 import fr.ifsttar.licit.simulator.agents.communication.messages.Message;
 import fr.ifsttar.licit.simulator.agents.perception.AgentPerception;
 import fr.ifsttar.licit.simulator.agents.perception.sensors.Sensor;
@@ -261,6 +262,27 @@ public abstract class Agent {
 		
 	}
 
+	/**
+	 * Returns the perception sent to the external controller of this agent before the decisions are made
+	 */
+	public AgentPerception getExternalControlPerception() {
+		return this.perception;
+	}
+
+	/**
+	 * Returns the identifier of this agent
+	 */
+	public abstract long getId();
+
+	/**
+	 * Applies the action returned by the external controller of this agent. The actions of a time step are
+	 * applied in the order of the agent ids, before the agents make their decisions. Ignored by default.
+	 * @param action action of the controller, InvalidAction if it did not answer in time
+	 */
+	public void applyAction(Action action) {
+		
+	}
+
 
 	
 	/*public void handleSocket(Socket s){
@@ -3,10 +3,33 @@
  */
 package fr.ifsttar.licit.simulator.agents.action;
 
+import java.awt.Color;
+
 /**
  * @author Maxime Guriau
  *
  */
 public abstract class Action {
 
+	/**
+	 * Decodes a color sent by a controller, either the name of a {@link Color} constant such as red or a
+	 * value accepted by {@link Color#decode(String)}
+	 * @param color encoded color
+	 * @return the color, null if it cannot be decoded
+	 */
+	protected static Color decodeColor(String color) {
+		if (color==null) return null;
+		try {
+			return (Color) Color.class.getField(color.trim().toLowerCase()).get(null);
+		} catch (NoSuchFieldException e) {
+			// not a named color
+		} catch (IllegalAccessException e) {
+			// not a named color
+		}
+		try {
+			return Color.decode(color.trim());
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
 }
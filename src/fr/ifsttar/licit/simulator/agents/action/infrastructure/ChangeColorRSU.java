@@ -1,5 +1,7 @@
 package fr.ifsttar.licit.simulator.agents.action.infrastructure;
 
+import java.awt.Color;
+
 import org.w3c.dom.Element;
 
 import fr.ifsttar.licit.simulator.agents.action.Action;
@@ -20,6 +22,13 @@ public class ChangeColorRSU extends Action implements XMLDecodable {
 		return newColor;
 	}
 
+	/**
+	 * @return the new color, null if it cannot be decoded
+	 */
+	public Color getColor(){
+		return decodeColor(newColor);
+	}
+
 	
 
 }
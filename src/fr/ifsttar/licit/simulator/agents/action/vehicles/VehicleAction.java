@@ -3,6 +3,7 @@
  */
 package fr.ifsttar.licit.simulator.agents.action.vehicles;
 
+import java.awt.Color;
 import java.util.HashMap;
 
 import org.w3c.dom.Element;
@@ -32,6 +33,14 @@ public class VehicleAction extends Action implements XMLDecodable {
 		return parameters.get("colorValue");
 	}
 
+	/**
+	 * @return the new color as an RGB integer, null if the action has no valid color
+	 */
+	public Integer getNewColorRGB() {
+		Color color = decodeColor(getNewColor());
+		return color==null ? null : color.getRGB();
+	}
+
 	public String getNewRank() {
 		return parameters.get("rank");
 	}
@@ -2,6 +2,7 @@ package fr.ifsttar.licit.simulator.agents.perception;
 
 import java.util.ArrayList;
 
+import org.movsim.simulator.SimulationContext;
 import org.movsim.simulator.vehicles.Vehicle;
 import org.movsim.simulator.vehicles.longitudinalmodel.acceleration.IDM;
 import org.movsim.simulator.vehicles.longitudinalmodel.acceleration.parameter.IModelParameterIDM;
@@ -36,9 +37,8 @@ public class MeasurementPerception extends AgentPerception implements XMLCodec.X
 	/*
 	 * add for TP
 	 */
-	private static int numberVehicleArea = 0;	
 	public static int getNumberVehicleArea() {
-		return numberVehicleArea;
+		return SimulationContext.current().getNumberVehicleArea();
 	}
 ////////////////////////////
 	public void addDetectedVehicle(long id){
@@ -200,7 +200,7 @@ public class MeasurementPerception extends AgentPerception implements XMLCodec.X
 		/*
 		 * add for TP
 		 */
-		numberVehicleArea += (detectedVehicles.size() - undetectedVehicles.size());
+		final int numberVehicleArea = SimulationContext.current().addNumberVehicleArea(detectedVehicles.size() - undetectedVehicles.size());
 		Element nbVehicleArea = doc.createElement("numberVehicleArea");
 		nbVehicleArea.setAttribute("value", String.valueOf(numberVehicleArea));	
 	//	System.out.println(numberVehicleArea+ " entrant: " + detectedVehicles.size() 
@@ -15,6 +15,7 @@ import fr.ifsttar.licit.simulator.agents.perception.sensors.vehicles.Communicati
 import fr.ifsttar.licit.simulator.agents.perception.sensors.vehicles.measurements.GPSMeasurement;
 import fr.ifsttar.licit.simulator.agents.perception.sensors.vehicles.measurements.Measurement;
 import fr.ifsttar.licit.simulator.agents.perception.sensors.vehicles.measurements.TelemeterMeasurement;
+import fr.ifsttar.licit.simulator.environment.CommunicationIndex;
 import fr.ifsttar.licit.simulator.environment.PerceptibleEnvironment;
 import fr.ifsttar.licit.simulator.environment.PerceptiblePartition;
 import fr.ifsttar.licit.simulator.infrastructure.RoadSideUnit;
@@ -80,6 +81,25 @@ public class RSUBroadcaster extends Sensor {
 			return perception;
 		}
 		
+		/**
+		 * 2D perception of the vehicles of the whole network within range, using the communication index.
+		 * 
+		 * @param me
+		 * @param index
+		 * @param rsuIndex
+		 *            index of me in the communication index
+		 * @return perception
+		 */
+		public MeasurementPerception perceive(RoadSideUnit me, CommunicationIndex index, int rsuIndex) {
+			MeasurementPerception perception = new MeasurementPerception();
+			this.messagesToBroadcast.clear();
+			final CommunicationIndex.Hits hits = index.vehiclesInRange(index.roadSideUnitX(rsuIndex), index.roadSideUnitY(rsuIndex), this.range);
+			for(int i = 0; i < hits.size(); ++i){
+				this.perceive(perception, me, index.vehicle(hits.get(i)));
+			}
+			return perception;
+		}
+		
 		
 		private void perceive(MeasurementPerception perception, RoadSideUnit me, Vehicle vehicle) {
 			
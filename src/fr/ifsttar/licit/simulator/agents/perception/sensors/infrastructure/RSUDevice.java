@@ -1,7 +1,6 @@
 package fr.ifsttar.licit.simulator.agents.perception.sensors.infrastructure;
 
-import org.movsim.roadmappings.RoadMapping;
-import org.movsim.simulator.roadnetwork.RoadSegment;
+import org.movsim.simulator.roadnetwork.RoadNetwork;
 import org.movsim.simulator.vehicles.Vehicle;
 
 import fr.ifsttar.licit.simulator.agents.Agent;
@@ -13,6 +12,7 @@ import fr.ifsttar.licit.simulator.agents.perception.sensors.vehicles.Communicati
 import fr.ifsttar.licit.simulator.agents.perception.sensors.vehicles.measurements.GPSMeasurement;
 import fr.ifsttar.licit.simulator.agents.perception.sensors.vehicles.measurements.Measurement;
 import fr.ifsttar.licit.simulator.agents.perception.sensors.vehicles.measurements.TelemeterMeasurement;
+import fr.ifsttar.licit.simulator.environment.CommunicationIndex;
 import fr.ifsttar.licit.simulator.environment.PerceptibleEnvironment;
 import fr.ifsttar.licit.simulator.environment.PerceptiblePartition;
 import fr.ifsttar.licit.simulator.infrastructure.RoadSideUnit;
@@ -45,66 +45,30 @@ public class RSUDevice extends Sensor {
 		
 		@Override
 		public AgentPerception percieve(Agent agent, PerceptiblePartition partition2, PerceptiblePartition partition1, PerceptibleEnvironment environment, double simulationTime) {
-			return this.perceive((RoadSideUnit) agent, (RoadSegment) partition1, null);
+			final CommunicationIndex index = ((RoadNetwork) environment).communicationIndex();
+			return this.perceive((RoadSideUnit) agent, index, index.indexOf((RoadSideUnit) agent));
 		}
 		
 		
-		public MeasurementPerception perceive(RoadSideUnit me, RoadSegment roadSegment, RoadSegment rsuSegment) {
+		/**
+		 * 2D perception of the vehicles of the whole network within range, using the communication index.
+		 * 
+		 * @param me
+		 * @param index
+		 * @param rsuIndex
+		 *            index of me in the communication index
+		 * @return perception
+		 */
+		public MeasurementPerception perceive(RoadSideUnit me, CommunicationIndex index, int rsuIndex) {
 			MeasurementPerception perception = new MeasurementPerception();
-			
-			
-			//System.out.println(" RSUDevice perception");
-			/**
-			 * 
-			 */
-			
-			// TODO : very computationally  heavy way ...
-			
-			
-			/*//
-			for(Vehicle vehicle : roadSegment){
-				if( (Math.abs(vehicle.getRearPosition() - me.getPosition())<=this.range)){
-					this.perceive(perception, me, vehicle);
-				}
+			final CommunicationIndex.Hits hits = index.vehiclesInRange(index.roadSideUnitX(rsuIndex), index.roadSideUnitY(rsuIndex), this.range);
+			for(int i = 0; i < hits.size(); ++i){
+				this.perceive(perception, me, index.vehicle(hits.get(i)));
 			}
-			//*/
-			
-			/**
-			 * 2D perception
-			 */
-			final RoadMapping rsuSegmentRoadMapping = rsuSegment.roadMapping();
-			final RoadMapping.PolygonFloat rsuPolygon = rsuSegmentRoadMapping.mapFloat(me, 0.0);
-	        final double rsuPositionX = rsuPolygon.xPoints[0];
-	        final double rsuPositionY = rsuPolygon.yPoints[0];
-			
-			
-			final RoadMapping segmentRoadMapping = roadSegment.roadMapping();
-			
-			for(Vehicle vehicle : roadSegment){
-				final RoadMapping.PolygonFloat mePolygon = segmentRoadMapping.mapFloat(vehicle, 0.0);
-				final double vehiclePositionX = mePolygon.xPoints[0];
-				final double vehiclePositionY = mePolygon.yPoints[0];
-				
-				final double distance = (Math.sqrt((vehiclePositionX - rsuPositionX) * (vehiclePositionX - rsuPositionX) + (vehiclePositionY - rsuPositionY)*(vehiclePositionY - rsuPositionY)));
-				
-				if(distance<=this.range){
-					//System.out.println("RSU @ " + rsuPositionX + ";" + rsuPositionY + " -> " + " vehicle n " + vehicle.getId() + " @ " + vehiclePositionX + " ; " + vehiclePositionY);
-					this.perceive(perception, me, vehicle);
-				}
-			}
-			
-			
-			//System.out.println(perception.getMessages().size());
-	
-			/**
-			 * 
-			 */
-			
 			return perception;
 		}
 		
 		
-		
 		private void perceive(MeasurementPerception perception, RoadSideUnit me, Vehicle vehicle) {
 			if(perception!=null && vehicle!=null && me!=null){
 		
@@ -55,16 +55,20 @@ public class RSUController extends Sensor {
 			MeasurementPerception perception = new MeasurementPerception();
 
 			
+			// buffers of this call, the road mappings are shared
+			final RoadMapping.PosTheta posTheta = new RoadMapping.PosTheta();
+			final RoadMapping.PolygonFloat polygon = new RoadMapping.PolygonFloat(4);
+
 			final RoadMapping meRoadMapping = roadSegment.roadMapping();
-			final RoadMapping.PolygonFloat mePolygon = meRoadMapping.mapFloat(me, 0.0);
-			final double mePositionX = mePolygon.xPoints[0];
-			final double mePositionY = mePolygon.yPoints[0];
+			meRoadMapping.mapFloat(me, posTheta, polygon);
+			final double mePositionX = polygon.xPoints[0];
+			final double mePositionY = polygon.yPoints[0];
 			
 			for(RoadSegment segment : roadNetwork){
 				for(Vehicle vehicle : segment){
 					if(vehicle!=null) {
 						final RoadMapping roadMapping = segment.roadMapping();
-				        final RoadMapping.PolygonFloat polygon = roadMapping.mapFloat(vehicle, 0.0);
+				        roadMapping.mapFloat(vehicle, posTheta, polygon);
 				        final double positionX = polygon.xPoints[0];
 				        final double positionY = polygon.yPoints[0];
 				    
@@ -29,6 +29,7 @@ import fr.ifsttar.licit.simulator.agents.perception.sensors.infrastructure.RSUDe
 import fr.ifsttar.licit.simulator.agents.perception.sensors.vehicles.measurements.GPSMeasurement;
 import fr.ifsttar.licit.simulator.agents.perception.sensors.vehicles.measurements.Measurement;
 import fr.ifsttar.licit.simulator.agents.perception.sensors.vehicles.measurements.TelemeterMeasurement;
+import fr.ifsttar.licit.simulator.environment.CommunicationIndex;
 import fr.ifsttar.licit.simulator.environment.PerceptibleEnvironment;
 import fr.ifsttar.licit.simulator.environment.PerceptiblePartition;
 import fr.ifsttar.licit.simulator.infrastructure.RoadSideUnit;
@@ -86,97 +87,48 @@ public class CommunicationDevice extends Sensor {
 		MeasurementPerception perception = new MeasurementPerception();
 		
 		
-		if(laneSegment!=null && roadSegment!=null && roadNetwork!=null && me!=null){		
+		if(laneSegment!=null && roadSegment!=null && roadNetwork!=null && me!=null){
 			
-			/*final RoadMapping segmentRoadMapping = roadSegment.roadMapping();
-			final RoadMapping.PolygonFloat mePolygon = segmentRoadMapping.mapFloat(me, 0.0);
-		*/	final double mePositionX;// = mePolygon.xPoints[0];
-			final double mePositionY;// = mePolygon.yPoints[0];
-		
+			final CommunicationIndex index = roadNetwork.communicationIndex();
+			// buffers of this call, the road mappings are shared
+			final RoadMapping.PosTheta posTheta = new RoadMapping.PosTheta();
+			final RoadMapping.PolygonFloat polygon = new RoadMapping.PolygonFloat(4);
+			roadSegment.roadMapping().mapFloat(me, posTheta, polygon);
+			final double mePositionX = polygon.xPoints[0];
+			final double mePositionY = polygon.yPoints[0];
 			
-			if (roadSegment.roadMapping().getPosTheta().theta() == 0){ // horizontal
-				mePositionX = roadSegment.roadMapping().getX0() + me.getFrontPosition();
-				mePositionY = roadSegment.roadMapping().getY0();
-			}else{  //vertical
-				mePositionX = roadSegment.roadMapping().getX0();
-				mePositionY = roadSegment.roadMapping().getY0() + me.getFrontPosition();
+			//RSU information, positions are indexed once
+			for(int i = 0; i < index.roadSideUnitCount(); ++i) {
+				final RoadSideUnit rsu = index.roadSideUnit(i);
+				final double distance = index.distanceToRoadSideUnit(i, mePositionX, mePositionY);
 				
-			}
-			//RSU information
-			for(RoadSegment segment : roadNetwork) {
-				for(RoadSideUnit rsu : segment.getRSUs()){
-					
-					final RoadMapping rsuSegmentRoadMapping = segment.roadMapping();
-					final RoadMapping.PolygonFloat rsuPolygon = rsuSegmentRoadMapping.mapFloat(me, 0.0);
-			        final double rsuPositionX = rsuPolygon.xPoints[0];
-			        final double rsuPositionY = rsuPolygon.yPoints[0];
-					
-			        final double distance = (Math.sqrt((mePositionX - rsuPositionX) * (mePositionX - rsuPositionX) + (mePositionY - rsuPositionY)*(mePositionY - rsuPositionY)));
-			        
-					//broadcasted information
-					for(Sensor s : rsu.getSensors()){
-						if(s instanceof RSUBroadcaster){
-							//if(Math.abs(me.getMidPosition() - rsu.getPosition()) <= ((RSUBroadcaster) s).getRange()){
-							/**
-							 * new 2D version
-							 */
-							if(distance <= ((RSUBroadcaster) s).getRange()){
-								//perception.addMessage(new SpeedRecommendationMessage(rsu, rsu.getSpeedRecommandation()));
-								this.addMessagesFromRSU(me, perception, ((RSUBroadcaster) s).getBroadcastedMessages());
-							}
+				//broadcasted information
+				for(Sensor s : rsu.getSensors()){
+					if(s instanceof RSUBroadcaster){
+						if(distance <= ((RSUBroadcaster) s).getRange()){
+							this.addMessagesFromRSU(me, perception, ((RSUBroadcaster) s).getBroadcastedMessages());
 						}
-						
-						if(s instanceof RSUDevice){
-								//if(Math.abs(me.getMidPosition() - rsu.getPosition()) <= ((RSUDevice) s).getRange()){
-								/**
-								 * new 2D version
-								 */
-								if(distance <= ((RSUDevice) s).getRange()){
-								//get messages from vehicle message to sent
-									for(Message m : rsu.getMessagesToSend()){
-										perception.addMessage(m);
-									}
-								}
+					}
+					
+					if(s instanceof RSUDevice){
+						if(distance <= ((RSUDevice) s).getRange()){
+							//get messages from vehicle message to sent
+							for(Message m : rsu.getMessagesToSend()){
+								perception.addMessage(m);
 							}
 						}
-						
+					}
 				}
 			}
 			
 			/**
-			 * new version bilateral only but gets position in worldspace
+			 * multi lateral, neighbours within range in worldspace from the spatial index
 			 */
-			
-			for(RoadSegment segment : roadNetwork){
-				for(Vehicle vehicle : segment){
-					if(vehicle!=null && vehicle.getId() != me.getId()){
-						final RoadMapping roadMapping = segment.roadMapping();
-						double neighbourPositionX=0;
-						double neighbourPositionY=0;
-						if (segment.roadMapping().getPosTheta().theta() == 0){ 
-							neighbourPositionX = roadSegment.roadMapping().getX0() + vehicle.getFrontPosition();
-							neighbourPositionY = roadSegment.roadMapping().getY0();
-						}else{  //vertical
-							neighbourPositionX = segment.roadMapping().getX0();
-							neighbourPositionX = segment.roadMapping().getY0() + vehicle.getFrontPosition();
-							
-						}
-				        /**
-				         *  1D perception
-				         */
-						 final double distance = (Math.sqrt((neighbourPositionX - mePositionX) * (neighbourPositionX - mePositionX) 
-								 + (neighbourPositionY - mePositionY)*(neighbourPositionY - mePositionY)));
-				        /**
-				         * bilateral
-				         */
-				       // if(vehicle.lane()==me.lane() && distance <= this.range){
-				        /**
-				         * multi lateral
-				         */
- 				        if(distance <= this.range) {
-					        	this.perceive(perception, me, vehicle);
- 				        }
-					        	} 
+			final CommunicationIndex.Hits hits = index.vehiclesInRange(mePositionX, mePositionY, this.range);
+			for(int i = 0; i < hits.size(); ++i){
+				final Vehicle vehicle = index.vehicle(hits.get(i));
+				if(vehicle.getId() != me.getId()){
+					this.perceive(perception, me, vehicle);
 				}
 			}
 		}
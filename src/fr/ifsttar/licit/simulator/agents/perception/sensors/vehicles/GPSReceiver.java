@@ -1,7 +1,5 @@
 package fr.ifsttar.licit.simulator.agents.perception.sensors.vehicles;
 
-import java.util.Random;
-
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlRootElement;
@@ -11,6 +9,7 @@ import org.movsim.simulator.roadnetwork.LaneSegment;
 import org.movsim.simulator.roadnetwork.RoadNetwork;
 import org.movsim.simulator.roadnetwork.RoadSegment;
 import org.movsim.simulator.vehicles.Vehicle;
+import org.movsim.utilities.MyRandom;
 
 import fr.ifsttar.licit.simulator.agents.perception.sensors.vehicles.measurements.GPSMeasurement;
 import fr.ifsttar.licit.simulator.agents.perception.sensors.vehicles.measurements.Measurement;
@@ -57,8 +56,7 @@ public class GPSReceiver extends MeasurementSensor{
 		
 		final double standardDeviation = /*perfectMeasure* */error;
 		
-		final Random rnd = new Random();
-		final double gaussianNoise = rnd.nextGaussian() * standardDeviation;
+		final double gaussianNoise = me.randomStream(MyRandom.STREAM_GPS).nextGaussian() * standardDeviation;
 		
 
 		final double position= perfectMeasure + gaussianNoise;
@@ -1,7 +1,5 @@
 package fr.ifsttar.licit.simulator.agents.perception.sensors.vehicles;
 
-import java.util.Random;
-
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlAttribute;
@@ -12,6 +10,8 @@ import org.movsim.simulator.roadnetwork.LaneSegment;
 import org.movsim.simulator.roadnetwork.RoadNetwork;
 import org.movsim.simulator.roadnetwork.RoadSegment;
 import org.movsim.simulator.vehicles.Vehicle;
+import org.movsim.utilities.MyRandom;
+
 import fr.ifsttar.licit.simulator.agents.perception.sensors.vehicles.measurements.Measurement;
 import fr.ifsttar.licit.simulator.agents.perception.sensors.vehicles.measurements.TelemeterMeasurement;
 
@@ -88,8 +88,7 @@ public class Telemeter extends MeasurementSensor{
 			
 			//final double randomError =  1.0 + random * error;
 			
-			final Random rnd = new Random();
-			final double gaussianNoise = rnd.nextGaussian() * standardDeviation;
+			final double gaussianNoise = me.randomStream(MyRandom.STREAM_TELEMETER).nextGaussian() * standardDeviation;
 			
 			//System.out.println(randomError);
 			
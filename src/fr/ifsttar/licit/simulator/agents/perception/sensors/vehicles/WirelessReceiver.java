@@ -1,8 +1,11 @@
 package fr.ifsttar.licit.simulator.agents.perception.sensors.vehicles;
 
+import gnu.trove.procedure.TLongObjectProcedure;
+
 import org.movsim.simulator.roadnetwork.LaneSegment;
 import org.movsim.simulator.roadnetwork.RoadSegment;
 import org.movsim.simulator.vehicles.Vehicle;
+import org.movsim.utilities.MyRandom;
 
 import fr.ifsttar.licit.simulator.agents.communication.messages.MeasurementMessage;
 import fr.ifsttar.licit.simulator.agents.communication.messages.TrustMessage;
@@ -42,7 +45,7 @@ public class WirelessReceiver extends VehicleSensor {
 			}
 		}
 	
-		myReliability+=(Math.random()-0.5)*0.1;
+		myReliability+=(me.randomStream(MyRandom.STREAM_WIRELESS).nextDouble()-0.5)*0.1;
 		
 		// FIXME  : consider a communication radius instead of a fixed set of 4 surrounding vehicles
 		
@@ -212,15 +215,28 @@ public class WirelessReceiver extends VehicleSensor {
 	private void shareTrustValues(VehiclePerception perception, Vehicle me, Vehicle vehicle){
 		if(perception!=null && me!=null && vehicle!=null){
 			
-			for(Long vehicleID : vehicle.getTrust().getKeys()){
-				if(vehicleID != me.getId()){
-					TrustValue trustValue = vehicle.getTrust().getTrustValue(vehicleID);
-					if(trustValue!=null)
-						perception.addMessage(new TrustMessage(vehicle, vehicleID, trustValue));
-				}
-			}
-			
+			this.sharePerception = perception;
+			this.shareMe = me;
+			this.shareVehicle = vehicle;
+			vehicle.getTrust().forEachTrustValue(shareTrustValue);
+			this.sharePerception = null;
+			this.shareMe = null;
+			this.shareVehicle = null;
 		}
 	}
 
+	// perception, receiver and sender of the trust values shared by shareTrustValue
+	private VehiclePerception sharePerception;
+	private Vehicle shareMe;
+	private Vehicle shareVehicle;
+
+	private final TLongObjectProcedure<TrustValue> shareTrustValue = new TLongObjectProcedure<TrustValue>() {
+		@Override
+		public boolean execute(long vehicleID, TrustValue trustValue) {
+			if(vehicleID != shareMe.getId() && trustValue!=null)
+				sharePerception.addMessage(new TrustMessage(shareVehicle, vehicleID, trustValue));
+			return true;
+		}
+	};
+
 }
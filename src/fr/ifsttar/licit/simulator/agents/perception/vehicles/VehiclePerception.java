@@ -8,6 +8,9 @@ import fr.ifsttar.licit.simulator.agents.perception.AgentPerception;
  * Perception is a local and partial representation of a Vehicle surrounding environment at a given time step of the simulation
  * This object holds all the entities perceived by the vehicle sensors 
  * 
+ * Vehicles perceived on a neighbouring road segment are position adjusted copies (see LaneSegment#frontVehicle(double)),
+ * they keep the identity of the perceived vehicle but are updated when that vehicle is looked up again
+ * 
  * FIXME: we should better use a partial representation of perceived vehicles (like a light class) instead of the Vehicle class which holds almost everything that should not be visible by other vehicles 
  * 
  * @author gueriau
@@ -1,8 +1,9 @@
 package fr.ifsttar.licit.simulator.agents.trust.models;
 
+import gnu.trove.map.hash.TLongDoubleHashMap;
+import gnu.trove.procedure.TLongDoubleProcedure;
+
 import java.util.ArrayList;
-import java.util.Hashtable;
-import java.util.Iterator;
 
 import fr.ifsttar.licit.simulator.agents.communication.messages.TrustMessage;
 import fr.ifsttar.licit.simulator.agents.perception.representation.SensedVehicle;
@@ -17,7 +18,7 @@ public class TrustNet extends TrustModel {
 	// this vehicle is called vehicle "i"
 	
 	//computed direct trust values
-	private Hashtable<Long, Double> DTijs = new Hashtable<Long, Double>();
+	private final TLongDoubleHashMap DTijs = new TLongDoubleHashMap();
 	
 	//shared trust values
 	private ArrayList<Tij> Tkjs = new ArrayList<Tij>();
@@ -29,7 +30,54 @@ public class TrustNet extends TrustModel {
 	private ArrayList<Tij> Tkis = new ArrayList<Tij>();
 	
 	//computed indirect trust values
-	Hashtable<Long, Double> ITijs = new Hashtable<Long, Double>();
+	private final TLongDoubleHashMap ITijs = new TLongDoubleHashMap();
+	
+	//scratch buffers of computeIndirectTrustValues: sums of Tik * Tkj and of Tik, by j
+	private final TLongDoubleHashMap indirectNums = new TLongDoubleHashMap();
+	private final TLongDoubleHashMap indirectDenums = new TLongDoubleHashMap();
+	
+	//trust and self trust value being updated by updateTrust
+	private Trust updatedTrust;
+	private double Tii;
+	
+	private final TLongDoubleProcedure putIndirectTrustValue = new TLongDoubleProcedure() {
+		@Override
+		public boolean execute(long j, double num) {
+			final double denum = indirectDenums.get(j);
+			if(num<0.0 || denum<=0.0){
+				ITijs.put(j, TrustValue.getDefaultValue());
+			} else {
+				ITijs.put(j, num/denum);
+			}
+			return true;
+		}
+	};
+	
+	private final TLongDoubleProcedure updateWithDirectTrustValue = new TLongDoubleProcedure() {
+		@Override
+		public boolean execute(long id, double DTij) {
+			if(ITijs.containsKey(id)){
+				double ITij = ITijs.get(id);
+				double Tij = (Tii * DTij + ITij) / (Tii + 1);
+				updatedTrust.setTrustValue(id, Tij);
+			} else {
+				//important for initialization phase
+				updatedTrust.setTrustValue(id, DTij);
+			}
+			return true;
+		}
+	};
+	
+	private final TLongDoubleProcedure updateWithIndirectTrustValue = new TLongDoubleProcedure() {
+		@Override
+		public boolean execute(long id, double ITij) {
+			// ids with a direct trust value have already been updated
+			if(!DTijs.containsKey(id)/* && trust.hasTrustValue(id)*/){
+				updatedTrust.setTrustValue(id, ITij);
+			}
+			return true;
+		}
+	};
 	
 	public TrustNet(TrustModelParameterTrustNet trustModelParameterTrustNet) {
 		// TODO Auto-generated constructor stub
@@ -70,7 +118,7 @@ public class TrustNet extends TrustModel {
 	}
 	
 	
-	private Double computeDirectTrustValue(SensedVehicle immediateFollower, double myPosition) {
+	private double computeDirectTrustValue(SensedVehicle immediateFollower, double myPosition) {
 		
 		//final double GPSDeltaX = Math.abs(immediateFollower.getAbsoluteX() - myPosition);
 		
@@ -131,85 +179,38 @@ public class TrustNet extends TrustModel {
 
 	@Override
 	public void computeTrust(Trust trust, long thisId) {
-		ITijs = this.computeIndirectTrustValues(trust, thisId, Tkjs);
+		this.computeIndirectTrustValues(trust, Tkjs);
 		//System.out.println(Tkjs.size());
-		trust.setSelfTrust(this.computeSelfTrust(Tkks, Tkis));
-		this.updateTrust(trust, DTijs, ITijs, trust.getTrustValue(thisId));
-	}
-
-	private Hashtable<Long,Double> computeIndirectTrustValues(Trust trust, long thisId, ArrayList<Tij> Tkjs) {
-    	Hashtable<Long,Double> ITijs = new Hashtable<Long,Double>();
-    	
-    	
-    	while(Tkjs.size()>0){
-    	
-    		// select first
-    		long j = Tkjs.get(0).getj();
-    		ArrayList<Tij> Txjs = new ArrayList<Tij>();
-    		
-    		Iterator<Tij> iterator = Tkjs.iterator();
-    	    while (iterator.hasNext()) {
-    	    	Tij tij = iterator.next();
-    	    	if(tij.getj()==j){
-    	    		Txjs.add(tij);
-    	    		iterator.remove();
-    	    	}
-    	    }
-
-    	    
-    	    Tij Txj = this.computeIndirectTrustValue(trust, thisId, Txjs);
-    	    if(Txj != null){
-    	    	ITijs.put(Txj.getj(), Txj.getTrustValue().getValue());
-    	    } else {
-    	    	ITijs.put(j, TrustValue.defaultValue().getValue());
-    	    }
-    	    
-    	}
-    	
-		return ITijs;
+		trust.setSelfTrustValue(this.computeSelfTrust(Tkks, Tkis));
+		this.updateTrust(trust, trust.getTrustValue(thisId));
 	}
 
-	private Tij computeIndirectTrustValue(Trust trust, long thisId, ArrayList<Tij> Txjs) {
-	    	
-    	if(Txjs.size()>0){
-	
-	    	double num = 0.0;
-	    	double denum = 0.0;
-	    	
-	    	for(Tij Tkj : Txjs){
-	    		if(trust.hasTrustValue(Tkj.geti())){ 
-	    			double Tik = trust.getTrustValue(Tkj.geti()).getValue();
-	    			num+= Tik * Tkj.getTrustValue().getValue();
-	    			denum+= Tik;
-	    			
-	    		
-	    		} else {
-	    			double Tik = TrustValue.defaultValue().getValue();
-	    			num+= Tik * Tkj.getTrustValue().getValue();
-	    			denum+= Tik;
-	    		}
-	    	}
-	    	
-	    	if(num<0.0 || denum<=0.0){
-	    		return null;
-	    	} else {
-	    		double value = num/denum;
-
-	    		
-	    		long i = thisId;
-	    		long j = Txjs.get(0).getj();
-	    		
-	    		return new Tij(i,j,new TrustValue(value));
-	    	}
-    	} 
-    	
-		return null;
+	/**
+	 * Computes the indirect trust values ITij into ITijs, grouping the shared
+	 * values Tkj by j, and consumes Tkjs.
+	 */
+	private void computeIndirectTrustValues(Trust trust, ArrayList<Tij> Tkjs) {
+		ITijs.clear();
+		indirectNums.clear();
+		indirectDenums.clear();
+		
+		for(int k = 0, n = Tkjs.size(); k < n; ++k){
+			final Tij Tkj = Tkjs.get(k);
+			final long j = Tkj.getj();
+			final TrustValue trustValue = trust.getTrustValue(Tkj.geti());
+			final double Tik = (trustValue!=null) ? trustValue.getValue() : TrustValue.getDefaultValue();
+			final double weightedTkj = Tik * Tkj.getTrustValue().getValue();
+			indirectNums.adjustOrPutValue(j, weightedTkj, weightedTkj);
+			indirectDenums.adjustOrPutValue(j, Tik, Tik);
+		}
+		Tkjs.clear();
+		
+		indirectNums.forEachEntry(putIndirectTrustValue);
 	}
-	 
 
-	private TrustValue computeSelfTrust(ArrayList<Tij> Tkks, ArrayList<Tij> Tkis) {
+	private double computeSelfTrust(ArrayList<Tij> Tkks, ArrayList<Tij> Tkis) {
 		
-		TrustValue trustValue = new TrustValue();
+		double selfTrust = TrustValue.getDefaultValue();
 		
 		double num = 0.0;
     	double denum = 0.0;
@@ -217,80 +218,41 @@ public class TrustNet extends TrustModel {
     	//System.out.println("tkks = " + Tkks.size() + " , Tkis = " + Tkis.size());
     	
 		//System.out.println(Tkis.get(0).geti());
-		for(Tij tkk : Tkks){
-			//boolean found = false;
+		for(int k = 0, nk = Tkks.size(); k < nk; ++k){
+			final Tij tkk = Tkks.get(k);
 			//System.out.println(tkk.geti() + " " + tkk.getj());
-			for(Tij tki : Tkis){
+			for(int l = 0, nl = Tkis.size(); l < nl; ++l){
+				final Tij tki = Tkis.get(l);
 				
 				if(tki.geti()==tkk.geti()){
 					num+=tkk.getTrustValue().getValue() * tki.getTrustValue().getValue();
 					denum+=tkk.getTrustValue().getValue();
-					//found = true;
 					//System.out.println(num);
 				}
 				
 			}
-			//if(!found){
-			//	num+=1.0;
-			//	denum+=1.0;
-			//}
 			
 		}
 		
 		if(num>=0.0 && denum>0.0){
-    		double value = num/denum;
-    		trustValue = new TrustValue(value);
-    		//if(value<0.90)
-    		//System.out.println("Self trust of " + this.getId() + " = " + value);
+    		selfTrust = num/denum;
+    		//if(selfTrust<0.90)
+    		//System.out.println("Self trust of " + this.getId() + " = " + selfTrust);
     	}
 		
-		
-		//trustValue = new TrustValue(TrustValue.defaultValue());
-		
-		return trustValue;
+		return selfTrust;
 		
 	}
 	
-	private void updateTrust(Trust trust, Hashtable<Long, Double> DTijs, Hashtable<Long, Double> ITijs, TrustValue selfTrustValue) {
+	private void updateTrust(Trust trust, TrustValue selfTrustValue) {
 
-		double Tii = selfTrustValue.getValue();
-		
-		ArrayList<Long> updatedIds = new ArrayList<Long>();
+		updatedTrust = trust;
+		Tii = selfTrustValue.getValue();
 		
-		for(Long id : DTijs.keySet()){
-			if(DTijs.containsKey(id)){
-				if(ITijs.containsKey(id)){
-					double DTij = DTijs.get(id).doubleValue();
-					double ITij = ITijs.get(id).doubleValue();
-					double Tij = (Tii * DTij + ITij) / (Tii + 1);
-					trust.setTrustValue(id, new TrustValue(Tij));
-					updatedIds.add(id);
-				} else {
-					//important for initialization phase
-					double DTij = DTijs.get(id).doubleValue();
-					double Tij = DTij;
-					trust.setTrustValue(id, new TrustValue(Tij));
-					updatedIds.add(id);
-				}
-			}
-		}
-		
-		for(Long id : ITijs.keySet()){
-			if(ITijs.containsKey(id)){
-				boolean found = false;
-				for(Long idupdated : updatedIds){
-					if(id==idupdated){
-						found =true;
-					}
-				}
-				
-				if(!found/* && trust.hasTrustValue(id)*/){
-					double Tij = ITijs.get(id).doubleValue();
-					trust.setTrustValue(id, new TrustValue(Tij));
-				}
-			}
-		}
+		DTijs.forEachEntry(updateWithDirectTrustValue);
+		ITijs.forEachEntry(updateWithIndirectTrustValue);
 		
+		updatedTrust = null;
 	}
 
 }
@@ -1,7 +1,7 @@
 package fr.ifsttar.licit.simulator.agents.trust.representation;
 
-import java.util.Collection;
-import java.util.Hashtable;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.procedure.TLongObjectProcedure;
 
 /**
  * 
@@ -18,7 +18,7 @@ public abstract class Trust {
 	/**
 	 * trustValues are the numerical values already computed and keept in agent memory
 	 */
-	private Hashtable<Long, TrustValue> trustValues = new Hashtable<Long, TrustValue>();
+	private final TLongObjectHashMap<TrustValue> trustValues = new TLongObjectHashMap<TrustValue>();
 
 	/**
 	 * Default constructor, forces initialization
@@ -39,7 +39,7 @@ public abstract class Trust {
 	 * @return true if the given vehicle is know by current vehicle, false otherwise
 	 */
 	public boolean hasTrustValue(long vehicleID){
-		return this.trustValues.containsKey(new Long(vehicleID));
+		return this.trustValues.containsKey(vehicleID);
 	}
 	
 	/**
@@ -48,17 +48,31 @@ public abstract class Trust {
 	 * @return the trust value corresponding to given vehicle
 	 */
 	public TrustValue getTrustValue(long vehicleID){
-		if(hasTrustValue(vehicleID))
-			return this.trustValues.get(new Long(vehicleID));
-		else
-			return null;
+		return this.trustValues.get(vehicleID);
 	}
 	
 	/**
 	 * Erases the trust value corresponding to given vehicle
 	 */
 	public void setTrustValue(long vehicleID, TrustValue trustValue){
-		this.trustValues.put(new Long(vehicleID), trustValue);
+		this.trustValues.put(vehicleID, trustValue);
+	}
+
+	/**
+	 * Sets the trust value corresponding to given vehicle, updating the
+	 * current trust value object in place if it is a plain {@link TrustValue}.
+	 * The values shared with other vehicles are copied by {@link Tij}, so
+	 * they are not affected.
+	 * 
+	 * @param vehicleID
+	 * @param value
+	 */
+	public void setTrustValue(long vehicleID, double value){
+		final TrustValue trustValue = this.trustValues.get(vehicleID);
+		if(trustValue!=null && trustValue.getClass()==TrustValue.class)
+			trustValue.value = value;
+		else
+			this.trustValues.put(vehicleID, new TrustValue(value));
 	}
 	
 	/**
@@ -68,10 +82,19 @@ public abstract class Trust {
 	 */
 	public void setSelfTrust(TrustValue selfTrust) {
 		if(selfTrust!=null)
-			this.trustValues.put(new Long(this.vehicleID), selfTrust);
+			this.trustValues.put(this.vehicleID, selfTrust);
 	}
 	
 	
+	/**
+	 * Erase the self trust value
+	 * 
+	 * @param value
+	 */
+	public void setSelfTrustValue(double value) {
+		this.setTrustValue(this.vehicleID, value);
+	}
+
 	public double getSelfTrustValue(){
 		return this.trustValues.get(this.vehicleID).getValue();
 	}
@@ -82,7 +105,7 @@ public abstract class Trust {
 	 * @param trustValue
 	 */
 	protected void addTrustValue(long vehicleID, TrustValue trustValue){
-		this.trustValues.put(new Long(vehicleID), trustValue);
+		this.trustValues.put(vehicleID, trustValue);
 	}
 	
 	/**
@@ -105,8 +128,15 @@ public abstract class Trust {
 	 */
 	protected abstract void mergeTrustValue(long vehicleID, TrustValue trustValue);
 
-	public Collection<Long> getKeys() {
-		return this.trustValues.keySet();
+	/**
+	 * Applies the procedure to the id and trust value of each known vehicle,
+	 * without copying them
+	 * 
+	 * @param procedure
+	 * @return false if the procedure stopped the iteration
+	 */
+	public boolean forEachTrustValue(TLongObjectProcedure<TrustValue> procedure) {
+		return this.trustValues.forEachEntry(procedure);
 	}
 
 	
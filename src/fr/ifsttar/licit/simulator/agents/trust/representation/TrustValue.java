@@ -58,6 +58,14 @@ public class TrustValue {
 	public static TrustValue defaultValue() {
 		return new TrustValue();
 	}
+
+	/**
+	 * 
+	 * @return the numerical value of {@link #defaultValue()}
+	 */
+	public static double getDefaultValue() {
+		return DEFAULT_VALUE;
+	}
 	
 	@Override
 	public TrustValue clone(){
@@ -7,6 +7,7 @@ import java.io.IOException;
 import javax.xml.bind.JAXBException;
 
 import org.movsim.logging.Logger;
+import org.movsim.output.route.FileTrajectories;
 import org.movsim.utilities.FileUtils;
 import org.movsim.viewer.ui.charts.SpaceTimeSpeedView;
 import org.movsim.viewer.ui.charts.model.data.sets.SpaceTimeSpeedDataSet;
@@ -23,7 +24,7 @@ public class Analyzer {
 
 			if(args.length==1){
 
-				SpaceTimeSpeedDataSet dataSet = createSpaceTimeSpeedDataSet(args[0] + ".traj.csv", 1);
+				SpaceTimeSpeedDataSet dataSet = createSpaceTimeSpeedDataSet(args[0], 1);
 
 				SpaceTimeSpeedView spaceTimeDiagram = new SpaceTimeSpeedView(dataSet);
 
@@ -45,7 +46,7 @@ public class Analyzer {
 	
 					final int lane = 3;
 					
-					SpaceTimeSpeedDataSet dataSet = createSpaceTimeSpeedDataSet(args[k] + ".traj.csv", lane);
+					SpaceTimeSpeedDataSet dataSet = createSpaceTimeSpeedDataSet(args[k], lane);
 	
 					SpaceTimeSpeedView spaceTimeDiagram = new SpaceTimeSpeedView(dataSet);
 	
@@ -85,13 +86,24 @@ public class Analyzer {
 	}
 
 
-	private static SpaceTimeSpeedDataSet createSpaceTimeSpeedDataSet(String filename, int numLane) {
+	private static SpaceTimeSpeedDataSet createSpaceTimeSpeedDataSet(String basename, int numLane) {
 
 		SpaceTimeSpeedDataSet dataSet = new SpaceTimeSpeedDataSet();
 
+		// the binary trajectories are preferred, only the records of the lane are read
+		final String binaryFilename = basename + FileTrajectories.binaryExtension;
+		if (new File(binaryFilename).exists()) {
+			try {
+				FileTrajectories.readSpaceTimeSpeedData(binaryFilename, dataSet, numLane);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			return dataSet;
+		}
+
 		// read data from csv file and add them to current dataset		
 
-		BufferedReader reader = FileUtils.getReader(filename);
+		BufferedReader reader = FileUtils.getReader(basename + ".traj.csv");
 
 		//int num=0;
 		//two firsts lines are dedicated to information
@@ -0,0 +1,328 @@
+package fr.ifsttar.licit.simulator.environment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.movsim.roadmappings.RoadMapping;
+import org.movsim.simulator.roadnetwork.LaneSegment;
+import org.movsim.simulator.roadnetwork.RoadNetwork;
+import org.movsim.simulator.roadnetwork.RoadSegment;
+import org.movsim.simulator.vehicles.Vehicle;
+
+import fr.ifsttar.licit.simulator.infrastructure.RoadSideUnit;
+
+/**
+ * Spatial index of the world positions of the vehicles and road side units, used to answer the range queries of the
+ * communication devices.
+ * <p>
+ * The vehicles are put in a uniform grid which is rebuilt once per time step by {@link #update(RoadNetwork)}, before
+ * the communication phase. The positions of the road side units are static and are computed once, on the first update,
+ * with the road mappings of their road segments.
+ * </p>
+ * <p>
+ * Query results are returned in the order in which the vehicles are iterated in the road network, so that perceptions
+ * do not depend on the grid layout.
+ * </p>
+ */
+public class CommunicationIndex {
+
+	/** default edge length of a grid cell, in meters. */
+	public static final double DEFAULT_CELL_SIZE = 150.0;
+
+	/** upper bound of the number of grid cells per indexed vehicle. */
+	private static final int MAX_CELLS_PER_VEHICLE = 4;
+
+	private static final int INITIAL_CAPACITY = 256;
+
+	/**
+	 * Reusable query result: indices of the vehicles found, in increasing order.
+	 */
+	public static final class Hits {
+		private int[] indices = new int[INITIAL_CAPACITY];
+		private int size;
+
+		public int size() {
+			return size;
+		}
+
+		public int get(int i) {
+			return indices[i];
+		}
+
+		private void add(int index) {
+			if (size == indices.length) {
+				indices = Arrays.copyOf(indices, 2 * size);
+			}
+			indices[size++] = index;
+		}
+	}
+
+	private final double cellSize;
+
+	// vehicles, in road network iteration order
+	private int count;
+	private Vehicle[] vehicles = new Vehicle[INITIAL_CAPACITY];
+	private double[] x = new double[INITIAL_CAPACITY];
+	private double[] y = new double[INITIAL_CAPACITY];
+
+	// grid: the vehicles of cell c are cellEntries[cellStart[c]] ... cellEntries[cellStart[c + 1] - 1]
+	private double gridMinX;
+	private double gridMinY;
+	private double gridCellSize;
+	private int columns;
+	private int rows;
+	private int[] cellStart = new int[1];
+	private int[] cellEntries = new int[INITIAL_CAPACITY];
+	private int[] cellOf = new int[INITIAL_CAPACITY];
+
+	// road side units, indexed once
+	private boolean roadSideUnitsIndexed;
+	private final List<RoadSideUnit> roadSideUnits = new ArrayList<RoadSideUnit>();
+	private double[] roadSideUnitX = new double[0];
+	private double[] roadSideUnitY = new double[0];
+
+	// mapping buffers of the update, the road mappings are shared
+	private final RoadMapping.PosTheta posTheta = new RoadMapping.PosTheta();
+	private final RoadMapping.PolygonFloat polygon = new RoadMapping.PolygonFloat(4);
+	private final RoadMapping.Cursor cursor = new RoadMapping.Cursor();
+
+	private final ThreadLocal<Hits> hits = new ThreadLocal<Hits>() {
+		@Override
+		protected Hits initialValue() {
+			return new Hits();
+		}
+	};
+
+	public CommunicationIndex() {
+		this(DEFAULT_CELL_SIZE);
+	}
+
+	public CommunicationIndex(double cellSize) {
+		if (cellSize <= 0) {
+			throw new IllegalArgumentException("cell size must be positive: " + cellSize);
+		}
+		this.cellSize = cellSize;
+	}
+
+	/**
+	 * Rebuilds the grid from the current positions of the vehicles of the network. A vehicle is placed at the first
+	 * corner of its polygon, as given by {@link RoadMapping#mapFloat(Vehicle, RoadMapping.PosTheta, RoadMapping.PolygonFloat)}.
+	 *
+	 * @param network
+	 */
+	public void update(RoadNetwork network) {
+		if (!roadSideUnitsIndexed) {
+			indexRoadSideUnits(network);
+		}
+		count = 0;
+		double minX = Double.MAX_VALUE;
+		double minY = Double.MAX_VALUE;
+		double maxX = -Double.MAX_VALUE;
+		double maxY = -Double.MAX_VALUE;
+		for (final RoadSegment roadSegment : network) {
+			final RoadMapping roadMapping = roadSegment.roadMapping();
+			for (int lane = 1; lane <= roadSegment.laneCount(); ++lane) {
+				final LaneSegment laneSegment = roadSegment.laneSegment(lane);
+				final int laneCount = laneSegment.vehicleCount();
+				// the vehicles of a lane are ordered by position, so the cursor follows them along the road mapping
+				cursor.reset();
+				for (int i = 0; i < laneCount; ++i) {
+					if (count == vehicles.length) {
+						grow();
+					}
+					final Vehicle vehicle = laneSegment.getVehicle(i);
+					roadMapping.map(vehicle.physicalQuantities().getMidPosition(),
+							roadMapping.laneOffset(vehicle.getContinousLane()), posTheta, cursor);
+					roadMapping.mapFloat(posTheta, vehicle.physicalQuantities().getLength(), vehicle
+							.physicalQuantities().getWidth(), polygon);
+					final double vx = polygon.xPoints[0];
+					final double vy = polygon.yPoints[0];
+					vehicles[count] = vehicle;
+					x[count] = vx;
+					y[count] = vy;
+					++count;
+					minX = Math.min(minX, vx);
+					minY = Math.min(minY, vy);
+					maxX = Math.max(maxX, vx);
+					maxY = Math.max(maxY, vy);
+				}
+			}
+		}
+		Arrays.fill(vehicles, count, vehicles.length, null);
+		buildGrid(minX, minY, maxX, maxY);
+	}
+
+	private void buildGrid(double minX, double minY, double maxX, double maxY) {
+		if (count == 0) {
+			columns = 0;
+			rows = 0;
+			return;
+		}
+		// coarsen the grid if the vehicles are spread over a large area
+		gridCellSize = cellSize;
+		final long maxCells = (long) MAX_CELLS_PER_VEHICLE * count + 16;
+		while ((long) cellCount(maxX - minX) * cellCount(maxY - minY) > maxCells) {
+			gridCellSize *= 2;
+		}
+		gridMinX = minX;
+		gridMinY = minY;
+		columns = cellCount(maxX - minX);
+		rows = cellCount(maxY - minY);
+		final int cells = columns * rows;
+		if (cellStart.length < cells + 1) {
+			cellStart = new int[cells + 1];
+		} else {
+			Arrays.fill(cellStart, 0, cells + 1, 0);
+		}
+		// counting sort of the vehicles by cell, stable so each cell lists its vehicles in increasing index order
+		for (int i = 0; i < count; ++i) {
+			final int cell = cell(column(x[i]), row(y[i]));
+			cellOf[i] = cell;
+			++cellStart[cell + 1];
+		}
+		for (int c = 0; c < cells; ++c) {
+			cellStart[c + 1] += cellStart[c];
+		}
+		for (int i = 0; i < count; ++i) {
+			final int cell = cellOf[i];
+			cellEntries[cellStart[cell]++] = i;
+		}
+		// cellStart[c] now holds the end of cell c, shift back to get the start
+		for (int c = cells; c > 0; --c) {
+			cellStart[c] = cellStart[c - 1];
+		}
+		cellStart[0] = 0;
+	}
+
+	private int cellCount(double extent) {
+		return (int) (extent / gridCellSize) + 1;
+	}
+
+	private int column(double vx) {
+		return Math.max(0, Math.min(columns - 1, (int) ((vx - gridMinX) / gridCellSize)));
+	}
+
+	private int row(double vy) {
+		return Math.max(0, Math.min(rows - 1, (int) ((vy - gridMinY) / gridCellSize)));
+	}
+
+	private int cell(int column, int row) {
+		return row * columns + column;
+	}
+
+	private void grow() {
+		final int capacity = 2 * vehicles.length;
+		vehicles = Arrays.copyOf(vehicles, capacity);
+		x = Arrays.copyOf(x, capacity);
+		y = Arrays.copyOf(y, capacity);
+		cellEntries = Arrays.copyOf(cellEntries, capacity);
+		cellOf = Arrays.copyOf(cellOf, capacity);
+	}
+
+	private void indexRoadSideUnits(RoadNetwork network) {
+		roadSideUnits.clear();
+		for (final RoadSegment roadSegment : network) {
+			roadSideUnits.addAll(roadSegment.getRSUs());
+		}
+		roadSideUnitX = new double[roadSideUnits.size()];
+		roadSideUnitY = new double[roadSideUnits.size()];
+		int i = 0;
+		for (final RoadSegment roadSegment : network) {
+			for (final RoadSideUnit rsu : roadSegment.getRSUs()) {
+				// as the road side units are drawn, see RoadMapping.mapFloat(RoadSideUnit, double)
+				roadSegment.roadMapping().mapFloat(rsu, posTheta, polygon);
+				roadSideUnitX[i] = polygon.xPoints[0];
+				roadSideUnitY[i] = polygon.yPoints[0];
+				++i;
+			}
+		}
+		roadSideUnitsIndexed = true;
+	}
+
+	/**
+	 * Finds the vehicles whose distance to the given point is at most the given range.
+	 *
+	 * @param px
+	 * @param py
+	 * @param range
+	 * @return the indices of the vehicles found, valid until the next query of the calling thread
+	 */
+	public Hits vehiclesInRange(double px, double py, double range) {
+		final Hits result = hits.get();
+		result.size = 0;
+		if (count == 0) {
+			return result;
+		}
+		final int columnMin = column(px - range);
+		final int columnMax = column(px + range);
+		final int rowMin = row(py - range);
+		final int rowMax = row(py + range);
+		for (int row = rowMin; row <= rowMax; ++row) {
+			for (int column = columnMin; column <= columnMax; ++column) {
+				final int cell = cell(column, row);
+				for (int k = cellStart[cell], end = cellStart[cell + 1]; k < end; ++k) {
+					final int i = cellEntries[k];
+					final double dx = x[i] - px;
+					final double dy = y[i] - py;
+					if (Math.sqrt(dx * dx + dy * dy) <= range) {
+						result.add(i);
+					}
+				}
+			}
+		}
+		Arrays.sort(result.indices, 0, result.size);
+		return result;
+	}
+
+	/**
+	 * Returns the vehicle with the given index.
+	 *
+	 * @param index
+	 * @return vehicle
+	 */
+	public Vehicle vehicle(int index) {
+		return vehicles[index];
+	}
+
+	public int roadSideUnitCount() {
+		return roadSideUnits.size();
+	}
+
+	public RoadSideUnit roadSideUnit(int index) {
+		return roadSideUnits.get(index);
+	}
+
+	/**
+	 * Returns the index of the given road side unit.
+	 *
+	 * @param rsu
+	 * @return the index, or -1 if the road side unit has not been indexed
+	 */
+	public int indexOf(RoadSideUnit rsu) {
+		return roadSideUnits.indexOf(rsu);
+	}
+
+	/**
+	 * Returns the distance between the given point and a road side unit.
+	 *
+	 * @param index
+	 *            index of the road side unit
+	 * @param px
+	 * @param py
+	 * @return distance in meters
+	 */
+	public double distanceToRoadSideUnit(int index, double px, double py) {
+		final double dx = px - roadSideUnitX[index];
+		final double dy = py - roadSideUnitY[index];
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	public double roadSideUnitX(int index) {
+		return roadSideUnitX[index];
+	}
+
+	public double roadSideUnitY(int index) {
+		return roadSideUnitY[index];
+	}
+}
@@ -15,10 +15,13 @@ import javax.xml.bind.annotation.XmlType;
 import org.movsim.autogen.CrossSection;
 import org.movsim.autogen.Intersection;
 import org.movsim.output.detector.LoopDetector;
+import org.movsim.simulator.SimulationContext;
 import org.movsim.simulator.roadnetwork.RoadNetwork;
 import org.movsim.simulator.roadnetwork.RoadSegment;
 
 import fr.ifsttar.licit.simulator.agents.Agent;
+import fr.ifsttar.licit.simulator.agents.action.Action;
+import fr.ifsttar.licit.simulator.agents.action.infrastructure.ChangeColorRSU;
 import fr.ifsttar.licit.simulator.agents.communication.messages.Message;
 import fr.ifsttar.licit.simulator.agents.perception.AgentPerception;
 import fr.ifsttar.licit.simulator.agents.perception.MeasurementPerception;
@@ -90,8 +93,6 @@ public class RoadSideUnit extends Agent implements Serializable{
 	protected long id = -1;
 	
 	protected static final int INITIAL_ID = 1;
-
-    private static long nextId = INITIAL_ID;
 	
     public final long getId() {
         return id;
@@ -166,7 +167,7 @@ public class RoadSideUnit extends Agent implements Serializable{
 		//this.sensors.add(new RSUBroadcaster(this.range));
 
 		if(this.id == -1){
-			this.id = nextId++;
+			this.id = INITIAL_ID + SimulationContext.current().roadSideUnitIds().next();
 		}
 		
 		this.initializeExternalControl();
@@ -277,6 +278,26 @@ public class RoadSideUnit extends Agent implements Serializable{
 	public void setColor(Color color){
 		this.color=color;
 	}
+	/**
+	 * Applies the color sent by the external controller, the other actions are ignored
+	 */
+	@Override
+	public void applyAction(Action action) {
+		if (action instanceof ChangeColorRSU) {
+			Color newColor = ((ChangeColorRSU) action).getColor();
+			if (newColor != null) {
+				setColor(newColor);
+			}
+		}
+	}
+
+	@Override
+	public AgentPerception getExternalControlPerception() {
+		MeasurementPerception mperception = (MeasurementPerception) perception;
+		mperception.setSelfId(this.id);
+		return mperception;
+	}
+
 	@Override
 	public void makeDecision(double simulationTime, long iterationCount) {
 
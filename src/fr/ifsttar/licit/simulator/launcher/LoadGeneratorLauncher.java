@@ -0,0 +1,122 @@
+package fr.ifsttar.licit.simulator.launcher;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import fr.ifsttar.licit.simulator.network.client.LoadGenerator;
+
+/**
+ * Runs a {@link LoadGenerator} against a running external control server.
+ * <p>
+ * Usage: <code>LoadGeneratorLauncher [-h host] [-p port] [-n connections] [-u prefix] [-first id] [-password password]
+ * [-think ms[-ms]] [-mix VehicleAction=3,ChangeColorRSU=1] [-d seconds] [-seed seed] [-threads n] [-protobuf]</code>
+ * </p>
+ * <p>
+ * The statistics are printed every second, and once more when the run ends after the given duration (default: until
+ * the process is killed).
+ * </p>
+ */
+public class LoadGeneratorLauncher {
+
+	private static final long REPORT_INTERVAL = 1000;
+
+	public static void main(String[] args) throws InterruptedException, IOException {
+
+		final LoadGenerator generator = new LoadGenerator();
+		String prefix = "VEHICLE";
+		int first = 0;
+		long duration = 0;
+		for (int k = 0; k < args.length; ++k) {
+			final String option = args[k];
+			if ("-protobuf".equals(option)) {
+				generator.setBinaryProtocol(true);
+				continue;
+			}
+			if (k + 1 >= args.length) {
+				usage("missing value for " + option);
+				return;
+			}
+			final String value = args[++k];
+			if ("-h".equals(option)) {
+				generator.setHost(value);
+			} else if ("-p".equals(option)) {
+				generator.setPort(Integer.parseInt(value));
+			} else if ("-n".equals(option)) {
+				generator.setConnections(Integer.parseInt(value));
+			} else if ("-u".equals(option)) {
+				prefix = value;
+			} else if ("-first".equals(option)) {
+				first = Integer.parseInt(value);
+			} else if ("-password".equals(option)) {
+				generator.setPassword(value);
+			} else if ("-think".equals(option)) {
+				final int dash = value.indexOf('-');
+				if (dash < 0) {
+					generator.setThinkTime(Long.parseLong(value), Long.parseLong(value));
+				} else {
+					generator.setThinkTime(Long.parseLong(value.substring(0, dash)), Long.parseLong(value.substring(dash + 1)));
+				}
+			} else if ("-mix".equals(option)) {
+				generator.setActionMix(parseMix(value));
+			} else if ("-d".equals(option)) {
+				duration = Long.parseLong(value) * 1000;
+			} else if ("-seed".equals(option)) {
+				generator.setSeed(Long.parseLong(value));
+			} else if ("-threads".equals(option)) {
+				generator.setSelectorThreads(Integer.parseInt(value));
+			} else {
+				usage("unknown option " + option);
+				return;
+			}
+		}
+		generator.setAccounts(prefix, first);
+
+		run(generator, duration);
+	}
+
+	/**
+	 * Runs the load generator, printing its statistics periodically.
+	 *
+	 * @param generator
+	 *            configured load generator
+	 * @param duration
+	 *            duration of the run in milliseconds, 0 to run until interrupted
+	 * @throws InterruptedException
+	 * @throws IOException
+	 */
+	public static void run(LoadGenerator generator, long duration) throws InterruptedException, IOException {
+		generator.start();
+		final long end = System.currentTimeMillis() + duration;
+		try {
+			while (duration <= 0 || System.currentTimeMillis() < end) {
+				Thread.sleep(duration <= 0 ? REPORT_INTERVAL : Math.max(1, Math.min(REPORT_INTERVAL, end - System.currentTimeMillis())));
+				System.out.println(generator.getReport());
+			}
+			// reported before stopping, while the agents are still connected
+			System.out.println("final: " + generator.getReport());
+		} finally {
+			generator.stop();
+		}
+	}
+
+	private static Map<String, Integer> parseMix(String value) {
+		final Map<String, Integer> weights = new LinkedHashMap<String, Integer>();
+		for (final String entry : value.split(",")) {
+			final int equal = entry.indexOf('=');
+			if (equal < 0) {
+				weights.put(entry.trim(), 1);
+			} else {
+				weights.put(entry.substring(0, equal).trim(), Integer.parseInt(entry.substring(equal + 1).trim()));
+			}
+		}
+		return weights;
+	}
+
+	private static void usage(String error) {
+		System.err.println(error);
+		System.err.println("usage: LoadGeneratorLauncher [-h host] [-p port] [-n connections] [-u prefix] [-first id]"
+				+ " [-password password] [-think ms[-ms]] [-mix VehicleAction=3,ChangeColorRSU=1] [-d seconds]"
+				+ " [-seed seed] [-threads n] [-protobuf]");
+	}
+}
@@ -1,58 +1,218 @@
 package fr.ifsttar.licit.simulator.launcher;
 
-import java.util.Vector;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.xml.bind.JAXBException;
 
-import org.movsim.MovsimCoreMain;
+import org.movsim.input.MovsimCommandLine;
+import org.movsim.input.ProjectMetaData;
+import org.movsim.logging.Logger;
+import org.movsim.output.fileoutput.AsyncFileWriter;
+import org.movsim.simulator.SimulationContext;
+import org.movsim.simulator.Simulator;
+import org.movsim.xml.MovsimInputLoader;
 import org.xml.sax.SAXException;
 
+/**
+ * Runs a batch of scenarios concurrently in one JVM.
+ * <p>
+ * Usage: <code>MovsimThreadedLauncher [-n threads] [-w steps] project1 project2 ...</code>
+ * </p>
+ * <p>
+ * The scenarios are run on a pool of at most <code>threads</code> workers
+ * (default: number of available processors). Each scenario gets its own
+ * {@link SimulationContext}, so the project meta data, the random generators,
+ * the id counters and the model settings of concurrent runs do not interfere.
+ * </p>
+ * <p>
+ * Before the batch starts, the first <code>steps</code> time steps of the
+ * first scenario are run once to warm up the JVM (default: 1000, 0 disables
+ * the warm-up), so the scenarios of the batch share the loaded classes and the
+ * compiled code instead of each paying for them.
+ * </p>
+ */
 public class MovsimThreadedLauncher {
 
+	private static final String THREADS_OPTION = "-n";
+	private static final String WARM_UP_OPTION = "-w";
+	private static final int DEFAULT_WARM_UP_STEPS = 1000;
+
 	public static void main(String[] args) throws JAXBException, SAXException {
-		// TODO Auto-generated method stub
-		
-		Vector<Thread> threads = new Vector<Thread>();
-		
-		
-		for(int k = 0 ; k<args.length ; ++k){
-			
-			String command = "-f"+args[k];
-			
-			final String[] commands = new String[1];
-			commands[0] = command;
-			
-			
-			Thread thread = new Thread(new Runnable() {
-				
+
+		int threads = Runtime.getRuntime().availableProcessors();
+		int warmUpSteps = DEFAULT_WARM_UP_STEPS;
+		int first = 0;
+		while (first + 1 < args.length) {
+			if (THREADS_OPTION.equals(args[first])) {
+				threads = Integer.parseInt(args[first + 1]);
+			} else if (WARM_UP_OPTION.equals(args[first])) {
+				warmUpSteps = Integer.parseInt(args[first + 1]);
+			} else {
+				break;
+			}
+			first += 2;
+		}
+
+		final List<String> projects = new ArrayList<String>();
+		for (int k = first; k < args.length; ++k) {
+			projects.add(args[k]);
+		}
+
+		final int failures = run(projects, threads, warmUpSteps);
+		if (failures > 0) {
+			System.err.println(failures + " of " + projects.size() + " scenarios failed.");
+		}
+	}
+
+	/**
+	 * Runs the given scenarios on a pool of worker threads and waits until all
+	 * of them are completed.
+	 *
+	 * @param projects
+	 *            project files, as given to the -f option of the command line
+	 * @param threads
+	 *            maximum number of scenarios run at the same time
+	 * @param warmUpSteps
+	 *            number of time steps of the shared warm-up run, 0 for none
+	 * @return the number of scenarios which failed
+	 */
+	public static int run(List<String> projects, int threads, int warmUpSteps) {
+		Locale.setDefault(Locale.US);
+		Logger.initializeLogger();
+
+		if (warmUpSteps > 0 && !projects.isEmpty()) {
+			try {
+				warmUp(projects.get(0), warmUpSteps);
+			} catch (Exception e) {
+				// the scenario itself reports the problem
+				System.err.println("warm-up with " + projects.get(0) + " failed: " + e);
+			}
+		}
+
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+		final List<Future<Void>> results = new ArrayList<Future<Void>>();
+		for (final String project : projects) {
+			results.add(executor.submit(new Callable<Void>() {
 				@Override
-				public void run() {
-					try {
-						MovsimCoreMain movsim = new MovsimCoreMain();
-						movsim.main(commands);
-					} catch (JAXBException | SAXException e) {
-						// TODO Auto-generated catch block
-						e.printStackTrace();
-					}
+				public Void call() throws Exception {
+					runScenario(project);
+					return null;
 				}
-			});
-			thread.start();
-			threads.add(thread);
-		
+			}));
 		}
-		
-		for(Thread thread : threads){
+		executor.shutdown();
+
+		int failures = 0;
+		for (int k = 0; k < results.size(); ++k) {
 			try {
-				
-				thread.join();
+				results.get(k).get();
+			} catch (ExecutionException e) {
+				System.err.println("scenario " + projects.get(k) + " failed:");
+				e.getCause().printStackTrace();
+				++failures;
 			} catch (InterruptedException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+				Thread.currentThread().interrupt();
+				executor.shutdownNow();
+				return failures + results.size() - k;
+			}
+		}
+		return failures;
+	}
+
+	/**
+	 * Runs the first time steps of the given scenario in a throwaway
+	 * simulation context, so that the classes are loaded and the hot code is
+	 * compiled once for the whole batch. The outputs are written to a temporary
+	 * directory which is deleted afterwards. A scenario controlled by external
+	 * agents is not run, as it would wait for the agents to connect.
+	 *
+	 * @param project
+	 * @param steps
+	 *            number of time steps to run
+	 * @throws JAXBException
+	 * @throws SAXException
+	 * @throws IOException
+	 */
+	static void warmUp(String project, int steps) throws JAXBException, SAXException, IOException {
+		final File outputPath = Files.createTempDirectory("movsim-warm-up").toFile();
+		final SimulationContext context = new SimulationContext();
+		SimulationContext.setCurrent(context);
+		Simulator simulator = null;
+		try {
+			MovsimCommandLine.parse(new String[] { "-f" + project, "-o" + outputPath.getPath() });
+			final ProjectMetaData projectMetaData = ProjectMetaData.getInstance();
+			if (!projectMetaData.hasProjectName()
+					|| MovsimInputLoader.getInputData(projectMetaData.getInputFile()).getScenario().getSimulation()
+							.isSetExternalControl()) {
+				return;
+			}
+			simulator = new Simulator();
+			simulator.initialize();
+			final double dt = simulator.getSimulationRunnable().timeStep();
+			for (int k = 0; k < steps; ++k) {
+				simulator.timeStep(dt, k * dt, k);
+			}
+		} finally {
+			if (simulator != null) {
+				simulator.getRoadNetwork().setParallelism(1);
+			}
+			AsyncFileWriter.closeAll(context);
+			SimulationContext.setCurrent(null);
+			delete(outputPath);
+		}
+	}
+
+	private static void delete(File file) {
+		final File[] children = file.listFiles();
+		if (children != null) {
+			for (final File child : children) {
+				delete(child);
+			}
+		}
+		if (!file.delete()) {
+			System.err.println("could not delete " + file);
+		}
+	}
+
+	/**
+	 * Runs one scenario to completion in a new simulation context bound to the
+	 * calling thread.
+	 *
+	 * @param project
+	 * @throws JAXBException
+	 * @throws SAXException
+	 */
+	private static void runScenario(String project) throws JAXBException, SAXException {
+		final SimulationContext context = new SimulationContext();
+		SimulationContext.setCurrent(context);
+		Simulator simulator = null;
+		try {
+			MovsimCommandLine.parse(new String[] { "-f" + project });
+			if (!ProjectMetaData.getInstance().hasProjectName()) {
+				throw new IllegalArgumentException("no xml simulation configuration file provided: " + project);
+			}
+			simulator = new Simulator();
+			simulator.initialize();
+			simulator.runToCompletion();
+		} finally {
+			if (simulator != null) {
+				// release the worker threads of the road network
+				simulator.getRoadNetwork().setParallelism(1);
 			}
+			// release the output files of a failed scenario as well
+			AsyncFileWriter.closeAll(context);
+			SimulationContext.setCurrent(null);
 		}
-		
 	}
 
-	
-	
 }
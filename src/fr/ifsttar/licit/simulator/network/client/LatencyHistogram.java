@@ -0,0 +1,68 @@
+package fr.ifsttar.licit.simulator.network.client;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in milliseconds, shared by the connections of a {@link LoadGenerator}.
+ *
+ * The latencies are counted in buckets of 1 ms, the ones above {@link #MAXIMUM_LATENCY} in the last bucket, so
+ * recording a sample never allocates nor locks.
+ *
+ */
+public class LatencyHistogram {
+
+	/**
+	 * Largest latency counted in its own bucket, in milliseconds.
+	 */
+	public final static int MAXIMUM_LATENCY=60000;
+
+	private final AtomicLongArray counts = new AtomicLongArray(MAXIMUM_LATENCY+1);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong maximum = new AtomicLong();
+
+	/**
+	 * Records a sample.
+	 * @param latency latency in milliseconds, negative values are counted as 0
+	 */
+	public void record(long latency) {
+		int bucket = (int) Math.max(0, Math.min(latency, MAXIMUM_LATENCY));
+		counts.incrementAndGet(bucket);
+		count.incrementAndGet();
+		long max = maximum.get();
+		while (latency>max && !maximum.compareAndSet(max, latency)) {
+			max = maximum.get();
+		}
+	}
+
+	/**
+	 * @return number of samples recorded
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return largest latency recorded, in milliseconds
+	 */
+	public long getMaximum() {
+		return maximum.get();
+	}
+
+	/**
+	 * @param fraction fraction of the samples, 0.5 for the median, 0.99 for the 99th percentile
+	 * @return latency in milliseconds under which this fraction of the samples lies, -1 if no sample was recorded
+	 */
+	public long getPercentile(double fraction) {
+		long n = count.get();
+		if (n==0) return -1;
+		long rank = Math.max(1, (long) Math.ceil(fraction*n));
+		long seen = 0;
+		for (int i=0;i<=MAXIMUM_LATENCY;i++) {
+			seen += counts.get(i);
+			if (seen>=rank) return i;
+		}
+		// samples recorded while scanning
+		return MAXIMUM_LATENCY;
+	}
+}
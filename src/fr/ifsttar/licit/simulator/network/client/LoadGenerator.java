@@ -0,0 +1,752 @@
+package fr.ifsttar.licit.simulator.network.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import fr.ifsttar.licit.simulator.network.simulation.util.xml.XMLProtobufCodec;
+import fr.ifsttar.licit.simulator.network.simulation.util.xml.XMLStreamEncoder;
+import fr.ifsttar.licit.simulator.network.simulation.util.xml.XMLUtilities;
+
+/**
+ * Headless load generator for the external control server.
+ *
+ * It opens a number of authenticated connections, as the external agents would, and answers each request-action
+ * message after a configurable think time with an action drawn from a weighted mix. The decision latency, from the
+ * timestamp of the perception to the sending of the action, and the decision throughput are measured, so the server
+ * can be profiled without any external agent. As the timestamp is taken from the clock of the server, the latencies
+ * are only meaningful when both run on the same host.
+ *
+ * The accounts are named after a prefix and a number, as those of the simulation agents: VEHICLE0, VEHICLE1... Vehicle
+ * accounts only exist once the vehicle has entered the network, so failed logins are retried.
+ *
+ * The connections are non-blocking and multiplexed on a few selector threads, as on the server side, so a thousand
+ * agents do not need a thousand threads. The think times are timers of the selector threads.
+ *
+ */
+public class LoadGenerator {
+
+	/** The Constant LOG. */
+	private static final Logger LOG = LoggerFactory.getLogger(LoadGenerator.class);
+
+	public final static int AGENT_PORT_DEFAULT=12300;
+
+	/**
+	 * Action type sending a new color and rank to a vehicle.
+	 */
+	public final static String VEHICLE_ACTION="VehicleAction";
+
+	/**
+	 * Action type sending a new color to a road side unit.
+	 */
+	public final static String CHANGE_COLOR_RSU="ChangeColorRSU";
+
+	private final static String[] COLORS={"red","green","blue","yellow"};
+
+	private final static int READ_BUFFER_SIZE=4096;
+
+	private String host="localhost";
+	private int port=AGENT_PORT_DEFAULT;
+	private int connections=1;
+	private String usernamePrefix="VEHICLE";
+	private int firstId=0;
+	private String password="1";
+	private long thinkTimeMin=0;
+	private long thinkTimeMax=0;
+	private long loginRetryInterval=1000;
+	private boolean binaryProtocol=false;
+	private long seed=System.nanoTime();
+	private int selectorThreads=Math.min(4, Runtime.getRuntime().availableProcessors());
+	private final Map<String,Integer> actionMix = new LinkedHashMap<String,Integer>();
+
+	private InetSocketAddress address;
+	private SelectorLoop[] loops;
+	private volatile boolean started=false;
+	private long startTime;
+	private long stopTime;
+
+	// statistics
+	private final LatencyHistogram latencies = new LatencyHistogram();
+	private final AtomicInteger connected = new AtomicInteger();
+	private final AtomicLong loginFailures = new AtomicLong();
+	private final AtomicLong decisions = new AtomicLong();
+
+	public LoadGenerator() {
+		actionMix.put(VEHICLE_ACTION, 1);
+	}
+
+	public void setHost(String host) {
+		this.host = host;
+	}
+
+	public void setPort(int port) {
+		this.port = port;
+	}
+
+	/**
+	 * @param connections number of agents simulated, one connection each
+	 */
+	public void setConnections(int connections) {
+		if (connections<1) throw new IllegalArgumentException("at least one connection expected");
+		this.connections = connections;
+	}
+
+	/**
+	 * @param selectorThreads number of threads driving the connections
+	 */
+	public void setSelectorThreads(int selectorThreads) {
+		if (selectorThreads<1) throw new IllegalArgumentException("at least one selector thread expected");
+		this.selectorThreads = selectorThreads;
+	}
+
+	/**
+	 * @param usernamePrefix prefix of the account names, VEHICLE or RSU
+	 * @param firstId number of the first account
+	 */
+	public void setAccounts(String usernamePrefix, int firstId) {
+		this.usernamePrefix = usernamePrefix;
+		this.firstId = firstId;
+	}
+
+	public void setPassword(String password) {
+		this.password = password;
+	}
+
+	/**
+	 * Sets the time taken to decide, drawn uniformly for each perception.
+	 * @param min minimum think time in milliseconds
+	 * @param max maximum think time in milliseconds
+	 */
+	public void setThinkTime(long min, long max) {
+		if (min<0 || max<min) throw new IllegalArgumentException("invalid think time range");
+		this.thinkTimeMin = min;
+		this.thinkTimeMax = max;
+	}
+
+	/**
+	 * Sets the mix of actions sent.
+	 * @param weights relative weight of each action type, for instance VehicleAction=3 and ChangeColorRSU=1
+	 */
+	public void setActionMix(Map<String,Integer> weights) {
+		int total=0;
+		for (Integer weight : weights.values()) {
+			if (weight<0) throw new IllegalArgumentException("negative action weight");
+			total+=weight;
+		}
+		if (total==0) throw new IllegalArgumentException("no action in the mix");
+		actionMix.clear();
+		actionMix.putAll(weights);
+	}
+
+	/**
+	 * @param interval delay in milliseconds before a failed login or a closed connection is retried, 0 to give up
+	 */
+	public void setLoginRetryInterval(long interval) {
+		this.loginRetryInterval = interval;
+	}
+
+	/**
+	 * @param binaryProtocol true to request the binary protocol at login
+	 */
+	public void setBinaryProtocol(boolean binaryProtocol) {
+		this.binaryProtocol = binaryProtocol;
+	}
+
+	/**
+	 * @param seed seed of the random generators drawing think times and actions
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Opens the connections, which are spread over the selector threads.
+	 * @throws IOException if a selector cannot be opened
+	 */
+	public synchronized void start() throws IOException {
+		if (started) throw new IllegalStateException("load generator already started");
+		address=new InetSocketAddress(host, port);
+		loops=new SelectorLoop[Math.min(selectorThreads, connections)];
+		try {
+			for (int i=0;i<loops.length;i++) {
+				loops[i]=new SelectorLoop(i);
+			}
+		} catch (IOException e) {
+			for (SelectorLoop loop : loops) {
+				if (loop!=null) loop.selector.close();
+			}
+			loops=null;
+			throw e;
+		}
+		started=true;
+		startTime=System.currentTimeMillis();
+		stopTime=0;
+		for (int i=0;i<connections;i++) {
+			SelectorLoop loop=loops[i%loops.length];
+			Connection c = new Connection(usernamePrefix+(firstId+i), new Random(seed+i), loop);
+			loop.schedule(new Timer(c, startTime, null, 0));
+		}
+		for (SelectorLoop loop : loops) {
+			loop.thread.start();
+		}
+	}
+
+	/**
+	 * Closes all connections and waits for the selector threads.
+	 * @throws InterruptedException
+	 */
+	public synchronized void stop() throws InterruptedException {
+		if (!started) return;
+		started=false;
+		stopTime=System.currentTimeMillis();
+		for (SelectorLoop loop : loops) {
+			loop.stop();
+		}
+		for (SelectorLoop loop : loops) {
+			loop.thread.join();
+		}
+		loops=null;
+	}
+
+	public LatencyHistogram getLatencies() {
+		return latencies;
+	}
+
+	/**
+	 * @return number of connections currently logged in
+	 */
+	public int getConnectedCount() {
+		return connected.get();
+	}
+
+	/**
+	 * @return number of failed login attempts, including the retries
+	 */
+	public long getLoginFailures() {
+		return loginFailures.get();
+	}
+
+	/**
+	 * @return number of actions sent
+	 */
+	public long getDecisions() {
+		return decisions.get();
+	}
+
+	/**
+	 * @return time elapsed since the start, until the stop if stopped, in milliseconds
+	 */
+	public synchronized long getElapsedTime() {
+		if (startTime==0) return 0;
+		return (stopTime==0 ? System.currentTimeMillis() : stopTime)-startTime;
+	}
+
+	/**
+	 * @return number of actions sent per second by all connections together, since the start
+	 */
+	public double getThroughput() {
+		return getDecisions()*1000.0/Math.max(1, getElapsedTime());
+	}
+
+	/**
+	 * @return one line summary of the statistics
+	 */
+	public String getReport() {
+		long elapsed=Math.max(1, getElapsedTime());
+		int agents=getConnectedCount();
+		double throughput=getDecisions()*1000.0/elapsed;
+		return String.format(Locale.US,
+				"%.1f s: %d/%d connected, %d login failures, %d decisions (total %.1f/s, %.2f/s per connected agent), latency p50 %d ms, p99 %d ms, max %d ms",
+				elapsed/1000.0, agents, connections, getLoginFailures(), getDecisions(), throughput,
+				agents==0 ? 0.0 : throughput/agents,
+				latencies.getPercentile(0.5), latencies.getPercentile(0.99), latencies.getMaximum());
+	}
+
+	private String drawAction(Random random) {
+		int total=0;
+		for (Integer weight : actionMix.values()) total+=weight;
+		int r=random.nextInt(total);
+		for (Map.Entry<String,Integer> e : actionMix.entrySet()) {
+			r-=e.getValue();
+			if (r<0) return e.getKey();
+		}
+		return VEHICLE_ACTION;
+	}
+
+	private long drawThinkTime(Random random) {
+		if (thinkTimeMax==thinkTimeMin) return thinkTimeMin;
+		return thinkTimeMin+(long) (random.nextDouble()*(thinkTimeMax-thinkTimeMin+1));
+	}
+
+	/**
+	 * A selector thread, the connections spread over it and their pending timers. Apart from the stop flag, all fields
+	 * are only accessed by the selector thread once it is started.
+	 */
+	private final class SelectorLoop implements Runnable {
+
+		private final Selector selector;
+		private final Thread thread;
+		private final PriorityQueue<Timer> timers = new PriorityQueue<Timer>();
+		private final List<Connection> connections = new ArrayList<Connection>();
+		private long timerCount;
+		private volatile boolean stopped=false;
+
+		SelectorLoop(int index) throws IOException {
+			selector=Selector.open();
+			thread=new Thread(this, "LoadGenerator-"+index);
+			thread.setDaemon(true);
+		}
+
+		void schedule(Timer timer) {
+			timer.sequence=timerCount++;
+			timers.add(timer);
+		}
+
+		void stop() {
+			stopped=true;
+			selector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (!stopped) {
+					long now=System.currentTimeMillis();
+					Timer timer;
+					while ((timer=timers.peek())!=null && timer.due<=now) {
+						timers.poll();
+						timer.connection.expired(timer);
+					}
+					selector.select(timer==null ? 0 : Math.max(1, timer.due-now));
+					Iterator<SelectionKey> keys=selector.selectedKeys().iterator();
+					while (keys.hasNext()) {
+						SelectionKey key=keys.next();
+						keys.remove();
+						if (!key.isValid()) continue;
+						Connection c=(Connection) key.attachment();
+						if (key.isConnectable()) {
+							c.finishConnect();
+							continue;
+						}
+						if (key.isReadable()) c.read();
+						if (key.isValid() && key.isWritable()) c.write();
+					}
+				}
+			} catch (IOException e) {
+				LOG.error("selector error: "+e.toString());
+			} finally {
+				for (Connection c : connections) {
+					c.closeChannel();
+				}
+				try {
+					selector.close();
+				} catch (IOException e) {
+					LOG.debug("error while closing selector");
+				}
+			}
+		}
+	}
+
+	/**
+	 * A connection attempt or an action to send once the think time is over.
+	 */
+	private static final class Timer implements Comparable<Timer> {
+		private final Connection connection;
+		private final long due;
+		private final String perceptionid; // null to connect
+		private final long timestamp;
+		private final int generation;
+		private long sequence;
+
+		Timer(Connection connection, long due, String perceptionid, long timestamp) {
+			this.connection = connection;
+			this.due = due;
+			this.perceptionid = perceptionid;
+			this.timestamp = timestamp;
+			this.generation = connection.generation;
+		}
+
+		@Override
+		public int compareTo(Timer other) {
+			if (due!=other.due) return due<other.due ? -1 : 1;
+			return sequence<other.sequence ? -1 : (sequence==other.sequence ? 0 : 1);
+		}
+	}
+
+	/**
+	 * One simulated agent, logging in and answering perceptions. It is only accessed by the thread of its selector
+	 * loop. The perceptions are answered in order, each one after its think time counted from the previous answer or
+	 * from its arrival, whichever comes later, as an agent answering one perception at a time would.
+	 */
+	private final class Connection {
+
+		private final String username;
+		private final Random random;
+		private final SelectorLoop loop;
+		private SocketChannel channel;
+		private SelectionKey key;
+		private boolean loggedIn;
+		private int generation; // incremented on each connection, to drop the timers of the previous one
+		private long lastDue;
+
+		// reading
+		private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+		private byte[] packet = new byte[READ_BUFFER_SIZE];
+		private int packetLength;
+		private boolean lengthPrefixed;
+		private int remainingLength=-1; // of a length-prefixed packet, -1 while reading the prefix
+		private int lengthPrefix;
+		private int lengthPrefixShift;
+
+		// writing
+		private final Queue<ByteBuffer> writeQueue = new ArrayDeque<ByteBuffer>();
+
+		Connection(String username, Random random, SelectorLoop loop) {
+			this.username = username;
+			this.random = random;
+			this.loop = loop;
+			loop.connections.add(this);
+		}
+
+		void expired(Timer timer) {
+			if (timer.generation!=generation) return;
+			if (timer.perceptionid==null) {
+				connect();
+				return;
+			}
+			sendAction(timer.perceptionid, timer.timestamp);
+		}
+
+		private void connect() {
+			++generation;
+			lengthPrefixed=false;
+			remainingLength=-1;
+			lengthPrefix=0;
+			lengthPrefixShift=0;
+			packetLength=0;
+			try {
+				channel=SocketChannel.open();
+				channel.configureBlocking(false);
+				channel.socket().setTcpNoDelay(true);
+				if (channel.connect(address)) {
+					key=channel.register(loop.selector, SelectionKey.OP_READ, this);
+					send(createLogin(), false);
+				} else {
+					key=channel.register(loop.selector, SelectionKey.OP_CONNECT, this);
+				}
+			} catch (IOException e) {
+				failed(e);
+			}
+		}
+
+		void finishConnect() {
+			try {
+				channel.finishConnect();
+				key.interestOps(SelectionKey.OP_READ);
+				send(createLogin(), false);
+			} catch (IOException e) {
+				failed(e);
+			}
+		}
+
+		private void failed(IOException e) {
+			LOG.debug("connection of "+username+" failed: "+e.getMessage());
+			disconnect();
+		}
+
+		/**
+		 * Closes the connection and retries after the retry interval.
+		 */
+		private void disconnect() {
+			closeChannel();
+			++generation;
+			if (loginRetryInterval>0 && !loop.stopped) {
+				loop.schedule(new Timer(this, System.currentTimeMillis()+loginRetryInterval, null, 0));
+			}
+		}
+
+		void closeChannel() {
+			if (loggedIn) {
+				connected.decrementAndGet();
+				loggedIn=false;
+			}
+			writeQueue.clear();
+			if (channel==null) return;
+			if (key!=null) key.cancel();
+			key=null;
+			try {
+				channel.close();
+			} catch (IOException e) {
+				LOG.debug("error while closing connection of "+username);
+			}
+			channel=null;
+		}
+
+		void read() {
+			int amount;
+			try {
+				amount=channel.read(readBuffer);
+			} catch (IOException e) {
+				amount=-1;
+			}
+			if (amount<0) {
+				disconnect();
+				return;
+			}
+			byte[] data=readBuffer.array();
+			int offset=0;
+			final int current=generation;
+			// the framing is switched by the login, so it is checked per packet
+			while (offset<amount && current==generation) {
+				offset=lengthPrefixed ? readLengthPrefixed(data, offset, amount) : readNullTerminated(data, offset, amount);
+			}
+			readBuffer.clear();
+		}
+
+		// returns the offset after the end of the current packet, or end
+		private int readNullTerminated(byte[] data, int offset, int end) {
+			for (int i=offset;i<end;i++) {
+				if (data[i]==0) {
+					append(data, offset, i-offset);
+					packetComplete();
+					return i+1;
+				}
+			}
+			append(data, offset, end-offset);
+			return end;
+		}
+
+		// returns the offset after the end of the current packet, or end
+		private int readLengthPrefixed(byte[] data, int offset, int end) {
+			int i=offset;
+			while (remainingLength<0) {
+				if (i==end) return end;
+				byte b=data[i++];
+				lengthPrefix|=(b & 0x7f)<<lengthPrefixShift;
+				lengthPrefixShift+=7;
+				if (b>=0) {
+					remainingLength=lengthPrefix;
+					lengthPrefix=0;
+					lengthPrefixShift=0;
+				} else if (lengthPrefixShift>28) {
+					failed(new IOException("invalid packet length"));
+					return end;
+				}
+			}
+			int length=Math.min(remainingLength, end-i);
+			append(data, i, length);
+			remainingLength-=length;
+			if (remainingLength==0) {
+				remainingLength=-1;
+				packetComplete();
+			}
+			return i+length;
+		}
+
+		private void append(byte[] data, int offset, int length) {
+			if (packetLength+length>packet.length) {
+				packet=Arrays.copyOf(packet, Math.max(2*packet.length, packetLength+length));
+			}
+			System.arraycopy(data, offset, packet, packetLength, length);
+			packetLength+=length;
+		}
+
+		private void packetComplete() {
+			byte[] received=Arrays.copyOf(packet, packetLength);
+			packetLength=0;
+			try {
+				handle(decode(received, lengthPrefixed));
+			} catch (IOException e) {
+				failed(e);
+			}
+		}
+
+		private void handle(Document doc) throws IOException {
+			if (!loggedIn) {
+				if (login(doc)) {
+					loggedIn=true;
+					connected.incrementAndGet();
+					lengthPrefixed=binaryProtocol;
+				} else {
+					loginFailures.incrementAndGet();
+					LOG.debug("login failed for "+username);
+					disconnect();
+				}
+				return;
+			}
+			Element root=doc.getDocumentElement();
+			String type=root.getAttribute("type");
+			if ("request-action".equals(type)) {
+				Element perception=(Element) XMLUtilities.getChildsByTagName(root,"perception").item(0);
+				if (perception==null) return;
+				long timestamp;
+				try {
+					timestamp=Long.parseLong(root.getAttribute("timestamp"));
+				} catch (NumberFormatException e) {
+					timestamp=System.currentTimeMillis();
+				}
+				long now=System.currentTimeMillis();
+				long think=drawThinkTime(random);
+				if (think==0 && lastDue<=now) {
+					sendAction(perception.getAttribute("id"), timestamp);
+				} else {
+					lastDue=Math.max(now, lastDue)+think;
+					loop.schedule(new Timer(this, lastDue, perception.getAttribute("id"), timestamp));
+				}
+			} else if ("bye".equals(type)) {
+				disconnect();
+			}
+		}
+
+		private void sendAction(String perceptionid, long timestamp) {
+			try {
+				send(createAction(perceptionid), binaryProtocol);
+			} catch (IOException e) {
+				failed(e);
+				return;
+			}
+			latencies.record(System.currentTimeMillis()-timestamp);
+			decisions.incrementAndGet();
+		}
+
+		private void send(Document doc, boolean binary) throws IOException {
+			ByteArrayOutputStream buffer=new ByteArrayOutputStream();
+			writePacket(buffer, doc, binary);
+			writeQueue.add(ByteBuffer.wrap(buffer.toByteArray()));
+			write();
+		}
+
+		void write() {
+			ByteBuffer buffer;
+			while ((buffer=writeQueue.peek())!=null) {
+				try {
+					channel.write(buffer);
+				} catch (IOException e) {
+					failed(e);
+					return;
+				}
+				if (buffer.hasRemaining()) {
+					// socket buffer full, wait until it is writable
+					key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+					return;
+				}
+				writeQueue.poll();
+			}
+			key.interestOps(SelectionKey.OP_READ);
+		}
+
+		private Document createLogin() {
+			Document doc=XMLUtilities.newDocument();
+			Element root=doc.createElement("message");
+			root.setAttribute("type","authentication");
+			doc.appendChild(root);
+			Element auth=doc.createElement("authentication");
+			auth.setAttribute("username",username);
+			auth.setAttribute("password",password);
+			if (binaryProtocol) auth.setAttribute("protocol",XMLProtobufCodec.PROTOCOL_NAME);
+			root.appendChild(auth);
+			return doc;
+		}
+
+		private boolean login(Document response) throws IOException {
+			if (response==null) return false;
+			NodeList nl=response.getElementsByTagName("authentication");
+			if (nl.getLength()==0) return false;
+			Element auth=(Element) nl.item(0);
+			if (!"ok".equals(auth.getAttribute("result"))) return false;
+			if (binaryProtocol && !XMLProtobufCodec.PROTOCOL_NAME.equals(auth.getAttribute("protocol"))) {
+				throw new IOException("binary protocol refused by the server");
+			}
+			return true;
+		}
+
+		private Document createAction(String perceptionid) {
+			String type=drawAction(random);
+			String color=COLORS[random.nextInt(COLORS.length)];
+			Document doc=XMLUtilities.newDocument();
+			Element root=doc.createElement("message");
+			root.setAttribute("type","action");
+			root.setAttribute("timestamp",Long.toString(System.currentTimeMillis()));
+			doc.appendChild(root);
+			Element action=doc.createElement("action");
+			action.setAttribute("id",perceptionid);
+			action.setAttribute("type",type);
+			if (CHANGE_COLOR_RSU.equals(type)) {
+				action.setAttribute("param","[color,"+color+"]");
+			} else {
+				action.setAttribute("param","[colorValue,"+color+",rank,"+random.nextInt(10)+"]");
+			}
+			root.appendChild(action);
+			return doc;
+		}
+	}
+
+	private static void writePacket(OutputStream out, Document doc, boolean binary) throws IOException {
+		if (binary) {
+			byte[] packet=XMLProtobufCodec.encode(doc);
+			int length=packet.length;
+			while ((length & ~0x7f)!=0) {
+				out.write((length & 0x7f) | 0x80);
+				length>>>=7;
+			}
+			out.write(length);
+			out.write(packet);
+		} else {
+			try {
+				if (XMLStreamEncoder.canWrite(doc)) {
+					XMLStreamEncoder.write(doc, out);
+				} else {
+					XMLUtilities.getTransformer(false).transform(new DOMSource(doc), new StreamResult(out));
+				}
+			} catch (XMLStreamException e) {
+				throw new IOException(e);
+			} catch (TransformerException e) {
+				throw new IOException(e);
+			}
+			out.write(0);
+		}
+		out.flush();
+	}
+
+	private static Document decode(byte[] packet, boolean binary) throws IOException {
+		if (binary) {
+			return XMLProtobufCodec.decode(packet);
+		}
+		try {
+			return XMLUtilities.getDocumentBuilder().parse(new ByteArrayInputStream(packet));
+		} catch (SAXException e) {
+			throw new IOException("invalid message received", e);
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package fr.ifsttar.licit.simulator.network.connection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Bounded queue of the messages waiting to be sent to an agent.
+ *
+ * A new perception replaces the one still waiting in the queue, so a slow agent always acts on the current state
+ * instead of working through outdated perceptions. Only perceptions and pong messages may be dropped, and the capacity
+ * of the queue bounds these messages: when it is reached, the oldest of them is discarded. The sticky sim-start
+ * message, the sim-end message and the other control messages are always kept.
+ *
+ * The queue is its own lock, so callers may synchronize on it to group several operations.
+ *
+ */
+public class SendQueue {
+
+	private final LinkedList<Document> messages = new LinkedList<Document>();
+	private int capacity;
+
+	// statistics
+	private long statCoalesced;
+	private long statDropped;
+
+	/**
+	 * @param capacity maximum number of perceptions and pong messages held, at least 1
+	 */
+	public SendQueue(int capacity) {
+		setCapacity(capacity);
+	}
+
+	public synchronized void setCapacity(int capacity) {
+		if (capacity<1) throw new IllegalArgumentException("capacity must be at least 1");
+		this.capacity = capacity;
+	}
+
+	public synchronized int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Queues a message.
+	 * @param doc message
+	 * @return the perceptions that will not be sent because of this message, replaced or dropped. Empty in most cases.
+	 */
+	public synchronized List<Document> offer(Document doc) {
+		List<Document> discarded = Collections.emptyList();
+		if (isPerception(doc)) {
+			Document replaced = removeFirst(true);
+			if (replaced!=null) {
+				statCoalesced++;
+				discarded = new ArrayList<Document>(2);
+				discarded.add(replaced);
+			}
+		}
+		if (isDroppable(doc) && countDroppable()>=capacity) {
+			Document dropped = removeFirst(false);
+			statDropped++;
+			if (isPerception(dropped)) {
+				if (discarded.isEmpty()) discarded = new ArrayList<Document>(2);
+				discarded.add(dropped);
+			}
+		}
+		messages.addLast(doc);
+		notifyAll();
+		return discarded;
+	}
+
+	/**
+	 * Removes the next message, waiting for one if the queue is empty.
+	 * @return message
+	 * @throws InterruptedException
+	 */
+	public synchronized Document take() throws InterruptedException {
+		while (messages.isEmpty()) {
+			wait();
+		}
+		return messages.removeFirst();
+	}
+
+	/**
+	 * @return the next message, null if the queue is empty
+	 */
+	public synchronized Document poll() {
+		return messages.pollFirst();
+	}
+
+	public synchronized boolean remove(Object doc) {
+		return messages.remove(doc);
+	}
+
+	public synchronized boolean contains(Object doc) {
+		return messages.contains(doc);
+	}
+
+	public synchronized boolean isEmpty() {
+		return messages.isEmpty();
+	}
+
+	public synchronized int size() {
+		return messages.size();
+	}
+
+	/**
+	 * @return number of perceptions replaced by a newer one before being sent
+	 */
+	public synchronized long getStatCoalesced() {
+		return statCoalesced;
+	}
+
+	/**
+	 * @return number of messages dropped because the queue was full
+	 */
+	public synchronized long getStatDropped() {
+		return statDropped;
+	}
+
+	private Document removeFirst(boolean perceptionOnly) {
+		for (Iterator<Document> i=messages.iterator();i.hasNext();) {
+			Document queued = i.next();
+			if (perceptionOnly ? isPerception(queued) : isDroppable(queued)) {
+				i.remove();
+				return queued;
+			}
+		}
+		return null;
+	}
+
+	private int countDroppable() {
+		int count = 0;
+		for (Document queued : messages) {
+			if (isDroppable(queued)) count++;
+		}
+		return count;
+	}
+
+	private static String getType(Document doc) {
+		Element root = doc.getDocumentElement();
+		return root==null ? "" : root.getAttribute("type");
+	}
+
+	private static boolean isPerception(Document doc) {
+		return "request-action".equals(getType(doc));
+	}
+
+	private static boolean isDroppable(Document doc) {
+		String type = getType(doc);
+		return "request-action".equals(type) || "pong".equals(type);
+	}
+}
@@ -8,12 +8,13 @@ import java.io.OutputStream;
 import java.io.StringWriter;
 import java.net.Socket;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
@@ -36,6 +37,9 @@ import fr.ifsttar.licit.simulator.agents.perception.Perception;
 import fr.ifsttar.licit.simulator.network.connection.authentication.UsernamePasswordAccount;
 import fr.ifsttar.licit.simulator.network.connection.socket.AgentCodecProtocolErrorException;
 import fr.ifsttar.licit.simulator.network.connection.socket.InetSocketListener;
+import fr.ifsttar.licit.simulator.network.connection.socket.PacketConnection;
+import fr.ifsttar.licit.simulator.network.connection.socket.PacketConnectionHandler;
+import fr.ifsttar.licit.simulator.network.connection.socket.PacketHandler;
 import fr.ifsttar.licit.simulator.network.connection.socket.SocketHandler;
 import fr.ifsttar.licit.simulator.network.simulation.agents.AbstractSimulationAgent;
 import fr.ifsttar.licit.simulator.network.simulation.agents.perception.FinalPerception;
@@ -43,6 +47,8 @@ import fr.ifsttar.licit.simulator.network.simulation.agents.perception.InitialSt
 import fr.ifsttar.licit.simulator.network.simulation.agents.perception.TimeCriticalPerception;
 import fr.ifsttar.licit.simulator.network.simulation.util.Component;
 import fr.ifsttar.licit.simulator.network.simulation.util.xml.XMLCodec;
+import fr.ifsttar.licit.simulator.network.simulation.util.xml.XMLProtobufCodec;
+import fr.ifsttar.licit.simulator.network.simulation.util.xml.XMLStreamEncoder;
 import fr.ifsttar.licit.simulator.network.simulation.util.xml.XMLUtilities;
 
 /**
@@ -52,12 +58,17 @@ import fr.ifsttar.licit.simulator.network.simulation.util.xml.XMLUtilities;
  * This special class uses XML to communicate with an agent.
  *
  */
-public class XMLSocketSimulationAgent extends AbstractSimulationAgent implements Component, SocketHandler/*, UniqueSimulationAgent*/ {
+public class XMLSocketSimulationAgent extends AbstractSimulationAgent implements Component, SocketHandler, PacketConnectionHandler, PacketHandler/*, UniqueSimulationAgent*/ {
 	
 	
     /** The Constant LOG. */
     private static final Logger LOG = LoggerFactory.getLogger(XMLSocketSimulationAgent.class);
-	
+
+	/**
+	 * Default number of perceptions and pongs that may wait to be sent to a slow agent.
+	 */
+	public final static int SEND_QUEUE_CAPACITY_DEFAULT=16;
+
 	// general stuff
 	private boolean active; // is this component running (thus accepting sockets)?
 	private Object generalSync; // general all purpose lock
@@ -70,6 +81,9 @@ public class XMLSocketSimulationAgent extends AbstractSimulationAgent implements
 	private Thread socketThreadSender;
 	private Object socketSync;
 	
+	// current non-blocking connection, used instead of a socket and its threads
+	private volatile PacketConnection connection;
+	
 	// configuration
 	private int maximumPacketLength;
 	private long timeOut;
@@ -97,7 +111,7 @@ public class XMLSocketSimulationAgent extends AbstractSimulationAgent implements
 	private int pingtimelimit_oldest;
 	
 	// queues for sending and receiving
-	private LinkedBlockingQueue<Document> sendQueue;
+	private SendQueue sendQueue;
 	private boolean disconnecting;
 	private Object disconnectSync;
 	private Map<Long,Document> actionQueue;
@@ -151,7 +165,7 @@ public class XMLSocketSimulationAgent extends AbstractSimulationAgent implements
 		
 		timeOut=Long.MAX_VALUE;
 		disconnectTimeOut=10000;
-		sendQueue = new LinkedBlockingQueue<Document>();
+		sendQueue = new SendQueue(SEND_QUEUE_CAPACITY_DEFAULT);
 		
 		maximumPacketLength = Integer.MAX_VALUE;
 		messageIdentifier = 0;
@@ -226,6 +240,39 @@ public class XMLSocketSimulationAgent extends AbstractSimulationAgent implements
 		return maximumPacketLength;
 	}
 	
+	/**
+	 * Set the number of perceptions and pongs that may wait to be sent to a slow agent. Beyond it the oldest one
+	 * is dropped. A waiting perception is anyway replaced by the next one.
+	 * @param capacity capacity of the send queue, at least 1
+	 */
+	public void setSendQueueCapacity(int capacity) {
+		sendQueue.setCapacity(capacity);
+	}
+	
+	/**
+	 * Retrieve the capacity of the send queue.
+	 * @return capacity of the send queue
+	 */
+	public int getSendQueueCapacity() {
+		return sendQueue.getCapacity();
+	}
+	
+	/**
+	 * Return the number of perceptions replaced by a newer one before being sent.
+	 * @return number of coalesced perceptions
+	 */
+	public long getStatCoalescedMessages() {
+		return sendQueue.getStatCoalesced();
+	}
+	
+	/**
+	 * Return the number of messages dropped because the send queue was full.
+	 * @return number of dropped messages
+	 */
+	public long getStatDroppedMessages() {
+		return sendQueue.getStatDropped();
+	}
+	
 	/**
 	 * Enable/disable ping.
 	 * @param ping true iff ping should be enabled
@@ -330,6 +377,111 @@ public class XMLSocketSimulationAgent extends AbstractSimulationAgent implements
 		//FIXME: What if there is no connection?
 		//Answer: For now the timeout will be granted anyway.
 
+		PendingAction pending = sendPerception(perception);
+		return pending.await(pending.deadline);
+	}
+
+	/**
+	 * Sends the perception right away and returns the action to come, without starting a thread. Waiting for the
+	 * future gives up the perception when its deadline or the timeout given to get expires, whichever comes first;
+	 * the action is an InvalidAction then.
+	 * @param perception
+	 * @return future action
+	 */
+	@Override
+	public Future<Action> concurrentGetAction(Perception perception) {
+		return sendPerception(perception);
+	}
+
+	/**
+	 * Return true iff an agent is currently connected.
+	 * @return true iff an agent is currently connected
+	 */
+	public boolean isConnected() {
+		PacketConnection c = connection;
+		if (c!=null) return c.isOpen();
+		synchronized (socketSync) {
+			return socket!=null && !socket.isClosed();
+		}
+	}
+
+	/**
+	 * A perception sent to the agent, waiting for the according action.
+	 */
+	private class PendingAction implements Future<Action> {
+		private final long id; // -1 if no action is expected
+		private final Document perceptiondoc;
+		private final long deadline;
+		private boolean done; // guarded by actionQueue
+		private Action action;
+
+		PendingAction(long id, Document perceptiondoc, long deadline) {
+			this.id = id;
+			this.perceptiondoc = perceptiondoc;
+			this.deadline = deadline;
+			if (id<0) {
+				done = true;
+				action = new InvalidAction();
+			}
+		}
+
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			return false;
+		}
+
+		public boolean isCancelled() {
+			return false;
+		}
+
+		public boolean isDone() {
+			synchronized (actionQueue) {
+				return done || actionQueue.get(id)!=null || !actionQueue.containsKey(id);
+			}
+		}
+
+		public Action get() {
+			return await(deadline);
+		}
+
+		public Action get(long timeout, TimeUnit unit) {
+			return await(Math.min(deadline, System.currentTimeMillis()+unit.toMillis(timeout)));
+		}
+
+		Action await(long until) {
+			synchronized (actionQueue) {
+				if (done) return action;
+				// no answer yet. Se we'll wait up to dead line or if
+				// sth. changes and actionQueue gets notified
+				Document actiondoc = actionQueue.get(id);
+				long currentTime = System.currentTimeMillis();
+				// the key is removed if the perception is abandoned in the send queue
+				while (actiondoc==null && currentTime<until && actionQueue.containsKey(id)) {
+					try {
+						actionQueue.wait(until-currentTime);
+					} catch (InterruptedException e) {
+						LOG.error( "Thread was interrupted");
+					}// This thread shouldn't be interrupted.
+					currentTime = System.currentTimeMillis();
+					actiondoc = actionQueue.get(id);
+				}
+				actionQueue.remove(id);
+				done = true;
+				// So we've got possibly an answer or timeout has occurred
+				if (actiondoc==null) {
+					//log(LOGLEVEL_NORMAL, "No valid document received in time. Returning InvalidAction to " + account.getUsername());
+					synchronized(sendQueue) {
+						sendQueue.remove(perceptiondoc);
+					}
+					action = new InvalidAction();
+				} else {
+					action = decodeAction(actiondoc);
+				}
+				return action;
+			}
+		}
+	}
+
+	private PendingAction sendPerception(Perception perception) {
 		long timeOut = this.timeOut;
 		
 		if (perception instanceof TimeCriticalPerception) {
@@ -376,11 +528,13 @@ public class XMLSocketSimulationAgent extends AbstractSimulationAgent implements
 				perceptionelement.setAttribute("id",Long.toString(myperceptionid));
 		}
 
-		Document actiondoc = null;
-		String content;
+		boolean requestsAction = !(perception instanceof FinalPerception) && !(perception instanceof InitialStickyPerception);
+		PendingAction pending = new PendingAction(requestsAction ? myperceptionid : -1, perceptiondoc,
+				timestamp + timeOut + auxiliaryTimeOut);
 
 		synchronized (actionQueue) {
-			actionQueue.put(myperceptionid, null);
+			// consider only request-action message!!! registered before sending, so an early answer is kept
+			if (requestsAction) actionQueue.put(myperceptionid, null);
 			
 			synchronized (sendQueue) {
 				if (perception instanceof FinalPerception) {
@@ -392,58 +546,11 @@ public class XMLSocketSimulationAgent extends AbstractSimulationAgent implements
 				}
 				sendMessage(perceptiondoc);
 			}
-			content = perceptiondoc.getChildNodes().item(0).getChildNodes()
-					.item(0).getNodeName();
-
-			// consider only request-action message!!!
-			if (content.equals("perception")) {
-
-				// now wait for an answer
-				long currentTime = System.currentTimeMillis();
-				
-				actiondoc = actionQueue.get(myperceptionid);
-				
-				while (actiondoc==null) {
-					
-					if (currentTime > timestamp + timeOut
-							+ auxiliaryTimeOut)
-						break;
-					// no answer yet. Se we'll wait up to dead line or if
-					// sth. changes and actionQueue gets notified
-					
-					
-					long wait = Math.max(
-							(timestamp + timeOut + auxiliaryTimeOut)
-									- currentTime, 1);
-					try {
-						actionQueue.wait(wait);
-					} catch (InterruptedException e) {
-						LOG.error( "Thread was interrupted");
-					}// This thread shouldn't be interrupted.
-					currentTime = System.currentTimeMillis();
-					
-					actiondoc = actionQueue.get(myperceptionid);
-				}			
-			}
-			actionQueue.remove(myperceptionid);
-		}
-		
-		if(!content.equals("perception")){
-			
-			return new InvalidAction();
-			
 		}
-		// So we've got possibly an answer or timeout has occurred
-		else if (actiondoc==null) {
-			
-			UsernamePasswordAccount account = (UsernamePasswordAccount) this.getIdentifier();
-			//log(LOGLEVEL_NORMAL, "No valid document received in time. Returning InvalidAction to " + account.getUsername());
-			synchronized(sendQueue) {
-				sendQueue.remove(perceptiondoc);			
-			}
-			return new InvalidAction();
-		}
-	
+		return pending;
+	}
+
+	private Action decodeAction(Document actiondoc) {
 		Element actionroot = actiondoc.getDocumentElement();
 		NodeList actionelements = actionroot.getElementsByTagName("action");
 		if (actionelements.getLength()<1) {
@@ -496,19 +603,30 @@ public class XMLSocketSimulationAgent extends AbstractSimulationAgent implements
 		}
 	}
 
+	private byte[] convertMessage(Document doc, boolean binary) {
+		if (binary) {
+			return XMLProtobufCodec.encode(doc);
+		}
+		return convertMessage(doc);
+	}
+
 	private byte[] convertMessage(Document doc) {
 		//convert doc to byte array
 		ByteArrayOutputStream bufferstream = new ByteArrayOutputStream();
 
-		TransformerFactory transFactory = TransformerFactory.newInstance();
-		Transformer transformer = null;
-		try {
-			transformer = transFactory.newTransformer();
-			transformer.setOutputProperty("indent","yes");
-		} catch (TransformerConfigurationException e) {throw new RuntimeException(e);}
+		// the messages built by the simulator are streamed, the transformer gives the same bytes for the others
+		if (XMLStreamEncoder.canWrite(doc)) {
+			try {
+				XMLStreamEncoder.write(doc, bufferstream);
+				return bufferstream.toByteArray();
+			} catch (XMLStreamException e) {
+				LOG.error("stream writer error, using the transformer");
+			} catch (IOException e) {throw new RuntimeException(e);}//cannot happen with a ByteArrayOutputStream
+			bufferstream.reset();
+		}
 
 		try {
-			transformer.transform(new DOMSource(doc),new StreamResult(bufferstream));
+			XMLUtilities.getTransformer(true).transform(new DOMSource(doc),new StreamResult(bufferstream));
 		} catch (TransformerException e) {
 			LOG.error("transformer error");
 			throw new RuntimeException();
@@ -519,10 +637,17 @@ public class XMLSocketSimulationAgent extends AbstractSimulationAgent implements
 	}
 	
 	private void sendMessage(Document doc) {
+		List<Document> discarded;
 		synchronized(sendQueue) {
-
-			try {sendQueue.put(doc);
+			PacketConnection c = connection;
+			if (c!=null && c.isOpen() && c.getQueuedPackets()==0 && sendQueue.isEmpty()) {
+				// the connection is idle, nothing can pile up
+				c.sendPacket(convertMessage(doc, c.isLengthPrefixed()));
+				return;
 			}
+
+			// wait in the bounded queue until the connection has sent its packets, see packetsSent
+			discarded = sendQueue.offer(doc);
 /*
 			ByteArrayOutputStream temp = new ByteArrayOutputStream();
 			try {
@@ -540,7 +665,22 @@ public class XMLSocketSimulationAgent extends AbstractSimulationAgent implements
 				e.printStackTrace();
 			}
 	*/		
-			catch (InterruptedException e) {throw new RuntimeException();}//shouldn't happen with a LinkedBlockingQueue
+		}
+		abandonPerceptions(discarded);
+	}
+	
+	// perceptions replaced or dropped in the send queue will not be answered, stop waiting for them
+	private void abandonPerceptions(List<Document> perceptiondocs) {
+		if (perceptiondocs.isEmpty()) return;
+		synchronized (actionQueue) {
+			for (Document perceptiondoc : perceptiondocs) {
+				Element perception = (Element) XMLUtilities.getChildsByTagName(perceptiondoc.getDocumentElement(),"perception").item(0);
+				if (perception==null) continue;
+				try {
+					actionQueue.remove(Long.parseLong(perception.getAttribute("id")));
+				} catch (NumberFormatException e) {}
+			}
+			actionQueue.notifyAll();
 		}
 	}
 	
@@ -588,6 +728,79 @@ public class XMLSocketSimulationAgent extends AbstractSimulationAgent implements
 		}
 	}
 			
+	/**
+	 * Takes over an authenticated connection of the {@link fr.ifsttar.licit.simulator.network.connection.socket.NioSocketListener}.
+	 * Messages queued while no connection was available are sent on it.
+	 */
+	public void handleConnection(PacketConnection c) {
+		
+		LOG.debug("received connection from "+c.getInetAddress());
+		if (!active) {
+			c.close();
+			return;
+		}
+		synchronized (socketSync) {
+			if (connection!=null) {
+				connection.close();
+			}
+			c.setMaximumPacketLength(maximumPacketLength);
+			c.setPacketHandler(this);
+			synchronized(sendQueue) {
+				//send possibly initial message first
+				if (stickyMessage==null) {//if there is no sticky message, possibly remove old sim-end-message
+					sendQueue.remove(lastSimEndMessage);
+					lastSimEndMessage=null;
+				} else if (!sendQueue.contains(stickyMessage)) {
+					c.sendPacket(convertMessage(stickyMessage, c.isLengthPrefixed()));
+				}
+				Document doc;
+				while ((doc=sendQueue.poll())!=null) {
+					c.sendPacket(convertMessage(doc, c.isLengthPrefixed()));
+				}
+				connection = c;
+			}
+		}
+	}
+
+	public void handlePacket(PacketConnection c, byte[] packet) {
+		Document doc;
+		try {
+			if (c.isLengthPrefixed()) {
+				doc = XMLProtobufCodec.decode(packet);
+			} else {
+				// parser of the selector thread, which serves many agents
+				doc = XMLUtilities.getDocumentBuilder().parse(new ByteArrayInputStream(packet));
+			}
+		} catch (SAXException e) {
+			LOG.debug("Invalid document received. Abandoning connection");
+			c.close();
+			return;
+		} catch (IOException e) {
+			LOG.debug("Invalid packet received. Abandoning connection");
+			c.close();
+			return;
+		}
+		processReceivedDocument(doc);
+	}
+
+	public void packetsSent(PacketConnection c) {
+		synchronized(sendQueue) {
+			if (connection!=c) return;
+			Document doc;
+			while ((doc=sendQueue.poll())!=null) {
+				c.sendPacket(convertMessage(doc, c.isLengthPrefixed()));
+			}
+		}
+	}
+
+	public void connectionClosed(PacketConnection c) {
+		synchronized(sendQueue) {
+			if (connection==c) {
+				connection = null;
+			}
+		}
+	}
+
 	public Socket getCurrentSocket() {
 		synchronized (socketSync) {
 			return socket;
@@ -596,11 +809,7 @@ public class XMLSocketSimulationAgent extends AbstractSimulationAgent implements
 	
 	private void socketThreadReceive(Socket s) {
 		
-		DocumentBuilderFactory factory=DocumentBuilderFactory.newInstance();
-		DocumentBuilder documentbuilder=null;
-		try {
-			documentbuilder=factory.newDocumentBuilder();
-		} catch (ParserConfigurationException e) {throw new RuntimeException(e);}
+		DocumentBuilder documentbuilder=XMLUtilities.getDocumentBuilder();
 
 		InputStream in = null;
 		try {in = s.getInputStream();} catch (IOException e) {
@@ -703,33 +912,27 @@ public class XMLSocketSimulationAgent extends AbstractSimulationAgent implements
 	
 	private void processReceivedDocument(Document doc) {
 		
-		TransformerFactory transFactory = TransformerFactory.newInstance();
-		Transformer transformer = null;
-		try {
-			transformer = transFactory.newTransformer();
-			transformer.setOutputProperty("indent","yes");
-		} catch (TransformerConfigurationException e) {throw new RuntimeException(e);}
-
-		
 		Element root = doc.getDocumentElement();
 		if (root==null) {LOG.info("received document misses root element");return;}
 		if (root.getNodeName().equals("message")) { 
 			if (root.getAttribute("type").equals("action")) processAction(doc); else
 			if (root.getAttribute("type").equals("ping")) processPing(doc); else {
 				LOG.info("received unknown message type");
-				try {transformer.transform(new DOMSource(doc),new StreamResult(System.out));}catch(Exception e) {
-					LOG.error( e.getMessage());
-				}
+				printDocument(doc);
 				return;
 			}
 		} else {
 			LOG.info("received invalid message");
-			try {transformer.transform(new DOMSource(doc),new StreamResult(System.out));}catch(Exception e) {
-				LOG.error( e.getMessage());
-			}
+			printDocument(doc);
 			return;
 		}
 	}
+
+	private void printDocument(Document doc) {
+		try {XMLUtilities.getTransformer(true).transform(new DOMSource(doc),new StreamResult(System.out));}catch(Exception e) {
+			LOG.error( e.getMessage());
+		}
+	}
 	
 	private void processAction(Document doc) {
 		
@@ -752,7 +955,7 @@ public class XMLSocketSimulationAgent extends AbstractSimulationAgent implements
 		synchronized(actionQueue) {
 			if (actionQueue.containsKey(new Long(actionid))) {
 				actionQueue.put(actionid,doc);
-				actionQueue.notify();
+				actionQueue.notifyAll();
 			}
 		}
 	}
@@ -813,6 +1016,10 @@ public class XMLSocketSimulationAgent extends AbstractSimulationAgent implements
 		}
 		
 		synchronized(socketSync) {
+			if (connection!=null) {
+				// the listener keeps the connection until the queued messages are written
+				connection.closeAfterSending();
+			}
 			if (socket!=null) {
 				try {
 					socketThreadSender.join(disconnectTimeOut);
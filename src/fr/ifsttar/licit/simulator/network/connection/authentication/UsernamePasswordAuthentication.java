@@ -11,6 +11,9 @@ public class UsernamePasswordAuthentication implements Authentication {
 	
 	/** password component for this authentication */
 	public String password;
+	
+	/** requested protocol, empty for XML */
+	public String protocol;
 
 	/**
 	 * Constructs a new UsernamePasswordAuthentication object.
@@ -18,5 +21,6 @@ public class UsernamePasswordAuthentication implements Authentication {
 	public UsernamePasswordAuthentication() {
 		username="";
 		password="";
+		protocol="";
 	}
 }
@@ -1,5 +1,6 @@
 package fr.ifsttar.licit.simulator.network.connection.socket;
 
+import java.net.InetAddress;
 import java.net.Socket;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -13,7 +14,7 @@ import org.slf4j.LoggerFactory;
 import fr.ifsttar.licit.simulator.network.connection.authentication.Account;
 import fr.ifsttar.licit.simulator.network.connection.authentication.Authentication;
 
-public abstract class AbstractSocketLoginManager implements SocketHandler {
+public abstract class AbstractSocketLoginManager implements SocketHandler, PacketHandler {
 	
 	 /** The Constant LOG. */
     private static final Logger LOG = LoggerFactory.getLogger(AbstractSocketLoginManager.class);
@@ -57,6 +58,42 @@ public abstract class AbstractSocketLoginManager implements SocketHandler {
 		while (handleInvalidAuthentication(s));
 	}
 
+	/**
+	 * Non-blocking login: the first packet of a connection of the
+	 * {@link NioSocketListener} carries the authentication.
+	 */
+	public void handlePacket(PacketConnection c, byte[] packet) {
+		Authentication auth = getAuthentication(packet, c.getInetAddress());
+		for (int i=0; i<accounts.size(); i++) {
+			Account iacc = accounts.get(i);
+			if (iacc.authenticate(auth)) {
+				SocketHandler handler = socketHandlerMap.get(iacc);
+				if (!(handler instanceof PacketConnectionHandler)) {
+					LOG.error("handler of account cannot take over a non-blocking connection");
+					c.close();
+					return;
+				}
+				boolean binary = isBinaryProtocolRequested(auth);
+				c.sendPacket(createAuthResponse(true, binary));
+				// the auth-response itself is still null-terminated
+				c.setLengthPrefixed(binary);
+				((PacketConnectionHandler) handler).handleConnection(c);
+				return;
+			}
+		}
+		LOG.error("Server gets InvalidAuthentication from: "+ c.getInetAddress().getHostAddress());
+		c.sendPacket(createAuthResponse(false, false));
+		c.closeAfterSending();
+	}
+
+	public void connectionClosed(PacketConnection c) {
+		LOG.debug("connection closed before authentication");
+	}
+
+	public void packetsSent(PacketConnection c) {
+		// only the authentication response is sent before the connection is handed over
+	}
+
 	/**
 	 * This method is called to receive a new Authentification implementing object for a connection.
 	 * @param c the connection
@@ -70,4 +107,26 @@ public abstract class AbstractSocketLoginManager implements SocketHandler {
 	 */
 	abstract protected boolean handleInvalidAuthentication(Socket s);
 	abstract protected void handleValidAuthentication(Socket s);
+
+	/**
+	 * Parses the authentication packet of a non-blocking connection.
+	 * @param packet packet content, without the terminating null byte
+	 * @param address address of the connection
+	 * @return Authentication associated to connection.
+	 */
+	abstract protected Authentication getAuthentication(byte[] packet, InetAddress address);
+
+	/**
+	 * Returns true iff the client asks for the binary protocol in its authentication.
+	 * It is only offered to non-blocking connections.
+	 */
+	abstract protected boolean isBinaryProtocolRequested(Authentication auth);
+
+	/**
+	 * Creates the response packet to an authentication.
+	 * @param result true iff the authentication is valid
+	 * @param binary true iff the binary protocol is used from now on
+	 * @return packet content, without the terminating null byte
+	 */
+	abstract protected byte[] createAuthResponse(boolean result, boolean binary);
 }
@@ -0,0 +1,510 @@
+package fr.ifsttar.licit.simulator.network.connection.socket;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.ifsttar.licit.simulator.network.simulation.util.Component;
+
+/**
+ * Non-blocking socket listener which multiplexes all agent connections on a
+ * small, fixed number of selector threads, instead of the threads per socket
+ * of {@link InetSocketListener} and {@link SocketHandler}.
+ *
+ * Each connection has its own read buffer, packet buffer and queue of packets
+ * to write. Received packets are passed to the {@link PacketHandler} of the
+ * connection, which is initially the handler of this listener (usually the
+ * login manager).
+ *
+ */
+public class NioSocketListener implements Component {
+
+	/** The Constant LOG. */
+	private static final Logger LOG = LoggerFactory.getLogger(NioSocketListener.class);
+
+	private static final int READ_BUFFER_SIZE = 4096;
+	private static final int INITIAL_PACKET_CAPACITY = 1024;
+	private static final long DEFAULT_STOP_TIMEOUT = 10000;
+
+	private final ServerSocketChannel serverChannel;
+	private final SelectorLoop[] loops;
+	private int nextLoop;
+	private volatile PacketHandler packetHandler;
+	private long stopTimeOut = DEFAULT_STOP_TIMEOUT;
+
+	/**
+	 * @param port
+	 * @param backlog
+	 * @param inetaddr local address to bind to, null for any address
+	 * @param selectorThreads number of selector threads
+	 * @throws IOException
+	 */
+	public NioSocketListener(int port, int backlog, InetAddress inetaddr, int selectorThreads) throws IOException {
+		LOG.info("NioSocketListener created. Set to port " + port + " with backlog " + backlog + " and "
+				+ selectorThreads + " selector threads");
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.configureBlocking(false);
+		serverChannel.socket().bind(new InetSocketAddress(inetaddr, port), backlog);
+		loops = new SelectorLoop[Math.max(1, selectorThreads)];
+		for (int i = 0; i < loops.length; i++) {
+			loops[i] = new SelectorLoop(i);
+		}
+		// the first loop also accepts the connections
+		serverChannel.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+	}
+
+	public PacketHandler getPacketHandler() {
+		return packetHandler;
+	}
+
+	/**
+	 * Set the handler of the new connections.
+	 */
+	public void setPacketHandler(PacketHandler packetHandler) {
+		this.packetHandler = packetHandler;
+	}
+
+	/**
+	 * Retrieve maximum time the selector threads keep running after stop to
+	 * let the connections send their last messages.
+	 * @return stop timeout in milliseconds
+	 */
+	public long getStopTimeOut() {
+		return stopTimeOut;
+	}
+
+	public void setStopTimeOut(long stopTimeOut) {
+		this.stopTimeOut = stopTimeOut;
+	}
+
+	public void start() {
+		for (SelectorLoop loop : loops) {
+			loop.thread.start();
+		}
+	}
+
+	/**
+	 * Stops accepting connections. The selector threads finish when all
+	 * connections are closed, at most after the stop timeout.
+	 */
+	public void stop() {
+		try {
+			serverChannel.close();
+		} catch (IOException e) {
+			LOG.error(e.toString());
+		}
+		final long deadline = System.currentTimeMillis() + stopTimeOut;
+		for (SelectorLoop loop : loops) {
+			loop.stopDeadline = deadline;
+			loop.selector.wakeup();
+		}
+	}
+
+	// called by the accepting loop only
+	private void accept() throws IOException {
+		SocketChannel channel;
+		while ((channel = serverChannel.accept()) != null) {
+			LOG.debug("got a connection");
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			final SelectorLoop loop = loops[nextLoop];
+			nextLoop = (nextLoop + 1) % loops.length;
+			loop.register(new Connection(channel, loop, packetHandler));
+		}
+	}
+
+	/**
+	 * A selector thread and the connections registered with it. Apart from
+	 * the request queues, all fields are only accessed by the selector thread.
+	 */
+	private final class SelectorLoop implements Runnable {
+
+		private final Selector selector;
+		private final Thread thread;
+		private final Queue<Connection> registrations = new ConcurrentLinkedQueue<Connection>();
+		private final Queue<Connection> writeRequests = new ConcurrentLinkedQueue<Connection>();
+		private final Queue<Connection> closeRequests = new ConcurrentLinkedQueue<Connection>();
+		private volatile long stopDeadline; // 0 while running
+		private int connectionCount;
+
+		SelectorLoop(int index) throws IOException {
+			selector = Selector.open();
+			thread = new Thread(this, "NioSocketListener-" + index);
+			thread.setDaemon(true);
+		}
+
+		void register(Connection connection) {
+			registrations.add(connection);
+			selector.wakeup();
+		}
+
+		void requestWrite(Connection connection) {
+			writeRequests.add(connection);
+			selector.wakeup();
+		}
+
+		void requestClose(Connection connection) {
+			closeRequests.add(connection);
+			selector.wakeup();
+		}
+
+		public void run() {
+			try {
+				while (true) {
+					final long deadline = stopDeadline;
+					long timeout = 0;
+					if (deadline != 0) {
+						timeout = deadline - System.currentTimeMillis();
+						if (connectionCount == 0 && registrations.isEmpty() || timeout <= 0) {
+							break;
+						}
+					}
+					selector.select(timeout);
+					processRequests();
+					final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while (keys.hasNext()) {
+						final SelectionKey key = keys.next();
+						keys.remove();
+						if (!key.isValid()) {
+							continue;
+						}
+						if (key.isAcceptable()) {
+							accept();
+							continue;
+						}
+						final Connection connection = (Connection) key.attachment();
+						if (key.isReadable()) {
+							connection.read();
+						}
+						if (key.isValid() && key.isWritable()) {
+							connection.write();
+						}
+					}
+				}
+			} catch (IOException e) {
+				LOG.error("selector error: " + e.toString());
+			} finally {
+				for (SelectionKey key : selector.keys()) {
+					if (key.attachment() instanceof Connection) {
+						((Connection) key.attachment()).closeNow();
+					}
+				}
+				processRequests();
+				try {
+					selector.close();
+				} catch (IOException e) {
+					LOG.error(e.toString());
+				}
+			}
+			LOG.debug("selector thread finished");
+		}
+
+		private void processRequests() {
+			Connection connection;
+			while ((connection = registrations.poll()) != null) {
+				if (stopDeadline != 0 && !selector.isOpen()) {
+					connection.closeNow();
+					continue;
+				}
+				try {
+					connection.key = connection.channel.register(selector, SelectionKey.OP_READ, connection);
+					++connectionCount;
+					// packets may have been queued before the registration
+					if (connection.writeRequested.get()) {
+						writeRequests.add(connection);
+					}
+				} catch (ClosedChannelException e) {
+					connection.closeNow();
+				}
+			}
+			while ((connection = closeRequests.poll()) != null) {
+				connection.closeNow();
+			}
+			while ((connection = writeRequests.poll()) != null) {
+				if (connection.key != null && connection.key.isValid()) {
+					connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_WRITE);
+				}
+			}
+		}
+	}
+
+	private final class Connection implements PacketConnection {
+
+		private final SocketChannel channel;
+		private final SelectorLoop loop;
+		private SelectionKey key;
+
+		private volatile PacketHandler handler;
+		private volatile int maximumPacketLength = Integer.MAX_VALUE;
+		private volatile boolean open = true;
+		private volatile boolean closeAfterSending;
+		private volatile boolean lengthPrefixed;
+
+		// reading: selector thread only
+		private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+		private byte[] packet = new byte[INITIAL_PACKET_CAPACITY];
+		private int packetLength;
+		private boolean seekNextEnd; // packet too long, skip up to its end
+		private int remainingLength = -1; // of a length-prefixed packet, -1 while reading the prefix
+		private int lengthPrefix;
+		private int lengthPrefixShift;
+
+		// writing: filled by any thread, drained by the selector thread
+		private final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<ByteBuffer>();
+		private final AtomicBoolean writeRequested = new AtomicBoolean();
+		private final AtomicInteger queuedPackets = new AtomicInteger();
+
+		Connection(SocketChannel channel, SelectorLoop loop, PacketHandler handler) {
+			this.channel = channel;
+			this.loop = loop;
+			this.handler = handler;
+		}
+
+		public void sendPacket(byte[] data) {
+			if (!open) {
+				return;
+			}
+			final ByteBuffer buffer;
+			if (lengthPrefixed) {
+				buffer = ByteBuffer.allocate(data.length + 5);
+				int length = data.length;
+				while ((length & ~0x7f) != 0) {
+					buffer.put((byte) ((length & 0x7f) | 0x80));
+					length >>>= 7;
+				}
+				buffer.put((byte) length);
+				buffer.put(data);
+			} else {
+				buffer = ByteBuffer.allocate(data.length + 1);
+				buffer.put(data);
+				buffer.put((byte) 0);
+			}
+			buffer.flip();
+			queuedPackets.incrementAndGet();
+			writeQueue.add(buffer);
+			requestWrite();
+		}
+
+		public int getQueuedPackets() {
+			return queuedPackets.get();
+		}
+
+		public void closeAfterSending() {
+			closeAfterSending = true;
+			requestWrite();
+		}
+
+		public void close() {
+			loop.requestClose(this);
+		}
+
+		public boolean isOpen() {
+			return open;
+		}
+
+		public InetAddress getInetAddress() {
+			return channel.socket().getInetAddress();
+		}
+
+		public void setPacketHandler(PacketHandler handler) {
+			this.handler = handler;
+		}
+
+		public void setMaximumPacketLength(int maximumPacketLength) {
+			this.maximumPacketLength = maximumPacketLength;
+		}
+
+		public void setLengthPrefixed(boolean lengthPrefixed) {
+			this.lengthPrefixed = lengthPrefixed;
+		}
+
+		public boolean isLengthPrefixed() {
+			return lengthPrefixed;
+		}
+
+		private void requestWrite() {
+			if (writeRequested.compareAndSet(false, true)) {
+				loop.requestWrite(this);
+			}
+		}
+
+		void read() {
+			int amount;
+			try {
+				amount = channel.read(readBuffer);
+			} catch (IOException e) {
+				amount = -1;
+			}
+			if (amount < 0) {
+				closeNow();
+				return;
+			}
+			final byte[] data = readBuffer.array();
+			int offset = 0;
+			// the framing may be switched by the handler of a packet, so it is checked per packet
+			while (offset < amount && open) {
+				offset = lengthPrefixed ? readLengthPrefixed(data, offset, amount) : readNullTerminated(data, offset,
+						amount);
+			}
+			readBuffer.clear();
+		}
+
+		// returns the offset after the end of the current packet, or end
+		private int readNullTerminated(byte[] data, int offset, int end) {
+			for (int i = offset; i < end; i++) {
+				if (data[i] == 0) {
+					append(data, offset, i - offset);
+					packetComplete();
+					return i + 1;
+				}
+			}
+			append(data, offset, end - offset);
+			return end;
+		}
+
+		// returns the offset after the end of the current packet, or end
+		private int readLengthPrefixed(byte[] data, int offset, int end) {
+			int i = offset;
+			while (remainingLength < 0) {
+				if (i == end) {
+					return end;
+				}
+				final byte b = data[i++];
+				lengthPrefix |= (b & 0x7f) << lengthPrefixShift;
+				lengthPrefixShift += 7;
+				if (b >= 0) {
+					remainingLength = lengthPrefix;
+					lengthPrefix = 0;
+					lengthPrefixShift = 0;
+					if (remainingLength < 0) {
+						LOG.info("invalid packet length");
+						closeNow();
+						return end;
+					}
+					seekNextEnd = remainingLength > maximumPacketLength;
+				} else if (lengthPrefixShift >= 35) {
+					LOG.info("invalid packet length");
+					closeNow();
+					return end;
+				}
+			}
+			final int length = Math.min(remainingLength, end - i);
+			append(data, i, length);
+			remainingLength -= length;
+			if (remainingLength == 0) {
+				remainingLength = -1;
+				packetComplete();
+			}
+			return i + length;
+		}
+
+		private void packetComplete() {
+			if (seekNextEnd) {
+				LOG.info("packet too long");
+			} else {
+				deliver(Arrays.copyOf(packet, packetLength));
+			}
+			packetLength = 0;
+			seekNextEnd = false;
+		}
+
+		private void append(byte[] data, int offset, int length) {
+			if (seekNextEnd || length == 0) {
+				return;
+			}
+			if (packetLength + length > maximumPacketLength) {
+				seekNextEnd = true;
+				return;
+			}
+			if (packetLength + length > packet.length) {
+				packet = Arrays.copyOf(packet, Math.max(2 * packet.length, packetLength + length));
+			}
+			System.arraycopy(data, offset, packet, packetLength, length);
+			packetLength += length;
+		}
+
+		private void deliver(byte[] received) {
+			final PacketHandler packetHandler = handler;
+			if (packetHandler == null) {
+				return;
+			}
+			try {
+				packetHandler.handlePacket(this, received);
+			} catch (RuntimeException e) {
+				LOG.error("error while handling packet: " + e.toString());
+			}
+		}
+
+		void write() {
+			ByteBuffer buffer;
+			while ((buffer = writeQueue.peek()) != null) {
+				try {
+					channel.write(buffer);
+				} catch (IOException e) {
+					LOG.debug("Error while writing to socket. Abandoning socket");
+					closeNow();
+					return;
+				}
+				if (buffer.hasRemaining()) {
+					return; // socket buffer full, wait for the next OP_WRITE
+				}
+				writeQueue.poll();
+				queuedPackets.decrementAndGet();
+			}
+			writeRequested.set(false);
+			if (!writeQueue.isEmpty() && writeRequested.compareAndSet(false, true)) {
+				return; // packets queued meanwhile, keep OP_WRITE
+			}
+			if (closeAfterSending) {
+				closeNow();
+				return;
+			}
+			key.interestOps(SelectionKey.OP_READ);
+			final PacketHandler packetHandler = handler;
+			if (packetHandler != null) {
+				try {
+					packetHandler.packetsSent(this);
+				} catch (RuntimeException e) {
+					LOG.error("error while handling sent packets: " + e.toString());
+				}
+			}
+		}
+
+		void closeNow() {
+			if (!open) {
+				return;
+			}
+			open = false;
+			if (key != null) {
+				key.cancel();
+				--loop.connectionCount;
+			}
+			try {
+				channel.close();
+			} catch (IOException e) {
+				LOG.error("Error while closing socket");
+			}
+			writeQueue.clear();
+			queuedPackets.set(0);
+			final PacketHandler packetHandler = handler;
+			if (packetHandler != null) {
+				packetHandler.connectionClosed(this);
+			}
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package fr.ifsttar.licit.simulator.network.connection.socket;
+
+import java.net.InetAddress;
+
+/**
+ * A connection exchanging null-terminated packets with an agent, used by the
+ * non-blocking {@link NioSocketListener}. None of the methods block.
+ *
+ */
+public interface PacketConnection {
+
+	/**
+	 * Queues a packet for sending. The terminating null byte or the length
+	 * prefix is added by the connection.
+	 * @param packet packet content, must not contain a null byte unless the
+	 * connection is length-prefixed
+	 */
+	void sendPacket(byte[] packet);
+
+	/**
+	 * Returns the number of packets queued and not yet completely written to
+	 * the socket. {@link PacketHandler#packetsSent(PacketConnection)} is
+	 * called when it drops to zero.
+	 * @return number of queued packets
+	 */
+	int getQueuedPackets();
+
+	/**
+	 * Closes the connection as soon as all queued packets have been written.
+	 */
+	void closeAfterSending();
+
+	/**
+	 * Closes the connection, discarding the queued packets.
+	 */
+	void close();
+
+	boolean isOpen();
+
+	InetAddress getInetAddress();
+
+	/**
+	 * Set the handler of the packets received from now on.
+	 */
+	void setPacketHandler(PacketHandler handler);
+
+	/**
+	 * Set maximum packet length allowed to receive. Longer packets are
+	 * discarded.
+	 * @param maximumPacketLength maximum packet length in bytes
+	 */
+	void setMaximumPacketLength(int maximumPacketLength);
+
+	/**
+	 * Switch between null-terminated packets (default) and packets prefixed
+	 * by their length as a varint, used by binary protocols. Applies to the
+	 * packets queued and received from now on.
+	 * @param lengthPrefixed true for length-prefixed packets
+	 */
+	void setLengthPrefixed(boolean lengthPrefixed);
+
+	boolean isLengthPrefixed();
+}
@@ -0,0 +1,10 @@
+package fr.ifsttar.licit.simulator.network.connection.socket;
+
+/**
+ * Non-blocking counterpart of {@link SocketHandler}: takes over an
+ * authenticated {@link PacketConnection}.
+ *
+ */
+public interface PacketConnectionHandler {
+	void handleConnection(PacketConnection connection);
+}
@@ -0,0 +1,29 @@
+package fr.ifsttar.licit.simulator.network.connection.socket;
+
+/**
+ * Receives the packets of a {@link PacketConnection}. The methods are called
+ * by the selector thread of the connection, so they must not block.
+ *
+ */
+public interface PacketHandler {
+
+	/**
+	 * A complete packet has been received.
+	 * @param connection
+	 * @param packet packet content, without the terminating null byte
+	 */
+	void handlePacket(PacketConnection connection, byte[] packet);
+
+	/**
+	 * The connection has been closed, by either side.
+	 * @param connection
+	 */
+	void connectionClosed(PacketConnection connection);
+
+	/**
+	 * All packets queued on the connection have been written to the socket,
+	 * more may be sent without piling up.
+	 * @param connection
+	 */
+	void packetsSent(PacketConnection connection);
+}
@@ -1,19 +1,17 @@
 package fr.ifsttar.licit.simulator.network.connection.socket;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.InetAddress;
 import java.net.Socket;
 import java.util.List;
 import java.util.Map;
 
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.TransformerFactoryConfigurationError;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
@@ -28,6 +26,8 @@ import org.xml.sax.SAXException;
 import fr.ifsttar.licit.simulator.network.connection.authentication.Account;
 import fr.ifsttar.licit.simulator.network.connection.authentication.Authentication;
 import fr.ifsttar.licit.simulator.network.connection.authentication.UsernamePasswordAuthentication;
+import fr.ifsttar.licit.simulator.network.simulation.util.xml.XMLProtobufCodec;
+import fr.ifsttar.licit.simulator.network.simulation.util.xml.XMLUtilities;
 
 public class UsernamePasswordSocketLoginManager extends
 		AbstractSocketLoginManager {
@@ -44,24 +44,29 @@ public class UsernamePasswordSocketLoginManager extends
 	protected Authentication getAuthentication(Socket s) {
 		
 		LOG.debug("retrieving authentication from client ");
-		DocumentBuilder documentbuilder;
-		DocumentBuilderFactory factory=DocumentBuilderFactory.newInstance();
+		ByteArrayOutputStream logindoc = new ByteArrayOutputStream();
 		try {
-			documentbuilder=factory.newDocumentBuilder();
-		} catch (ParserConfigurationException e) {throw new RuntimeException(e);}
+			InputStream is = s.getInputStream();
+			int b;
+			while ((b=is.read())>0) {
+				logindoc.write(b);
+			}
+		} catch (IOException e) {
+			LOG.error("IO error while receiving authentication");
+			e.printStackTrace();
+		}
+		return getAuthentication(logindoc.toByteArray(), s.getInetAddress());
+	}
+
+	@Override
+	protected Authentication getAuthentication(byte[] packet, InetAddress address) {
+		DocumentBuilder documentbuilder=XMLUtilities.getDocumentBuilder();
 		UsernamePasswordAuthentication auth = new UsernamePasswordAuthentication();
-		String logindocstring="";
 		String user="";
 		String pass="";
+		String protocol="";
 		try {
-			InputStream is = s.getInputStream();
-			byte b[]=new byte[1];
-			do {
-				b[0]=(byte)is.read();
-				if (b[0]==0) break; else logindocstring+=(new String(b,0,1,"UTF-8"));
-			} while (true);
-			LOG.debug(logindocstring);
-			Document logindoc=documentbuilder.parse(new ByteArrayInputStream(logindocstring.getBytes()));
+			Document logindoc=documentbuilder.parse(new ByteArrayInputStream(packet));
 			NodeList nl=logindoc.getElementsByTagName("authentication");
 			if (nl.getLength()==0) {
 				LOG.error("parse error while processing authentication");
@@ -70,6 +75,7 @@ public class UsernamePasswordSocketLoginManager extends
 			Element root=(Element)nl.item(0);
 			user=root.getAttribute("username");
 			pass=root.getAttribute("password");
+			protocol=root.getAttribute("protocol");
 		} catch (IOException e) {
 			LOG.error("IO error while receiving authentication");
 			e.printStackTrace();
@@ -77,13 +83,19 @@ public class UsernamePasswordSocketLoginManager extends
 			LOG.error("parse error while processing authentication");
 			e.printStackTrace();
 		}
-		String addr = s.getInetAddress().getHostAddress();
+		String addr = address.getHostAddress();
 		LOG.debug("got authentication: username="+user+" password="+pass+" Address="+addr);
 		auth.username=user;
 		auth.password=pass;
+		auth.protocol=protocol;
 		return auth;
 	}
 
+	@Override
+	protected boolean isBinaryProtocolRequested(Authentication auth) {
+		return XMLProtobufCodec.PROTOCOL_NAME.equals(((UsernamePasswordAuthentication) auth).protocol);
+	}
+
 	@Override
 	protected boolean handleInvalidAuthentication(Socket s) {
 		LOG.error("Server gets InvalidAuthentication from: "+ s.getInetAddress().getHostAddress());
@@ -104,7 +116,18 @@ public class UsernamePasswordSocketLoginManager extends
 	private void sendAuthResponse(Socket s, boolean result) {
 		try {
 			OutputStream out = s.getOutputStream();
-			Document doc=DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+			out.write(createAuthResponse(result, false));
+			out.write(0);
+		} catch (IOException e) {
+			LOG.error("Error while closing socket/sending invalid authentication error for a socket that provided invalid authentication.");
+		}
+	}
+
+	@Override
+	protected byte[] createAuthResponse(boolean result, boolean binary) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			Document doc=XMLUtilities.newDocument();
 			Element el_root = doc.createElement("message");
 			el_root.setAttribute("type","auth-response");
 			long timestamp = System.currentTimeMillis();
@@ -112,18 +135,15 @@ public class UsernamePasswordSocketLoginManager extends
 			doc.appendChild(el_root);
 			Element el_auth = doc.createElement("authentication");
 			el_auth.setAttribute("result",result?"ok":"fail");
+			if (binary) el_auth.setAttribute("protocol",XMLProtobufCodec.PROTOCOL_NAME);
 			el_root.appendChild(el_auth);
 			
-			TransformerFactory.newInstance().newTransformer().transform(new DOMSource(doc),new StreamResult(out));
-			out.write(0);
-		} catch (IOException e) {
-			LOG.error("Error while closing socket/sending invalid authentication error for a socket that provided invalid authentication.");
-		} catch (ParserConfigurationException e) {throw new RuntimeException(e);} catch (TransformerConfigurationException e) {
-			e.printStackTrace();
+			XMLUtilities.getTransformer(false).transform(new DOMSource(doc),new StreamResult(out));
 		} catch (TransformerException e) {
 			e.printStackTrace();
 		} catch (TransformerFactoryConfigurationError e) {
 			e.printStackTrace();
 		}
+		return out.toByteArray();
 	}
 }
@@ -7,6 +7,7 @@ import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
+import org.movsim.simulator.SimulationContext;
 import org.movsim.simulator.Simulator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,7 +42,6 @@ public class AbstractServer {
 	 */
 	
 	String defaultConfigurationFilename = "conf.xml";
-	public static String configurationFilenamePath =".";
 	
 	Element parseCommandLineToConfig(String[] args) throws InvalidConfigurationException {
 		String configfilename = defaultConfigurationFilename;
@@ -77,7 +77,7 @@ public class AbstractServer {
 		// Read and parse configuration
 			File configfile = new File(configfilename);
 			try {
-				AbstractServer.configurationFilenamePath = configfile.getCanonicalFile().getParent();
+				SimulationContext.current().setConfigurationPath(configfile.getCanonicalFile().getParent());
 			} catch (IOException e1) {
 				System.err.println("Error while determining the configfile path.");
 				throw new InvalidConfigurationException(e1);
@@ -5,22 +5,32 @@ import java.io.IOException;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 
+import org.movsim.simulator.roadnetwork.RoadNetwork;
+import org.movsim.simulator.roadnetwork.RoadSegment;
 import org.movsim.simulator.vehicles.Vehicle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Element;
 
+import fr.ifsttar.licit.simulator.agents.Agent;
+import fr.ifsttar.licit.simulator.agents.action.Action;
+import fr.ifsttar.licit.simulator.agents.perception.Perception;
 import fr.ifsttar.licit.simulator.infrastructure.RoadSideUnit;
 import fr.ifsttar.licit.simulator.network.configuration.InvalidConfigurationException;
 import fr.ifsttar.licit.simulator.network.connection.XMLSocketSimulationAgent;
-import fr.ifsttar.licit.simulator.network.connection.socket.InetSocketListener;
+import fr.ifsttar.licit.simulator.network.connection.socket.NioSocketListener;
 import fr.ifsttar.licit.simulator.network.connection.socket.UsernamePasswordSocketLoginManager;
 import fr.ifsttar.licit.simulator.network.simulation.agents.AgentManager;
 import fr.ifsttar.licit.simulator.network.simulation.agents.AgentProviderAgentManager;
+import fr.ifsttar.licit.simulator.network.simulation.agents.SimulationAgent;
+import fr.ifsttar.licit.simulator.network.simulation.agents.StepExchange;
 import fr.ifsttar.licit.simulator.network.simulation.agents.provider.AgentProvider;
 import fr.ifsttar.licit.simulator.network.simulation.agents.provider.ArrayAgentProvider;
 import fr.ifsttar.licit.simulator.network.simulation.util.Component;
@@ -33,9 +43,20 @@ public class Server extends AbstractServer {
 	
 	public final int AGENT_PORT_DEFAULT=12300; 
 	public final int AGENT_BACKLOG_DEFAULT=10;
+	public final int SELECTOR_THREADS_DEFAULT=1;
+
+	/**
+	 * How the agent connections are served.
+	 */
+	public enum IOMode {
+		/** all connections on a few selector threads ({@link NioSocketListener}) */
+		SELECTOR,
+		/** a receiver and a sender thread per connection */
+		BLOCKING
+	}
 
 	public int  score[];
-	protected InetSocketListener socketlistener;
+	protected Component socketlistener;
 	protected ServerInetSocketListener serverinetsocketlistener;
 	protected ServerSimulationAgents serversimulationagents;
 	protected UsernamePasswordSocketLoginManager loginsocketmanager;
@@ -125,26 +146,45 @@ public class Server extends AbstractServer {
 	}
 	
 	public Server(int agent_port, int backlog_port,List<RoadSideUnit> rsus) throws InvalidConfigurationException {
-		this.config(agent_port,backlog_port, rsus);
+		this(agent_port, backlog_port, IOMode.SELECTOR, 1, rsus);
+	}
+	
+	public Server(int agent_port, int backlog_port, IOMode ioMode, int selectorThreads, List<RoadSideUnit> rsus) throws InvalidConfigurationException {
+		this.config(agent_port,backlog_port, ioMode, selectorThreads, rsus);
 		this.serverstatus = Serverstatus.CONFIGURED;
 		LOG.debug("Server configured.");
 	}
 	
 public void config(int agent_port, int backlog_port, List<RoadSideUnit> rsus) throws InvalidConfigurationException {
+		this.config(agent_port, backlog_port, IOMode.SELECTOR, SELECTOR_THREADS_DEFAULT, rsus);
+	}
+
+public void config(int agent_port, int backlog_port, IOMode ioMode, int selectorThreads, List<RoadSideUnit> rsus) throws InvalidConfigurationException {
 	
 		LOG.debug("Server launched.");
 
-		//create socket listener
-		this.serverinetsocketlistener = new ServerInetSocketListener();
-		this.socketlistener = this.serverinetsocketlistener.object;
-		
 		//read account list
 		this.serversimulationagents = new ServerSimulationAgents(rsus);
 		//create UsernamePasswordSocketLoginManager 
 		this.loginsocketmanager = new UsernamePasswordSocketLoginManager(this.serversimulationagents.accounts,this.serversimulationagents.accountSocketHandlerMap);
 
-		//connect loginsocketmanager with socketlistener
-		this.socketlistener.setSocketHandler(this.loginsocketmanager);
+		//create socket listener and connect loginsocketmanager with it
+		if (ioMode == IOMode.BLOCKING) {
+			this.serverinetsocketlistener = new ServerInetSocketListener(agent_port, backlog_port);
+			this.serverinetsocketlistener.object.setSocketHandler(this.loginsocketmanager);
+			this.socketlistener = this.serverinetsocketlistener.object;
+		} else {
+			NioSocketListener niosocketlistener;
+			try {
+				niosocketlistener = new NioSocketListener(agent_port, backlog_port, null, selectorThreads);
+			} catch (IOException e) {
+				LOG.error("IO Error while creating NioSocketListener. Aborting...");
+				e.printStackTrace();
+				throw new RuntimeException(e);
+			}
+			niosocketlistener.setPacketHandler(this.loginsocketmanager);
+			this.socketlistener = niosocketlistener;
+		}
 		
 		//create arrayagentprovider
 		this.arrayagentprovider = new ArrayAgentProvider(this.serversimulationagents.agents);
@@ -187,6 +227,54 @@ public void config(int agent_port, int backlog_port, List<RoadSideUnit> rsus) th
 	}
 	
 	
+	/**
+	 * Exchanges the perceptions and actions of one time step with all connected controllers. The perceptions
+	 * are sent at once and the actions are gathered against one deadline, the longest timeout of the agents.
+	 * The actions are then applied in the order of the agent ids, so that the result does not depend on
+	 * the position of the agents in the road network. Agents without a connected controller are skipped.
+	 * @param network road network of the simulation
+	 */
+	public void exchangeActions(RoadNetwork network) {
+		List<Agent> agents = new ArrayList<Agent>();
+		for (RoadSegment roadSegment : network) {
+			for (RoadSideUnit rsu : roadSegment.getRSUs()) {
+				if (isControlled(rsu)) agents.add(rsu);
+			}
+			for (Vehicle vehicle : roadSegment) {
+				if (isControlled(vehicle)) agents.add(vehicle);
+			}
+		}
+		if (agents.isEmpty()) return;
+		Collections.sort(agents, AGENT_ID_ORDER);
+
+		SimulationAgent[] simulationAgents = new SimulationAgent[agents.size()];
+		Perception[] perceptions = new Perception[agents.size()];
+		long timeout = 0;
+		for (int i=0;i<simulationAgents.length;i++) {
+			XMLSocketSimulationAgent simulationAgent = (XMLSocketSimulationAgent) agents.get(i).getXmlSocketSimulationAgent();
+			simulationAgents[i] = simulationAgent;
+			perceptions[i] = agents.get(i).getExternalControlPerception();
+			timeout = Math.max(timeout, simulationAgent.getTimeout()+simulationAgent.getAuxiliaryTimeout());
+		}
+		Action[] actions = StepExchange.exchange(simulationAgents, perceptions, System.currentTimeMillis()+timeout);
+		for (int i=0;i<actions.length;i++) {
+			agents.get(i).applyAction(actions[i]);
+		}
+	}
+
+	private static final Comparator<Agent> AGENT_ID_ORDER = new Comparator<Agent>() {
+		@Override
+		public int compare(Agent a1, Agent a2) {
+			return Long.compare(a1.getId(), a2.getId());
+		}
+	};
+
+	private static boolean isControlled(Agent agent) {
+		if (!agent.isExternalControl() || agent.getPerception()==null) return false;
+		SimulationAgent simulationAgent = agent.getXmlSocketSimulationAgent();
+		return simulationAgent instanceof XMLSocketSimulationAgent && ((XMLSocketSimulationAgent) simulationAgent).isConnected();
+	}
+
 	public void addVehicleAgent(Vehicle v){
 		if(serversimulationagents!=null){
 			serversimulationagents.addVehicleAgent(v.getId(),(XMLSocketSimulationAgent) v.getXmlSocketSimulationAgent());
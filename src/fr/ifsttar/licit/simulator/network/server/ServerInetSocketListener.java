@@ -53,6 +53,17 @@ public class ServerInetSocketListener {
 	}
 	
 	
+	public ServerInetSocketListener(int agent_port, int agent_backlog) throws InvalidConfigurationException { 
+		
+		try {
+			object = new InetSocketListener(agent_port,agent_backlog,null);
+		} catch (IOException e) {
+			LOG.error("IO Error while creating InetSocketListener. Aborting...");
+			e.printStackTrace();
+			throw new RuntimeException(e);
+		}
+	}
+	
 	public ServerInetSocketListener() throws InvalidConfigurationException { 
 		
 		int agent_port=AGENT_PORT_DEFAULT;
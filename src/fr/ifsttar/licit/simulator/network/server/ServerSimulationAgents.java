@@ -1,11 +1,12 @@
 package fr.ifsttar.licit.simulator.network.server;
 
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import fr.ifsttar.licit.simulator.agents.action.InvalidAction;
 import fr.ifsttar.licit.simulator.agents.action.infrastructure.ChangeColorRSU;
@@ -24,6 +25,7 @@ import fr.ifsttar.licit.simulator.network.simulation.util.xml.XMLCodec;
 public class ServerSimulationAgents {
 
 	public AbstractSimulationAgent[] agents;
+	// read by the login manager while vehicle agents are added by the simulation
 	public List<Account> accounts;
 
 	public Map<Account, SocketHandler> accountSocketHandlerMap;
@@ -45,10 +47,10 @@ public class ServerSimulationAgents {
 			//init fields
 			agents = new AbstractSimulationAgent[accountlistlen];
 
-			accounts = new ArrayList<Account>();//new Account[accountlistlen];
+			accounts = new CopyOnWriteArrayList<Account>();//new Account[accountlistlen];
 
 
-			accountSocketHandlerMap = new HashMap<Account, SocketHandler>();
+			accountSocketHandlerMap = new ConcurrentHashMap<Account, SocketHandler>();
 
 			int i=0;
 			for(RoadSideUnit rsu : rsus){
@@ -116,10 +118,11 @@ public class ServerSimulationAgents {
 
 		agents[agents.length-1] = agent; 
 		
+		// map the account first, the login manager may look it up as soon as it is listed
+		accountSocketHandlerMap.put(account,agent);
+		
 		//accounts[accounts.length-1] = account;
 		accounts.add(account);
-		
-		accountSocketHandlerMap.put(account,agent);
 
 		//System.out.println("set identifier " + account.getUsername() + " for agent " + agent);
 		agent.setIdentifier(account);
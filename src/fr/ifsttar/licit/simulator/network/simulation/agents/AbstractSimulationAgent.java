@@ -2,6 +2,8 @@ package fr.ifsttar.licit.simulator.network.simulation.agents;
 
 import java.util.concurrent.Future;
 
+import org.movsim.simulator.SimulationContext;
+
 import fr.ifsttar.licit.simulator.agents.action.Action;
 import fr.ifsttar.licit.simulator.agents.perception.Perception;
 import fr.ifsttar.licit.simulator.network.simulation.util.FutureObject;
@@ -10,7 +12,9 @@ public abstract class AbstractSimulationAgent extends SimulationAgent {
 	@SuppressWarnings("unchecked")
 	public Future<Action> concurrentGetAction(final Perception perception) {
 		final FutureObject<Action> f = new FutureObject<Action>();
+		final SimulationContext context = SimulationContext.current();
 		new Thread(){public void run() {
+			SimulationContext.setCurrent(context);
 			f.deliver(getAction(perception));
 		}}.start();
 		return f;
@@ -2,6 +2,8 @@ package fr.ifsttar.licit.simulator.network.simulation.agents;
 
 import java.util.concurrent.Future;
 
+import org.movsim.simulator.SimulationContext;
+
 import fr.ifsttar.licit.simulator.network.simulation.util.FutureObject;
 
 /**
@@ -14,7 +16,9 @@ public abstract class DefaultAgentManager implements AgentManager {
 	//@SuppressWarnings("unchecked")
 	public Future<SimulationAgent> concurrentCreateAgent(final AgentParameter params) {
 		final FutureObject<SimulationAgent> f = new FutureObject<SimulationAgent>();
+		final SimulationContext context = SimulationContext.current();
 		new Thread(){public void run() {
+			SimulationContext.setCurrent(context);
 			f.deliver(createAgent(params));
 		}}.start();
 		return f;
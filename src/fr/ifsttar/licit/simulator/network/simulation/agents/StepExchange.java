@@ -0,0 +1,70 @@
+package fr.ifsttar.licit.simulator.network.simulation.agents;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.ifsttar.licit.simulator.agents.action.Action;
+import fr.ifsttar.licit.simulator.agents.action.InvalidAction;
+import fr.ifsttar.licit.simulator.agents.perception.Perception;
+
+/**
+ * Lockstep exchange of one simulation step: the perceptions of all agents are sent at once, using
+ * concurrentGetAction, and the actions are gathered against one deadline shared by all agents. The
+ * step thus takes as long as the slowest agent instead of the sum of the round trips.
+ *
+ */
+public class StepExchange {
+
+	/** The Constant LOG. */
+	private static final Logger LOG = LoggerFactory.getLogger(StepExchange.class);
+
+	private StepExchange() {
+	}
+
+	/**
+	 * Send perception i to agent i and return the actions in the same order. An agent that did not
+	 * answer before the deadline gets an InvalidAction, without delaying the others.
+	 * @param agents agents to ask
+	 * @param perceptions perceptions of the agents
+	 * @param deadline shared deadline in milliseconds, as given by System.currentTimeMillis()
+	 * @return action of each agent
+	 */
+	public static Action[] exchange(SimulationAgent[] agents, Perception[] perceptions, long deadline) {
+		if (agents.length!=perceptions.length) {
+			throw new IllegalArgumentException("one perception per agent expected");
+		}
+		List<Future<Action>> futures = new ArrayList<Future<Action>>(agents.length);
+		for (int i=0;i<agents.length;i++) {
+			futures.add(agents[i].concurrentGetAction(perceptions[i]));
+		}
+		Action[] actions = new Action[agents.length];
+		for (int i=0;i<agents.length;i++) {
+			actions[i] = gather(futures.get(i), deadline);
+		}
+		return actions;
+	}
+
+	private static Action gather(Future<Action> future, long deadline) {
+		Action action = null;
+		try {
+			// a late agent is still asked with a zero timeout, so it can give up its perception
+			long remaining = Math.max(0, deadline-System.currentTimeMillis());
+			action = future.get(remaining, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			LOG.error("Thread was interrupted");
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			LOG.error("agent failed to act: "+e.getCause());
+		} catch (TimeoutException e) {
+			// late action
+		}
+		return action==null ? new InvalidAction() : action;
+	}
+}
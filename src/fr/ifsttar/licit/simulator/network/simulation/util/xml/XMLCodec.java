@@ -3,16 +3,16 @@ package fr.ifsttar.licit.simulator.network.simulation.util.xml;
 import java.io.StringWriter;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
@@ -25,6 +25,9 @@ import fr.ifsttar.licit.simulator.network.connection.socket.AgentCodecProtocolEr
 /**
  * This class provides static methods to encode objects to XML and to decode XML back to objects.
  *
+ * The public fields of a class and the way each of them is converted are looked up once per class and kept in a
+ * registry, so the messages of a run do not go through getFields() and the type tests again.
+ *
  */
 public class XMLCodec {
 	/**
@@ -92,17 +95,89 @@ public class XMLCodec {
 	public final static String metainfoNamespace="http://www.tu-clausthal.de/";
 	public final static String metainfoPrefix="meta";
 	
+	// kinds of entries, resolved once per field type
+	private final static int ENTRY_SKIPPED=0;
+	private final static int ENTRY_CHAR=1;
+	private final static int ENTRY_FLOAT=2;
+	private final static int ENTRY_DOUBLE=3;
+	private final static int ENTRY_BYTE=4;
+	private final static int ENTRY_SHORT=5;
+	private final static int ENTRY_INT=6;
+	private final static int ENTRY_LONG=7;
+	private final static int ENTRY_BOOLEAN=8;
+	private final static int ENTRY_STRING=9;
+	private final static int ENTRY_ENUM=10;
+	private final static int ENTRY_ARRAY=11;
+	private final static int ENTRY_OBJECT=12;
+	
+	/**
+	 * Converted fields of a class.
+	 */
+	private final static class ClassCodec {
+		final boolean encodable;
+		final boolean decodable;
+		final Field[] fields;
+		final int[] kinds;
+		
+		ClassCodec(Class<?> cls) {
+			encodable = XMLEncodable.class.isAssignableFrom(cls);
+			decodable = XMLDecodable.class.isAssignableFrom(cls);
+			List<Field> converted = new ArrayList<Field>();
+			for (Field field : cls.getFields()) {
+				if (!field.getType().isSynthetic() && !field.isEnumConstant()) converted.add(field);
+			}
+			fields = converted.toArray(new Field[converted.size()]);
+			kinds = new int[fields.length];
+			for (int i=0;i<fields.length;i++) kinds[i] = getEntryKind(fields[i].getType());
+		}
+	}
+	
+	private final static ConcurrentMap<Class<?>,ClassCodec> codecs = new ConcurrentHashMap<Class<?>,ClassCodec>();
+	
+	private static ClassCodec getClassCodec(Class<?> cls) {
+		ClassCodec codec = codecs.get(cls);
+		if (codec==null) {
+			// two threads may build the same codec, they are equivalent
+			codec = new ClassCodec(cls);
+			ClassCodec previous = codecs.putIfAbsent(cls, codec);
+			if (previous!=null) codec = previous;
+		}
+		return codec;
+	}
+	
+	private static int getEntryKind(Class<?> type) {
+		if (type.isSynthetic()) return ENTRY_SKIPPED;
+		if (type == char.class) return ENTRY_CHAR;
+		if (type == float.class) return ENTRY_FLOAT;
+		if (type == double.class) return ENTRY_DOUBLE;
+		if (type == byte.class) return ENTRY_BYTE;
+		if (type == short.class) return ENTRY_SHORT;
+		if (type == int.class) return ENTRY_INT;
+		if (type == long.class) return ENTRY_LONG;
+		if (type == boolean.class) return ENTRY_BOOLEAN;
+		if (type == String.class) return ENTRY_STRING;
+		if (type.isEnum()) return ENTRY_ENUM;
+		if (type.isArray()) return ENTRY_ARRAY;
+		return ENTRY_OBJECT;
+	}
+	
 	public static void convertEntryToXML(Object o, Class type, Element target, String name) throws IllegalAccessException {
-		if (type.isPrimitive() || type.isEnum() || type == String.class) {
+		convertEntryToXML(o, type, getEntryKind(type), target, name);
+	}
+	
+	private static void convertEntryToXML(Object o, Class<?> type, int kind, Element target, String name) throws IllegalAccessException {
+		if (kind != ENTRY_ARRAY && kind != ENTRY_OBJECT && kind != ENTRY_SKIPPED) {
 			target.setAttribute(name,String.valueOf(o));
-		} else if (type.isArray()) {
+		} else if (kind == ENTRY_ARRAY) {
 			if (o!=null) {
 				int arraylength = Array.getLength(o);
 				Element arrayelement = target.getOwnerDocument().createElement("array");
 				arrayelement.setAttributeNS(metainfoNamespace,"name",name);
 				arrayelement.setAttributeNS(metainfoNamespace,"length",Integer.toString(arraylength));
+				Class<?> componenttype = type.getComponentType();
+				int componentkind = getEntryKind(componenttype);
 				for (int i=0;i<arraylength;i++) {
-					convertEntryToXML(Array.get(o,i), type.getComponentType(), arrayelement, "item"+Integer.toString(i));
+					convertEntryToXML(Array.get(o,i), componenttype, componentkind, arrayelement, "item"+Integer.toString(i));
 				}
 				target.appendChild(arrayelement);
 			} else
@@ -121,15 +196,14 @@ public class XMLCodec {
 	
 	public static void convertObjectToXML(Object o, Element target) throws IllegalAccessException {
 		if (o!=null) {
-			if (XMLEncodable.class.isAssignableFrom(o.getClass())) {
+			ClassCodec codec = getClassCodec(o.getClass());
+			if (codec.encodable) {
 				XMLEncodable enc = (XMLEncodable) o;
 				enc.encodeToXML(target);
 			} else {
-				Field[] fields = o.getClass().getFields();
+				Field[] fields = codec.fields;
 				for (int i=0;i<fields.length;i++) {
-					if (!fields[i].getType().isSynthetic() && !fields[i].isEnumConstant()) {
-						convertEntryToXML(fields[i].get(o), fields[i].getType(), target, fields[i].getName());
-					}
+					convertEntryToXML(fields[i].get(o), fields[i].getType(), codec.kinds[i], target, fields[i].getName());
 				}
 			}
 		}
@@ -137,8 +211,11 @@ public class XMLCodec {
 	
 	public static Object convertXMLToEntry(Element xmlsource, String name, Class fieldtype) throws IllegalAccessException, InstantiationException, AgentCodecProtocolErrorException {
 //		log(LOGLEVEL_CRITICAL,"plong: "+name);
+		return convertXMLToEntry(xmlsource, name, fieldtype, getEntryKind(fieldtype));
+	}
+	
+	private static Object convertXMLToEntry(Element xmlsource, String name, Class<?> fieldtype, int kind) throws IllegalAccessException, InstantiationException, AgentCodecProtocolErrorException {
 		Object v=null;
-		if (fieldtype.isSynthetic()) return null;
 		//works: byte, short, int, long
 		//       float, double
 		//       String,
@@ -146,34 +223,50 @@ public class XMLCodec {
 		//       enum
 		//TODO: char
 		
-		if (fieldtype == char.class) {
+		switch (kind) {
+		case ENTRY_SKIPPED:
+			return null;
+		case ENTRY_CHAR:
 			// FIXME: Character unsupported
-		} else if (fieldtype == float.class) {
+			break;
+		case ENTRY_FLOAT:
 			try {v=Float.parseFloat(xmlsource.getAttribute(name));}
 			catch (NumberFormatException e) {v=new Float("0");}
-		} else if (fieldtype == double.class) {
+			break;
+		case ENTRY_DOUBLE:
 			try {v=Double.parseDouble(xmlsource.getAttribute(name));}
 			catch (NumberFormatException e) {v=new Double("0");}
-		} else if (fieldtype == byte.class) {
+			break;
+		case ENTRY_BYTE:
 			try {v=Byte.decode(xmlsource.getAttribute(name));}
 			catch (NumberFormatException e) {v=new Byte("0");}
-		} else if (fieldtype == short.class) {
+			break;
+		case ENTRY_SHORT:
 			try {v=Short.decode(xmlsource.getAttribute(name));}
 			catch (NumberFormatException e) {v=new Short("0");}
-		} else if (fieldtype == int.class) {
+			break;
+		case ENTRY_INT:
 			try {v=Integer.decode(xmlsource.getAttribute(name));}
 			catch (NumberFormatException e) {v=new Integer("0");}
-		} else if (fieldtype == long.class) {
+			break;
+		case ENTRY_LONG:
 			try {v=Long.decode(xmlsource.getAttribute(name));}
 			catch (NumberFormatException e) {v=new Long("0");}
-		} else if (fieldtype == boolean.class) {
+			break;
+		case ENTRY_BOOLEAN:
 			v=Boolean.parseBoolean(xmlsource.getAttribute(name));
-		} else if (fieldtype == String.class) {
+			break;
+		case ENTRY_STRING:
 			v=xmlsource.getAttribute(name);
-		} else if (fieldtype.isEnum()) {
-			try {v=Enum.valueOf(fieldtype,xmlsource.getAttribute(name));}
-			catch (IllegalArgumentException e) {}
-		} else if (fieldtype.isArray()) {
+			break;
+		case ENTRY_ENUM:
+			// same lookup as Enum.valueOf, which cannot take the wildcard type; an unknown name leaves null
+			String constantname=xmlsource.getAttribute(name);
+			for (Object constant : fieldtype.getEnumConstants()) {
+				if (((Enum<?>) constant).name().equals(constantname)) {v=constant;break;}
+			}
+			break;
+		case ENTRY_ARRAY: {
 			//Maybe this array is supposed to be null. This would be indicated by an appropriate attribute, set to "null"
 			if (xmlsource.getAttribute(name).equals("null")) return null;
 
@@ -195,36 +288,48 @@ public class XMLCodec {
 			try {len=Integer.decode(e.getAttributeNS(metainfoNamespace,"length"));}//decode length
 			catch (NumberFormatException e1) {throw new AgentCodecProtocolErrorException();}
 
-			// retrieve array values
-			Vector arrayvals = new Vector();
+			// retrieve array values, the length is known so they are stored right away
+			Class<?> componenttype = fieldtype.getComponentType();
+			int componentkind = getEntryKind(componenttype);
+			// each item is written as one attribute or one child element, so a length above their number cannot
+			// be valid and is rejected before the array is allocated
+			if (len<0 || len>countEntries(e)) throw new AgentCodecProtocolErrorException();
+			v=Array.newInstance(componenttype,len);
 			for (int i=0;i<len;i++) {
 				//if some element is invalid this will throw an error
-				arrayvals.add(convertXMLToEntry(e,"item"+i,fieldtype.getComponentType()));
+				Array.set(v,i,convertXMLToEntry(e,"item"+i,componenttype,componentkind));
 			}
-			v=Array.newInstance(fieldtype.getComponentType(),arrayvals.size());
-			for (int i=0;i<arrayvals.size();i++) Array.set(v,i,arrayvals.get(i));
-			
-		} else {
+			break;
+		}
+		default:
 			if (xmlsource.getAttribute(name)=="null") return null;
 			v=convertXMLToObject(xmlsource, fieldtype);
 		}
 		return v;
 	}
 
+	// number of attributes and child elements of an element, an upper bound of the entries it holds
+	private static int countEntries(Element e) {
+		int count=e.getAttributes().getLength();
+		for (Node n=e.getFirstChild();n!=null;n=n.getNextSibling()) {
+			if (n.getNodeType()==Node.ELEMENT_NODE) count++;
+		}
+		return count;
+	}
+
 	public static Object convertXMLToObject(Element source, Class cls) throws InstantiationException, IllegalAccessException, AgentCodecProtocolErrorException {
 //		log(LOGLEVEL_CRITICAL,"plueng: "+cls.getName());
 
 		Object o = cls.newInstance();
-		if (XMLDecodable.class.isAssignableFrom(o.getClass())) {
+		ClassCodec codec = getClassCodec(cls);
+		if (codec.decodable) {
 			XMLDecodable enc = (XMLDecodable) o;
 			enc.decodeFromXML(source);
 		} else {
-			Field[] fields = cls.getFields();
+			Field[] fields = codec.fields;
 			for (int i=0;i<fields.length;i++) {
-				if (!fields[i].getType().isSynthetic() && !fields[i].isEnumConstant()) {
-					Object r=convertXMLToEntry(source, fields[i].getName(), fields[i].getType());
-					fields[i].set(o, r);
-				}
+				Object r=convertXMLToEntry(source, fields[i].getName(), fields[i].getType(), codec.kinds[i]);
+				fields[i].set(o, r);
 			}
 		}
 		return o;
@@ -243,14 +348,9 @@ public class XMLCodec {
 	            Source source = new DOMSource(node);
 	            StringWriter stringWriter = new StringWriter();
 	            Result result = new StreamResult(stringWriter);
-	            TransformerFactory factory = TransformerFactory.newInstance();
-	            Transformer transformer = factory.newTransformer();
-	            transformer.transform(source, result);
+	            XMLUtilities.getTransformer(false).transform(source, result);
 	            return stringWriter.getBuffer().toString();
 	        } 
-	        catch (TransformerConfigurationException e) {
-	            e.printStackTrace();
-	        } 
 	        catch (TransformerException e) {
 	            e.printStackTrace();
 	        }
@@ -0,0 +1,216 @@
+package fr.ifsttar.licit.simulator.network.simulation.util.xml;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.WireFormat;
+
+/**
+ * This class provides static methods to encode message documents to the binary protocol of the external control and to
+ * decode them back.
+ *
+ * A message is encoded as the protobuf message <code>Element</code> of its root element, as described in
+ * resources/schema/ExternalControlMessage.proto. The perceptions and actions are still converted by
+ * {@link XMLCodec}, but no text has to be written and parsed.
+ *
+ */
+public class XMLProtobufCodec {
+
+	/**
+	 * Value of the protocol attribute of the authentication that requests the binary protocol.
+	 */
+	public final static String PROTOCOL_NAME="protobuf";
+
+	// field numbers of ExternalControlMessage.proto
+	private final static int ELEMENT_NAME=1;
+	private final static int ELEMENT_ATTRIBUTE=2;
+	private final static int ELEMENT_CHILD=3;
+	private final static int ELEMENT_TEXT=4;
+	private final static int ELEMENT_NAMESPACE=5;
+	private final static int ATTRIBUTE_NAME=1;
+	private final static int ATTRIBUTE_VALUE=2;
+	private final static int ATTRIBUTE_NAMESPACE=3;
+
+	private final static ThreadLocal<DocumentBuilder> documentBuilder = new ThreadLocal<DocumentBuilder>() {
+		@Override
+		protected DocumentBuilder initialValue() {
+			DocumentBuilderFactory factory=DocumentBuilderFactory.newInstance();
+			factory.setNamespaceAware(true);
+			try {
+				return factory.newDocumentBuilder();
+			} catch (ParserConfigurationException e) {throw new RuntimeException(e);}
+		}
+	};
+
+	/**
+	 * Encodes a message document.
+	 * @param doc message
+	 * @return packet content
+	 */
+	public static byte[] encode(Document doc) {
+		Element root=doc.getDocumentElement();
+		byte[] packet=new byte[computeElementSize(root)];
+		CodedOutputStream out=CodedOutputStream.newInstance(packet);
+		try {
+			writeElement(root, out);
+		} catch (IOException e) {throw new RuntimeException(e);}//cannot happen, the size is exact
+		out.checkNoSpaceLeft();
+		return packet;
+	}
+
+	/**
+	 * Decodes a message document.
+	 * @param packet packet content
+	 * @return message
+	 * @throws IOException if the packet is not a valid encoded element
+	 */
+	public static Document decode(byte[] packet) throws IOException {
+		Document doc=documentBuilder.get().newDocument();
+		CodedInputStream in=CodedInputStream.newInstance(packet);
+		doc.appendChild(readElement(doc, in));
+		return doc;
+	}
+
+	private static int computeElementSize(Element e) {
+		int size=CodedOutputStream.computeStringSize(ELEMENT_NAME, e.getNodeName());
+		if (e.getNamespaceURI()!=null) size+=CodedOutputStream.computeStringSize(ELEMENT_NAMESPACE, e.getNamespaceURI());
+		NamedNodeMap attributes=e.getAttributes();
+		for (int i=0;i<attributes.getLength();i++) {
+			size+=computeNestedSize(ELEMENT_ATTRIBUTE, computeAttributeSize((Attr) attributes.item(i)));
+		}
+		String text=getText(e);
+		if (text!=null) size+=CodedOutputStream.computeStringSize(ELEMENT_TEXT, text);
+		for (Node n=e.getFirstChild();n!=null;n=n.getNextSibling()) {
+			if (n.getNodeType()==Node.ELEMENT_NODE) size+=computeNestedSize(ELEMENT_CHILD, computeElementSize((Element) n));
+		}
+		return size;
+	}
+
+	private static int computeAttributeSize(Attr a) {
+		int size=CodedOutputStream.computeStringSize(ATTRIBUTE_NAME, a.getName())
+				+CodedOutputStream.computeStringSize(ATTRIBUTE_VALUE, a.getValue());
+		if (a.getNamespaceURI()!=null) size+=CodedOutputStream.computeStringSize(ATTRIBUTE_NAMESPACE, a.getNamespaceURI());
+		return size;
+	}
+
+	private static int computeNestedSize(int field, int size) {
+		return CodedOutputStream.computeTagSize(field)+CodedOutputStream.computeRawVarint32Size(size)+size;
+	}
+
+	private static void writeElement(Element e, CodedOutputStream out) throws IOException {
+		out.writeString(ELEMENT_NAME, e.getNodeName());
+		if (e.getNamespaceURI()!=null) out.writeString(ELEMENT_NAMESPACE, e.getNamespaceURI());
+		NamedNodeMap attributes=e.getAttributes();
+		for (int i=0;i<attributes.getLength();i++) {
+			Attr a=(Attr) attributes.item(i);
+			out.writeTag(ELEMENT_ATTRIBUTE, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+			out.writeRawVarint32(computeAttributeSize(a));
+			out.writeString(ATTRIBUTE_NAME, a.getName());
+			out.writeString(ATTRIBUTE_VALUE, a.getValue());
+			if (a.getNamespaceURI()!=null) out.writeString(ATTRIBUTE_NAMESPACE, a.getNamespaceURI());
+		}
+		String text=getText(e);
+		if (text!=null) out.writeString(ELEMENT_TEXT, text);
+		for (Node n=e.getFirstChild();n!=null;n=n.getNextSibling()) {
+			if (n.getNodeType()==Node.ELEMENT_NODE) {
+				out.writeTag(ELEMENT_CHILD, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+				out.writeRawVarint32(computeElementSize((Element) n));
+				writeElement((Element) n, out);
+			}
+		}
+	}
+
+	// text content of an element, ignoring whitespace between child elements
+	private static String getText(Element e) {
+		StringBuilder text=null;
+		for (Node n=e.getFirstChild();n!=null;n=n.getNextSibling()) {
+			short type=n.getNodeType();
+			if (type==Node.TEXT_NODE || type==Node.CDATA_SECTION_NODE) {
+				if (text==null) text=new StringBuilder();
+				text.append(n.getNodeValue());
+			}
+		}
+		if (text==null || text.toString().trim().length()==0) return null;
+		return text.toString();
+	}
+
+	private static Element readElement(Document doc, CodedInputStream in) throws IOException {
+		String name=null;
+		String namespace=null;
+		String text=null;
+		// a standard encoder may write the name and namespace after the attributes and children, so they are
+		// buffered and the element is only created once its whole message is read
+		ArrayList<String> attributes=null;
+		DocumentFragment children=null;
+		while (true) {
+			int tag=in.readTag();
+			if (tag==0) break;
+			int field=WireFormat.getTagFieldNumber(tag);
+			if (field==ELEMENT_NAME) {
+				name=in.readString();
+			} else if (field==ELEMENT_NAMESPACE) {
+				namespace=in.readString();
+			} else if (field==ELEMENT_TEXT) {
+				text=in.readString();
+			} else if (field==ELEMENT_ATTRIBUTE) {
+				if (attributes==null) attributes=new ArrayList<String>();
+				int limit=in.pushLimit(in.readRawVarint32());
+				readAttribute(attributes, in);
+				in.popLimit(limit);
+			} else if (field==ELEMENT_CHILD) {
+				if (children==null) children=doc.createDocumentFragment();
+				int limit=in.pushLimit(in.readRawVarint32());
+				children.appendChild(readElement(doc, in));
+				in.popLimit(limit);
+			} else if (!in.skipField(tag)) {
+				break;
+			}
+		}
+		if (name==null) throw new InvalidProtocolBufferException("element without name");
+		Element e=namespace==null ? doc.createElement(name) : doc.createElementNS(namespace, name);
+		if (attributes!=null) {
+			// attributes are buffered as (name, value, namespace) triples
+			for (int i=0;i<attributes.size();i+=3) {
+				String attributeNamespace=attributes.get(i+2);
+				if (attributeNamespace==null) e.setAttribute(attributes.get(i), attributes.get(i+1));
+				else e.setAttributeNS(attributeNamespace, attributes.get(i), attributes.get(i+1));
+			}
+		}
+		if (children!=null) e.appendChild(children);
+		if (text!=null) e.appendChild(doc.createTextNode(text));
+		return e;
+	}
+
+	private static void readAttribute(ArrayList<String> attributes, CodedInputStream in) throws IOException {
+		String name=null;
+		String value="";
+		String namespace=null;
+		while (true) {
+			int tag=in.readTag();
+			if (tag==0) break;
+			int field=WireFormat.getTagFieldNumber(tag);
+			if (field==ATTRIBUTE_NAME) name=in.readString(); else
+			if (field==ATTRIBUTE_VALUE) value=in.readString(); else
+			if (field==ATTRIBUTE_NAMESPACE) namespace=in.readString(); else
+			if (!in.skipField(tag)) break;
+		}
+		if (name==null) throw new InvalidProtocolBufferException("attribute without name");
+		attributes.add(name);
+		attributes.add(value);
+		attributes.add(namespace);
+	}
+}
@@ -0,0 +1,186 @@
+package fr.ifsttar.licit.simulator.network.simulation.util.xml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * This class writes message documents with a StAX stream writer, without going through a Transformer.
+ *
+ * The output is the one of the indenting transformer of {@link XMLUtilities}: each element starts on a new line,
+ * without indentation. Only the documents built by the simulator are supported, that is elements without namespace
+ * which contain either elements or text, and attributes without prefix and control characters. The other documents
+ * must still be written by the transformer, see {@link #canWrite(Document)}.
+ *
+ * When the class is loaded, a probe message is written both ways. If the outputs differ, for instance because
+ * another transformer is found on the classpath, no document is supported, so the bytes sent to the agents never
+ * depend on the writer.
+ *
+ */
+public class XMLStreamEncoder {
+
+	private final static Charset UTF8=Charset.forName("UTF-8");
+	private final static byte[] DECLARATION="<?xml version=\"1.0\" encoding=\"UTF-8\"?>".getBytes(UTF8);
+	private final static String LINE_SEPARATOR=System.getProperty("line.separator");
+
+	// the factory is not guaranteed to be thread-safe
+	private final static ThreadLocal<XMLOutputFactory> outputFactory = new ThreadLocal<XMLOutputFactory>() {
+		@Override
+		protected XMLOutputFactory initialValue() {
+			return XMLOutputFactory.newInstance();
+		}
+	};
+
+	private final static boolean enabled=checkProbe();
+
+	private XMLStreamEncoder() {
+	}
+
+	/**
+	 * Tells if a document can be written by this encoder.
+	 * @param doc message
+	 * @return true if {@link #write(Document, OutputStream)} gives the output of the transformer
+	 */
+	public static boolean canWrite(Document doc) {
+		return enabled && isSupported(doc);
+	}
+
+	/**
+	 * Writes a document, which must be supported.
+	 * @param doc message
+	 * @param out stream to write the UTF-8 encoded message to, left open
+	 * @throws XMLStreamException
+	 * @throws IOException
+	 */
+	public static void write(Document doc, OutputStream out) throws XMLStreamException, IOException {
+		out.write(DECLARATION);
+		XMLStreamWriter writer=outputFactory.get().createXMLStreamWriter(out, "UTF-8");
+		writeElement(writer, doc.getDocumentElement(), false);
+		writer.writeCharacters(LINE_SEPARATOR);
+		writer.flush();
+		writer.close();
+	}
+
+	private static void writeElement(XMLStreamWriter writer, Element e, boolean newline) throws XMLStreamException {
+		if (newline) writer.writeCharacters(LINE_SEPARATOR);
+		Node child=e.getFirstChild();
+		if (child==null) writer.writeEmptyElement(e.getNodeName()); else writer.writeStartElement(e.getNodeName());
+		NamedNodeMap attributes=e.getAttributes();
+		for (int i=0;i<attributes.getLength();i++) {
+			Attr a=(Attr) attributes.item(i);
+			writer.writeAttribute(a.getName(), a.getValue());
+		}
+		if (child==null) return;
+		if (child.getNodeType()==Node.ELEMENT_NODE) {
+			for (Node n=child;n!=null;n=n.getNextSibling()) writeElement(writer, (Element) n, true);
+			writer.writeCharacters(LINE_SEPARATOR);
+		} else {
+			for (Node n=child;n!=null;n=n.getNextSibling()) writer.writeCharacters(n.getNodeValue());
+		}
+		writer.writeEndElement();
+	}
+
+	private static boolean isSupported(Document doc) {
+		Element root=doc.getDocumentElement();
+		return root!=null && doc.getFirstChild()==root && root.getNextSibling()==null && isSupported(root);
+	}
+
+	private static boolean isSupported(Element e) {
+		if (e.getNamespaceURI()!=null || e.getNodeName().indexOf(':')>=0) return false;
+		NamedNodeMap attributes=e.getAttributes();
+		boolean namespaced=false;
+		for (int i=0;i<attributes.getLength();i++) {
+			Attr a=(Attr) attributes.item(i);
+			String name=a.getName();
+			if (name.indexOf(':')>=0 || name.equals("xmlns") || !isPlain(a.getValue())) return false;
+			if (a.getNamespaceURI()!=null) namespaced=true;
+		}
+		if (namespaced) {
+			// the transformer writes the local name of the namespaced attributes, which may then be repeated
+			Set<String> names=new HashSet<String>();
+			for (int i=0;i<attributes.getLength();i++) {
+				if (!names.add(attributes.item(i).getNodeName())) return false;
+			}
+		}
+		Node child=e.getFirstChild();
+		if (child==null) return true;
+		short type=child.getNodeType();
+		int textlength=0;
+		for (Node n=child;n!=null;n=n.getNextSibling()) {
+			// mixed content is indented differently by the transformer
+			if (n.getNodeType()!=type) return false;
+			if (type==Node.ELEMENT_NODE) {
+				if (!isSupported((Element) n)) return false;
+			} else if (type==Node.TEXT_NODE) {
+				String text=n.getNodeValue();
+				if (!isPlain(text)) return false;
+				textlength+=text.length();
+			} else {
+				return false;
+			}
+		}
+		return type==Node.ELEMENT_NODE || textlength>0;
+	}
+
+	// characters that both writers output as they are, or as the same entity
+	private static boolean isPlain(String s) {
+		for (int i=0;i<s.length();i++) {
+			char c=s.charAt(i);
+			if (c<0x20 || (c>=0x7F && c<0xA0) || c==0x2028 || c>=0xD800) return false;
+		}
+		return true;
+	}
+
+	private static boolean checkProbe() {
+		try {
+			Document doc=XMLUtilities.newDocument();
+			Element root=doc.createElement("message");
+			doc.appendChild(root);
+			root.setAttribute("type","probe");
+			root.setAttribute("text","<&>\"'\u00e9");
+			Element array=doc.createElement("array");
+			array.setAttributeNS(XMLCodec.metainfoNamespace,"name","values");
+			array.setAttributeNS(XMLCodec.metainfoNamespace,"length","1");
+			array.setAttribute("item0","1.0");
+			root.appendChild(array);
+			Element object=doc.createElement("object");
+			object.appendChild(doc.createElement("empty"));
+			Element text=doc.createElement("text");
+			text.appendChild(doc.createTextNode(" <&>\"'\u00e9 "));
+			object.appendChild(text);
+			root.appendChild(object);
+			if (!isSupported(doc)) return false;
+
+			ByteArrayOutputStream expected=new ByteArrayOutputStream();
+			XMLUtilities.getTransformer(true).transform(new DOMSource(doc), new StreamResult(expected));
+			ByteArrayOutputStream written=new ByteArrayOutputStream();
+			write(doc, written);
+			return Arrays.equals(expected.toByteArray(), written.toByteArray());
+		} catch (TransformerException e) {
+			return false;
+		} catch (XMLStreamException e) {
+			return false;
+		} catch (IOException e) {
+			return false;
+		} catch (RuntimeException e) {
+			return false;
+		}
+	}
+}
@@ -2,11 +2,75 @@ package fr.ifsttar.licit.simulator.network.simulation.util.xml;
 
 import java.util.Vector;
 
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 public class XMLUtilities {
+	
+	// builders and transformers are not thread-safe, but may be reused: each thread keeps its own
+	private final static ThreadLocal<DocumentBuilder> documentBuilder = new ThreadLocal<DocumentBuilder>() {
+		@Override
+		protected DocumentBuilder initialValue() {
+			try {
+				return DocumentBuilderFactory.newInstance().newDocumentBuilder();
+			} catch (ParserConfigurationException e) {throw new RuntimeException(e);}
+		}
+	};
+	
+	private final static ThreadLocal<Transformer> transformer = new ThreadLocal<Transformer>() {
+		@Override
+		protected Transformer initialValue() {
+			try {
+				return TransformerFactory.newInstance().newTransformer();
+			} catch (TransformerConfigurationException e) {throw new RuntimeException(e);}
+		}
+	};
+	
+	private final static ThreadLocal<Transformer> indentingTransformer = new ThreadLocal<Transformer>() {
+		@Override
+		protected Transformer initialValue() {
+			try {
+				Transformer t = TransformerFactory.newInstance().newTransformer();
+				t.setOutputProperty("indent","yes");
+				return t;
+			} catch (TransformerConfigurationException e) {throw new RuntimeException(e);}
+		}
+	};
+	
+	/**
+	 * Returns the document builder of the calling thread.
+	 * @return document builder, not namespace aware
+	 */
+	public static DocumentBuilder getDocumentBuilder() {
+		return documentBuilder.get();
+	}
+	
+	/**
+	 * Creates an empty document with the document builder of the calling thread.
+	 * @return new document
+	 */
+	public static Document newDocument() {
+		return documentBuilder.get().newDocument();
+	}
+	
+	/**
+	 * Returns the identity transformer of the calling thread.
+	 * @param indent true for the indented output of the messages
+	 * @return transformer
+	 */
+	public static Transformer getTransformer(boolean indent) {
+		return indent ? indentingTransformer.get() : transformer.get();
+	}
+	
 	public static NodeList getChildsByTagName(Element root, String name) {
 		final Vector<Node> v = new Vector<Node>();
 		NodeList nl = root.getChildNodes();
@@ -13,6 +13,7 @@ import java.util.ArrayList;
 import java.util.List;
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.XmlType;
@@ -30,6 +31,8 @@ import javax.xml.bind.annotation.XmlType;
  *       &lt;sequence>
  *         &lt;element ref="{}BatchData" maxOccurs="unbounded"/>
  *       &lt;/sequence>
+ *       &lt;attribute name="threads" type="{http://www.w3.org/2001/XMLSchema}int" default="0" />
+ *       &lt;attribute name="chunk_size" type="{http://www.w3.org/2001/XMLSchema}int" default="10000" />
  *     &lt;/restriction>
  *   &lt;/complexContent>
  * &lt;/complexType>
@@ -49,6 +52,10 @@ public class BatchJobs
     private final static long serialVersionUID = 1L;
     @XmlElement(name = "BatchData", required = true)
     protected List<BatchData> batchData;
+    @XmlAttribute(name = "threads")
+    protected Integer threads;
+    @XmlAttribute(name = "chunk_size")
+    protected Integer chunkSize;
 
     /**
      * Gets the value of the batchData property.
@@ -87,4 +94,76 @@ public class BatchJobs
         this.batchData = null;
     }
 
+    /**
+     * Obtient la valeur de la propriété threads.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Integer }
+     *     
+     */
+    public int getThreads() {
+        if (threads == null) {
+            return 0;
+        } else {
+            return threads;
+        }
+    }
+
+    /**
+     * Définit la valeur de la propriété threads.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Integer }
+     *     
+     */
+    public void setThreads(int value) {
+        this.threads = value;
+    }
+
+    public boolean isSetThreads() {
+        return (this.threads!= null);
+    }
+
+    public void unsetThreads() {
+        this.threads = null;
+    }
+
+    /**
+     * Obtient la valeur de la propriété chunkSize.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Integer }
+     *     
+     */
+    public int getChunkSize() {
+        if (chunkSize == null) {
+            return 10000;
+        } else {
+            return chunkSize;
+        }
+    }
+
+    /**
+     * Définit la valeur de la propriété chunkSize.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Integer }
+     *     
+     */
+    public void setChunkSize(int value) {
+        this.chunkSize = value;
+    }
+
+    public boolean isSetChunkSize() {
+        return (this.chunkSize!= null);
+    }
+
+    public void unsetChunkSize() {
+        this.chunkSize = null;
+    }
+
 }
@@ -33,6 +33,7 @@ import javax.xml.bind.annotation.XmlType;
  *           &lt;element ref="{}EngineConstantMap"/>
  *         &lt;/choice>
  *         &lt;element ref="{}RotationModel"/>
+ *         &lt;element ref="{}FuelFlowTable" minOccurs="0"/>
  *       &lt;/sequence>
  *       &lt;attribute name="label" use="required" type="{http://www.w3.org/2001/XMLSchema}string" />
  *       &lt;attribute name="output" type="{http://www.w3.org/2001/XMLSchema}boolean" default="false" />
@@ -48,7 +49,8 @@ import javax.xml.bind.annotation.XmlType;
     "vehicleData",
     "engineCombustionMap",
     "engineConstantMap",
-    "rotationModel"
+    "rotationModel",
+    "fuelFlowTable"
 })
 @XmlRootElement(name = "ConsumptionModel")
 public class ConsumptionModel
@@ -64,6 +66,8 @@ public class ConsumptionModel
     protected EngineConstantMap engineConstantMap;
     @XmlElement(name = "RotationModel", required = true)
     protected RotationModel rotationModel;
+    @XmlElement(name = "FuelFlowTable")
+    protected FuelFlowTable fuelFlowTable;
     @XmlAttribute(name = "label", required = true)
     protected String label;
     @XmlAttribute(name = "output")
@@ -181,6 +185,34 @@ public class ConsumptionModel
         return (this.rotationModel!= null);
     }
 
+    /**
+     * Obtient la valeur de la propriété fuelFlowTable.
+     * 
+     * @return
+     *     possible object is
+     *     {@link FuelFlowTable }
+     *     
+     */
+    public FuelFlowTable getFuelFlowTable() {
+        return fuelFlowTable;
+    }
+
+    /**
+     * Définit la valeur de la propriété fuelFlowTable.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link FuelFlowTable }
+     *     
+     */
+    public void setFuelFlowTable(FuelFlowTable value) {
+        this.fuelFlowTable = value;
+    }
+
+    public boolean isSetFuelFlowTable() {
+        return (this.fuelFlowTable!= null);
+    }
+
     /**
      * Obtient la valeur de la propriété label.
      * 
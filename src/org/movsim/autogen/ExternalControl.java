@@ -23,6 +23,10 @@ public class ExternalControl implements Serializable
 	 protected int agentPort = 12300;
 	 @XmlAttribute(name = "backlog_port")
 	 protected int backLogPort = 10;
+	 @XmlAttribute(name = "io_mode")
+	 protected String ioMode = "selector";
+	 @XmlAttribute(name = "selector_threads")
+	 protected int selectorThreads = 1;
 	 
 	 
 	 /**
@@ -64,5 +68,45 @@ public class ExternalControl implements Serializable
     public boolean isSetBackLogPort() {
         return true;
     }
+    
+    /**
+     * Obtient la valeur de la propriété ioMode.
+     * 
+     */
+    public String getIoMode() {
+        return ioMode;
+    }
+
+    /**
+     * Définit la valeur de la propriété ioMode.
+     * 
+     */
+    public void setIoMode(String value) {
+        this.ioMode = value;
+    }
+
+    public boolean isSetIoMode() {
+        return true;
+    }
+    
+    /**
+     * Obtient la valeur de la propriété selectorThreads.
+     * 
+     */
+    public int getSelectorThreads() {
+        return selectorThreads;
+    }
+
+    /**
+     * Définit la valeur de la propriété selectorThreads.
+     * 
+     */
+    public void setSelectorThreads(int value) {
+        this.selectorThreads = value;
+    }
+
+    public boolean isSetSelectorThreads() {
+        return true;
+    }
 	
 }
@@ -0,0 +1,395 @@
+//
+// Ce fichier a été généré par l'implémentation de référence JavaTM Architecture for XML Binding (JAXB), v2.2.5-2 
+// Voir <a href="http://java.sun.com/xml/jaxb">http://java.sun.com/xml/jaxb</a> 
+// Toute modification apportée à ce fichier sera perdue lors de la recompilation du schéma source. 
+// Généré le : 2013.12.13 à 09:11:31 AM CET 
+//
+
+
+package org.movsim.autogen;
+
+import java.io.Serializable;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+
+
+/**
+ * <p>Classe Java pour anonymous complex type.
+ * 
+ * <p>Le fragment de schéma suivant indique le contenu attendu figurant dans cette classe.
+ * 
+ * <pre>
+ * &lt;complexType>
+ *   &lt;complexContent>
+ *     &lt;restriction base="{http://www.w3.org/2001/XMLSchema}anyType">
+ *       &lt;attribute name="max_speed" type="{}positiveDouble" default="60" />
+ *       &lt;attribute name="speed_step" type="{}positiveDouble" default="0.5" />
+ *       &lt;attribute name="min_acceleration" type="{http://www.w3.org/2001/XMLSchema}double" default="-10" />
+ *       &lt;attribute name="max_acceleration" type="{http://www.w3.org/2001/XMLSchema}double" default="5" />
+ *       &lt;attribute name="acceleration_step" type="{}positiveDouble" default="0.1" />
+ *       &lt;attribute name="min_grade" type="{http://www.w3.org/2001/XMLSchema}double" default="0" />
+ *       &lt;attribute name="max_grade" type="{http://www.w3.org/2001/XMLSchema}double" default="0" />
+ *       &lt;attribute name="grade_step" type="{}positiveDouble" default="0.01" />
+ *       &lt;attribute name="max_relative_error" type="{}nonNegativeDouble" default="0.01" />
+ *     &lt;/restriction>
+ *   &lt;/complexContent>
+ * &lt;/complexType>
+ * </pre>
+ * 
+ * 
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlType(name = "")
+@XmlRootElement(name = "FuelFlowTable")
+public class FuelFlowTable
+    implements Serializable
+{
+
+    private final static long serialVersionUID = 1L;
+    @XmlAttribute(name = "max_speed")
+    protected Double maxSpeed;
+    @XmlAttribute(name = "speed_step")
+    protected Double speedStep;
+    @XmlAttribute(name = "min_acceleration")
+    protected Double minAcceleration;
+    @XmlAttribute(name = "max_acceleration")
+    protected Double maxAcceleration;
+    @XmlAttribute(name = "acceleration_step")
+    protected Double accelerationStep;
+    @XmlAttribute(name = "min_grade")
+    protected Double minGrade;
+    @XmlAttribute(name = "max_grade")
+    protected Double maxGrade;
+    @XmlAttribute(name = "grade_step")
+    protected Double gradeStep;
+    @XmlAttribute(name = "max_relative_error")
+    protected Double maxRelativeError;
+
+    /**
+     * Obtient la valeur de la propriété maxSpeed.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Double }
+     *     
+     */
+    public double getMaxSpeed() {
+        if (maxSpeed == null) {
+            return  60.0D;
+        } else {
+            return maxSpeed;
+        }
+    }
+
+    /**
+     * Définit la valeur de la propriété maxSpeed.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Double }
+     *     
+     */
+    public void setMaxSpeed(double value) {
+        this.maxSpeed = value;
+    }
+
+    public boolean isSetMaxSpeed() {
+        return (this.maxSpeed!= null);
+    }
+
+    public void unsetMaxSpeed() {
+        this.maxSpeed = null;
+    }
+
+    /**
+     * Obtient la valeur de la propriété speedStep.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Double }
+     *     
+     */
+    public double getSpeedStep() {
+        if (speedStep == null) {
+            return  0.5D;
+        } else {
+            return speedStep;
+        }
+    }
+
+    /**
+     * Définit la valeur de la propriété speedStep.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Double }
+     *     
+     */
+    public void setSpeedStep(double value) {
+        this.speedStep = value;
+    }
+
+    public boolean isSetSpeedStep() {
+        return (this.speedStep!= null);
+    }
+
+    public void unsetSpeedStep() {
+        this.speedStep = null;
+    }
+
+    /**
+     * Obtient la valeur de la propriété minAcceleration.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Double }
+     *     
+     */
+    public double getMinAcceleration() {
+        if (minAcceleration == null) {
+            return  -10.0D;
+        } else {
+            return minAcceleration;
+        }
+    }
+
+    /**
+     * Définit la valeur de la propriété minAcceleration.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Double }
+     *     
+     */
+    public void setMinAcceleration(double value) {
+        this.minAcceleration = value;
+    }
+
+    public boolean isSetMinAcceleration() {
+        return (this.minAcceleration!= null);
+    }
+
+    public void unsetMinAcceleration() {
+        this.minAcceleration = null;
+    }
+
+    /**
+     * Obtient la valeur de la propriété maxAcceleration.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Double }
+     *     
+     */
+    public double getMaxAcceleration() {
+        if (maxAcceleration == null) {
+            return  5.0D;
+        } else {
+            return maxAcceleration;
+        }
+    }
+
+    /**
+     * Définit la valeur de la propriété maxAcceleration.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Double }
+     *     
+     */
+    public void setMaxAcceleration(double value) {
+        this.maxAcceleration = value;
+    }
+
+    public boolean isSetMaxAcceleration() {
+        return (this.maxAcceleration!= null);
+    }
+
+    public void unsetMaxAcceleration() {
+        this.maxAcceleration = null;
+    }
+
+    /**
+     * Obtient la valeur de la propriété accelerationStep.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Double }
+     *     
+     */
+    public double getAccelerationStep() {
+        if (accelerationStep == null) {
+            return  0.1D;
+        } else {
+            return accelerationStep;
+        }
+    }
+
+    /**
+     * Définit la valeur de la propriété accelerationStep.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Double }
+     *     
+     */
+    public void setAccelerationStep(double value) {
+        this.accelerationStep = value;
+    }
+
+    public boolean isSetAccelerationStep() {
+        return (this.accelerationStep!= null);
+    }
+
+    public void unsetAccelerationStep() {
+        this.accelerationStep = null;
+    }
+
+    /**
+     * Obtient la valeur de la propriété minGrade.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Double }
+     *     
+     */
+    public double getMinGrade() {
+        if (minGrade == null) {
+            return  0.0D;
+        } else {
+            return minGrade;
+        }
+    }
+
+    /**
+     * Définit la valeur de la propriété minGrade.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Double }
+     *     
+     */
+    public void setMinGrade(double value) {
+        this.minGrade = value;
+    }
+
+    public boolean isSetMinGrade() {
+        return (this.minGrade!= null);
+    }
+
+    public void unsetMinGrade() {
+        this.minGrade = null;
+    }
+
+    /**
+     * Obtient la valeur de la propriété maxGrade.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Double }
+     *     
+     */
+    public double getMaxGrade() {
+        if (maxGrade == null) {
+            return  0.0D;
+        } else {
+            return maxGrade;
+        }
+    }
+
+    /**
+     * Définit la valeur de la propriété maxGrade.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Double }
+     *     
+     */
+    public void setMaxGrade(double value) {
+        this.maxGrade = value;
+    }
+
+    public boolean isSetMaxGrade() {
+        return (this.maxGrade!= null);
+    }
+
+    public void unsetMaxGrade() {
+        this.maxGrade = null;
+    }
+
+    /**
+     * Obtient la valeur de la propriété gradeStep.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Double }
+     *     
+     */
+    public double getGradeStep() {
+        if (gradeStep == null) {
+            return  0.01D;
+        } else {
+            return gradeStep;
+        }
+    }
+
+    /**
+     * Définit la valeur de la propriété gradeStep.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Double }
+     *     
+     */
+    public void setGradeStep(double value) {
+        this.gradeStep = value;
+    }
+
+    public boolean isSetGradeStep() {
+        return (this.gradeStep!= null);
+    }
+
+    public void unsetGradeStep() {
+        this.gradeStep = null;
+    }
+
+    /**
+     * Obtient la valeur de la propriété maxRelativeError.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Double }
+     *     
+     */
+    public double getMaxRelativeError() {
+        if (maxRelativeError == null) {
+            return  0.01D;
+        } else {
+            return maxRelativeError;
+        }
+    }
+
+    /**
+     * Définit la valeur de la propriété maxRelativeError.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Double }
+     *     
+     */
+    public void setMaxRelativeError(double value) {
+        this.maxRelativeError = value;
+    }
+
+    public boolean isSetMaxRelativeError() {
+        return (this.maxRelativeError!= null);
+    }
+
+    public void unsetMaxRelativeError() {
+        this.maxRelativeError = null;
+    }
+
+}
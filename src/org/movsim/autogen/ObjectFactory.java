@@ -140,6 +140,14 @@ public class ObjectFactory {
         return new GearRatio();
     }
 
+    /**
+     * Create an instance of {@link FuelFlowTable }
+     * 
+     */
+    public FuelFlowTable createFuelFlowTable() {
+        return new FuelFlowTable();
+    }
+
     /**
      * Create an instance of {@link VehiclePrototypes }
      * 
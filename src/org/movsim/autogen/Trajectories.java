@@ -31,6 +31,8 @@ import javax.xml.bind.annotation.XmlType;
  *       &lt;attribute name="route" use="required" type="{http://www.w3.org/2001/XMLSchema}string" />
  *       &lt;attribute name="random_fraction" type="{}probability" />
  *       &lt;attribute name="offset_position" type="{}nonNegativeDouble" default="0" />
+ *       &lt;attribute name="format" type="{}TrajectoryFormatEnum" default="csv" />
+ *       &lt;attribute name="time_window" type="{}nonNegativeDouble" default="1800" />
  *     &lt;/restriction>
  *   &lt;/complexContent>
  * &lt;/complexType>
@@ -58,6 +60,10 @@ public class Trajectories
     protected Double randomFraction;
     @XmlAttribute(name = "offset_position")
     protected Double offsetPosition;
+    @XmlAttribute(name = "format")
+    protected String format;
+    @XmlAttribute(name = "time_window")
+    protected Double timeWindow;
 
     /**
      * Obtient la valeur de la propriété dt.
@@ -256,4 +262,76 @@ public class Trajectories
         this.offsetPosition = null;
     }
 
+    /**
+     * Obtient la valeur de la propriété format.
+     * 
+     * @return
+     *     possible object is
+     *     {@link String }
+     *     
+     */
+    public String getFormat() {
+        if (format == null) {
+            return "csv";
+        } else {
+            return format;
+        }
+    }
+
+    /**
+     * Définit la valeur de la propriété format.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link String }
+     *     
+     */
+    public void setFormat(String value) {
+        this.format = value;
+    }
+
+    public boolean isSetFormat() {
+        return (this.format!= null);
+    }
+
+    public void unsetFormat() {
+        this.format = null;
+    }
+
+    /**
+     * Obtient la valeur de la propriété timeWindow.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Double }
+     *     
+     */
+    public double getTimeWindow() {
+        if (timeWindow == null) {
+            return  1800.0D;
+        } else {
+            return timeWindow;
+        }
+    }
+
+    /**
+     * Définit la valeur de la propriété timeWindow.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Double }
+     *     
+     */
+    public void setTimeWindow(double value) {
+        this.timeWindow = value;
+    }
+
+    public boolean isSetTimeWindow() {
+        return (this.timeWindow!= null);
+    }
+
+    public void unsetTimeWindow() {
+        this.timeWindow = null;
+    }
+
 }
@@ -25,12 +25,20 @@
  */
 package org.movsim.consumption;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.movsim.autogen.BatchData;
+import org.movsim.autogen.BatchJobs;
 import org.movsim.autogen.Consumption;
 import org.movsim.autogen.ConsumptionModel;
 import org.movsim.autogen.Movsim;
@@ -39,7 +47,7 @@ import org.movsim.consumption.model.EnergyFlowModel;
 import org.movsim.consumption.model.EnergyFlowModels;
 import org.movsim.consumption.offline.ConsumptionCalculation;
 import org.movsim.consumption.offline.ConsumptionDataRecord;
-import org.movsim.consumption.offline.InputReader;
+import org.movsim.consumption.offline.InputRecordStream;
 import org.movsim.consumption.offline.OutputWriter;
 import org.movsim.input.MovsimCommandLine;
 import org.movsim.input.ProjectMetaData;
@@ -72,23 +80,83 @@ public class ConsumptionMain {
 
         createConsumptionModels(inputData.getConsumption());
 
-        System.out.println("size of batches = " + inputData.getConsumption().getBatchJobs().getBatchData().size());
-        for (BatchData batch : inputData.getConsumption().getBatchJobs().getBatchData()) {
-            InputReader reader = InputReader.create(batch);
-            List<ConsumptionDataRecord> records = reader.getRecords();
-
-            EnergyFlowModel model = consumptionModelPool.get(batch.getModel());
-            Preconditions.checkNotNull(model, "model not available with name=" + batch.getModel());
-            ConsumptionCalculation calculation = new ConsumptionCalculation(model);
-
-            calculation.process(records);
+        final BatchJobs batchJobs = inputData.getConsumption().getBatchJobs();
+        System.out.println("size of batches = " + batchJobs.getBatchData().size());
+        for (BatchData batch : batchJobs.getBatchData()) {
+            Preconditions.checkNotNull(consumptionModelPool.get(batch.getModel()), "model not available with name="
+                    + batch.getModel());
+        }
+        final int chunkSize = batchJobs.getChunkSize();
+        Preconditions.checkArgument(chunkSize > 0, "chunk_size must be positive");
+        final String outputPath = ProjectMetaData.getInstance().getOutputPath();
+
+        // the batches are independent, each one is processed by a thread of the pool
+        final int threads = batchJobs.getThreads() > 0 ? batchJobs.getThreads() : Runtime.getRuntime()
+                .availableProcessors();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1,
+                Math.min(threads, batchJobs.getBatchData().size())));
+        final List<Future<Void>> results = new ArrayList<Future<Void>>();
+        for (final BatchData batch : batchJobs.getBatchData()) {
+            final EnergyFlowModel model = consumptionModelPool.get(batch.getModel());
+            results.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    processBatch(batch, model, outputPath, chunkSize);
+                    return null;
+                }
+            }));
+        }
+        executor.shutdown();
+
+        int failed = 0;
+        for (int i = 0; i < results.size(); i++) {
+            try {
+                results.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                executor.shutdownNow();
+                failed += results.size() - i;
+                break;
+            } catch (ExecutionException e) {
+                System.err.println("batch with inputfile=" + batchJobs.getBatchData().get(i).getInputfile()
+                        + " failed: " + e.getCause());
+                e.getCause().printStackTrace();
+                failed++;
+            }
+        }
 
-            OutputWriter writer = OutputWriter.create(batch, ProjectMetaData.getInstance().getOutputPath());
-            writer.write(records);
+        System.out.println((results.size() - failed) + " batches done.");
+        if (failed > 0) {
+            System.err.println(failed + " batches failed.");
+            System.exit(1);
         }
 
-        System.out.println(inputData.getConsumption().getBatchJobs().getBatchData().size() + " batches done.");
+    }
 
+    /**
+     * Reads, calculates and writes the records of a batch in chunks, so that the input may be larger than the memory.
+     * The model, built once per label, is immutable and shared between the threads.
+     */
+    private static void processBatch(BatchData batch, EnergyFlowModel model, String outputPath, int chunkSize)
+            throws IOException {
+        final ConsumptionCalculation calculation = new ConsumptionCalculation(model);
+
+        final InputRecordStream input = InputRecordStream.create(batch);
+        try {
+            final OutputWriter writer = OutputWriter.create(batch, outputPath);
+            try {
+                List<ConsumptionDataRecord> records;
+                do {
+                    records = input.next(chunkSize);
+                    calculation.process(records);
+                    writer.append(records);
+                } while (records.size() == chunkSize);
+            } finally {
+                writer.close();
+            }
+        } finally {
+            input.close();
+        }
     }
 
     private static void createConsumptionModels(Consumption movsimInput) {
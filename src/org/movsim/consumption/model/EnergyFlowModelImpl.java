@@ -53,7 +53,7 @@ class EnergyFlowModelImpl implements EnergyFlowModel {
 
     private final VehicleAttributes vehicle;
 
-    EnergyFlowModelImpl(String keyLabel, ConsumptionModel modelInput) {
+    EnergyFlowModelImpl(String keyLabel, ConsumptionModel modelInput, boolean withOutput) {
         Preconditions.checkNotNull(modelInput);
         vehicle = new VehicleAttributes(modelInput.getVehicleData());
         carPowerModel = new InstantaneousPowerModelImpl(vehicle);
@@ -61,7 +61,7 @@ class EnergyFlowModelImpl implements EnergyFlowModel {
         engineModel = new EngineEfficiencyModelAnalyticImpl(modelInput.getEngineCombustionMap(), engineRotationModel);
 
         // TODO boolean type
-        if (modelInput.isOutput()) {
+        if (withOutput) {
             writeOutput(keyLabel);
         }
     }
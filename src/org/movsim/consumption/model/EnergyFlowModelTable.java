@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2010, 2011, 2012 by Arne Kesting, Martin Treiber, Ralph Germ, Martin Budden
+ * <movsim.org@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSim - the multi-model open-source vehicular-traffic simulator.
+ * 
+ * MovSim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.consumption.model;
+
+import org.movsim.autogen.FuelFlowTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Optimal-gear fuel flow precomputed on a grid of speed, acceleration and grade, and interpolated linearly between the
+ * grid points.
+ * <p>
+ * The table is built once per model. A cell whose corners include an operation point that cannot be reached, or whose
+ * interpolation deviates from the exact fuel flow by more than the relative error of the configuration at the points
+ * of a regular grid within the cell, is marked: the fuel flow of such a cell, as the fuel flow outside the table, is
+ * evaluated exactly by the underlying model. All other methods are delegated to the underlying model.
+ * </p>
+ */
+class EnergyFlowModelTable implements EnergyFlowModel {
+
+    /** The Constant logger. */
+    private static final Logger logger = LoggerFactory.getLogger(EnergyFlowModelTable.class);
+
+    /** number of intervals per cell edge of the points where the interpolation is checked, halved for the grade */
+    private static final int CHECK_INTERVALS = 4;
+
+    private final EnergyFlowModelImpl model;
+
+    private final double speedStep;
+    private final int speedCount;
+
+    private final double minAcceleration;
+    private final double accelerationStep;
+    private final int accelerationCount;
+
+    private final double minGrade;
+    private final double gradeStep;
+    private final int gradeCount;
+
+    /** fuel flow in liter per s, indexed by (gradeIndex * accelerationCount + accelerationIndex) * speedCount + speedIndex */
+    private final double[] fuelFlows;
+
+    /** cells evaluated exactly, indexed as the fuel flows by their lower corner */
+    private final boolean[] exactCells;
+
+    private final double fuelFlowError;
+
+    EnergyFlowModelTable(String keyLabel, EnergyFlowModelImpl model, FuelFlowTable table) {
+        Preconditions.checkNotNull(model);
+        // the interpolation needs at least two speeds
+        Preconditions.checkArgument(table.getMaxSpeed() > 0, "FuelFlowTable: max_speed must be positive");
+        Preconditions.checkArgument(table.getMaxAcceleration() > table.getMinAcceleration(),
+                "FuelFlowTable: max_acceleration must be larger than min_acceleration");
+        Preconditions.checkArgument(table.getMaxGrade() >= table.getMinGrade(),
+                "FuelFlowTable: max_grade must not be smaller than min_grade");
+        this.model = model;
+        this.fuelFlowError = 1000 * model.fuelflowError();
+
+        speedStep = table.getSpeedStep();
+        speedCount = pointCount(table.getMaxSpeed(), speedStep);
+        minAcceleration = table.getMinAcceleration();
+        accelerationStep = table.getAccelerationStep();
+        accelerationCount = pointCount(table.getMaxAcceleration() - minAcceleration, accelerationStep);
+        minGrade = table.getMinGrade();
+        gradeStep = table.getGradeStep();
+        gradeCount = pointCount(table.getMaxGrade() - minGrade, gradeStep);
+
+        fuelFlows = new double[speedCount * accelerationCount * gradeCount];
+        for (int k = 0; k < gradeCount; k++) {
+            for (int j = 0; j < accelerationCount; j++) {
+                for (int i = 0; i < speedCount; i++) {
+                    fuelFlows[index(i, j, k)] = exactFuelFlow(i, j, k, 0, 0, 0);
+                }
+            }
+        }
+
+        exactCells = new boolean[fuelFlows.length];
+        int exactCellCount = 0;
+        for (int k = 0; k < Math.max(gradeCount - 1, 1); k++) {
+            for (int j = 0; j < accelerationCount - 1; j++) {
+                for (int i = 0; i < speedCount - 1; i++) {
+                    if (!isInterpolationAccurate(i, j, k, table.getMaxRelativeError())) {
+                        exactCells[index(i, j, k)] = true;
+                        exactCellCount++;
+                    }
+                }
+            }
+        }
+        logger.info(String.format("fuel flow table of model %s: %d x %d x %d points, %d cells evaluated exactly",
+                keyLabel, speedCount, accelerationCount, gradeCount, exactCellCount));
+    }
+
+    @Override
+    public double getInstConsumption100km(double v, double acc, int gear, boolean withJante) {
+        return model.getInstConsumption100km(v, acc, gear, withJante);
+    }
+
+    @Override
+    public double getFuelFlow(double v, double acc, double grade, int gearIndex, boolean withJante) {
+        return model.getFuelFlow(v, acc, grade, gearIndex, withJante);
+    }
+
+    @Override
+    public double[] getMinFuelFlow(double v, double acc, double grade, boolean withJante) {
+        return model.getMinFuelFlow(v, acc, grade, withJante);
+    }
+
+    @Override
+    public double getFuelFlowInLiterPerS(double v, double acc) {
+        return getFuelFlowInLiterPerS(v, acc, 0);
+    }
+
+    /**
+     * Returns the interpolated fuel flow in liter per s, or the exact one outside the table and in the cells marked
+     * as not accurate enough.
+     */
+    @Override
+    public double getFuelFlowInLiterPerS(double v, double acc, double grade) {
+        final double x = v / speedStep;
+        final double y = (acc - minAcceleration) / accelerationStep;
+        final double z = gradeCount == 1 ? (grade == minGrade ? 0 : -1) : (grade - minGrade) / gradeStep;
+        // the negated comparisons also catch NaN
+        if (!(x >= 0 && x <= speedCount - 1 && y >= 0 && y <= accelerationCount - 1 && z >= 0 && z <= gradeCount - 1)) {
+            return model.getFuelFlowInLiterPerS(v, acc, grade);
+        }
+        final int i = Math.min((int) x, speedCount - 2);
+        final int j = Math.min((int) y, accelerationCount - 2);
+        final int k = Math.min((int) z, Math.max(gradeCount - 2, 0));
+        if (exactCells[index(i, j, k)]) {
+            return model.getFuelFlowInLiterPerS(v, acc, grade);
+        }
+        return interpolate(i, j, k, x - i, y - j, z - k);
+    }
+
+    private static int pointCount(double range, double step) {
+        Preconditions.checkArgument(step > 0, "FuelFlowTable: step must be positive");
+        // at least two points per dimension except for the grade, the last one covering the range
+        return (int) Math.ceil(range / step - 1e-9) + 1;
+    }
+
+    private int index(int i, int j, int k) {
+        return (k * accelerationCount + j) * speedCount + i;
+    }
+
+    private double exactFuelFlow(int i, int j, int k, double fx, double fy, double fz) {
+        final double v = (i + fx) * speedStep;
+        final double acc = minAcceleration + (j + fy) * accelerationStep;
+        final double grade = minGrade + (k + fz) * gradeStep;
+        return model.getFuelFlowInLiterPerS(v, acc, grade);
+    }
+
+    private double interpolate(int i, int j, int k, double fx, double fy, double fz) {
+        final double fuelFlow = interpolate(index(i, j, k), fx, fy);
+        if (fz == 0) {
+            return fuelFlow;
+        }
+        return (1 - fz) * fuelFlow + fz * interpolate(index(i, j, k + 1), fx, fy);
+    }
+
+    private double interpolate(int index, double fx, double fy) {
+        final double lower = (1 - fx) * fuelFlows[index] + fx * fuelFlows[index + 1];
+        final double upper = (1 - fx) * fuelFlows[index + speedCount] + fx * fuelFlows[index + speedCount + 1];
+        return (1 - fy) * lower + fy * upper;
+    }
+
+    // compares the interpolation with the exact fuel flow on a grid of CHECK_INTERVALS intervals per edge of the cell
+    private boolean isInterpolationAccurate(int i, int j, int k, double maxRelativeError) {
+        final int gradeSteps = gradeCount == 1 ? 0 : CHECK_INTERVALS;
+        for (int dz = 0; dz <= gradeSteps; dz += 2) {
+            for (int dy = 0; dy <= CHECK_INTERVALS; dy++) {
+                for (int dx = 0; dx <= CHECK_INTERVALS; dx++) {
+                    final double fx = (double) dx / CHECK_INTERVALS;
+                    final double fy = (double) dy / CHECK_INTERVALS;
+                    final double fz = (double) dz / CHECK_INTERVALS;
+                    final boolean corner = dx % CHECK_INTERVALS == 0 && dy % CHECK_INTERVALS == 0
+                            && dz % CHECK_INTERVALS == 0;
+                    final double exact = corner ? fuelFlows[index(i + dx / CHECK_INTERVALS, j + dy / CHECK_INTERVALS,
+                            k + dz / CHECK_INTERVALS)] : exactFuelFlow(i, j, k, fx, fy, fz);
+                    if (exact >= fuelFlowError) {
+                        return false;
+                    }
+                    if (!corner && Math.abs(interpolate(i, j, k, fx, fy, fz) - exact) > maxRelativeError * exact) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+}
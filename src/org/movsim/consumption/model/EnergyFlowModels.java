@@ -25,6 +25,9 @@
  */
 package org.movsim.consumption.model;
 
+import java.util.Map;
+import java.util.WeakHashMap;
+
 import org.movsim.autogen.ConsumptionModel;
 
 /**
@@ -32,12 +35,38 @@ import org.movsim.autogen.ConsumptionModel;
  */
 public final class EnergyFlowModels {
 
+    // built models by configuration, that is one per label of a loaded project
+    private static final Map<ConsumptionModel, EnergyFlowModel> models = new WeakHashMap<>();
+
     private EnergyFlowModels() {
         // Suppresses default constructor, ensuring non-instantiability.
     }
 
+    /**
+     * Returns the model of the configuration, interpolating the fuel flow in a precomputed table if the configuration
+     * has a {@code FuelFlowTable}.
+     * <p>
+     * The model is built, and its output files written, only once per configuration. The models are immutable, so the
+     * returned model may be shared between threads.
+     * </p>
+     */
     public static EnergyFlowModel create(ConsumptionModel model) {
-        return new EnergyFlowModelImpl(model.getLabel(), model);
+        synchronized (models) {
+            EnergyFlowModel energyFlowModel = models.get(model);
+            if (energyFlowModel == null) {
+                energyFlowModel = build(model);
+                models.put(model, energyFlowModel);
+            }
+            return energyFlowModel;
+        }
+    }
+
+    private static EnergyFlowModel build(ConsumptionModel model) {
+        final EnergyFlowModelImpl energyFlowModel = new EnergyFlowModelImpl(model.getLabel(), model, model.isOutput());
+        if (model.isSetFuelFlowTable()) {
+            return new EnergyFlowModelTable(model.getLabel(), energyFlowModel, model.getFuelFlowTable());
+        }
+        return energyFlowModel;
     }
 
 }
@@ -35,14 +35,21 @@ public class ConsumptionCalculation {
 
     private final EnergyFlowModel model;
 
+    /** last record processed, the cumulated consumption of the next call continues from it */
+    private ConsumptionDataRecord previous;
+
     public ConsumptionCalculation(EnergyFlowModel model) {
         Preconditions.checkNotNull(model);
         this.model = model;
     }
 
+    /**
+     * Calculates the consumption of the records, which may be the successive chunks of one input.
+     * 
+     * @param records
+     */
     public void process(List<ConsumptionDataRecord> records) {
         double timestep = 0; // in seconds
-        ConsumptionDataRecord previous = null;
         for (ConsumptionDataRecord record : records) {
             double[] minFuelFlow = model.getMinFuelFlow(record.getSpeed(), record.getAcceleration(), record.getGrade(),
                     true);
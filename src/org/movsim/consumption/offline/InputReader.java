@@ -26,11 +26,7 @@
 package org.movsim.consumption.offline;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.List;
 
 import org.movsim.autogen.BatchData;
@@ -38,20 +34,19 @@ import org.movsim.utilities.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import au.com.bytecode.opencsv.CSVReader;
-
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 
+/**
+ * Reads all records of an input file into memory.
+ * 
+ * @see InputRecordStream
+ */
 public class InputReader {
 
     static final Logger LOG = LoggerFactory.getLogger(InputReader.class);
 
-    private final char separator = ',';
-
-    private List<ConsumptionDataRecord> records;
-
-    private final BatchData batchInput;
+    private final List<ConsumptionDataRecord> records = Lists.newArrayList();
 
     public static InputReader create(BatchData batch) {
         File inputFile = FileUtils.lookupFilename(batch.getInputfile());
@@ -64,138 +59,33 @@ public class InputReader {
         Preconditions.checkNotNull(batch);
         Preconditions.checkArgument(inputFile.exists() && inputFile.isFile(), "file=" + inputFile.getAbsolutePath()
                 + " does not exist!");
-        this.batchInput = batch;
-        records = new LinkedList<ConsumptionDataRecord>();
-
-        process(inputFile);
+        process(inputFile, batch);
     }
 
     public List<ConsumptionDataRecord> getRecords() {
         return records;
     }
 
-    private void process(File inputFile) {
-        List<String[]> inputDataLines = readData(inputFile);
-
-        if (inputDataLines == null || inputDataLines.isEmpty()) {
-            LOG.warn("no input read");
-            return;
-        }
-
-        parseInputData(inputDataLines);
-
-        if (!hasSpeed()) {
-            records = calculateSpeeds();
-        }
-        if (!hasAcceleration()) {
-            records = calculateAccelerations();
-        }
-
-        // do this after post processing
-        addNormalizedTime();
-    }
-
-    private boolean hasSpeed() {
-        return !records.isEmpty() && records.get(0).hasSpeed();
-    }
-
-    private boolean hasAcceleration() {
-        return !records.isEmpty() && records.get(0).hasAcceleration();
-    }
-
-    private boolean hasPosition() {
-        return !records.isEmpty() && records.get(0).hasPosition();
-    }
-
-    private void addNormalizedTime() {
-        if (!records.isEmpty()) {
-            final double startTime = records.get(0).getTime();
-            System.out.println("add normalized time with startTime=" + startTime);
-            for (ConsumptionDataRecord record : records) {
-                record.setNormalizedTime(record.getTime() - startTime);
-            }
-        }
-    }
-
-    private List<ConsumptionDataRecord> calculateSpeeds() {
-        Preconditions.checkArgument(hasPosition(), "cannot calculate speeds without positions.");
-        LOG.info("calculate speeds numerically.");
-        List<ConsumptionDataRecord> newRecords = Lists.newArrayList();
-        for (int i = 0, N = records.size() - 1; i <= N; i++) {
-            ConsumptionDataRecord record = records.get(i);
-            ConsumptionDataRecord recordFwd = records.get(Math.min(i + 1, N));
-            ConsumptionDataRecord recordBwd = records.get(Math.max(0, i - 1));
-            double speed = calcDerivate(recordFwd.getPosition() - recordBwd.getPosition(), recordFwd.getTime()
-                    - recordBwd.getTime());
-            newRecords.add(new ConsumptionDataRecord(record.getIndex(), record.getTime(), record.getPosition(), speed,
-                    record.getAcceleration(), record.getGrade()));
-        }
-        return newRecords;
-    }
-
-    private List<ConsumptionDataRecord> calculateAccelerations() {
-        Preconditions.checkArgument(hasSpeed(), "cannot calculate accelerations without speeds.");
-        LOG.info("calculate accelerations numerically.");
-        List<ConsumptionDataRecord> newRecords = Lists.newArrayList();
-        for (int i = 0, N = records.size() - 1; i <= N; i++) {
-            ConsumptionDataRecord record = records.get(i);
-            ConsumptionDataRecord recordFwd = records.get(Math.min(i + 1, N));
-            ConsumptionDataRecord recordBwd = records.get(Math.max(0, i - 1));
-            double acceleration = calcDerivate(recordFwd.getSpeed() - recordBwd.getSpeed(), recordFwd.getTime()
-                    - recordBwd.getTime());
-            newRecords.add(new ConsumptionDataRecord(record.getIndex(), record.getTime(), record.getPosition(), record
-                    .getSpeed(), acceleration, record.getGrade()));
-        }
-        return newRecords;
-    }
-
-    private double calcDerivate(double dx, double dy) {
-        return (dy == 0) ? Double.NaN : dx / dy;
-    }
-
-    private void parseInputData(List<String[]> input) {
-        InputDataParser parser = new InputDataParser(batchInput.getColumns(), batchInput.getConversions());
-        int index = 0;
-        for (String[] line : input) {
-            try {
-                ConsumptionDataRecord record = parser.parse(index, line);
+    private void process(File inputFile, BatchData batch) {
+        LOG.info("using input file={}", inputFile.getAbsolutePath());
+        InputRecordStream input = null;
+        try {
+            input = new InputRecordStream(inputFile, batch);
+            for (ConsumptionDataRecord record = input.next(); record != null; record = input.next()) {
                 records.add(record);
-                ++index;
-            } catch (NumberFormatException e) {
-                LOG.info("cannot parse data. Ignore line={}", Arrays.toString(line));
-            } catch (IllegalArgumentException e) {
-                LOG.info("cannot parse data. Ignore line=", Arrays.toString(line));
             }
-        }
-
-        LOG.info("parsed={} from={} input lines", records.size(), input.size());
-    }
-
-    private List<String[]> readData(File file) {
-        LOG.info("using input file={}", file.getAbsolutePath());
-        List<String[]> myEntries = Lists.newArrayList();
-
-        // see http://opencsv.sourceforge.net/#how-to-read
-        CSVReader reader = null;
-        try {
-            reader = new CSVReader(new FileReader(file), separator);
-            myEntries = reader.readAll();
-        } catch (FileNotFoundException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
         } catch (IOException e) {
             // TODO Auto-generated catch block
             e.printStackTrace();
         } finally {
-            if (reader != null) {
+            if (input != null) {
                 try {
-                    reader.close();
+                    input.close();
                 } catch (IOException e) {
                     // ignore
                 }
             }
         }
-        return myEntries;
     }
 
 }
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2010, 2011, 2012 by Arne Kesting, Martin Treiber, Ralph Germ, Martin Budden
+ * <movsim.org@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSim - the multi-model open-source vehicular-traffic simulator.
+ * 
+ * MovSim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.consumption.offline;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.movsim.autogen.BatchData;
+import org.movsim.utilities.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import au.com.bytecode.opencsv.CSVReader;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Reads the records of an input file one after the other, so that files larger than the memory can be processed.
+ * <p>
+ * The speeds and accelerations missing in the input are calculated numerically from the neighboring records, looking
+ * ahead by one record each.
+ * </p>
+ */
+public class InputRecordStream implements Closeable {
+
+    static final Logger LOG = LoggerFactory.getLogger(InputRecordStream.class);
+
+    private static final char SEPARATOR = ',';
+
+    private interface Source {
+        /** @return the next record or null at the end of the input */
+        ConsumptionDataRecord next() throws IOException;
+    }
+
+    private final File inputFile;
+
+    private final CSVReader reader;
+
+    private final InputDataParser parser;
+
+    private final Source source;
+
+    private int lineCount;
+
+    private int recordCount;
+
+    private ConsumptionDataRecord first;
+
+    private double startTime;
+
+    public static InputRecordStream create(BatchData batch) throws IOException {
+        File inputFile = FileUtils.lookupFilename(batch.getInputfile());
+        LOG.info("inputfile={}", inputFile.getAbsolutePath());
+        return new InputRecordStream(inputFile, batch);
+    }
+
+    InputRecordStream(File inputFile, BatchData batch) throws IOException {
+        Preconditions.checkNotNull(inputFile);
+        Preconditions.checkNotNull(batch);
+        Preconditions.checkArgument(inputFile.exists() && inputFile.isFile(), "file=" + inputFile.getAbsolutePath()
+                + " does not exist!");
+        this.inputFile = inputFile;
+        this.parser = new InputDataParser(batch.getColumns(), batch.getConversions());
+        // see http://opencsv.sourceforge.net/#how-to-read
+        this.reader = new CSVReader(new FileReader(inputFile), SEPARATOR);
+
+        // the first record decides which quantities are calculated
+        first = parseNext();
+        if (first == null) {
+            LOG.warn("no input read");
+        }
+        Source records = new Source() {
+            @Override
+            public ConsumptionDataRecord next() throws IOException {
+                if (first != null) {
+                    final ConsumptionDataRecord record = first;
+                    first = null;
+                    return record;
+                }
+                return parseNext();
+            }
+        };
+        if (first != null && !first.hasSpeed()) {
+            Preconditions.checkArgument(first.hasPosition(), "cannot calculate speeds without positions.");
+            LOG.info("calculate speeds numerically.");
+            records = new Derivative(records, true);
+        }
+        if (first != null && !first.hasAcceleration()) {
+            LOG.info("calculate accelerations numerically.");
+            records = new Derivative(records, false);
+        }
+        if (first != null) {
+            startTime = first.getTime();
+            LOG.info("add normalized time with startTime={}", startTime);
+        }
+        this.source = records;
+    }
+
+    /**
+     * Reads the next record.
+     * 
+     * @return the record or null at the end of the input
+     */
+    public ConsumptionDataRecord next() throws IOException {
+        final ConsumptionDataRecord record = source.next();
+        if (record != null) {
+            record.setNormalizedTime(record.getTime() - startTime);
+        }
+        return record;
+    }
+
+    /**
+     * Reads the next records.
+     * 
+     * @param maxCount
+     *            the maximum number of records read
+     * @return the records, empty at the end of the input
+     */
+    public List<ConsumptionDataRecord> next(int maxCount) throws IOException {
+        final List<ConsumptionDataRecord> records = new ArrayList<ConsumptionDataRecord>(Math.min(maxCount, 1024));
+        for (ConsumptionDataRecord record = null; records.size() < maxCount && (record = next()) != null;) {
+            records.add(record);
+        }
+        return records;
+    }
+
+    @Override
+    public void close() throws IOException {
+        LOG.info("parsed={} from={} input lines of file={}", new Object[] { recordCount, lineCount,
+                inputFile.getName() });
+        reader.close();
+    }
+
+    private ConsumptionDataRecord parseNext() throws IOException {
+        for (String[] line = reader.readNext(); line != null; line = reader.readNext()) {
+            ++lineCount;
+            try {
+                final ConsumptionDataRecord record = parser.parse(recordCount, line);
+                ++recordCount;
+                return record;
+            } catch (NumberFormatException e) {
+                LOG.info("cannot parse data. Ignore line={}", Arrays.toString(line));
+            } catch (IllegalArgumentException e) {
+                LOG.info("cannot parse data. Ignore line={}", Arrays.toString(line));
+            }
+        }
+        return null;
+    }
+
+    private static double calcDerivate(double dx, double dy) {
+        return (dy == 0) ? Double.NaN : dx / dy;
+    }
+
+    /**
+     * Calculates the speed from the positions, or the acceleration from the speeds, of the previous and the next
+     * record; the first and the last record use their own value instead.
+     */
+    private static final class Derivative implements Source {
+
+        private final Source source;
+        private final boolean speed;
+
+        private boolean started;
+        private ConsumptionDataRecord previous;
+        private ConsumptionDataRecord current;
+
+        Derivative(Source source, boolean speed) {
+            this.source = source;
+            this.speed = speed;
+        }
+
+        @Override
+        public ConsumptionDataRecord next() throws IOException {
+            if (!started) {
+                started = true;
+                current = source.next();
+                previous = current;
+            }
+            if (current == null) {
+                return null;
+            }
+            final ConsumptionDataRecord following = source.next();
+            final ConsumptionDataRecord recordFwd = following == null ? current : following;
+            final ConsumptionDataRecord recordBwd = previous;
+            final ConsumptionDataRecord record = current;
+            previous = current;
+            current = following;
+            final double dt = recordFwd.getTime() - recordBwd.getTime();
+            if (speed) {
+                return new ConsumptionDataRecord(record.getIndex(), record.getTime(), record.getPosition(),
+                        calcDerivate(recordFwd.getPosition() - recordBwd.getPosition(), dt), record.getAcceleration(),
+                        record.getGrade());
+            }
+            return new ConsumptionDataRecord(record.getIndex(), record.getTime(), record.getPosition(),
+                    record.getSpeed(), calcDerivate(recordFwd.getSpeed() - recordBwd.getSpeed(), dt),
+                    record.getGrade());
+        }
+    }
+
+}
@@ -25,6 +25,7 @@
  */
 package org.movsim.consumption.offline;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -36,12 +37,16 @@ import au.com.bytecode.opencsv.CSVWriter;
 
 import com.google.common.base.Preconditions;
 
-public class OutputWriter {
+public class OutputWriter implements Closeable {
 
     private static final char SEPARATOR_CHARACTER = ',';
     private static final char QUOTE_CHARACTER = CSVWriter.NO_QUOTE_CHARACTER;
     private final File output;
 
+    private CSVWriter writer;
+
+    private boolean headerWritten;
+
     public static OutputWriter create(BatchData batch, String outputPath) {
         File outputFile = new File(outputPath, batch.getOutputfile());
         return new OutputWriter(outputFile);
@@ -61,28 +66,46 @@ public class OutputWriter {
     }
 
     public void write(List<ConsumptionDataRecord> records) {
-        CSVWriter writer = null;
         try {
-            writer = new CSVWriter(new FileWriter(output), SEPARATOR_CHARACTER, QUOTE_CHARACTER);
-            if (!records.isEmpty()) {
-                writer.writeNext(records.get(0).csvHeader(String.valueOf(SEPARATOR_CHARACTER)));
-                for (ConsumptionDataRecord record : records) {
-                    // feed in your array (or convert your data to an array)
-                    writer.writeNext(record.toCsv(String.valueOf(SEPARATOR_CHARACTER)));
-                }
-            }
+            append(records);
         } catch (IOException e) {
             e.printStackTrace();
         } finally {
-            if (writer != null) {
-                try {
-                    writer.close();
-                } catch (IOException e) {
-                    // ignore
-                }
+            try {
+                close();
+            } catch (IOException e) {
+                // ignore
             }
         }
 
     }
 
+    /**
+     * Writes the records after the ones already written, the file being created by the first call.
+     * 
+     * @param records
+     * @throws IOException
+     */
+    public void append(List<ConsumptionDataRecord> records) throws IOException {
+        if (writer == null) {
+            writer = new CSVWriter(new FileWriter(output), SEPARATOR_CHARACTER, QUOTE_CHARACTER);
+        }
+        if (!headerWritten && !records.isEmpty()) {
+            writer.writeNext(records.get(0).csvHeader(String.valueOf(SEPARATOR_CHARACTER)));
+            headerWritten = true;
+        }
+        for (ConsumptionDataRecord record : records) {
+            // feed in your array (or convert your data to an array)
+            writer.writeNext(record.toCsv(String.valueOf(SEPARATOR_CHARACTER)));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
 }
@@ -37,6 +37,7 @@ import org.apache.commons.cli.Option;
 import org.apache.commons.cli.OptionBuilder;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
+import org.movsim.simulator.SimulationRunnable.RunMode;
 import org.movsim.utilities.FileUtils;
 import org.movsim.xml.MovsimInputLoader;
 
@@ -108,6 +109,31 @@ public class MovsimCommandLine {
         OptionBuilder.withDescription("argument is the output path relative to calling directory");
         final Option outputPathOption = OptionBuilder.create("o");
         options.addOption(outputPathOption);
+
+        OptionBuilder.withArgName("threads");
+        OptionBuilder.hasArg();
+        OptionBuilder.withDescription("number of threads for updating the road network (default 1: serial update)");
+        final Option parallelismOption = OptionBuilder.create("p");
+        options.addOption(parallelismOption);
+
+        OptionBuilder.withArgName("mode");
+        OptionBuilder.hasArg();
+        OptionBuilder.withDescription("pacing of the simulation: SLEEP_TIME (default, viewer only), AS_FAST_AS_POSSIBLE "
+                + "or REAL_TIME (paced to the timewarp of option -t)");
+        final Option runModeOption = OptionBuilder.create("m");
+        options.addOption(runModeOption);
+
+        OptionBuilder.withArgName("timewarp");
+        OptionBuilder.hasArg();
+        OptionBuilder.withDescription("simulated seconds per real second in REAL_TIME mode (default 1)");
+        final Option timewarpOption = OptionBuilder.create("t");
+        options.addOption(timewarpOption);
+
+        OptionBuilder.withArgName("fps");
+        OptionBuilder.hasArg();
+        OptionBuilder.withDescription("maximum number of viewer drawings per second (default 0: draw after every step)");
+        final Option frameRateOption = OptionBuilder.create("r");
+        options.addOption(frameRateOption);
     }
 
     /**
@@ -129,6 +155,18 @@ public class MovsimCommandLine {
         if (cmdline.hasOption("l")) {
             optWriteLoggingProperties();
         }
+        if (cmdline.hasOption("p")) {
+            optionParallelism(cmdline);
+        }
+        if (cmdline.hasOption("m")) {
+            optionRunMode(cmdline);
+        }
+        if (cmdline.hasOption("t")) {
+            optionTargetTimewarp(cmdline);
+        }
+        if (cmdline.hasOption("r")) {
+            optionFrameRate(cmdline);
+        }
         
         
         if (cmdline.hasOption("f")) {
@@ -138,6 +176,67 @@ public class MovsimCommandLine {
         
     }
 
+    /**
+     * Option: number of threads for the road network update.
+     * 
+     * @param cmdline
+     */
+    private void optionParallelism(CommandLine cmdline) {
+        final String threads = cmdline.getOptionValue('p');
+        try {
+            ProjectMetaData.getInstance().setParallelism(Integer.parseInt(threads.trim()));
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid number of threads \"" + threads + "\". Update road network serially.");
+        }
+    }
+
+    /**
+     * Option: pacing of the simulation.
+     * 
+     * @param cmdline
+     */
+    private void optionRunMode(CommandLine cmdline) {
+        final String runMode = cmdline.getOptionValue('m');
+        try {
+            ProjectMetaData.getInstance().setRunMode(RunMode.valueOf(runMode.trim().toUpperCase()));
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid run mode \"" + runMode + "\". Use " + RunMode.SLEEP_TIME + ".");
+        }
+    }
+
+    /**
+     * Option: target time warp of the real time pacing.
+     * 
+     * @param cmdline
+     */
+    private void optionTargetTimewarp(CommandLine cmdline) {
+        final String timewarp = cmdline.getOptionValue('t');
+        try {
+            final double value = Double.parseDouble(timewarp.trim());
+            if (value > 0) {
+                ProjectMetaData.getInstance().setTargetTimewarp(value);
+                return;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        System.out.println("Invalid timewarp \"" + timewarp + "\". Use real time.");
+    }
+
+    /**
+     * Option: maximum frame rate of the viewer.
+     * 
+     * @param cmdline
+     */
+    private void optionFrameRate(CommandLine cmdline) {
+        final String frameRate = cmdline.getOptionValue('r');
+        try {
+            ProjectMetaData.getInstance().setFrameRate(Double.parseDouble(frameRate.trim()));
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid frame rate \"" + frameRate + "\". Draw after every step.");
+        }
+    }
+
     /**
      * @param cmdline
      */
@@ -36,6 +36,8 @@ import java.util.List;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.joda.time.format.ISODateTimeFormat;
+import org.movsim.simulator.SimulationContext;
+import org.movsim.simulator.SimulationRunnable.RunMode;
 import au.com.bytecode.opencsv.CSVReader;
 
 import com.google.common.collect.Lists;
@@ -58,8 +60,6 @@ public final class ProjectMetaData {
 
     private static final String MOVSIM_CONFIG_FILE_ENDING = ".xprj";
 
-    private static ProjectMetaData singleton = new ProjectMetaData();
-
     private String projectName;
     private String pathToProjectXmlFile;
     private String outputPath;
@@ -82,6 +82,16 @@ public final class ProjectMetaData {
 
     private long timeOffsetMillis = 0;
 
+    /** number of threads for the road network update, 1 for serial execution. */
+    private int parallelism = 1;
+
+    /** pacing of the simulation thread and, for {@link RunMode#REAL_TIME}, its target time warp. */
+    private RunMode runMode = RunMode.SLEEP_TIME;
+    private double targetTimewarp = 1.0;
+
+    /** maximum number of drawings per second, 0 to draw after every time step. */
+    private double frameRate = 0;
+
     /**
      * Needed for Applet. Change to true, if you cannot access the file system.
      * Allows to read the config files from resources instead.
@@ -98,18 +108,18 @@ public final class ProjectMetaData {
     private InputStream projectProperties;
 
     /**
-     * private constructor: singleton pattern.
+     * Constructor: one instance per {@link SimulationContext}, use {@link #getInstance()}.
      */
-    private ProjectMetaData() {
+    public ProjectMetaData() {
     }
 
     /**
-     * Gets the single instance of ProjectMetaData.
+     * Gets the instance of ProjectMetaData of the current simulation context.
      * 
-     * @return single instance of ProjectMetaData
+     * @return instance of ProjectMetaData
      */
     public static ProjectMetaData getInstance() {
-        return singleton;
+        return SimulationContext.current().getProjectMetaData();
     }
 
     public boolean hasProjectName() {
@@ -367,6 +377,38 @@ public final class ProjectMetaData {
         this.timeOffsetMillis = timeOffsetMillis;
     }
 
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public RunMode getRunMode() {
+        return runMode;
+    }
+
+    public void setRunMode(RunMode runMode) {
+        this.runMode = runMode;
+    }
+
+    public double getTargetTimewarp() {
+        return targetTimewarp;
+    }
+
+    public void setTargetTimewarp(double targetTimewarp) {
+        this.targetTimewarp = targetTimewarp;
+    }
+
+    public double getFrameRate() {
+        return frameRate;
+    }
+
+    public void setFrameRate(double frameRate) {
+        this.frameRate = frameRate;
+    }
+
     public String getFormatedTimeWithOffset(double simulationTime) {
         DateTime dateTime = new DateTime(timeOffsetMillis + Math.round(1000 * simulationTime), DateTimeZone.UTC);
         return ISODateTimeFormat.dateTimeNoMillis().print(dateTime);
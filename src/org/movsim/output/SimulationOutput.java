@@ -227,4 +227,13 @@ public class SimulationOutput implements SimulationTimeStep {
 
     }
 
+    /**
+     * Completes the outputs at the end of the simulation.
+     */
+    public void simulationComplete() {
+        for (final FileTrajectories filetraj : filesTrajectories.values()) {
+            filetraj.close();
+        }
+    }
+
 }
@@ -100,14 +100,15 @@ public class FileDetector extends FileOutputBase {
      *            the time
      */
     protected void writeAggregatedData(double time) {
-        writer.printf(outputFormatTime, time);
+        record.append(time, 10, 1).append(", ");
         if (laneCount > 1) {
             writeLaneAverages();
         }
         if (loggingLanes) {
             writeQuantitiesPerLane();
         }
-        writer.printf("%n");
+        record.newLine();
+        writeRecord(writer);
     }
 
     /**
@@ -117,7 +118,7 @@ public class FileDetector extends FileOutputBase {
      */
     private void writeQuantitiesPerLane() {
         for (int i = 0; i < laneCount; i++) {
-            write(outputFormat, detector.getVehCountOutput(i), detector.getVehCumulatedCountOutput(i), Units.MS_TO_KMH
+            appendQuantities(detector.getVehCountOutput(i), detector.getVehCumulatedCountOutput(i), Units.MS_TO_KMH
                     * detector.getMeanSpeed(i), Units.INVS_TO_INVH * detector.getFlow(i), detector.getOccupancy(i),
                     Units.MS_TO_KMH * detector.getMeanSpeedHarmonic(i), detector.getMeanTimegapHarmonic(i));
         }
@@ -129,10 +130,20 @@ public class FileDetector extends FileOutputBase {
      * @param time
      */
     private void writeLaneAverages() {
-        write(outputFormat, detector.getVehCountOutputAllLanes(), detector.getVehCumulatedCountOutputAllLanes(),
+        appendQuantities(detector.getVehCountOutputAllLanes(), detector.getVehCumulatedCountOutputAllLanes(),
                 Units.MS_TO_KMH * detector.getMeanSpeedAllLanes(), Units.INVS_TO_INVH * detector.getFlowAllLanes(),
                 detector.getOccupancyAllLanes(), Units.MS_TO_KMH * detector.getMeanSpeedHarmonicAllLanes(),
                 detector.getMeanTimegapHarmonicAllLanes());
     }
 
+    /**
+     * Appends the quantities to the line, as outputFormat.
+     */
+    private void appendQuantities(long count, long cumulatedCount, double speed, double flow, double occupancy,
+            double speedHarmonic, double timegapHarmonic) {
+        record.append(count, 10).append(", ").append(cumulatedCount, 10).append(", ").append(speed, 10, 3)
+                .append(", ").append(flow, 10, 1).append(", ").append(occupancy, 10, 7).append(", ")
+                .append(speedHarmonic, 10, 3).append(", ").append(timegapHarmonic, 10, 5).append(", ");
+    }
+
 }
@@ -26,6 +26,7 @@
 package org.movsim.output.detector;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import org.movsim.simulator.MovsimConstants;
 import org.movsim.simulator.SimulationTimeStep;
@@ -37,8 +38,12 @@ import org.slf4j.LoggerFactory;
 
 /**
  * The Class LoopDetector.
+ * <p>
+ * The detector is told by the lane segments of its road segment which vehicles crossed its position in the position
+ * update, instead of searching all vehicles at each time step.
+ * </p>
  */
-public class LoopDetector implements SimulationTimeStep {
+public class LoopDetector implements SimulationTimeStep, LaneSegment.CrossingCallback {
 
     final static Logger logger = LoggerFactory.getLogger(LoopDetector.class);
 
@@ -91,6 +96,9 @@ public class LoopDetector implements SimulationTimeStep {
     private double meanTimegapHarmonicAllLanes;
 
     private final FileDetector fileDetector;
+
+    /** vehicles which crossed the detector in the current time step, per lane. */
+    private final List<ArrayList<Vehicle>> crossedVehicles;
     
     /**
      * Constructor
@@ -131,6 +139,14 @@ public class LoopDetector implements SimulationTimeStep {
             vehCumulatedCountOutput[i] = 0;  // initalization
         }
         resetLaneAverages();
+
+        crossedVehicles = new ArrayList<>(laneCount);
+        for (int i = 0; i < laneCount; i++) {
+            crossedVehicles.add(new ArrayList<Vehicle>());
+        }
+        for (LaneSegment laneSegment : roadSegment.laneSegments()) {
+            laneSegment.addCrossingCallback(detPosition, this);
+        }
         
         fileDetector = (logging) ? new FileDetector(this, roadSegment.userId(), roadSegment.laneCount(), loggingLanes) : null;
         if(fileDetector != null){
@@ -154,15 +170,28 @@ public class LoopDetector implements SimulationTimeStep {
         sumInvV[lane] = 0;
     }
 
+    @Override
+    public void crossed(LaneSegment laneSegment, Vehicle vehicle) {
+        crossedVehicles.get(laneSegment.lane() - 1).add(vehicle);
+    }
+
     @Override
     public void timeStep(double dt, double simulationTime, long iterationCount) {
-        // brute force search: iterate over all lanes
-        for (LaneSegment laneSegment : roadSegment.laneSegments()) {
-            for (final Vehicle vehicle : laneSegment) {
-                if ((vehicle.getFrontPositionOld() < detPosition) && (vehicle.getFrontPosition() >= detPosition)) {
-                    countVehiclesAndDataForLane(laneSegment, laneSegment.lane() - 1, vehicle);
+        // vehicles which crossed the detector and are still on the road segment, in the order of the lanes
+        for (int laneIndex = 0; laneIndex < laneCount; laneIndex++) {
+            final ArrayList<Vehicle> crossed = crossedVehicles.get(laneIndex);
+            if (crossed.isEmpty()) {
+                continue;
+            }
+            final LaneSegment laneSegment = roadSegment.laneSegment(laneIndex + 1);
+            for (final Vehicle vehicle : crossed) {
+                final int i = laneSegment.indexOf(vehicle);
+                if (i >= 0 && (laneSegment.frontPositionOld(i) < detPosition)
+                        && (laneSegment.frontPosition(i) >= detPosition)) {
+                    countVehiclesAndDataForLane(laneSegment, laneIndex, i);
                 }
             }
+            crossed.clear();
         }
 
         if ((simulationTime - timeOffset + MovsimConstants.SMALL_VALUE) >= dtSample) {
@@ -181,19 +210,27 @@ public class LoopDetector implements SimulationTimeStep {
      * @param laneSegment
      * @param laneIndex
      *            (lane-1)
-     * @param veh
+     * @param index
+     *            index of the vehicle in the lane segment
      */
-    private void countVehiclesAndDataForLane(LaneSegment laneSegment, int laneIndex, Vehicle veh) {
+    private void countVehiclesAndDataForLane(LaneSegment laneSegment, int laneIndex, int index) {
         // new vehicle crossed detector
         vehCount[laneIndex]++;
         vehCumulatedCountOutput[laneIndex]++;
-        final double speedVeh = veh.getSpeed();
+        final double speedVeh = laneSegment.speed(index);
         vSum[laneIndex] += speedVeh;
-        occTime[laneIndex] += (speedVeh > 0) ? veh.getLength() / speedVeh : 0;
+        occTime[laneIndex] += (speedVeh > 0) ? laneSegment.vehicleLength(index) / speedVeh : 0;
         sumInvV[laneIndex] += (speedVeh > 0) ? 1. / speedVeh : 0;
         // brut timegap not calculate from local detector data:
-        final Vehicle vehFront = laneSegment.frontVehicle(veh);
-        final double brutTimegap = (vehFront == null) ? 0 : veh.getBrutDistance(vehFront) / vehFront.getSpeed();
+        final double brutTimegap;
+        if (index > 0) {
+            brutTimegap = (laneSegment.frontPosition(index - 1) - laneSegment.frontPosition(index))
+                    / laneSegment.speed(index - 1);
+        } else {
+            final Vehicle veh = laneSegment.getVehicle(index);
+            final Vehicle vehFront = laneSegment.frontVehicle(veh);
+            brutTimegap = (vehFront == null) ? 0 : veh.getBrutDistance(vehFront) / vehFront.getSpeed();
+        }
         // "microscopic flow"
         sumInvQ[laneIndex] += (brutTimegap > 0) ? 1. / brutTimegap : 0;
     }
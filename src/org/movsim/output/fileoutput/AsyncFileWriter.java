@@ -0,0 +1,374 @@
+/*
+ * Copyright (C) 2010, 2011, 2012 by Arne Kesting, Martin Treiber, Ralph Germ, Martin Budden
+ * <movsim.org@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ *
+ * This file is part of
+ *
+ * MovSim - the multi-model open-source vehicular-traffic simulator.
+ *
+ * MovSim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MovSim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ *
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.output.fileoutput;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.movsim.simulator.SimulationContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writer of an output file which moves the file I/O off the simulation thread.
+ * <p>
+ * The characters are collected in large chunks. A full chunk is handed to a background thread, shared by all output
+ * files, which writes it in one go. The last, partially filled chunk is written on a timer, every
+ * {@link #FLUSH_INTERVAL_MS}, and by {@link #sync()}, {@link #close()} and {@link #flushAll()}.
+ * </p>
+ * <p>
+ * A writer belongs to the {@link SimulationContext} in which it was opened. The writers still open when a simulation
+ * completes are closed by {@link #closeAll(SimulationContext)}, which also stops their timers.
+ * </p>
+ * <p>
+ * {@link #flush()} does not write anything, so the per-line flushes of the file outputs cost nothing. When the
+ * background thread falls more than {@link #MAX_PENDING_CHUNKS} chunks behind, the simulation thread writes the
+ * pending chunks itself, which bounds the memory used. An I/O error is reported by the next call, so a
+ * {@link java.io.PrintWriter} sees it in <code>checkError()</code> as before.
+ * </p>
+ */
+public class AsyncFileWriter extends Writer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncFileWriter.class);
+
+    /** Size of a chunk, in characters. */
+    public static final int CHUNK_SIZE = 32 * 1024;
+
+    /** Delay after which buffered characters are written even if their chunk is not full. */
+    public static final long FLUSH_INTERVAL_MS = 1000;
+
+    /** Number of full chunks waiting for the background thread above which the caller writes them itself. */
+    public static final int MAX_PENDING_CHUNKS = 8;
+
+    private static final int MAX_FREE_CHUNKS = 2;
+
+    private static final ScheduledExecutorService writerThread = Executors
+            .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread thread = new Thread(r, "FileOutputWriter");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private static final Set<AsyncFileWriter> openWriters = Collections
+            .newSetFromMap(new ConcurrentHashMap<AsyncFileWriter, Boolean>());
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread("FileOutputShutdown") {
+            @Override
+            public void run() {
+                flushAll();
+            }
+        });
+    }
+
+    private static final class Chunk {
+        final char[] data;
+        final int length;
+
+        Chunk(char[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    private final String filename;
+
+    private final SimulationContext context;
+
+    // the file, written under its own lock in the order the chunks were handed off
+    private final Writer out;
+
+    // current chunk, guarded by lock
+    private char[] chunk;
+    private int count;
+    private boolean closed;
+    private boolean idle;
+
+    private final Queue<Chunk> pending = new ConcurrentLinkedQueue<Chunk>();
+    private final Queue<char[]> free = new ConcurrentLinkedQueue<char[]>();
+    private final ScheduledFuture<?> timer;
+    private volatile IOException error;
+
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * Opens the file for writing, truncating it.
+     *
+     * @param filename
+     *            the filename
+     * @throws IOException
+     *             if the file cannot be opened
+     */
+    public AsyncFileWriter(String filename) throws IOException {
+        this.filename = filename;
+        this.context = SimulationContext.current();
+        this.out = new FileWriter(filename, false);
+        timer = writerThread.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flushOnTimer();
+            }
+        }, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        openWriters.add(this);
+    }
+
+    /**
+     * Writes the buffered characters of all open files and waits until they are written. Called when the virtual
+     * machine shuts down.
+     */
+    public static void flushAll() {
+        for (final AsyncFileWriter writer : openWriters) {
+            writer.sync();
+        }
+    }
+
+    /**
+     * Closes the open files of the given simulation context. Called when a simulation completes, so that the files
+     * are complete and their timers stopped.
+     * 
+     * @param context
+     *            the simulation context
+     */
+    public static void closeAll(SimulationContext context) {
+        for (final AsyncFileWriter writer : openWriters) {
+            if (writer.context == context) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    // already logged by the writer
+                }
+            }
+        }
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        synchronized (lock) {
+            ensureOpen();
+            while (len > 0) {
+                final int n = Math.min(len, reserve());
+                System.arraycopy(cbuf, off, chunk, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        synchronized (lock) {
+            ensureOpen();
+            while (len > 0) {
+                final int n = Math.min(len, reserve());
+                str.getChars(off, off + n, chunk, count);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+    }
+
+    /**
+     * Appends the characters of a string builder without converting it to a string first.
+     */
+    @Override
+    public Writer append(CharSequence csq) throws IOException {
+        if (!(csq instanceof StringBuilder)) {
+            return super.append(csq);
+        }
+        final StringBuilder sb = (StringBuilder) csq;
+        synchronized (lock) {
+            ensureOpen();
+            int off = 0;
+            int len = sb.length();
+            while (len > 0) {
+                final int n = Math.min(len, reserve());
+                sb.getChars(off, off + n, chunk, count);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Does not write anything, the buffered characters are written when their chunk is full or by the timer. Only
+     * reports an I/O error.
+     */
+    @Override
+    public void flush() throws IOException {
+        checkError();
+    }
+
+    /**
+     * Writes the buffered characters to the file and waits until they are written, for instance before reading the
+     * file back.
+     */
+    public void sync() {
+        synchronized (lock) {
+            if (count > 0) {
+                handOff();
+            }
+        }
+        drain();
+    }
+
+    // releases the buffers of a file which was not written to during a whole interval
+    private void flushOnTimer() {
+        synchronized (lock) {
+            if (count > 0) {
+                handOff();
+            } else if (idle) {
+                chunk = null;
+                free.clear();
+            }
+            idle = true;
+        }
+        drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (count > 0) {
+                handOff();
+            }
+            timer.cancel(false);
+        }
+        drain();
+        synchronized (out) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                setError(e);
+            }
+        }
+        openWriters.remove(this);
+        checkError();
+    }
+
+    // free space in the current chunk, handing it off when full; called with lock held
+    private int reserve() {
+        idle = false;
+        if (chunk == null) {
+            chunk = free.poll();
+            if (chunk == null) {
+                chunk = new char[CHUNK_SIZE];
+            }
+        } else if (count == chunk.length) {
+            handOff();
+            return reserve();
+        }
+        return chunk.length - count;
+    }
+
+    // called with lock held
+    private void handOff() {
+        pending.add(new Chunk(chunk, count));
+        chunk = null;
+        count = 0;
+        if (pending.size() > MAX_PENDING_CHUNKS) {
+            drain();
+        } else {
+            writerThread.execute(drainTask);
+        }
+    }
+
+    private void drain() {
+        synchronized (out) {
+            boolean written = false;
+            for (Chunk c = pending.poll(); c != null; c = pending.poll()) {
+                if (error == null) {
+                    try {
+                        out.write(c.data, 0, c.length);
+                        written = true;
+                    } catch (IOException e) {
+                        setError(e);
+                    }
+                }
+                if (free.size() < MAX_FREE_CHUNKS) {
+                    free.add(c.data);
+                }
+            }
+            if (written && error == null) {
+                try {
+                    out.flush();
+                } catch (IOException e) {
+                    setError(e);
+                }
+            }
+        }
+    }
+
+    private void setError(IOException e) {
+        if (error == null) {
+            LOG.error("cannot write to file {}: {}", filename, e.getMessage());
+            error = e;
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("file " + filename + " already closed");
+        }
+        checkError();
+    }
+
+    private void checkError() throws IOException {
+        if (error != null) {
+            throw new IOException("cannot write to file " + filename, error);
+        }
+    }
+}
@@ -26,18 +26,41 @@
 package org.movsim.output.fileoutput;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.PrintWriter;
 
-import org.movsim.utilities.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+/**
+ * Base class of the file outputs. The files are written through an {@link AsyncFileWriter}, so the simulation thread
+ * neither waits for the disk nor pays for the flush after each line. Frequent lines should be built in
+ * {@link #record} and written by {@link #writeRecord(PrintWriter)} rather than formatted by
+ * {@link #write(String, Object...)}.
+ */
 public class FileOutputBase {
 
+    private static final Logger LOG = LoggerFactory.getLogger(FileOutputBase.class);
+
     public static final String COMMENT_CHAR = "#";
 
     protected final String path;
     protected final String baseFilename;
     protected PrintWriter writer;
 
+    /** Reusable buffer of the line being written. */
+    protected final RecordBuilder record = new RecordBuilder();
+
+    // print writer which gives access to its file, so that records are not copied into strings
+    private static final class RecordWriter extends PrintWriter {
+        private final AsyncFileWriter output;
+
+        RecordWriter(AsyncFileWriter output) {
+            super(output);
+            this.output = output;
+        }
+    }
+
     /**
      * Constructor, sets the path and base filename.
      */
@@ -48,11 +71,50 @@ public class FileOutputBase {
 
     public PrintWriter createWriter(String extension) {
         final String filename = path + File.separator + baseFilename + extension;
-        return FileUtils.getWriter(filename);
+        try {
+            LOG.info("open file {} for writing", filename);
+            return new RecordWriter(new AsyncFileWriter(filename));
+        } catch (final IOException e) {
+            LOG.error("cannot open file {} for writing", filename);
+        }
+        return null;
     }
 
     public void write(String format, Object... args) {
         writer.printf(format, args);
         writer.flush();
     }
+
+    /**
+     * Writes the line built in {@link #record} to the given writer and clears it.
+     * 
+     * @param writer
+     *            a writer created by {@link #createWriter(String)}, or null
+     */
+    protected void writeRecord(PrintWriter writer) {
+        if (writer == null) {
+            record.clear();
+            return;
+        }
+        try {
+            record.writeTo(writer instanceof RecordWriter ? ((RecordWriter) writer).output : writer);
+        } catch (final IOException e) {
+            // already logged by the writer
+            record.clear();
+        }
+    }
+
+    /**
+     * Writes the buffered lines of the given writer to its file, for instance before reading it back.
+     * 
+     * @param writer
+     *            a writer created by {@link #createWriter(String)}, or null
+     */
+    public void flushOutput(PrintWriter writer) {
+        if (writer instanceof RecordWriter) {
+            ((RecordWriter) writer).output.sync();
+        } else if (writer != null) {
+            writer.flush();
+        }
+    }
 }
@@ -58,8 +58,9 @@ public class FileTrafficSourceData extends FileOutputBase implements TrafficSour
     @Override
     public void recordData(double simulationTime, int laneEnter, double xEnter, double vEnter, double totalInflow,
             int enteringVehCounter, double nWait) {
-        writer.printf(outputFormat, simulationTime, laneEnter, xEnter, 3.6 * vEnter, 3600 * totalInflow,
-                enteringVehCounter, nWait);
-        writer.flush();
+        record.append(simulationTime, 10, 2).append(", ").append(laneEnter, 4).append(", ").append(xEnter, 10, 2)
+                .append(", ").append(3.6 * vEnter, 10, 2).append(", ").append(3600 * totalInflow, 10, 2).append(", ")
+                .append(enteringVehCounter, 8).append(", ").append(nWait, 10, 5).newLine();
+        writeRecord(writer);
     }
 }
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2010, 2011, 2012 by Arne Kesting, Martin Treiber, Ralph Germ, Martin Budden
+ * <movsim.org@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ *
+ * This file is part of
+ *
+ * MovSim - the multi-model open-source vehicular-traffic simulator.
+ *
+ * MovSim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MovSim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ *
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.output.fileoutput;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * Reusable buffer for a line of a file output, filled without {@link String#format(String, Object...)}.
+ * <p>
+ * The numbers are written exactly as the corresponding format specifiers, <code>%10.2f</code> or <code>%8d</code>,
+ * would write them in the default locale. A value whose rounding cannot be decided safely with long arithmetic, a
+ * value close to a tie or a very large one, is still formatted by {@link String#format(Locale, String, Object...)}.
+ * </p>
+ */
+public class RecordBuilder {
+
+    private static final long[] POWERS_OF_TEN = { 1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L,
+            100000000L, 1000000000L, 10000000000L, 100000000000L, 1000000000000L, 10000000000000L,
+            100000000000000L };
+
+    private static final double MAX_SCALED_VALUE = 1e14;
+
+    // the scaled value may be off by a few units in the last place from the decimal value printf rounds, so a
+    // fraction this close to one half, relative to the scaled value, is left to printf
+    private static final double TIE_TOLERANCE = 1e-6;
+    private static final double RELATIVE_TIE_TOLERANCE = 1e-15;
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    private static final char[] SPACES = "                ".toCharArray();
+
+    private final StringBuilder buffer = new StringBuilder(256);
+
+    private final Locale locale;
+    private final char decimalSeparator;
+    private final boolean asciiDigits;
+
+    /**
+     * Creates a record for the current default locale, the one used by {@link java.io.PrintWriter#printf}.
+     */
+    public RecordBuilder() {
+        this(Locale.getDefault());
+    }
+
+    public RecordBuilder(Locale locale) {
+        this.locale = locale;
+        final DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+        this.decimalSeparator = symbols.getDecimalSeparator();
+        this.asciiDigits = symbols.getZeroDigit() == '0';
+    }
+
+    /**
+     * Appends a string, as <code>%s</code>.
+     */
+    public RecordBuilder append(String s) {
+        buffer.append(s);
+        return this;
+    }
+
+    /**
+     * Appends an integer, as <code>%<i>width</i>d</code>.
+     */
+    public RecordBuilder append(long value, int width) {
+        if (!asciiDigits) {
+            return pad(String.format(locale, "%d", value), width);
+        }
+        final int start = buffer.length();
+        buffer.append(value);
+        return padFrom(start, width);
+    }
+
+    /**
+     * Appends a floating point value, as <code>%<i>width</i>.<i>precision</i>f</code>.
+     */
+    public RecordBuilder append(double value, int width, int precision) {
+        if (!asciiDigits || precision >= POWERS_OF_TEN.length || Double.isNaN(value) || Double.isInfinite(value)) {
+            return pad(String.format(locale, "%." + precision + "f", value), width);
+        }
+        final boolean negative = value < 0 || (value == 0 && 1 / value < 0);
+        final long scale = POWERS_OF_TEN[precision];
+        final double scaled = Math.abs(value) * scale;
+        final double floor = Math.floor(scaled);
+        final double fraction = scaled - floor;
+        if (scaled >= MAX_SCALED_VALUE
+                || Math.abs(fraction - 0.5) < TIE_TOLERANCE + RELATIVE_TIE_TOLERANCE * scaled) {
+            return pad(String.format(locale, "%." + precision + "f", value), width);
+        }
+        final long rounded = (long) floor + (fraction > 0.5 ? 1 : 0);
+        final int start = buffer.length();
+        if (negative) {
+            buffer.append('-');
+        }
+        buffer.append(rounded / scale);
+        if (precision > 0) {
+            buffer.append(decimalSeparator);
+            final long decimals = rounded % scale;
+            for (long p = scale / 10; p > 1 && decimals < p; p /= 10) {
+                buffer.append('0');
+            }
+            buffer.append(decimals);
+        }
+        return padFrom(start, width);
+    }
+
+    /**
+     * Ends the line, as <code>%n</code>.
+     */
+    public RecordBuilder newLine() {
+        buffer.append(LINE_SEPARATOR);
+        return this;
+    }
+
+    public int length() {
+        return buffer.length();
+    }
+
+    public void clear() {
+        buffer.setLength(0);
+    }
+
+    /**
+     * Writes the record and clears it.
+     */
+    public void writeTo(Writer writer) throws IOException {
+        writer.append(buffer);
+        buffer.setLength(0);
+    }
+
+    @Override
+    public String toString() {
+        return buffer.toString();
+    }
+
+    private RecordBuilder pad(String s, int width) {
+        for (int i = s.length(); i < width; i++) {
+            buffer.append(' ');
+        }
+        buffer.append(s);
+        return this;
+    }
+
+    private RecordBuilder padFrom(int start, int width) {
+        for (int missing = width - (buffer.length() - start); missing > 0; missing -= SPACES.length) {
+            buffer.insert(start, SPACES, 0, Math.min(missing, SPACES.length));
+        }
+        return this;
+    }
+}
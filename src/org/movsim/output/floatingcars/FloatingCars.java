@@ -29,7 +29,9 @@ import java.io.PrintWriter;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 
 import org.movsim.autogen.FloatingCarOutput;
 import org.movsim.simulator.SimulationTimeStep;
@@ -60,6 +62,9 @@ public class FloatingCars implements SimulationTimeStep {
 
     private final Map<Vehicle, PrintWriter> printWriters;
 
+    // floating cars found on the route by the last output
+    private final Set<Vehicle> onRoute = new HashSet<>();
+
     /**
      * Constructor.
      * 
@@ -91,15 +96,32 @@ public class FloatingCars implements SimulationTimeStep {
     }
 
     private void writeOutput(double simulationTime) {
+        onRoute.clear();
         for (final RoadSegment roadSegment : route) {
             for (Vehicle vehicle : roadSegment) {
                 PrintWriter writer = checkFloatingCar(vehicle);
                 if (writer != null) {
+                    onRoute.add(vehicle);
                     final Vehicle frontVeh = roadSegment.frontVehicleOnLane(vehicle);
                     FileFloatingCars.writeData(simulationTime, vehicle, frontVeh, writer);
                 }
             }
         }
+        closeLeftFloatingCars();
+    }
+
+    // a floating car does not come back once it has left the route, so its file is complete
+    private void closeLeftFloatingCars() {
+        if (onRoute.size() == printWriters.size()) {
+            return;
+        }
+        for (final Iterator<Map.Entry<Vehicle, PrintWriter>> it = printWriters.entrySet().iterator(); it.hasNext();) {
+            final Map.Entry<Vehicle, PrintWriter> entry = it.next();
+            if (!onRoute.contains(entry.getKey())) {
+                entry.getValue().close();
+                it.remove();
+            }
+        }
     }
 
     private PrintWriter checkFloatingCar(Vehicle vehicle) {
@@ -27,6 +27,7 @@ package org.movsim.output.route;
 
 import org.movsim.input.ProjectMetaData;
 import org.movsim.output.fileoutput.FileOutputBase;
+import org.movsim.utilities.Units;
 
 /**
  * The Class FileSpatioTemporal.
@@ -34,8 +35,9 @@ import org.movsim.output.fileoutput.FileOutputBase;
 class FileSpatioTemporal extends FileOutputBase {
 
     private static final String extensionFormat = ".st.route_%s.csv";
-    private static final String outputHeading = COMMENT_CHAR + "     t[s],       x[m],     v[m/s],   a[m/s^2]\n";
-    private static final String outputFormat = "%10.2f, %10.1f, %10.4f, %10.4f%n";
+    private static final String outputHeading = COMMENT_CHAR
+            + "     t[s],       x[m],     v[m/s],   a[m/s^2], rho[1/km],  flow[1/h]\n";
+    private static final String outputFormat = "%10.2f, %10.1f, %10.4f, %10.4f, %10.3f, %10.1f%n";
 
     FileSpatioTemporal(String routeLabel) {
         super(ProjectMetaData.getInstance().getOutputPath(), ProjectMetaData.getInstance().getProjectName());
@@ -49,8 +51,12 @@ class FileSpatioTemporal extends FileOutputBase {
         final double dx = spatioTemporal.getDxOutput();
         for (int i = 0; i < count; i++) {
             final double x = i * dx;
-            writer.printf(outputFormat, simulationTime, x, spatioTemporal.getAverageSpeed(i),
-                    spatioTemporal.getAverageAcceleration(i));
+            record.append(simulationTime, 10, 2).append(", ").append(x, 10, 1).append(", ")
+                    .append(spatioTemporal.getAverageSpeed(i), 10, 4).append(", ")
+                    .append(spatioTemporal.getAverageAcceleration(i), 10, 4).append(", ")
+                    .append(Units.INVM_TO_INVKM * spatioTemporal.getAverageDensity(i), 10, 3).append(", ")
+                    .append(Units.INVS_TO_INVH * spatioTemporal.getAverageFlow(i), 10, 1).newLine();
+            writeRecord(writer);
         }
         write("%n"); // block ends
     }
@@ -36,6 +36,7 @@ import org.movsim.roadmappings.RoadMapping;
 import org.movsim.simulator.MovsimConstants;
 import org.movsim.simulator.SimulationTimeStep;
 import org.movsim.simulator.roadnetwork.LaneSegment;
+import org.movsim.simulator.roadnetwork.Lanes;
 import org.movsim.simulator.roadnetwork.RoadSegment;
 import org.movsim.simulator.roadnetwork.routing.Route;
 import org.movsim.simulator.vehicles.Vehicle;
@@ -55,6 +56,11 @@ import fr.ifsttar.licit.simulator.util.units.Unit;
 public class FileTrajectories extends FileOutputBase implements SimulationTimeStep {
 
     private static final String extensionFormat = ".traj.csv";//.route_%s.csv";
+    public static final String binaryExtension = ".traj.bin";
+
+    /** Values of the format attribute: text file, binary file or both. */
+    public static final String FORMAT_CSV = "csv";
+    public static final String FORMAT_BINARY = "binary";
     private static final String outputHeading = COMMENT_CHAR
     //        + "     t[s], lane,       x[m],     v[m/s],   a[m/s^2],     gap[m],    dv[m/s], label,           id,  selfTrust, Gd, roadId, originId, infoComment, absTime, xWithOffset[m]";
     		+ "     t[s], lane,       x[m],     v[m/s],   a[m/s^2],     gap[m],    dv[m/s], label,           id,	roadId, originId, infoComment, absTime, xWithOffset[m]";
@@ -78,11 +84,42 @@ public class FileTrajectories extends FileOutputBase implements SimulationTimeSt
    /*private TravelTimesDataSet travelTimesDataSet = null;*/
     
 	private String filename;
+
+    private TrajectoryBinaryWriter binaryWriter;
+    private String binaryFilename;
+
+    // trajectories of the last time window, indexed by lane, while a chart uses them; null if no chart is open or if
+    // the chart reads the file. They are only filled by the thread writing the trajectories.
+    private SpaceTimeSpeedDataSet[] laneDataSets;
+    // true once the trajectories written before the lane data sets were requested have been added to them
+    private boolean laneDataSetsSeeded;
+    // true once the run is complete, the lane data sets are then filled by the thread asking for them
+    private boolean completed;
+    // guards laneDataSets, laneDataSetsSeeded and completed
+    private final Object laneDataSetsLock = new Object();
+    // lane data sets fed in the current output step, only used by the writing thread
+    private SpaceTimeSpeedDataSet[] fedDataSets;
+
+    // buffers for mapping the vehicles, the road mappings are shared
+    private final RoadMapping.PosTheta posTheta = new RoadMapping.PosTheta();
+    private final RoadMapping.PolygonFloat polygon = new RoadMapping.PolygonFloat(4);
+
     public void removeSpaceTimeSpeedDataSet(){
     	if(spaceTimeSpeedDataSet!=null){
     		spaceTimeSpeedDataSet.clear();
     		spaceTimeSpeedDataSet=null;
     	}
+    	final SpaceTimeSpeedDataSet[] dataSets;
+    	synchronized(laneDataSetsLock){
+    		// stop feeding the lane data sets until a chart asks for them again
+    		dataSets = laneDataSets;
+    		laneDataSets = null;
+    	}
+    	if(dataSets!=null){
+    		for (int lane = Lanes.LANE1; lane < dataSets.length; lane++) {
+    			dataSets[lane].clear();
+    		}
+    	}
     }
     /*
     public void removeTravelTimesDataSet(){
@@ -122,8 +159,67 @@ public class FileTrajectories extends FileOutputBase implements SimulationTimeSt
         logger.info("interval for output: timeStart=" + (traj.isSetStartTime() ? traj.getStartTime() : "--")
                 + ", timeEnd=" + (traj.isSetEndTime() ? traj.getEndTime() : "--"));
         this.filename = path + File.separator + baseFilename + extensionFormat;//String.format(extensionFormat, route.getName());
-        writer = createWriter(extensionFormat);//String.format(extensionFormat, route.getName()));
-        writeHeader(route);
+        if (!FORMAT_BINARY.equals(traj.getFormat())) {
+            writer = createWriter(extensionFormat);//String.format(extensionFormat, route.getName()));
+            writeHeader(route);
+        }
+        if (!FORMAT_CSV.equals(traj.getFormat())) {
+            binaryFilename = path + File.separator + baseFilename + binaryExtension;
+            binaryWriter = createBinaryWriter();
+        }
+    }
+
+    /**
+     * Adds the trajectories written so far to the lane data sets, reading the output file once for all lanes, and
+     * drops those older than the time window.
+     */
+    private void seedLaneDataSets(SpaceTimeSpeedDataSet[] dataSets) {
+        readSpaceTimeSpeedData(dataSets);
+        for (int lane = Lanes.LANE1; lane < dataSets.length; lane++) {
+            dataSets[lane].removeDataBefore(time - traj.getTimeWindow());
+        }
+    }
+
+    // largest number of lanes on the route
+    private int getLaneCount() {
+        int laneCount = 0;
+        for (final RoadSegment roadSegment : route) {
+            laneCount = Math.max(laneCount, roadSegment.laneCount());
+        }
+        return laneCount;
+    }
+
+    private TrajectoryBinaryWriter createBinaryWriter() {
+        final int laneCount = getLaneCount();
+        try {
+            logger.info("open file {} for writing", binaryFilename);
+            return new TrajectoryBinaryWriter(binaryFilename, route.getName(), route.getLength(),
+                    traj.getOffsetPosition(), laneCount, ProjectMetaData.getInstance().getTimeOffsetMillis());
+        } catch (IOException e) {
+            logger.error("cannot open file {} for writing", binaryFilename);
+            return null;
+        }
+    }
+
+    /**
+     * Completes the binary output, which is then no longer written.
+     */
+    public void close() {
+        closeBinaryWriter();
+        synchronized (laneDataSetsLock) {
+            completed = true;
+        }
+    }
+
+    private void closeBinaryWriter() {
+        if (binaryWriter != null) {
+            try {
+                binaryWriter.close();
+            } catch (IOException e) {
+                logger.error("cannot write to file {}: {}", binaryFilename, e.getMessage());
+            }
+            binaryWriter = null;
+        }
     }
     
    private void writeHeader(Route route) {
@@ -143,7 +239,7 @@ public class FileTrajectories extends FileOutputBase implements SimulationTimeSt
             }
             if ((time - lastUpdateTime + MovsimConstants.SMALL_VALUE) >= traj.getDt()) {
                 lastUpdateTime = time;
-                String formattedTime = ProjectMetaData.getInstance().getFormatedTimeWithOffset(simulationTime);
+                String formattedTime = writer == null ? null : ProjectMetaData.getInstance().getFormatedTimeWithOffset(simulationTime);
                 writeTrajectories(formattedTime);
             }
         }
@@ -170,6 +266,22 @@ public class FileTrajectories extends FileOutputBase implements SimulationTimeSt
      * @param roadSegment
      */
     private void writeTrajectories(String formattedTime) {
+        synchronized (laneDataSetsLock) {
+            // requested by a chart since the last output step: the file read does not miss nor repeat any step,
+            // as the trajectories are written by this thread
+            if (laneDataSets != null && !laneDataSetsSeeded) {
+                seedLaneDataSets(laneDataSets);
+                laneDataSetsSeeded = true;
+            }
+            fedDataSets = laneDataSets;
+        }
+        if (binaryWriter != null) {
+            try {
+                binaryWriter.beginFrame(time);
+            } catch (IOException e) {
+                binaryFailed(e);
+            }
+        }
         double positionOnRoute = 0.0;
         for (final RoadSegment roadSegment : route) {
             for (LaneSegment laneSegment : roadSegment.laneSegments()) {
@@ -210,7 +322,21 @@ public class FileTrajectories extends FileOutputBase implements SimulationTimeSt
             }
             positionOnRoute += roadSegment.roadLength();
         }
+        if (binaryWriter != null) {
+            try {
+                binaryWriter.endFrame();
+            } catch (IOException e) {
+                binaryFailed(e);
+            }
+        }
         
+        final SpaceTimeSpeedDataSet[] dataSets = fedDataSets;
+        if (dataSets != null) {
+            for (int lane = Lanes.LANE1; lane < dataSets.length; lane++) {
+                dataSets[lane].removeDataBefore(time - traj.getTimeWindow());
+                dataSets[lane].fireDataChanged();
+            }
+        }
         if(this.spaceTimeSpeedDataSet!=null)
         	this.spaceTimeSpeedDataSet.fireDataChanged();
         /*
@@ -223,15 +349,15 @@ public class FileTrajectories extends FileOutputBase implements SimulationTimeSt
     	double gd = 0.0;
     	
     	final RoadMapping meRoadMapping = roadSegment.roadMapping();
-		final RoadMapping.PolygonFloat mePolygon = meRoadMapping.mapFloat(me, 0.0);
-		final double mePositionX = mePolygon.xPoints[0];
-		final double mePositionY = mePolygon.yPoints[0];
+		meRoadMapping.mapFloat(me, posTheta, polygon);
+		final double mePositionX = polygon.xPoints[0];
+		final double mePositionY = polygon.yPoints[0];
 		
 		//for(RoadSegment segment : roadNetwork){
 			for(Vehicle vehicle : roadSegment){
 				if(vehicle!=null && vehicle.getId() != me.getId()){
 					final RoadMapping roadMapping = roadSegment.roadMapping();
-			        final RoadMapping.PolygonFloat polygon = roadMapping.mapFloat(vehicle, 0.0);
+			        roadMapping.mapFloat(vehicle, posTheta, polygon);
 			        final double positionX = polygon.xPoints[0];
 			        final double positionY = polygon.yPoints[0];
 			        
@@ -264,10 +390,30 @@ public class FileTrajectories extends FileOutputBase implements SimulationTimeSt
                 .getNetDistance(frontVehicle);
         final double dv = (frontVehicle == null || frontVehicle.type() == AgentType.OBSTACLE) ? 0 : me
                 .getRelSpeed(frontVehicle);
-        write(outputFormat, time, me.lane(), pos, me.getSpeed(), me.getAcc(), s, dv, me.getLabel(), me.getId(), //me.getTrust().getSelfTrustValue(), me.getGd(),
-                me.roadSegmentId(), me.originRoadSegmentId(), me.getInfoComment(), formattedTime,
-                pos + traj.getOffsetPosition());
+        if (binaryWriter != null) {
+            try {
+                binaryWriter.addRecord(me.getId(), me.lane(), me.getLabel(), pos, me.getSpeed(), me.getAcc(), s, dv,
+                        me.roadSegmentId(), me.originRoadSegmentId());
+            } catch (IOException e) {
+                binaryFailed(e);
+            }
+        }
+        if (writer != null) {
+            // outputFormat, without formatting every field of every vehicle by printf
+            record.append(time, 10, 2).append(", ").append(me.lane(), 4).append(", ").append(pos, 10, 1).append(", ")
+                    .append(me.getSpeed(), 10, 4).append(", ").append(me.getAcc(), 10, 5).append(", ")
+                    .append(s, 10, 2).append(", ").append(dv, 10, 6).append(",  ").append(me.getLabel()).append(", ")
+                    .append(me.getId(), 12).append(", ").append(me.roadSegmentId(), 8).append(", ")
+                    .append(me.originRoadSegmentId(), 8).append(", ").append(me.getInfoComment()).append(", ")
+                    .append(formattedTime).append(", ").append(pos + traj.getOffsetPosition(), 10, 4).newLine();
+            writeRecord(writer);
+        }
         
+        final SpaceTimeSpeedDataSet[] dataSets = fedDataSets;
+        if (dataSets != null && me.lane() >= Lanes.LANE1 && me.lane() < dataSets.length) {
+            dataSets[me.lane()].addFloatingCarData(me.getId(), time, pos,
+                    Unit.convertValueFromTo(me.getSpeed(), Unit.MetersPerSecond, Unit.KilometersPerHour));
+        }
         if(this.spaceTimeSpeedDataSet!=null && this.spaceTimeSpeedDataSet.getLane()==me.lane())
         	this.spaceTimeSpeedDataSet.addFloatingCarData(me.getId(), time, pos, Unit.convertValueFromTo(me.getSpeed(), Unit.MetersPerSecond, Unit.KilometersPerHour));
         
@@ -284,6 +430,11 @@ public class FileTrajectories extends FileOutputBase implements SimulationTimeSt
         
     }
 
+    private void binaryFailed(IOException e) {
+        logger.error("cannot write to file {}: {}", binaryFilename, e.getMessage());
+        closeBinaryWriter();
+    }
+
     
     
     
@@ -294,6 +445,29 @@ public class FileTrajectories extends FileOutputBase implements SimulationTimeSt
     
     
 	public SpaceTimeSpeedDataSet getSpaceTimeSpeedDataSet(int numLane) {
+		if(traj.getTimeWindow() > 0){
+			// filled by the writing thread, which reads the file once at its next output step and then feeds them,
+			// so neither opening the chart nor switching lanes reads the file in this thread during the run
+			final SpaceTimeSpeedDataSet[] dataSets;
+			synchronized(laneDataSetsLock){
+				if(laneDataSets == null){
+					laneDataSets = new SpaceTimeSpeedDataSet[getLaneCount() + 1];
+					for(int lane = Lanes.LANE1; lane < laneDataSets.length; lane++){
+						laneDataSets[lane] = new SpaceTimeSpeedDataSet(lane);
+					}
+					laneDataSetsSeeded = false;
+				}
+				dataSets = laneDataSets;
+				if(completed && !laneDataSetsSeeded){
+					seedLaneDataSets(dataSets);
+					laneDataSetsSeeded = true;
+				}
+			}
+			if(numLane < Lanes.LANE1 || numLane >= dataSets.length){
+				return new SpaceTimeSpeedDataSet(numLane);
+			}
+			return dataSets[numLane];
+		}
 		if(this.spaceTimeSpeedDataSet == null){
 			this.spaceTimeSpeedDataSet = this.createSpaceTimeSpeedDataSet(numLane);
 		} else if(this.spaceTimeSpeedDataSet.getLane() != numLane){
@@ -313,11 +487,87 @@ public class FileTrajectories extends FileOutputBase implements SimulationTimeSt
 	}
 	*/
 	
+	/**
+	 * Adds the floating car data of a lane, read from a binary trajectory file, to a data set.
+	 * 
+	 * @param filename
+	 *            the binary trajectory file
+	 * @param dataSet
+	 *            the data set
+	 * @param numLane
+	 *            the lane
+	 * @throws IOException
+	 */
+	public static void readSpaceTimeSpeedData(String filename, final SpaceTimeSpeedDataSet dataSet, int numLane)
+			throws IOException {
+		final TrajectoryBinaryReader reader = new TrajectoryBinaryReader(filename);
+		try {
+			reader.read(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, numLane,
+					new TrajectoryBinaryReader.Visitor() {
+						@Override
+						public void visit(TrajectoryBinaryReader.Record record) {
+							dataSet.addFloatingCarData(record.getId(), record.getTime(), record.getPosition(),
+									Unit.convertValueFromTo(record.getSpeed(), Unit.MetersPerSecond,
+											Unit.KilometersPerHour));
+						}
+					});
+		} finally {
+			reader.close();
+		}
+	}
+
 	private SpaceTimeSpeedDataSet createSpaceTimeSpeedDataSet(int numLane) {
 		
 		SpaceTimeSpeedDataSet dataSet = new SpaceTimeSpeedDataSet(numLane);
+		if (numLane >= 0) {
+			final SpaceTimeSpeedDataSet[] dataSets = new SpaceTimeSpeedDataSet[numLane + 1];
+			dataSets[numLane] = dataSet;
+			readSpaceTimeSpeedData(dataSets);
+		}
+		return dataSet;
+	}
+
+	/**
+	 * Adds the trajectories written so far to the data sets of their lanes, in a single read of the output file.
+	 * 
+	 * @param dataSets
+	 *            data sets indexed by lane, lanes without data set are skipped
+	 */
+	private void readSpaceTimeSpeedData(final SpaceTimeSpeedDataSet[] dataSets) {
+		
+		if (binaryFilename != null) {
+			try {
+				if (binaryWriter != null) {
+					binaryWriter.flush();
+				}
+				final TrajectoryBinaryReader reader = new TrajectoryBinaryReader(binaryFilename);
+				try {
+					reader.read(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, TrajectoryBinaryReader.ALL_LANES,
+							new TrajectoryBinaryReader.Visitor() {
+								@Override
+								public void visit(TrajectoryBinaryReader.Record record) {
+									final int lane = record.getLane();
+									if (lane >= 0 && lane < dataSets.length && dataSets[lane] != null) {
+										dataSets[lane].addFloatingCarData(record.getId(), record.getTime(),
+												record.getPosition(), Unit.convertValueFromTo(record.getSpeed(),
+														Unit.MetersPerSecond, Unit.KilometersPerHour));
+									}
+								}
+							});
+				} finally {
+					reader.close();
+				}
+				return;
+			} catch (IOException e) {
+				logger.error("cannot read file {}: {}", binaryFilename, e.getMessage());
+				if (writer == null) {
+					return;
+				}
+			}
+		}
 		
 		// read data from csv file and add them to current dataset		
+		flushOutput(writer);
 		
 		BufferedReader reader = FileUtils.getReader(filename);
 		
@@ -329,14 +579,15 @@ public class FileTrajectories extends FileOutputBase implements SimulationTimeSt
 			while((line=reader.readLine())!=null){
 				String[] tokens = line.split(",");
 				//System.out.println(tokens.length);
-				if(tokens.length==16){
+				// columns of outputFormat
+				if(tokens.length==14){
 					final int lane = Integer.parseInt(tokens[1].replace(" ", ""));
-					if(lane == numLane){
+					if(lane >= 0 && lane < dataSets.length && dataSets[lane] != null){
 						final int id = Integer.parseInt(tokens[8].replace(" ", ""));
 						final double time = Double.parseDouble(tokens[0].replace(" ", ""));
 						final double pos = Double.parseDouble(tokens[2].replace(" ", ""));
 						final double vel = Unit.convertValueFromTo(Double.parseDouble(tokens[3].replace(" ", "")), Unit.MetersPerSecond, Unit.KilometersPerHour);
-						dataSet.addFloatingCarData(id,time,pos,vel);
+						dataSets[lane].addFloatingCarData(id,time,pos,vel);
 					}
 				}
 			}
@@ -344,8 +595,6 @@ public class FileTrajectories extends FileOutputBase implements SimulationTimeSt
 		} catch (IOException e) {
 			e.printStackTrace();
 		} 
-			
-		return dataSet;
 	}
 	
 	/*
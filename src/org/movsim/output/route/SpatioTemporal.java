@@ -25,14 +25,14 @@
  */
 package org.movsim.output.route;
 
-import java.util.Comparator;
-import java.util.TreeSet;
+import java.util.Arrays;
 
+import org.movsim.simulator.MovsimConstants;
+import org.movsim.simulator.roadnetwork.LaneSegment;
 import org.movsim.simulator.roadnetwork.RoadNetwork;
 import org.movsim.simulator.roadnetwork.RoadSegment;
 import org.movsim.simulator.roadnetwork.routing.Route;
 import org.movsim.simulator.vehicles.Vehicle;
-import org.movsim.utilities.Tables;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,22 +40,53 @@ import fr.ifsttar.licit.simulator.agents.AgentType;
 
 /**
  * The Class SpatioTemporal.
+ * <p>
+ * The data of the vehicles on the route are gathered in primitive arrays, reused between outputs. The vehicles of a
+ * lane segment are already sorted, so the lanes are merged into increasing positions along the route and the grid is
+ * interpolated in a single sweep, in O(cells + vehicles). The interpolation is the one of
+ * {@link org.movsim.utilities.Tables#intpextp(double[], double[], double)}; of several vehicles at the same position
+ * only the first, in the order of the route and of the lanes, is kept.
+ * </p>
  */
 public class SpatioTemporal extends OutputOnRouteBase {
 
     /** The Constant LOG. */
     final static Logger logger = LoggerFactory.getLogger(SpatioTemporal.class);
 
+    // as in Tables.intpextp
+    private static final double TINY_VALUE = 1.e-10;
+
+    // fields of the data points
+    private static final int POSITION = 0;
+    private static final int SPEED = 1;
+    private static final int ACCELERATION = 2;
+    private static final int DENSITY = 3;
+    private static final int FLOW = 4;
+    private static final int FIELD_COUNT = 5;
+
+    private static final int INITIAL_CAPACITY = 256;
+
     private final double dxOutput;
     private final double dtOutput;
 
     private final double[] macroSpeed;
     private final double[] macroAcceleration;
+    private final double[] macroDensity;
+    private final double[] macroFlow;
 
     private double lastTimeOutput;
 
     private final FileSpatioTemporal fileWriter;
 
+    // data points, by field, and the buffer they are merged into
+    private double[][] points = new double[FIELD_COUNT][INITIAL_CAPACITY];
+    private double[][] merged = new double[FIELD_COUNT][INITIAL_CAPACITY];
+    private int pointCount;
+
+    // ends of the sorted runs of data points, one per lane segment
+    private int[] runEnds = new int[16];
+    private int runCount;
+
     public SpatioTemporal(double dxOut, double dtOut, RoadNetwork roadNetwork, Route route, boolean writeOutput) {
         super(roadNetwork, route);
         this.dxOutput = dxOut;
@@ -65,6 +96,8 @@ public class SpatioTemporal extends OutputOnRouteBase {
         int size = (int) (route.getLength() / dxOut) + 1;
         macroSpeed = new double[size];
         macroAcceleration = new double[size];
+        macroDensity = new double[size];
+        macroFlow = new double[size];
 
         fileWriter = writeOutput ? new FileSpatioTemporal(route.getName()) : null;
     }
@@ -85,55 +118,184 @@ public class SpatioTemporal extends OutputOnRouteBase {
      */
     private void calcData() {
 
-        TreeSet<SpatialTemporal> dataPoints = gatherData();
+        gatherData();
+        mergeRuns();
+        removeEqualPositions();
 
-        if (!dataPoints.isEmpty()) {
-            interpolateGridData(dataPoints);
+        if (pointCount > 0) {
+            interpolateGridData();
         }
     }
 
-    private void interpolateGridData(TreeSet<SpatialTemporal> dataPoints) {
-        int size = dataPoints.size();
-        final double[] xMicro = new double[size];
-        final double[] vMicro = new double[size];
-        final double[] aMicro = new double[size];
-        int j = 0;
-        for (SpatialTemporal dp : dataPoints) {
-            // LOG.debug("data point for interpolation={}", dp.toString());
-            vMicro[j] = dp.speed;
-            xMicro[j] = dp.position;
-            aMicro[j] = dp.acceleration;
-            ++j;
-        }
-
-        for (int i = 0; i < macroSpeed.length; ++i) {
-            final double x = i * dxOutput;
-            macroSpeed[i] = Tables.intpextp(xMicro, vMicro, x);
-            macroAcceleration[i] = Tables.intpextp(xMicro, aMicro, x);
+    /**
+     * Interpolates the grid from the data points, sorted by increasing positions, with the grid positions.
+     */
+    private void interpolateGridData() {
+        final double[] x = points[POSITION];
+        final int n = pointCount;
+        // first data point with a position larger than the grid position, or the last one
+        int i = 0;
+        for (int cell = 0; cell < macroSpeed.length; ++cell) {
+            final double pos = cell * dxOutput;
+            while (x[i] <= pos && i < n - 1) {
+                i++;
+            }
+            if (i == 0 || (i == n - 1 && pos > x[i]) || Math.abs(x[i] - x[i - 1]) < TINY_VALUE) {
+                // extrapolation to the left or right side, or jump
+                final int j = (i == n - 1 && pos > x[i]) ? n - 1 : i;
+                macroSpeed[cell] = points[SPEED][j];
+                macroAcceleration[cell] = points[ACCELERATION][j];
+                macroDensity[cell] = points[DENSITY][j];
+                macroFlow[cell] = points[FLOW][j];
+            } else {
+                macroSpeed[cell] = interpolate(points[SPEED], x, i, pos);
+                macroAcceleration[cell] = interpolate(points[ACCELERATION], x, i, pos);
+                macroDensity[cell] = interpolate(points[DENSITY], x, i, pos);
+                macroFlow[cell] = interpolate(points[FLOW], x, i, pos);
+            }
         }
     }
 
-    /** Returns sorted set with increasing vehicle positions along the route. Not efficient but robust. */
-    private TreeSet<SpatialTemporal> gatherData() {
-        TreeSet<SpatialTemporal> dataPoints = new TreeSet<>(new Comparator<SpatialTemporal>() {
-            @Override
-            public int compare(SpatialTemporal o1, SpatialTemporal o2) {
-                return (new Double(o1.position)).compareTo(new Double(o2.position));
-            }
-        });
+    private static double interpolate(double[] y, double[] x, int i, double pos) {
+        return y[i - 1] + (y[i] - y[i - 1]) * (pos - x[i - 1]) / (x[i] - x[i - 1]);
+    }
 
+    /**
+     * Gathers the data of the vehicles on the route, one run of increasing positions per lane segment.
+     */
+    private void gatherData() {
+        pointCount = 0;
+        runCount = 0;
         double positionOnRoute = 0;
         for (final RoadSegment roadSegment : route) {
-            for (Vehicle veh : roadSegment) {
-                if (veh.type() == AgentType.OBSTACLE) {
-                    continue;
+            for (final LaneSegment laneSegment : roadSegment.laneSegments()) {
+                final int runStart = pointCount;
+                // vehicles are sorted by decreasing position
+                for (int index = laneSegment.vehicleCount() - 1; index >= 0; index--) {
+                    final Vehicle veh = laneSegment.getVehicle(index);
+                    if (veh.type() == AgentType.OBSTACLE) {
+                        continue;
+                    }
+                    final Vehicle frontVehicle = index > 0 ? laneSegment.getVehicle(index - 1) : laneSegment
+                            .frontVehicle(veh.getFrontPosition());
+                    addPoint(positionOnRoute + veh.getFrontPosition(), veh.getSpeed(), veh.getAcc(),
+                            localDensity(veh, frontVehicle));
+                }
+                if (pointCount > runStart) {
+                    sortRun(runStart, pointCount);
+                    addRun();
                 }
-                double position = positionOnRoute + veh.getFrontPosition();
-                dataPoints.add(new SpatialTemporal(position, veh.getSpeed(), veh.getLength(), veh.getAcc()));
             }
             positionOnRoute += roadSegment.roadLength();
         }
-        return dataPoints;
+    }
+
+    /**
+     * Returns the local density in the lane of a vehicle, the inverse of the brut distance to its front vehicle, at
+     * most the inverse of the vehicle length.
+     */
+    private static double localDensity(Vehicle veh, Vehicle frontVehicle) {
+        final double brutDistance = veh.getBrutDistance(frontVehicle);
+        if (brutDistance >= MovsimConstants.GAP_INFINITY) {
+            return 0;
+        }
+        return 1 / Math.max(brutDistance, veh.getLength());
+    }
+
+    private void addPoint(double position, double speed, double acceleration, double density) {
+        if (pointCount == points[POSITION].length) {
+            final int capacity = 2 * pointCount;
+            for (int field = 0; field < FIELD_COUNT; field++) {
+                points[field] = Arrays.copyOf(points[field], capacity);
+                merged[field] = new double[capacity];
+            }
+        }
+        points[POSITION][pointCount] = position;
+        points[SPEED][pointCount] = speed;
+        points[ACCELERATION][pointCount] = acceleration;
+        points[DENSITY][pointCount] = density;
+        points[FLOW][pointCount] = density * speed;
+        pointCount++;
+    }
+
+    private void addRun() {
+        if (runCount == runEnds.length) {
+            runEnds = Arrays.copyOf(runEnds, 2 * runCount);
+        }
+        runEnds[runCount++] = pointCount;
+    }
+
+    /**
+     * Sorts a run by insertion, stable and fast for the almost sorted vehicles of a lane segment.
+     */
+    private void sortRun(int from, int to) {
+        final double[] x = points[POSITION];
+        for (int i = from + 1; i < to; i++) {
+            if (x[i] < x[i - 1]) {
+                int j = i;
+                while (j > from && x[j] < x[j - 1]) {
+                    for (int field = 0; field < FIELD_COUNT; field++) {
+                        final double[] values = points[field];
+                        final double tmp = values[j];
+                        values[j] = values[j - 1];
+                        values[j - 1] = tmp;
+                    }
+                    j--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Merges the runs pairwise until the data points are sorted, keeping the order of the route and of the lanes for
+     * equal positions.
+     */
+    private void mergeRuns() {
+        while (runCount > 1) {
+            int newRunCount = 0;
+            int start = 0;
+            for (int run = 0; run < runCount; run += 2) {
+                final int mid = runEnds[run];
+                final int end = run + 1 < runCount ? runEnds[run + 1] : mid;
+                merge(start, mid, end);
+                runEnds[newRunCount++] = end;
+                start = end;
+            }
+            runCount = newRunCount;
+            final double[][] tmp = points;
+            points = merged;
+            merged = tmp;
+        }
+    }
+
+    // merges the sorted ranges [start, mid) and [mid, end) of the points into the same range of the merge buffer
+    private void merge(int start, int mid, int end) {
+        final double[] x = points[POSITION];
+        int left = start;
+        int right = mid;
+        for (int k = start; k < end; k++) {
+            final int from = (right >= end || (left < mid && x[left] <= x[right])) ? left++ : right++;
+            for (int field = 0; field < FIELD_COUNT; field++) {
+                merged[field][k] = points[field][from];
+            }
+        }
+    }
+
+    private void removeEqualPositions() {
+        final double[] x = points[POSITION];
+        int count = 0;
+        for (int i = 0; i < pointCount; i++) {
+            if (count > 0 && x[i] == x[count - 1]) {
+                continue;
+            }
+            if (count != i) {
+                for (int field = 0; field < FIELD_COUNT; field++) {
+                    points[field][count] = points[field][i];
+                }
+            }
+            count++;
+        }
+        pointCount = count;
     }
 
     /**
@@ -177,35 +339,30 @@ public class SpatioTemporal extends OutputOnRouteBase {
     }
 
     /**
-     * Gets the time offset.
+     * Gets the average local density per lane.
      * 
-     * @return the time offset
+     * @return the density in vehicles per meter
      */
-    public double getTimeOffset() {
-        return lastTimeOutput;
+    public double getAverageDensity(int index) {
+        return macroDensity[index];
     }
 
     /**
-     * convenience class of one spatio-temporal data point
+     * Gets the average local flow per lane.
+     * 
+     * @return the flow in vehicles per second
      */
-    final class SpatialTemporal {
-        final double position;
-        final double speed;
-        final double length;
-        final double acceleration;
-
-        SpatialTemporal(double position, double speed, double length, double acceleration) {
-            this.position = position;
-            this.speed = speed;
-            this.length = length;
-            this.acceleration = acceleration;
-        }
+    public double getAverageFlow(int index) {
+        return macroFlow[index];
+    }
 
-        @Override
-        public String toString() {
-            return "SpatialTemporal [position=" + position + ", speed=" + speed + ", length=" + length
-                    + ", acceleration=" + acceleration + "]";
-        }
+    /**
+     * Gets the time offset.
+     * 
+     * @return the time offset
+     */
+    public double getTimeOffset() {
+        return lastTimeOutput;
     }
 
 }
@@ -0,0 +1,352 @@
+/*
+ * Copyright (C) 2010, 2011, 2012 by Arne Kesting, Martin Treiber, Ralph Germ, Martin Budden
+ * <movsim.org@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ *
+ * This file is part of
+ *
+ * MovSim - the multi-model open-source vehicular-traffic simulator.
+ *
+ * MovSim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MovSim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ *
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.output.route;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Reads a file of the binary trajectory format written by {@link TrajectoryBinaryWriter}.
+ * <p>
+ * The file is memory-mapped in windows of {@link #WINDOW_SIZE} bytes, so files larger than the address space of a
+ * single mapping can be read. Only the frames within the requested time range are mapped, found with the index of the
+ * frames, and only the lane of the records is read to filter them. A file still being written has no index yet: the
+ * headers of its complete frames are then walked once when the file is opened.
+ * </p>
+ */
+public class TrajectoryBinaryReader implements Closeable {
+
+    /** Lane filter accepting all lanes. */
+    public static final int ALL_LANES = 0;
+
+    /** Size of the mapped windows in bytes. */
+    public static final long WINDOW_SIZE = 256L << 20;
+
+    // offsets of the fields in a record
+    private static final int ID = 0;
+    private static final int LANE = 8;
+    private static final int LABEL = 10;
+    private static final int POSITION = 12;
+    private static final int SPEED = 16;
+    private static final int ACCELERATION = 20;
+    private static final int GAP = 24;
+    private static final int SPEED_DIFFERENCE = 28;
+    private static final int ROAD_ID = 32;
+    private static final int ORIGIN_ROAD_ID = 36;
+
+    /**
+     * Receives the records read.
+     */
+    public interface Visitor {
+        /**
+         * @param record
+         *            the current record, only valid during the call
+         */
+        void visit(Record record);
+    }
+
+    /**
+     * Cursor on the current record.
+     */
+    public final class Record {
+        private ByteBuffer buffer;
+        private int base;
+        private double time;
+
+        public double getTime() {
+            return time;
+        }
+
+        public long getId() {
+            return buffer.getLong(base + ID);
+        }
+
+        public int getLane() {
+            return buffer.getShort(base + LANE);
+        }
+
+        public String getLabel() {
+            return TrajectoryBinaryReader.this.getLabel(buffer.getShort(base + LABEL));
+        }
+
+        /** Position of the vehicle front on the route, without the position offset. */
+        public double getPosition() {
+            return buffer.getFloat(base + POSITION);
+        }
+
+        public double getSpeed() {
+            return buffer.getFloat(base + SPEED);
+        }
+
+        public double getAcceleration() {
+            return buffer.getFloat(base + ACCELERATION);
+        }
+
+        public double getGap() {
+            return buffer.getFloat(base + GAP);
+        }
+
+        public double getSpeedDifference() {
+            return buffer.getFloat(base + SPEED_DIFFERENCE);
+        }
+
+        public int getRoadId() {
+            return buffer.getInt(base + ROAD_ID);
+        }
+
+        public int getOriginRoadId() {
+            return buffer.getInt(base + ORIGIN_ROAD_ID);
+        }
+    }
+
+    private final String filename;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+
+    private final int recordSize;
+    private final double startTime;
+    private final double endTime;
+    private final long recordCount;
+    private final String routeName;
+    private final double routeLength;
+    private final double offsetPosition;
+    private final int laneCount;
+    private final long timeOffsetMillis;
+
+    private final double[] frameTimes;
+    private final long[] frameOffsets;
+    private final String[] labels;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private final long length;
+
+    /**
+     * Opens a file.
+     *
+     * @param filename
+     *            the filename
+     * @throws IOException
+     *             if the file cannot be read or is not a binary trajectory file
+     */
+    public TrajectoryBinaryReader(String filename) throws IOException {
+        this.filename = filename;
+        this.file = new RandomAccessFile(filename, "r");
+        this.channel = file.getChannel();
+        try {
+            final ByteBuffer header = read(0, TrajectoryBinaryWriter.FIXED_HEADER_SIZE);
+            if (header.getInt() != TrajectoryBinaryWriter.MAGIC) {
+                throw new IOException("not a binary trajectory file: " + filename);
+            }
+            final short version = header.getShort();
+            if (version != TrajectoryBinaryWriter.VERSION) {
+                throw new IOException("unsupported version " + version + " of binary trajectory file: " + filename);
+            }
+            recordSize = header.getShort();
+            final int headerSize = header.getInt();
+            final double start = header.getDouble();
+            final double end = header.getDouble();
+            final int frameCount = header.getInt();
+            recordCount = header.getLong();
+            final long indexOffset = header.getLong();
+            length = Math.min(header.getLong(), channel.size());
+
+            final ByteBuffer route = read(TrajectoryBinaryWriter.FIXED_HEADER_SIZE, headerSize
+                    - TrajectoryBinaryWriter.FIXED_HEADER_SIZE);
+            final byte[] name = new byte[route.getShort()];
+            route.get(name);
+            routeName = new String(name, TrajectoryBinaryWriter.UTF8);
+            routeLength = route.getDouble();
+            offsetPosition = route.getDouble();
+            laneCount = route.getInt();
+            timeOffsetMillis = route.getLong();
+
+            frameTimes = new double[frameCount];
+            frameOffsets = new long[frameCount];
+            if (indexOffset != 0) {
+                final ByteBuffer index = read(indexOffset, (int) (channel.size() - indexOffset));
+                index.getInt();
+                for (int i = 0; i < frameCount; i++) {
+                    frameTimes[i] = index.getDouble();
+                    frameOffsets[i] = index.getLong();
+                }
+                labels = new String[index.getInt()];
+                for (int i = 0; i < labels.length; i++) {
+                    final byte[] label = new byte[index.getShort()];
+                    index.get(label);
+                    labels[i] = new String(label, TrajectoryBinaryWriter.UTF8);
+                }
+            } else {
+                long offset = headerSize;
+                for (int i = 0; i < frameCount; i++) {
+                    final ByteBuffer frame = map(offset, 12);
+                    final int base = (int) (offset - windowStart);
+                    frameTimes[i] = frame.getDouble(base);
+                    frameOffsets[i] = offset;
+                    offset += 12 + (long) frame.getInt(base + 8) * recordSize;
+                }
+                labels = new String[0];
+            }
+            startTime = frameCount == 0 ? start : frameTimes[0];
+            endTime = frameCount == 0 ? end : frameTimes[frameCount - 1];
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        } catch (RuntimeException e) {
+            file.close();
+            throw new IOException("corrupt binary trajectory file: " + filename, e);
+        }
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public String getRouteName() {
+        return routeName;
+    }
+
+    public double getRouteLength() {
+        return routeLength;
+    }
+
+    public double getOffsetPosition() {
+        return offsetPosition;
+    }
+
+    public int getLaneCount() {
+        return laneCount;
+    }
+
+    public long getTimeOffsetMillis() {
+        return timeOffsetMillis;
+    }
+
+    public double getStartTime() {
+        return startTime;
+    }
+
+    public double getEndTime() {
+        return endTime;
+    }
+
+    public int getFrameCount() {
+        return frameTimes.length;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return the label, or an empty string if the file was not closed by its writer
+     */
+    public String getLabel(int index) {
+        return index >= 0 && index < labels.length ? labels[index] : "";
+    }
+
+    /**
+     * Reads all records.
+     */
+    public void read(Visitor visitor) throws IOException {
+        read(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, ALL_LANES, visitor);
+    }
+
+    /**
+     * Reads the records of a lane in a time range.
+     *
+     * @param fromTime
+     *            first time, included
+     * @param toTime
+     *            last time, included
+     * @param lane
+     *            the lane, or {@link #ALL_LANES}
+     * @param visitor
+     *            receives the records, in the order of the file
+     */
+    public void read(double fromTime, double toTime, int lane, Visitor visitor) throws IOException {
+        final Record record = new Record();
+        int i = Arrays.binarySearch(frameTimes, fromTime);
+        if (i < 0) {
+            i = -i - 1;
+        } else {
+            // first of equal times
+            while (i > 0 && frameTimes[i - 1] == fromTime) {
+                i--;
+            }
+        }
+        for (; i < frameTimes.length && frameTimes[i] <= toTime; i++) {
+            ByteBuffer frame = map(frameOffsets[i], 12);
+            final int count = frame.getInt((int) (frameOffsets[i] - windowStart) + 8);
+            final long recordsOffset = frameOffsets[i] + 12;
+            frame = map(recordsOffset, count * recordSize);
+            record.buffer = frame;
+            record.time = frameTimes[i];
+            final int first = (int) (recordsOffset - windowStart);
+            for (int j = 0; j < count; j++) {
+                record.base = first + j * recordSize;
+                if (lane == ALL_LANES || frame.getShort(record.base + LANE) == lane) {
+                    visitor.visit(record);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        file.close();
+    }
+
+    // buffer of the window containing the range, to be accessed at the position minus windowStart
+    private ByteBuffer map(long position, int size) throws IOException {
+        if (position + size > length) {
+            throw new IOException("truncated binary trajectory file: " + filename);
+        }
+        if (window == null || position < windowStart || position + size > windowStart + window.capacity()) {
+            final long mapped = Math.min(Math.max(WINDOW_SIZE, size), length - position);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, mapped);
+            windowStart = position;
+        }
+        return window;
+    }
+
+    private ByteBuffer read(long position, int size) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("truncated binary trajectory file: " + filename);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2010, 2011, 2012 by Arne Kesting, Martin Treiber, Ralph Germ, Martin Budden
+ * <movsim.org@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ *
+ * This file is part of
+ *
+ * MovSim - the multi-model open-source vehicular-traffic simulator.
+ *
+ * MovSim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MovSim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ *
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.output.route;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes trajectories in the binary trajectory format (<code>.traj.bin</code>).
+ * <p>
+ * The file starts with a header of fixed size holding the time range, the counts and the length of the complete
+ * frames, followed by the route name, the route length, the position offset, the number of lanes and the time offset.
+ * The trajectories follow as frames, one per output time: the time, the number of records and the records. A record
+ * has a fixed size of {@link #RECORD_SIZE} bytes: id, lane, label index, position on the route, speed, acceleration,
+ * gap, speed difference, road id and origin road id. The index of the frames and the table of the labels are appended
+ * when the file is closed. All values are big-endian.
+ * </p>
+ * <p>
+ * The header is updated by {@link #flush()}, so the file can be read while it is written: a reader only considers the
+ * frames within the complete length.
+ * </p>
+ * <p>
+ * The info comment and the formatted absolute time of the text output are not stored, the latter can be recomputed
+ * from the time offset.
+ * </p>
+ *
+ * @see TrajectoryBinaryReader
+ */
+public class TrajectoryBinaryWriter implements Closeable {
+
+    public static final int MAGIC = 0x4D54524A; // "MTRJ"
+    public static final short VERSION = 1;
+
+    /** Size of a record in bytes. */
+    public static final int RECORD_SIZE = 40;
+
+    // offsets of the fixed header fields
+    static final int HEADER_SIZE_OFFSET = 8;
+    static final int START_TIME_OFFSET = 12;
+    static final int END_TIME_OFFSET = 20;
+    static final int FRAME_COUNT_OFFSET = 28;
+    static final int RECORD_COUNT_OFFSET = 32;
+    static final int INDEX_OFFSET_OFFSET = 40;
+    static final int COMPLETE_LENGTH_OFFSET = 48;
+    static final int FIXED_HEADER_SIZE = 56;
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final String filename;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    // position in the file of the first byte of the buffer
+    private long bufferPosition;
+
+    private final List<Double> frameTimes = new ArrayList<Double>();
+    private final List<Long> frameOffsets = new ArrayList<Long>();
+    private final Map<String, Integer> labelIndexes = new HashMap<String, Integer>();
+    private final List<String> labels = new ArrayList<String>();
+
+    private double startTime = Double.NaN;
+    private double endTime = Double.NaN;
+    private long recordCount;
+
+    // length and counts of the complete frames
+    private long completeLength;
+    private int completeFrameCount;
+    private long completeRecordCount;
+
+    // position of the record count of the current frame, -1 outside a frame
+    private long frameCountPosition = -1;
+    private int frameRecordCount;
+    private boolean closed;
+
+    /**
+     * Creates the file and writes its header.
+     *
+     * @param filename
+     *            the filename
+     * @param routeName
+     *            name of the route
+     * @param routeLength
+     *            length of the route
+     * @param offsetPosition
+     *            position offset of the route
+     * @param laneCount
+     *            largest number of lanes on the route
+     * @param timeOffsetMillis
+     *            absolute time of the simulation start
+     */
+    public TrajectoryBinaryWriter(String filename, String routeName, double routeLength, double offsetPosition,
+            int laneCount, long timeOffsetMillis) throws IOException {
+        this.filename = filename;
+        this.file = new RandomAccessFile(filename, "rw");
+        file.setLength(0);
+        this.channel = file.getChannel();
+        final byte[] name = routeName.getBytes(UTF8);
+        final int headerSize = FIXED_HEADER_SIZE + 2 + name.length + 8 + 8 + 4 + 8;
+        buffer.putInt(MAGIC).putShort(VERSION).putShort((short) RECORD_SIZE).putInt(headerSize);
+        buffer.putDouble(startTime).putDouble(endTime).putInt(0).putLong(0).putLong(0).putLong(headerSize);
+        buffer.putShort((short) name.length).put(name);
+        buffer.putDouble(routeLength).putDouble(offsetPosition).putInt(laneCount).putLong(timeOffsetMillis);
+        completeLength = headerSize;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    /**
+     * Starts the frame of an output time.
+     */
+    public synchronized void beginFrame(double time) throws IOException {
+        endFrame();
+        ensureSpace(12);
+        frameTimes.add(time);
+        frameOffsets.add(position());
+        frameCountPosition = position() + 8;
+        frameRecordCount = 0;
+        buffer.putDouble(time).putInt(0);
+        if (Double.isNaN(startTime)) {
+            startTime = time;
+        }
+    }
+
+    /**
+     * Adds a record to the current frame.
+     */
+    public synchronized void addRecord(long id, int lane, String label, double position, double speed,
+            double acceleration, double gap, double speedDifference, int roadId, int originRoadId) throws IOException {
+        if (frameCountPosition < 0) {
+            throw new IllegalStateException("record outside a frame");
+        }
+        ensureSpace(RECORD_SIZE);
+        buffer.putLong(id).putShort((short) lane).putShort((short) labelIndex(label));
+        buffer.putFloat((float) position).putFloat((float) speed).putFloat((float) acceleration)
+                .putFloat((float) gap).putFloat((float) speedDifference);
+        buffer.putInt(roadId).putInt(originRoadId);
+        frameRecordCount++;
+        recordCount++;
+    }
+
+    /**
+     * Completes the current frame, if any.
+     */
+    public synchronized void endFrame() throws IOException {
+        if (frameCountPosition < 0) {
+            return;
+        }
+        putInt(frameCountPosition, frameRecordCount);
+        frameCountPosition = -1;
+        endTime = frameTimes.get(frameTimes.size() - 1);
+        completeLength = position();
+        completeFrameCount = frameTimes.size();
+        completeRecordCount = recordCount;
+    }
+
+    /**
+     * Writes the complete frames to the file and updates the header, for instance before reading the file. The frame
+     * being written, if any, is continued.
+     */
+    public synchronized void flush() throws IOException {
+        if (closed) {
+            return;
+        }
+        writeBuffer();
+        writeHeader(0);
+    }
+
+    /**
+     * Appends the index of the frames and the labels, and completes the header.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            endFrame();
+            final long indexOffset = position();
+            ensureSpace(4);
+            buffer.putInt(frameTimes.size());
+            for (int i = 0; i < frameTimes.size(); i++) {
+                ensureSpace(16);
+                buffer.putDouble(frameTimes.get(i)).putLong(frameOffsets.get(i));
+            }
+            ensureSpace(4);
+            buffer.putInt(labels.size());
+            for (final String label : labels) {
+                final byte[] bytes = label.getBytes(UTF8);
+                ensureSpace(2 + bytes.length);
+                buffer.putShort((short) bytes.length).put(bytes);
+            }
+            writeBuffer();
+            writeHeader(indexOffset);
+        } finally {
+            file.close();
+        }
+    }
+
+    private void writeHeader(long indexOffset) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER_SIZE - START_TIME_OFFSET);
+        header.putDouble(startTime).putDouble(endTime).putInt(completeFrameCount).putLong(completeRecordCount)
+                .putLong(indexOffset).putLong(completeLength);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header, START_TIME_OFFSET + header.position());
+        }
+    }
+
+    private int labelIndex(String label) {
+        final String key = label == null ? "null" : label;
+        Integer index = labelIndexes.get(key);
+        if (index == null) {
+            index = labels.size();
+            labelIndexes.put(key, index);
+            labels.add(key);
+        }
+        return index;
+    }
+
+    private long position() {
+        return bufferPosition + buffer.position();
+    }
+
+    private void ensureSpace(int size) throws IOException {
+        if (buffer.remaining() < size) {
+            writeBuffer();
+        }
+    }
+
+    // patches an int, in the buffer or already in the file
+    private void putInt(long position, int value) throws IOException {
+        if (position >= bufferPosition) {
+            buffer.putInt((int) (position - bufferPosition), value);
+        } else {
+            final ByteBuffer b = ByteBuffer.allocate(4);
+            b.putInt(value).flip();
+            channel.write(b, position);
+        }
+    }
+
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            bufferPosition += channel.write(buffer, bufferPosition);
+        }
+        buffer.clear();
+    }
+}
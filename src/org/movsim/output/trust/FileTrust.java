@@ -25,6 +25,8 @@
  */
 package org.movsim.output.trust;
 
+import gnu.trove.procedure.TLongObjectProcedure;
+
 import org.movsim.autogen.Trusts;
 import org.movsim.input.ProjectMetaData;
 import org.movsim.output.fileoutput.FileOutputBase;
@@ -41,6 +43,7 @@ import com.google.common.base.Preconditions;
 
 import fr.ifsttar.licit.simulator.agents.AgentType;
 import fr.ifsttar.licit.simulator.agents.trust.representation.Trust;
+import fr.ifsttar.licit.simulator.agents.trust.representation.TrustValue;
 
 /**
  * The Class FileTrust.
@@ -187,10 +190,8 @@ public class FileTrust extends FileOutputBase implements SimulationTimeStep {
        
        if(trust!=null){
     	   //System.out.println(trust.getKeys().size());
-	       for(Long id : trust.getKeys()){
-	    	   if(id != vehicle.getId()) // do not write selfTrust here
-	    	   write(outputFormat, time, vehicle.getId(), id,trust.getTrustValue(id).getValue());
-	       }
+	       trusterId = vehicle.getId();
+	       trust.forEachTrustValue(writeTrustValue);
 	       
 	       //if(trust.getKeys().size()>1){
 	    	//   System.out.println("vehicle no : " + vehicle.getId() + " has " + trust.getKeys().size() + " trusted" );
@@ -198,6 +199,28 @@ public class FileTrust extends FileOutputBase implements SimulationTimeStep {
        }
 
     }
+
+    // id of the vehicle whose trust values are written by writeTrustValue
+    private long trusterId;
+
+    private final TLongObjectProcedure<TrustValue> writeTrustValue = new TLongObjectProcedure<TrustValue>() {
+        @Override
+        public boolean execute(long id, TrustValue trustValue) {
+            if (id != trusterId) { // do not write selfTrust here
+                writeTrustValue(trusterId, id, trustValue.getValue());
+            }
+            return true;
+        }
+    };
+
+    /**
+     * Writes one line of outputFormat.
+     */
+    private void writeTrustValue(long trusterId, long trustedId, double value) {
+        record.append(time, 10, 2).append(", ").append(trusterId, 12).append(", ").append(trustedId, 12)
+                .append(", ").append(value, 1, 10).newLine();
+        writeRecord(writer);
+    }
    
     
 }
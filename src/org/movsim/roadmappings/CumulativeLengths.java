@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2010, 2011, 2012 by Arne Kesting, Martin Treiber, Ralph Germ, Martin Budden
+ * <movsim.org@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSim - the multi-model open-source vehicular-traffic simulator.
+ * 
+ * MovSim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+package org.movsim.roadmappings;
+
+import java.util.List;
+
+/**
+ * End positions of the consecutive road mappings of a composite road mapping, for finding the road mapping of a
+ * position by binary search instead of subtracting the lengths one by one.
+ */
+final class CumulativeLengths {
+
+    // ends[i] is the sum of the lengths of the road mappings 0 to i
+    private final double[] ends;
+
+    CumulativeLengths(List<? extends RoadMapping> roadMappings) {
+        ends = new double[roadMappings.size()];
+        double end = 0.0;
+        for (int i = 0; i < ends.length; ++i) {
+            end += roadMappings.get(i).roadLength();
+            ends[i] = end;
+        }
+    }
+
+    int size() {
+        return ends.length;
+    }
+
+    /**
+     * @return the position of the start of a road mapping
+     */
+    double start(int index) {
+        return index == 0 ? 0.0 : ends[index - 1];
+    }
+
+    /**
+     * @return the length of a road mapping
+     */
+    double length(int index) {
+        return ends[index] - start(index);
+    }
+
+    /**
+     * Returns the first road mapping whose end is at or after a position, or the last one if the position is past the
+     * end.
+     * 
+     * @param roadPos
+     *            the position
+     * @param cursor
+     *            the cursor of the caller, checked first and updated, or null
+     * @return the index of the road mapping
+     */
+    int indexOf(double roadPos, RoadMapping.Cursor cursor) {
+        if (cursor == null) {
+            return search(roadPos);
+        }
+        final int hint = cursor.index;
+        int index;
+        if (contains(hint, roadPos)) {
+            index = hint;
+        } else if (contains(hint + 1, roadPos)) {
+            index = hint + 1;
+        } else if (contains(hint - 1, roadPos)) {
+            index = hint - 1;
+        } else {
+            index = search(roadPos);
+        }
+        cursor.index = index;
+        return index;
+    }
+
+    private boolean contains(int index, double roadPos) {
+        final int last = ends.length - 1;
+        return index >= 0 && index <= last && (index == 0 || roadPos > ends[index - 1])
+                && (index == last || roadPos <= ends[index]);
+    }
+
+    private int search(double roadPos) {
+        int low = 0;
+        int high = ends.length - 1;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (roadPos <= ends[mid]) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+}
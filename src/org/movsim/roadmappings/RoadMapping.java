@@ -36,17 +36,53 @@ import fr.ifsttar.licit.simulator.infrastructure.RoadSideUnit;
 /**
  * A RoadMapping maps a logical road position (given by a lane and a position on a road segment) onto a physical
  * position, that is an x,y coordinate (given in meters).
+ * <p>
+ * The methods taking a caller-provided {@link PosTheta} or {@link PolygonFloat} do not modify the road mapping and may
+ * be called from several threads. The other mapping methods return an instance shared by the road mapping.
+ * </p>
  */
 public abstract class RoadMapping {
 
     /**
+     * Maps a position on the road onto a position and direction in real space, written into the given posTheta.
      * 
      * @param roadPos
      * @param lateralOffset
      *            offset from center of road, used mainly for drawing roadlines and road edges
-     * @return a PosTheta object giving position and direction
+     * @param posTheta
+     *            receives the position and direction
+     * @return posTheta
      */
-    public abstract RoadMapping.PosTheta map(double roadPos, double lateralOffset);
+    public abstract RoadMapping.PosTheta map(double roadPos, double lateralOffset, RoadMapping.PosTheta posTheta);
+
+    /**
+     * 
+     * @param roadPos
+     * @param lateralOffset
+     *            offset from center of road, used mainly for drawing roadlines and road edges
+     * @return a PosTheta object giving position and direction, shared by the road mapping
+     */
+    public RoadMapping.PosTheta map(double roadPos, double lateralOffset) {
+        return map(roadPos, lateralOffset, posTheta);
+    }
+
+    /**
+     * Maps a position on the road like {@link #map(double, double, PosTheta)}, starting the lookup of a composite road
+     * mapping at the cursor, which is faster when a caller maps increasing or decreasing positions.
+     * 
+     * @param roadPos
+     * @param lateralOffset
+     *            offset from center of road, used mainly for drawing roadlines and road edges
+     * @param posTheta
+     *            receives the position and direction
+     * @param cursor
+     *            the cursor of the caller, updated
+     * @return posTheta
+     */
+    public RoadMapping.PosTheta map(double roadPos, double lateralOffset, RoadMapping.PosTheta posTheta,
+            RoadMapping.Cursor cursor) {
+        return map(roadPos, lateralOffset, posTheta);
+    }
 
     /**
      * Polygon with integer coordinates.
@@ -146,6 +182,21 @@ public abstract class RoadMapping {
         }
     }
 
+    /**
+     * Remembers the road mapping found by the last lookup of a caller in a composite road mapping, so that the next
+     * lookup of a nearby position does not search again. A cursor belongs to a single caller and thread.
+     */
+    public static class Cursor {
+        int index;
+
+        /**
+         * Restarts the lookups at the start of the road mapping.
+         */
+        public void reset() {
+            index = 0;
+        }
+    }
+
     // Immutable Properties
     protected final int laneCount;
     protected double laneWidth;
@@ -478,23 +529,37 @@ public abstract class RoadMapping {
     }
 
     public RoadMapping.PolygonFloat mapFloat(RoadMapping.PosTheta posTheta, double length, double width) {
+        return mapFloat(posTheta, length, width, polygonFloat);
+    }
 
+    /**
+     * Writes the corners of a rectangle centered on posTheta into the given polygon.
+     * 
+     * @param posTheta
+     * @param length
+     * @param width
+     * @param polygon
+     *            receives the corners, front right, front left, back left and back right
+     * @return polygon
+     */
+    public RoadMapping.PolygonFloat mapFloat(RoadMapping.PosTheta posTheta, double length, double width,
+            RoadMapping.PolygonFloat polygon) {
         final double lca = length * posTheta.cosTheta;
         final double wsa = width * posTheta.sinTheta;
         final double xbr = posTheta.x - 0.5 * (lca - wsa);
-        polygonFloat.xPoints[0] = (float) (xbr + lca); // front right
-        polygonFloat.xPoints[1] = (float) (xbr + lca - wsa); // front left
-        polygonFloat.xPoints[2] = (float) (xbr - wsa); // back left
-        polygonFloat.xPoints[3] = (float) xbr; // back right
+        polygon.xPoints[0] = (float) (xbr + lca); // front right
+        polygon.xPoints[1] = (float) (xbr + lca - wsa); // front left
+        polygon.xPoints[2] = (float) (xbr - wsa); // back left
+        polygon.xPoints[3] = (float) xbr; // back right
 
         final double lsa = length * posTheta.sinTheta;
         final double wca = width * posTheta.cosTheta;
         final double ybr = posTheta.y + 0.5 * (lsa + wca);
-        polygonFloat.yPoints[0] = (float) (ybr - lsa); // front right
-        polygonFloat.yPoints[1] = (float) (ybr - wca - lsa); // front left
-        polygonFloat.yPoints[2] = (float) (ybr - wca); // back left
-        polygonFloat.yPoints[3] = (float) ybr; // back right
-        return polygonFloat;
+        polygon.yPoints[0] = (float) (ybr - lsa); // front right
+        polygon.yPoints[1] = (float) (ybr - wca - lsa); // front left
+        polygon.yPoints[2] = (float) (ybr - wca); // back left
+        polygon.yPoints[3] = (float) ybr; // back right
+        return polygon;
     }
 
     /**
@@ -503,20 +568,53 @@ public abstract class RoadMapping {
      * @param vehicle
      * @param time
      *            current simulation time
-     * @return polygon representing vehicle
+     * @return polygon representing vehicle, shared by the road mapping
      */
     public RoadMapping.PolygonFloat mapFloat(Vehicle vehicle, double time) {
         final RoadMapping.PosTheta posTheta = map(vehicle.physicalQuantities().getMidPosition(),
                 laneOffset(vehicle.getContinousLane()));
         return mapFloat(posTheta, vehicle.physicalQuantities().getLength(), vehicle.physicalQuantities().getWidth());
     }
-    
+
+    /**
+     * Writes the corners of the subject vehicle into the given polygon.
+     * 
+     * @param vehicle
+     * @param posTheta
+     *            buffer for the position of the vehicle
+     * @param polygon
+     *            receives the corners
+     * @return polygon
+     */
+    public RoadMapping.PolygonFloat mapFloat(Vehicle vehicle, RoadMapping.PosTheta posTheta,
+            RoadMapping.PolygonFloat polygon) {
+        map(vehicle.physicalQuantities().getMidPosition(), laneOffset(vehicle.getContinousLane()), posTheta);
+        return mapFloat(posTheta, vehicle.physicalQuantities().getLength(), vehicle.physicalQuantities().getWidth(),
+                polygon);
+    }
+
     public RoadMapping.PolygonFloat mapFloat(RoadSideUnit rsu, double time) {
         final RoadMapping.PosTheta posTheta = map(rsu.getPosition(),
                 laneOffset(rsu.getOffset()));
         return mapFloat(posTheta, 1.0d, 1.0d);
     }
 
+    /**
+     * Writes the corners of the road side unit into the given polygon.
+     * 
+     * @param rsu
+     * @param posTheta
+     *            buffer for the position of the road side unit
+     * @param polygon
+     *            receives the corners
+     * @return polygon
+     */
+    public RoadMapping.PolygonFloat mapFloat(RoadSideUnit rsu, RoadMapping.PosTheta posTheta,
+            RoadMapping.PolygonFloat polygon) {
+        map(rsu.getPosition(), laneOffset(rsu.getOffset()), posTheta);
+        return mapFloat(posTheta, 1.0d, 1.0d, polygon);
+    }
+
 	public double getX0() {
 		return x0;
 	}
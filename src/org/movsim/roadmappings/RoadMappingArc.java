@@ -108,19 +108,19 @@ public class RoadMappingArc extends RoadMappingCircle {
     }
 
     @Override
-    public PosTheta map(double roadPos, double lateralOffset) {
+    public PosTheta map(double roadPos, double lateralOffset, PosTheta posTheta) {
         // tangent to arc (road direction)
         final double theta = clockwise ? startAngle - roadPos / radius : startAngle + roadPos / radius;
         // final double theta = clockwise ? startAngle + roadPos * curvature : startAngle - roadPos * curvature;
         // angle arc subtends at center
         final double arcTheta = theta - 0.5 * Math.PI;
-        getPosTheta().cosTheta = Math.cos(theta);
-        getPosTheta().sinTheta = Math.sin(theta);
+        posTheta.cosTheta = Math.cos(theta);
+        posTheta.sinTheta = Math.sin(theta);
         // lateralOffset is perpendicular to road
         final double r = radius + lateralOffset * (clockwise ? -1 : 1);
-        getPosTheta().x = centerX + r * Math.cos(arcTheta) * (clockwise ? -1 : 1);
-        getPosTheta().y = centerY - r * Math.sin(arcTheta) * (clockwise ? -1 : 1);
-        return getPosTheta();
+        posTheta.x = centerX + r * Math.cos(arcTheta) * (clockwise ? -1 : 1);
+        posTheta.y = centerY - r * Math.sin(arcTheta) * (clockwise ? -1 : 1);
+        return posTheta;
     }
 
     /**
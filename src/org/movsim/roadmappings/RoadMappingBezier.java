@@ -75,6 +75,8 @@ public class RoadMappingBezier extends RoadMapping {
     }
 
     protected void init() {
+        // the end points have moved, recompute the arc lengths
+        sValues = null;
         roadLength = bezierLength();
     }
 
@@ -260,17 +262,17 @@ public class RoadMappingBezier extends RoadMapping {
     }
 
     @Override
-    public RoadMapping.PosTheta map(double roadPos, double lateralOffset) {
+    public RoadMapping.PosTheta map(double roadPos, double lateralOffset, RoadMapping.PosTheta posTheta) {
         final double t = roadPosToT(roadPos);
-        bezier(t);
+        bezier(t, posTheta);
         // and finally adjust for the lateral offset
-        getPosTheta().x += lateralOffset * getPosTheta().sinTheta;
-        getPosTheta().y += lateralOffset * getPosTheta().cosTheta;
+        posTheta.x += lateralOffset * posTheta.sinTheta;
+        posTheta.y += lateralOffset * posTheta.cosTheta;
 
-        return getPosTheta();
+        return posTheta;
     }
 
-    private RoadMapping.PosTheta bezier(double t) {
+    private RoadMapping.PosTheta bezier(double t, RoadMapping.PosTheta posTheta) {
         // see http://www.cubic.org/docs/bezier.htm for a good visual explanation of the
         // the DeCasteljau algorithm for evaluating points on a Bezier curve
         // calculate the interpolated point between p0 and p1
@@ -280,16 +282,16 @@ public class RoadMappingBezier extends RoadMapping {
         final double m1x = (1 - t) * p1x + t * p2x;
         final double m1y = (1 - t) * p1y + t * p2y;
         // and then interpolate between these points
-        getPosTheta().x = (1 - t) * m0x + t * m1x;
-        getPosTheta().y = (1 - t) * m0y + t * m1y;
+        posTheta.x = (1 - t) * m0x + t * m1x;
+        posTheta.y = (1 - t) * m0y + t * m1y;
 
         // the tangent falls out naturally
         final double opp = m1y - m0y;
         final double adj = m1x - m0x;
         final double h = Math.sqrt(opp * opp + adj * adj);
-        getPosTheta().sinTheta = -opp / h;
-        getPosTheta().cosTheta = adj / h;
-        return getPosTheta();
+        posTheta.sinTheta = -opp / h;
+        posTheta.cosTheta = adj / h;
+        return posTheta;
     }
 
     private RoadMapping.PosTheta bezierPos(double t) {
@@ -98,17 +98,17 @@ public class RoadMappingCircle extends RoadMapping {
     }
 
     @Override
-    public RoadMapping.PosTheta map(double roadPos, double lateralOffset) {
+    public RoadMapping.PosTheta map(double roadPos, double lateralOffset, RoadMapping.PosTheta posTheta) {
         final double arcTheta = clockwise ? -roadPos / radius : roadPos / radius;
         // road direction, perpendicular to angle position subtends at center
         final double theta = arcTheta + 0.5 * Math.PI;
-        getPosTheta().cosTheta = Math.cos(theta);
-        getPosTheta().sinTheta = Math.sin(theta);
+        posTheta.cosTheta = Math.cos(theta);
+        posTheta.sinTheta = Math.sin(theta);
 
         // lateralOffset is perpendicular to road
         final double r = radius + lateralOffset * (clockwise ? -1 : 1);
-        getPosTheta().x = centerX + r * Math.cos(arcTheta) * (clockwise ? -1 : 1);
-        getPosTheta().y = centerY - r * Math.sin(arcTheta) * (clockwise ? -1 : 1);
-        return getPosTheta();
+        posTheta.x = centerX + r * Math.cos(arcTheta) * (clockwise ? -1 : 1);
+        posTheta.y = centerY - r * Math.sin(arcTheta) * (clockwise ? -1 : 1);
+        return posTheta;
     }
 }
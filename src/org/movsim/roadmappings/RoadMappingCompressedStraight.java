@@ -56,13 +56,15 @@ public class RoadMappingCompressedStraight extends RoadMappingLine {
     }
 
     @Override
-    public RoadMapping.PosTheta map(double roadPos, double lateralOffset) {
-        getPosTheta().x = getX0() + roadPos * getPosTheta().cosTheta * compressionFactor;
-        getPosTheta().y = getY0() + roadPos * getPosTheta().sinTheta * compressionFactor;
+    public RoadMapping.PosTheta map(double roadPos, double lateralOffset, RoadMapping.PosTheta posTheta) {
+        posTheta.x = getX0() + roadPos * cosTheta * compressionFactor;
+        posTheta.y = getY0() + roadPos * sinTheta * compressionFactor;
         // lateralOffset offset is perpendicular to road
         final double laneOffset = lateralOffset;
-        getPosTheta().x -= laneOffset * getPosTheta().sinTheta;
-        getPosTheta().y += laneOffset * getPosTheta().cosTheta;
-        return getPosTheta();
+        posTheta.x -= laneOffset * sinTheta;
+        posTheta.y += laneOffset * cosTheta;
+        posTheta.sinTheta = sinTheta;
+        posTheta.cosTheta = cosTheta;
+        return posTheta;
     }
 }
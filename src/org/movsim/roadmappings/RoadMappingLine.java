@@ -35,6 +35,9 @@ public class RoadMappingLine extends RoadMapping {
 
     protected double x1;
     protected double y1;
+    // direction of the road, also kept in the shared posTheta
+    protected double sinTheta;
+    protected double cosTheta;
 
     public static RoadMapping create(int laneCount, Geometry geometry, double laneWidth) {
         return new RoadMappingLine(laneCount, geometry.getS(), geometry.getX(), geometry.getY(), geometry.getHdg(),
@@ -80,10 +83,9 @@ public class RoadMappingLine extends RoadMapping {
     RoadMappingLine(int laneCount, double s, double x0, double y0, double theta, double length) {
         super(laneCount, x0, y0);
         roadLength = length;
-        getPosTheta().sinTheta = Math.sin(theta);
-        getPosTheta().cosTheta = Math.cos(theta);
-        x1 = x0 + length * getPosTheta().cosTheta;
-        y1 = y0 + length * getPosTheta().sinTheta;
+        setDirection(Math.sin(theta), Math.cos(theta));
+        x1 = x0 + length * cosTheta;
+        y1 = y0 + length * sinTheta;
     }
 
     /**
@@ -127,8 +129,14 @@ public class RoadMappingLine extends RoadMapping {
         final double opp = y1 - getY0();
         final double adj = x1 - getX0();
         roadLength = Math.sqrt(opp * opp + adj * adj);
-        getPosTheta().sinTheta = -opp / roadLength;
-        getPosTheta().cosTheta = adj / roadLength;
+        setDirection(-opp / roadLength, adj / roadLength);
+    }
+
+    private void setDirection(double sinTheta, double cosTheta) {
+        this.sinTheta = sinTheta;
+        this.cosTheta = cosTheta;
+        getPosTheta().sinTheta = sinTheta;
+        getPosTheta().cosTheta = cosTheta;
     }
 
     protected void moveStart(double dx, double dy) {
@@ -137,11 +145,13 @@ public class RoadMappingLine extends RoadMapping {
     }
 
     @Override
-    public RoadMapping.PosTheta map(double roadPos, double lateralOffset) {
+    public RoadMapping.PosTheta map(double roadPos, double lateralOffset, RoadMapping.PosTheta posTheta) {
         // lateralOffset offset is perpendicular to road
-        getPosTheta().x = getX0() + roadPos * getPosTheta().cosTheta + lateralOffset * getPosTheta().sinTheta;
-        getPosTheta().y = getY0() - roadPos * getPosTheta().sinTheta + lateralOffset * getPosTheta().cosTheta;
-        return getPosTheta();
+        posTheta.x = getX0() + roadPos * cosTheta + lateralOffset * sinTheta;
+        posTheta.y = getY0() - roadPos * sinTheta + lateralOffset * cosTheta;
+        posTheta.sinTheta = sinTheta;
+        posTheta.cosTheta = cosTheta;
+        return posTheta;
     }
 
 }
@@ -38,6 +38,9 @@ public class RoadMappingPoly extends RoadMapping implements Iterable<RoadMapping
 
     protected final ArrayList<RoadMapping> roadMappings = new ArrayList<>();
 
+    // end positions of the road mappings
+    private CumulativeLengths cumulativeLengths;
+
     @Override
     public Iterator<RoadMapping> iterator() {
         return roadMappings.iterator();
@@ -99,20 +102,35 @@ public class RoadMappingPoly extends RoadMapping implements Iterable<RoadMapping
 
     @Override
     public PosTheta map(double roadPos, double lateralOffset) {
-
-        double pos = roadPos;
-        for (final RoadMapping roadMapping : roadMappings) {
-            if (pos <= roadMapping.roadLength()) {
-                return roadMapping.map(pos, lateralOffset);
-            }
-            pos -= roadMapping.roadLength();
-        }
         // have gone past end of last road mapping in road segment
         // this can happen by up to half a vehicle length - vehicle's rear position is
         // on road mapping, but vehicle's mid position (which is used for drawing) has
-        // gone past the end, so fix this as a special case.
-        final RoadMapping roadMapping = roadMappings.get(roadMappings.size() - 1);
-        return roadMapping.map(pos + roadMapping.roadLength(), lateralOffset);
+        // gone past the end, so the last road mapping is then extended.
+        final CumulativeLengths lengths = lengths();
+        final int index = lengths.indexOf(roadPos, null);
+        return roadMappings.get(index).map(roadPos - lengths.start(index), lateralOffset);
+    }
+
+    @Override
+    public PosTheta map(double roadPos, double lateralOffset, PosTheta posTheta) {
+        return map(roadPos, lateralOffset, posTheta, null);
+    }
+
+    @Override
+    public PosTheta map(double roadPos, double lateralOffset, PosTheta posTheta, Cursor cursor) {
+        final CumulativeLengths lengths = lengths();
+        final int index = lengths.indexOf(roadPos, cursor);
+        return roadMappings.get(index).map(roadPos - lengths.start(index), lateralOffset, posTheta);
+    }
+
+    // rebuilt when road mappings have been added or moved
+    private CumulativeLengths lengths() {
+        CumulativeLengths lengths = cumulativeLengths;
+        if (lengths == null || lengths.size() != roadMappings.size()) {
+            lengths = new CumulativeLengths(roadMappings);
+            cumulativeLengths = lengths;
+        }
+        return lengths;
     }
 
     public void addLinePoint(double x, double y) {
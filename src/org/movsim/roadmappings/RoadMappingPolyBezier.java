@@ -41,6 +41,9 @@ public class RoadMappingPolyBezier extends RoadMapping implements Iterable<RoadM
 
     private final ArrayList<RoadMappingBezier> roadMappings = new ArrayList<>();
 
+    // end positions of the road mappings
+    private CumulativeLengths cumulativeLengths;
+
     @Override
     public Iterator<RoadMappingBezier> iterator() {
         return roadMappings.iterator();
@@ -148,24 +151,55 @@ public class RoadMappingPolyBezier extends RoadMapping implements Iterable<RoadM
 
     @Override
     public PosTheta map(double roadPos, double lateralOffset) {
-
-        double pos = roadPos;
-        for (final RoadMappingBezier roadMapping : roadMappings) {
-            if (pos <= roadMapping.roadLength()) {
-                return roadMapping.map(pos, lateralOffset);
-            }
-            pos -= roadMapping.roadLength();
+        final CumulativeLengths lengths = lengths();
+        final int index = lengths.indexOf(roadPos, null);
+        final double pos = roadPos - lengths.start(index);
+        if (pos <= lengths.length(index)) {
+            return roadMappings.get(index).map(pos, lateralOffset);
         }
         // have gone past end of last road mapping in road segment
         // this can happen by up to half a vehicle length - vehicle's rear position is
         // on road mapping, but vehicle's mid position (which is used for drawing) has
         // gone past the end, so fix this as a special case.
         final PosTheta posTheta = endPos(lateralOffset);
-        posTheta.x += pos * posTheta.cosTheta;
-        posTheta.y -= pos * posTheta.sinTheta;
+        return extend(posTheta, pos - lengths.length(index));
+    }
+
+    @Override
+    public PosTheta map(double roadPos, double lateralOffset, PosTheta posTheta) {
+        return map(roadPos, lateralOffset, posTheta, null);
+    }
+
+    @Override
+    public PosTheta map(double roadPos, double lateralOffset, PosTheta posTheta, Cursor cursor) {
+        final CumulativeLengths lengths = lengths();
+        final int index = lengths.indexOf(roadPos, cursor);
+        final double pos = roadPos - lengths.start(index);
+        final RoadMappingBezier roadMapping = roadMappings.get(index);
+        if (pos <= lengths.length(index)) {
+            return roadMapping.map(pos, lateralOffset, posTheta);
+        }
+        // past the end of the last road mapping, see above: extend the end tangent
+        roadMapping.map(roadMapping.roadLength(), lateralOffset, posTheta);
+        return extend(posTheta, pos - lengths.length(index));
+    }
+
+    private static PosTheta extend(PosTheta posTheta, double distance) {
+        posTheta.x += distance * posTheta.cosTheta;
+        posTheta.y -= distance * posTheta.sinTheta;
         return posTheta;
     }
 
+    // rebuilt when road mappings have been added or moved
+    private CumulativeLengths lengths() {
+        CumulativeLengths lengths = cumulativeLengths;
+        if (lengths == null || lengths.size() != roadMappings.size()) {
+            lengths = new CumulativeLengths(roadMappings);
+            cumulativeLengths = lengths;
+        }
+        return lengths;
+    }
+
     public void addPoint(double x, double y, double t) {
         assert roadMappings.size() >= 1;
         final RoadMappingBezier lastRoadMapping = roadMappings.get(roadMappings.size() - 1);
@@ -221,6 +255,7 @@ public class RoadMappingPolyBezier extends RoadMapping implements Iterable<RoadM
         m1.p0x += dx;
         m1.p0y += dy;
         m1.init();
+        cumulativeLengths = null;
         roadLength = 0.0;
         for (final RoadMapping roadMapping : roadMappings) {
             roadLength += roadMapping.roadLength();
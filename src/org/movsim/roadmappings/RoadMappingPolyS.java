@@ -64,11 +64,11 @@ public class RoadMappingPolyS extends RoadMappingS {
     }
 
     @Override
-    public RoadMapping.PosTheta map(double roadPos, double lateralOffset) {
+    public RoadMapping.PosTheta map(double roadPos, double lateralOffset, RoadMapping.PosTheta posTheta) {
         final double sLength = 2 * (Math.PI * radius + straightLength);
         final int count = (int) (roadPos / sLength);
         final double remainder = roadPos - count * sLength;
-        final PosTheta posTheta = super.map(remainder, lateralOffset);
+        super.map(remainder, lateralOffset, posTheta);
         posTheta.y += count * 4 * radius;
         return posTheta;
     }
@@ -63,7 +63,7 @@ public class RoadMappingS extends RoadMappingU {
     }
 
     @Override
-    public RoadMapping.PosTheta map(double roadPos, double lateralOffset) {
+    public RoadMapping.PosTheta map(double roadPos, double lateralOffset, RoadMapping.PosTheta posTheta) {
         // lateralOffset is perpendicular to road
         final double curveLength = radius * Math.PI;
         if (roadPos <= curveLength) {
@@ -73,17 +73,17 @@ public class RoadMappingS extends RoadMappingU {
             final double ca = Math.cos(arcTheta);
             final double sa = Math.sin(arcTheta);
             final double r = radius + lateralOffset;
-            getPosTheta().x = getX0() + r * ca;
-            getPosTheta().y = getY0() + radius - r * sa;
+            posTheta.x = getX0() + r * ca;
+            posTheta.y = getY0() + radius - r * sa;
             final double theta = arcTheta + 0.5 * Math.PI;
-            getPosTheta().cosTheta = Math.cos(theta);
-            getPosTheta().sinTheta = Math.sin(theta);
+            posTheta.cosTheta = Math.cos(theta);
+            posTheta.sinTheta = Math.sin(theta);
         } else if (roadPos <= curveLength + straightLength) {
             // on the first straight of the S
-            getPosTheta().cosTheta = 1.0;
-            getPosTheta().sinTheta = 0.0;
-            getPosTheta().x = getX0() + roadPos - curveLength;
-            getPosTheta().y = getY0() + lateralOffset + 2 * radius;
+            posTheta.cosTheta = 1.0;
+            posTheta.sinTheta = 0.0;
+            posTheta.x = getX0() + roadPos - curveLength;
+            posTheta.y = getY0() + lateralOffset + 2 * radius;
         } else if (roadPos <= straightLength + 2 * curveLength) {
             // on the second curve of the S
             final double arcLength = roadPos - straightLength - 2 * curveLength;
@@ -91,18 +91,18 @@ public class RoadMappingS extends RoadMappingU {
             final double ca = Math.cos(arcTheta);
             final double sa = Math.sin(arcTheta);
             final double r = radius - lateralOffset;
-            getPosTheta().x = getX0() + straightLength - r * ca;
-            getPosTheta().y = getY0() + 3 * radius - r * sa;
+            posTheta.x = getX0() + straightLength - r * ca;
+            posTheta.y = getY0() + 3 * radius - r * sa;
             final double theta = -arcTheta + 0.5 * Math.PI;
-            getPosTheta().cosTheta = Math.cos(theta);
-            getPosTheta().sinTheta = Math.sin(theta);
+            posTheta.cosTheta = Math.cos(theta);
+            posTheta.sinTheta = Math.sin(theta);
         } else {
             // on the second straight of the S
-            getPosTheta().cosTheta = -1.0;
-            getPosTheta().sinTheta = 0.0;
-            getPosTheta().x = getX0() + 2 * (curveLength + straightLength) - roadPos;
-            getPosTheta().y = getY0() - lateralOffset + 4 * radius;
+            posTheta.cosTheta = -1.0;
+            posTheta.sinTheta = 0.0;
+            posTheta.x = getX0() + 2 * (curveLength + straightLength) - roadPos;
+            posTheta.y = getY0() - lateralOffset + 4 * radius;
         }
-        return getPosTheta();
+        return posTheta;
     }
 }
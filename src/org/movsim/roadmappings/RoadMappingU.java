@@ -90,33 +90,33 @@ public class RoadMappingU extends RoadMapping {
     }
 
     @Override
-    public RoadMapping.PosTheta map(double roadPos, double lateralOffset) {
+    public RoadMapping.PosTheta map(double roadPos, double lateralOffset, RoadMapping.PosTheta posTheta) {
         // lateralOffset is perpendicular to road
         final double r = radius + lateralOffset;
         if (roadPos <= straightLength) {
             // on the first straight of the U
-            getPosTheta().cosTheta = -1.0;
-            getPosTheta().sinTheta = 0.0;
-            getPosTheta().x = getX0() - roadPos;
-            getPosTheta().y = getY0() - lateralOffset;
+            posTheta.cosTheta = -1.0;
+            posTheta.sinTheta = 0.0;
+            posTheta.x = getX0() - roadPos;
+            posTheta.y = getY0() - lateralOffset;
         } else if (roadPos > roadLength - straightLength) {
             // on the second straight of the U
-            getPosTheta().cosTheta = 1.0;
-            getPosTheta().sinTheta = 0.0;
-            getPosTheta().x = getX0() + roadPos - roadLength;
-            getPosTheta().y = getY0() + 2 * radius + lateralOffset;
+            posTheta.cosTheta = 1.0;
+            posTheta.sinTheta = 0.0;
+            posTheta.x = getX0() + roadPos - roadLength;
+            posTheta.y = getY0() + 2 * radius + lateralOffset;
         } else {
             // on the arc of the U
             final double arcLength = roadPos - straightLength;
             final double arcTheta = arcLength / radius + 0.5 * Math.PI;
             final double ca = Math.cos(arcTheta);
             final double sa = Math.sin(arcTheta);
-            getPosTheta().x = getX0() - straightLength + r * ca;
-            getPosTheta().y = getY0() + radius - r * sa;
+            posTheta.x = getX0() - straightLength + r * ca;
+            posTheta.y = getY0() + radius - r * sa;
             final double theta = arcTheta + 0.5 * Math.PI;
-            getPosTheta().cosTheta = Math.cos(theta);
-            getPosTheta().sinTheta = Math.sin(theta);
+            posTheta.cosTheta = Math.cos(theta);
+            posTheta.sinTheta = Math.sin(theta);
         }
-        return getPosTheta();
+        return posTheta;
     }
 }
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2010, 2011, 2012 by Arne Kesting, Martin Treiber, Ralph Germ, Martin Budden
+ * <movsim.org@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSim - the multi-model open-source vehicular-traffic simulator.
+ * 
+ * MovSim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+
+package org.movsim.simulator;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+
+import org.movsim.input.ProjectMetaData;
+import org.movsim.simulator.vehicles.longitudinalmodel.acceleration.CCS;
+import org.movsim.utilities.MyRandom;
+
+/**
+ * <p>
+ * State of one simulation run which used to be held in static fields: the project meta data, the random generators
+ * and the id counters of the vehicles, road segments, road side units and routing graph vertices, as well as the
+ * settings of the models and agents which can be changed at runtime.
+ * </p>
+ * <p>
+ * The context is bound to a thread with {@link #setCurrent(SimulationContext)}, and the static accessors (e.g.
+ * {@link ProjectMetaData#getInstance()}, {@link MyRandom}) use the context bound to the calling thread. Threads without
+ * a bound context share a default context, so a single simulation in a JVM behaves as before. Several simulations can
+ * run concurrently in one JVM if each of them runs in a thread bound to its own context; the threads started by a
+ * simulation (worker pool, simulation thread) bind the context of the thread which started them.
+ * </p>
+ */
+public final class SimulationContext {
+
+    /**
+     * Sequence of ids, starting at zero.
+     */
+    public static final class IdSequence {
+        private long next;
+
+        /**
+         * Returns the next id of the sequence.
+         * 
+         * @return the next id
+         */
+        public long next() {
+            return next++;
+        }
+
+        /**
+         * Returns the number of ids handed out since the last reset.
+         * 
+         * @return the number of ids
+         */
+        public long count() {
+            return next;
+        }
+
+        public void reset() {
+            next = 0;
+        }
+    }
+
+    private static final SimulationContext DEFAULT_CONTEXT = new SimulationContext();
+
+    private static final ThreadLocal<SimulationContext> CURRENT = new ThreadLocal<>();
+
+    private final ProjectMetaData projectMetaData = new ProjectMetaData();
+    private final MyRandom.Generators randomGenerators = new MyRandom.Generators();
+    private final IdSequence vehicleIds = new IdSequence();
+    private final IdSequence roadSegmentIds = new IdSequence();
+    private final IdSequence roadSideUnitIds = new IdSequence();
+    private final IdSequence vertexIds = new IdSequence();
+
+    private volatile CCS.Waves wave = CCS.Waves.NOWAVE;
+
+    // lane changes: delays to avoid flips and distance at which driver must get into exit lane
+    private volatile double laneChangeDelay = 3.0;
+    private volatile double laneChangeDelayFront = 3.0;
+    private volatile double distanceBeforeExitMustChangeLanes = 300.0;
+
+    private final AtomicInteger numberVehicleArea = new AtomicInteger();
+    private volatile String configurationPath = ".";
+
+    /**
+     * Returns the context bound to the calling thread, or the default context if none is bound.
+     * 
+     * @return the current simulation context
+     */
+    public static SimulationContext current() {
+        final SimulationContext context = CURRENT.get();
+        return context == null ? DEFAULT_CONTEXT : context;
+    }
+
+    /**
+     * Binds the given context to the calling thread.
+     * 
+     * @param context
+     *            the context, or null to bind the calling thread to the default context again
+     */
+    public static void setCurrent(@Nullable SimulationContext context) {
+        if (context == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(context);
+        }
+    }
+
+    public ProjectMetaData getProjectMetaData() {
+        return projectMetaData;
+    }
+
+    public MyRandom.Generators getRandomGenerators() {
+        return randomGenerators;
+    }
+
+    public IdSequence vehicleIds() {
+        return vehicleIds;
+    }
+
+    public IdSequence roadSegmentIds() {
+        return roadSegmentIds;
+    }
+
+    public IdSequence roadSideUnitIds() {
+        return roadSideUnitIds;
+    }
+
+    public IdSequence vertexIds() {
+        return vertexIds;
+    }
+
+    public CCS.Waves getWave() {
+        return wave;
+    }
+
+    public void setWave(CCS.Waves wave) {
+        this.wave = wave;
+    }
+
+    /**
+     * Returns the delay after a lane change.
+     * 
+     * @return the delay in seconds
+     */
+    public double getLaneChangeDelay() {
+        return laneChangeDelay;
+    }
+
+    public void setLaneChangeDelay(double laneChangeDelay) {
+        this.laneChangeDelay = laneChangeDelay;
+    }
+
+    /**
+     * Returns the delay after a cut-in ahead.
+     * 
+     * @return the delay in seconds
+     */
+    public double getLaneChangeDelayFront() {
+        return laneChangeDelayFront;
+    }
+
+    public void setLaneChangeDelayFront(double laneChangeDelayFront) {
+        this.laneChangeDelayFront = laneChangeDelayFront;
+    }
+
+    public double getDistanceBeforeExitMustChangeLanes() {
+        return distanceBeforeExitMustChangeLanes;
+    }
+
+    public void setDistanceBeforeExitMustChangeLanes(double distanceBeforeExitMustChangeLanes) {
+        this.distanceBeforeExitMustChangeLanes = distanceBeforeExitMustChangeLanes;
+    }
+
+    /**
+     * Returns the balance of the vehicles which entered and left the perception areas of the agents.
+     * 
+     * @return the number of vehicles in the areas
+     */
+    public int getNumberVehicleArea() {
+        return numberVehicleArea.get();
+    }
+
+    /**
+     * Adds the given balance of entering and leaving vehicles to the number of vehicles in the perception areas.
+     * 
+     * @param delta
+     * @return the updated number of vehicles in the areas
+     */
+    public int addNumberVehicleArea(int delta) {
+        return numberVehicleArea.addAndGet(delta);
+    }
+
+    /**
+     * Returns the directory of the configuration file of the agent server.
+     * 
+     * @return the configuration path
+     */
+    public String getConfigurationPath() {
+        return configurationPath;
+    }
+
+    public void setConfigurationPath(String configurationPath) {
+        this.configurationPath = configurationPath;
+    }
+}
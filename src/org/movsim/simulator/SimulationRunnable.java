@@ -61,6 +61,22 @@ public class SimulationRunnable extends SimulationRun implements Runnable {
         public void handleException(Exception e);
     }
 
+    /**
+     * Pacing of the simulation thread. {@link #runToCompletion()} runs without a viewer and only observes the
+     * {@link #REAL_TIME} pacing.
+     */
+    public enum RunMode {
+        /**
+         * Sleeps for the sleep time between two time steps, used by the interactive viewer. There is no sleep time
+         * until one is set, so a run without a viewer is not slowed down.
+         */
+        SLEEP_TIME,
+        /** Performs the time steps without any pause, for runs without a viewer. */
+        AS_FAST_AS_POSSIBLE,
+        /** Paces the time steps to the target time warp, compensating for the time used by the simulation itself. */
+        REAL_TIME
+    }
+
     /**
      * old code
      */
@@ -90,15 +106,31 @@ public class SimulationRunnable extends SimulationRun implements Runnable {
     private int sleepTime_ms;
     private int sleepTimeUsed;
     //private static final double DEFAULT_TIMESTEP_S = 0.25; // default timestep, seconds
-    private static final int DEFAULT_SLEEP_TIME_MS = 40; // default sleep time, milliseconds
     private boolean pausedWhenRunning;
-    private long lastUpdateTime_ms;
+    private long lastUpdateTime_ns;
     private double actualTimewarp = 0;
     private double smoothedTimewarp = 0;
     private final double betaTimewarp = Math.exp(-1.0 / 50); // moving exponential average scale
 
+    // Pacing
+    private RunMode runMode = RunMode.SLEEP_TIME;
+    private double targetTimewarp = 1.0;
+    // do not try to catch up if the simulation lags behind the real time pacing by more than this
+    private static final long MAX_PACING_LAG_NS = 1000000000L;
+    private long paceStartTime_ns;
+    private double paceStartSimulationTime;
+    private long runStartTime_ns;
+    private double runStartSimulationTime;
+
+    // Drawing
+    private long frameInterval_ns; // 0: draw after every time step
+    private long lastDrawTime_ns;
+    private boolean frameSkipped; // the last time step was not drawn
+
     // Thread and thread synchronization.
     private Thread thread;
+    /** context of the simulation, bound to the simulation thread. */
+    private final SimulationContext context = SimulationContext.current();
     /**
      * Lock to synchronize the simulation thread with the UI thread.
      */
@@ -112,7 +144,6 @@ public class SimulationRunnable extends SimulationRun implements Runnable {
      */
     public SimulationRunnable(SimulationTimeStep simulation) {
         super(simulation);
-        setSleepTime(DEFAULT_SLEEP_TIME_MS);
         // defaultExceptionHandler = new DefaultExceptionHandler();
         // Cannot call Thread.setDefaultUncaughtExceptionHandler() in applet
         // since this causes a java.security.AccessControlException
@@ -162,7 +193,7 @@ public class SimulationRunnable extends SimulationRun implements Runnable {
     }
 
     /**
-     * Set the thread sleep time. This controls the animation speed.
+     * Set the thread sleep time. This controls the animation speed in {@link RunMode#SLEEP_TIME} mode.
      * 
      * @param sleepTime_ms
      *            sleep time in milliseconds
@@ -188,6 +219,61 @@ public class SimulationRunnable extends SimulationRun implements Runnable {
         return sleepTime_ms;
     }
 
+    /**
+     * Sets the pacing of the simulation thread.
+     * 
+     * @param runMode
+     */
+    public void setRunMode(RunMode runMode) {
+        assert runMode != null;
+        this.runMode = runMode;
+        restartPacing();
+    }
+
+    /**
+     * Returns the pacing of the simulation thread.
+     * 
+     * @return the run mode
+     */
+    public RunMode runMode() {
+        return runMode;
+    }
+
+    /**
+     * Sets the ratio of simulation time to real time aimed at in {@link RunMode#REAL_TIME} mode.
+     * 
+     * @param targetTimewarp
+     *            simulated seconds per real second, must be positive
+     */
+    public void setTargetTimewarp(double targetTimewarp) {
+        if (targetTimewarp <= 0) {
+            throw new IllegalArgumentException("target timewarp must be positive: " + targetTimewarp);
+        }
+        this.targetTimewarp = targetTimewarp;
+        restartPacing();
+    }
+
+    /**
+     * Returns the target time warp of the {@link RunMode#REAL_TIME} mode.
+     * 
+     * @return simulated seconds per real second
+     */
+    public double targetTimewarp() {
+        return targetTimewarp;
+    }
+
+    /**
+     * Sets the maximum rate of the update drawing callback, independently of the simulation rate. Time steps performed
+     * in between two frames are not drawn.
+     * 
+     * @param framesPerSecond
+     *            maximum number of drawings per real second, 0 to draw after every time step. The last time step
+     *            before the simulation thread stops is always drawn.
+     */
+    public void setFrameRate(double framesPerSecond) {
+        frameInterval_ns = framesPerSecond > 0 ? (long) (1.0e9 / framesPerSecond) : 0;
+    }
+
     /**
      * Returns the time warp.
      * 
@@ -206,6 +292,17 @@ public class SimulationRunnable extends SimulationRun implements Runnable {
         return smoothedTimewarp;
     }
 
+    /**
+     * Returns the time warp averaged since the simulation thread was (re)started or since the start of
+     * {@link #runToCompletion()}.
+     * 
+     * @return simulated seconds per real second
+     */
+    public double getAverageTimewarp() {
+        final long elapsed_ns = System.nanoTime() - runStartTime_ns;
+        return elapsed_ns > 0 ? (simulationTime - runStartSimulationTime) / (1.0e-9 * elapsed_ns) : 0;
+    }
+
     /**
      * Returns true if the thread is stopped.
      * 
@@ -303,20 +400,18 @@ public class SimulationRunnable extends SimulationRun implements Runnable {
     	
     	//assert updateDrawingCallback != null;
         assert simulation != null;
+        SimulationContext.setCurrent(context);
+        startRun();
         while (Thread.currentThread() == thread) {
             if (duration > 0.0 && simulationTime >= duration) {
                 stop();
+                drawSkippedFrame();
                 if (completionCallback != null) {
                     completionCallback.simulationComplete(simulationTime);
                 }
                 break;
             }
-            try {
-                // commented for TP Thread.sleep(sleepTimeUsed); TIMER
-            	Thread.sleep(100);
-            } catch (final InterruptedException e) {
-                // ignore exception
-            }
+            pace();
             synchronized (dataLock) {
                 // synchronized so that the UI framework does not try to draw elements
                 // while they are being added, updated or removed
@@ -349,15 +444,93 @@ public class SimulationRunnable extends SimulationRun implements Runnable {
             /**
              * old code
              */
-            updateDrawingCallback.updateDrawing(simulationTime);
+            updateDrawing();
             
             calculateTimewarp();
         }
+        // paused or stopped
+        drawSkippedFrame();
+    }
+
+    private void startRun() {
+        runStartTime_ns = System.nanoTime();
+        runStartSimulationTime = simulationTime;
+        lastUpdateTime_ns = runStartTime_ns;
+        lastDrawTime_ns = runStartTime_ns - frameInterval_ns;
+        frameSkipped = false;
+        restartPacing();
+    }
+
+    private void restartPacing() {
+        paceStartTime_ns = System.nanoTime();
+        paceStartSimulationTime = simulationTime;
+    }
+
+    /**
+     * Waits before the next time step as required by the run mode. In real time mode the waiting time is computed from
+     * the start of the pacing, so that the time used by the simulation and inaccurate sleeps do not accumulate.
+     */
+    private void pace() {
+        switch (runMode) {
+        case AS_FAST_AS_POSSIBLE:
+            return;
+        case REAL_TIME:
+            final long dueTime_ns = paceStartTime_ns
+                    + (long) (1.0e9 * (simulationTime - paceStartSimulationTime) / targetTimewarp);
+            final long wait_ns = dueTime_ns - System.nanoTime();
+            if (wait_ns > 0) {
+                sleep(wait_ns / 1000000L, (int) (wait_ns % 1000000L));
+            } else if (-wait_ns > MAX_PACING_LAG_NS) {
+                // the simulation is too slow for the target timewarp, so do not try to catch up
+                restartPacing();
+            }
+            return;
+        default:
+            if (sleepTimeUsed > 0) {
+                sleep(sleepTimeUsed, 0);
+            }
+        }
+    }
+
+    private static void sleep(long millis, int nanos) {
+        try {
+            Thread.sleep(millis, nanos);
+        } catch (final InterruptedException e) {
+            // ignore exception
+        }
+    }
+
+    private void updateDrawing() {
+        if (updateDrawingCallback == null) {
+            return;
+        }
+        if (frameInterval_ns > 0) {
+            final long now_ns = System.nanoTime();
+            if (now_ns - lastDrawTime_ns < frameInterval_ns) {
+                frameSkipped = true;
+                return;
+            }
+            lastDrawTime_ns = now_ns;
+        }
+        frameSkipped = false;
+        updateDrawingCallback.updateDrawing(simulationTime);
+    }
+
+    /**
+     * Draws the last time step if the frame rate skipped it, so that the view shows the final state of a run.
+     */
+    private void drawSkippedFrame() {
+        if (frameSkipped && updateDrawingCallback != null) {
+            frameSkipped = false;
+            lastDrawTime_ns = System.nanoTime();
+            updateDrawingCallback.updateDrawing(simulationTime);
+        }
     }
     
     
     /**
-     * Runs the simulation to completion and then calls the completion callback.
+     * Runs the simulation to completion and then calls the completion callback. The time steps are performed as fast
+     * as possible unless the run mode is {@link RunMode#REAL_TIME}.
      */
     @Override
     public void runToCompletion() {
@@ -365,9 +538,14 @@ public class SimulationRunnable extends SimulationRun implements Runnable {
         assert duration != 0.0;
         assert duration > 0.0;
         reset();
+        startRun();
         final long timeBeforeSim_ms = System.currentTimeMillis();
         final double timeLimit = duration + dt / 2.0; // allow for rounding errors
+        final boolean paced = runMode == RunMode.REAL_TIME;
         while (simulationTime <= timeLimit) {
+            if (paced) {
+                pace();
+            }
             // perform the timeStep for the road network
             simulation.timeStep(dt, simulationTime, iterationCount);
             for (final UpdateStatusCallback updateStatusCallback : updateStatusCallbacks) {
@@ -389,6 +567,8 @@ public class SimulationRunnable extends SimulationRun implements Runnable {
         }
         
         totalSimulationTime = System.currentTimeMillis() - timeBeforeSim_ms;
+        actualTimewarp = getAverageTimewarp();
+        smoothedTimewarp = actualTimewarp;
         if (completionCallback != null) {
             completionCallback.simulationComplete(simulationTime);
         }
@@ -397,12 +577,16 @@ public class SimulationRunnable extends SimulationRun implements Runnable {
     
 
     private void calculateTimewarp() {
-        final long timeAfterSim_ms = System.currentTimeMillis();
-        actualTimewarp = dt / (0.001 * (timeAfterSim_ms - lastUpdateTime_ms));
-        lastUpdateTime_ms = timeAfterSim_ms;
+        final long timeAfterSim_ns = System.nanoTime();
+        final long elapsed_ns = timeAfterSim_ns - lastUpdateTime_ns;
+        if (elapsed_ns <= 0) {
+            return;
+        }
+        actualTimewarp = dt / (1.0e-9 * elapsed_ns);
+        lastUpdateTime_ns = timeAfterSim_ns;
 
-        smoothedTimewarp = Math.min(1000, smoothedTimewarp == 0.0 ? actualTimewarp : betaTimewarp * smoothedTimewarp
-                + (1.0 - betaTimewarp) * actualTimewarp);
+        smoothedTimewarp = smoothedTimewarp == 0.0 ? actualTimewarp : betaTimewarp * smoothedTimewarp
+                + (1.0 - betaTimewarp) * actualTimewarp;
     }
 
     public boolean isFiniteDuration() {
@@ -48,6 +48,7 @@ import org.movsim.input.ProjectMetaData;
 import org.movsim.input.network.OpenDriveReader;
 import org.movsim.output.SimulationOutput;
 import org.movsim.output.detector.LoopDetectors;
+import org.movsim.output.fileoutput.AsyncFileWriter;
 import org.movsim.output.fileoutput.FileTrafficSourceData;
 import org.movsim.roadmappings.RoadMapping;
 import org.movsim.roadmappings.RoadMappingPolyS;
@@ -98,9 +99,9 @@ public class Simulator implements SimulationTimeStep, SimulationRun.CompletionCa
     private VehicleFactory vehicleFactory;
     private TrafficCompositionGenerator defaultTrafficComposition;
     /**
-     * 
+     * external control server of this simulation, null if the scenario has no external control.
      */
-    public static Server externalControlServer;
+    public Server externalControlServer;
     
     private TrafficLights trafficLights;
     private SimulationOutput simOutput;
@@ -174,11 +175,20 @@ public class Simulator implements SimulationTimeStep, SimulationRun.CompletionCa
 
         final boolean loadedRoadNetwork = parseOpenDriveXml(roadNetwork, projectMetaData);
         routing = new Routing(inputData.getScenario().getRoutes(), roadNetwork);
-        
+
+        // seed before the vehicle prototypes are built: the equilibrium of the stochastic models draws random numbers
+        if (simulationInput.isWithSeed()) {
+            MyRandom.initializeWithSeed(simulationInput.getSeed());
+        }
+
         vehicleFactory = new VehicleFactory(this,simulationInput.getTimestep(), inputData.getVehiclePrototypes(),
                 inputData.getConsumption(), routing);
 
         roadNetwork.setWithCrashExit(simulationInput.isCrashExit());
+        roadNetwork.setParallelism(projectMetaData.getParallelism());
+        simulationRunnable.setRunMode(projectMetaData.getRunMode());
+        simulationRunnable.setTargetTimewarp(projectMetaData.getTargetTimewarp());
+        simulationRunnable.setFrameRate(projectMetaData.getFrameRate());
 
         simulationRunnable.setTimeStep(simulationInput.getTimestep());
 
@@ -187,10 +197,6 @@ public class Simulator implements SimulationTimeStep, SimulationRun.CompletionCa
 
         simulationRunnable.setDuration(duration < 0 ? Double.MAX_VALUE : duration);
 
-        if (simulationInput.isWithSeed()) {
-            MyRandom.initializeWithSeed(simulationInput.getSeed());
-        }
-
         defaultTrafficComposition = new TrafficCompositionGenerator(simulationInput.getTrafficComposition(),
                 vehicleFactory);
 
@@ -225,8 +231,10 @@ public class Simulator implements SimulationTimeStep, SimulationRun.CompletionCa
         		rsus.addAll(roadSegment.getRSUs());
         	}
         	try {
-				this.externalControlServer = new Server(externalControlParameters.getAgentPort(), externalControlParameters.getBackLogPort(), rsus);// new Server("2015-complete-3sims.xml", rsus);
+				Server.IOMode ioMode = "blocking".equals(externalControlParameters.getIoMode()) ? Server.IOMode.BLOCKING : Server.IOMode.SELECTOR;
+				this.externalControlServer = new Server(externalControlParameters.getAgentPort(), externalControlParameters.getBackLogPort(), ioMode, externalControlParameters.getSelectorThreads(), rsus);// new Server("2015-complete-3sims.xml", rsus);
 				this.externalControlServer.run();
+				roadNetwork.setExternalControlServer(this.externalControlServer);
 			} catch (InvalidConfigurationException e) {
 				// TODO Auto-generated catch block
 				e.printStackTrace();
@@ -332,7 +340,7 @@ public class Simulator implements SimulationTimeStep, SimulationRun.CompletionCa
     private void addInputToRoadSegment(RoadSegment roadSegment, Road roadInput) {
         // setup own vehicle generator for roadSegment: needed for trafficSource and initial conditions
         TrafficCompositionGenerator composition = roadInput.isSetTrafficComposition() ? new TrafficCompositionGenerator(
-                roadInput.getTrafficComposition(), vehicleFactory) : defaultTrafficComposition;
+                roadInput.getTrafficComposition(), vehicleFactory, roadSegment.id()) : defaultTrafficComposition;
         if (roadInput.isSetTrafficComposition()) {
             LOG.info("road with id={} has its own vehicle composition generator.", roadSegment.id());
         }
@@ -577,6 +585,7 @@ public class Simulator implements SimulationTimeStep, SimulationRun.CompletionCa
         // simOutput.timeStep(simulationRunnable.timeStep(), simulationRunnable.simulationTime(),
         // simulationRunnable.iterationCount());
         simulationRunnable.runToCompletion();
+        LOG.info("Simulator.run: average timewarp={}", simulationRunnable.getTimewarp());
     }
 
     /**
@@ -596,6 +605,12 @@ public class Simulator implements SimulationTimeStep, SimulationRun.CompletionCa
     		this.externalControlServer.stopSimulation();
     	}
     	
+        if (simOutput != null) {
+            simOutput.simulationComplete();
+        }
+        // the file outputs are written in the background, make sure they are complete and release them
+        AsyncFileWriter.closeAll(SimulationContext.current());
+
         LOG.info(String.format("Simulator.run: stop after time = %.2fs = %.2fh of simulation project=%s",
                 simulationTime, simulationTime / 3600, projectName));
         final double elapsedTime = 0.001 * (System.currentTimeMillis() - startTimeMillis);
@@ -0,0 +1,341 @@
+/*
+ * Copyright (C) 2010, 2011, 2012 by Arne Kesting, Martin Treiber, Ralph Germ, Martin Budden
+ * <movsim.org@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSim - the multi-model open-source vehicular-traffic simulator.
+ * 
+ * MovSim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+
+package org.movsim.simulator.roadnetwork;
+
+import java.util.Arrays;
+
+import org.movsim.simulator.vehicles.Vehicle;
+import org.movsim.simulator.vehicles.longitudinalmodel.acceleration.LongitudinalModelBase;
+import org.movsim.simulator.vehicles.longitudinalmodel.acceleration.LongitudinalModelBase.ModelName;
+
+/**
+ * <p>
+ * Structure-of-arrays copy of the kinematic state of the vehicles in a {@link LaneSegment}.
+ * </p>
+ * <p>
+ * Index i of every array refers to the vehicle at index i of the lane segment's vehicle list, so the arrays are sorted
+ * in order of decreasing rear position as well. The lane segment keeps both in step: every insertion and removal is
+ * applied to the list and to the arrays, and the speed and acceleration of a vehicle are recorded as soon as its
+ * acceleration has been updated.
+ * </p>
+ * <p>
+ * The position and speed update is integrated on the arrays, which are the reference for it, and the result is then
+ * written back to the vehicles.
+ * </p>
+ */
+final class LaneKinematics {
+
+    // integration schemes of the position and speed update
+    private static final byte CONTINUOUS = 0;
+    private static final byte CELLULAR_AUTOMATON = 1;
+    private static final byte NEWELL = 2;
+
+    private int count;
+    private double[] rearPosition;
+    private double[] frontPosition;
+    private double[] frontPositionOld;
+    private double[] speed;
+    private double[] acc;
+    private double[] length;
+    private long[] id;
+    private byte[] scheme;
+
+    /**
+     * Constructor.
+     *
+     * @param initialCapacity
+     */
+    LaneKinematics(int initialCapacity) {
+        final int capacity = Math.max(1, initialCapacity);
+        rearPosition = new double[capacity];
+        frontPosition = new double[capacity];
+        frontPositionOld = new double[capacity];
+        speed = new double[capacity];
+        acc = new double[capacity];
+        length = new double[capacity];
+        id = new long[capacity];
+        scheme = new byte[capacity];
+    }
+
+    int size() {
+        return count;
+    }
+
+    void clear() {
+        count = 0;
+    }
+
+    /**
+     * Inserts the state of the given vehicle at the given index, shifting the following entries by one.
+     *
+     * @param index
+     * @param vehicle
+     */
+    void insert(int index, Vehicle vehicle) {
+        assert index >= 0 && index <= count;
+        if (count == rearPosition.length) {
+            grow();
+        }
+        final int tail = count - index;
+        if (tail > 0) {
+            System.arraycopy(rearPosition, index, rearPosition, index + 1, tail);
+            System.arraycopy(frontPosition, index, frontPosition, index + 1, tail);
+            System.arraycopy(frontPositionOld, index, frontPositionOld, index + 1, tail);
+            System.arraycopy(speed, index, speed, index + 1, tail);
+            System.arraycopy(acc, index, acc, index + 1, tail);
+            System.arraycopy(length, index, length, index + 1, tail);
+            System.arraycopy(id, index, id, index + 1, tail);
+            System.arraycopy(scheme, index, scheme, index + 1, tail);
+        }
+        ++count;
+        set(index, vehicle);
+    }
+
+    void append(Vehicle vehicle) {
+        insert(count, vehicle);
+    }
+
+    /**
+     * Removes the given number of entries at the front, shifting the following entries once.
+     *
+     * @param n
+     */
+    void removeFront(int n) {
+        assert n >= 0 && n <= count;
+        final int tail = count - n;
+        if (n > 0 && tail > 0) {
+            System.arraycopy(rearPosition, n, rearPosition, 0, tail);
+            System.arraycopy(frontPosition, n, frontPosition, 0, tail);
+            System.arraycopy(frontPositionOld, n, frontPositionOld, 0, tail);
+            System.arraycopy(speed, n, speed, 0, tail);
+            System.arraycopy(acc, n, acc, 0, tail);
+            System.arraycopy(length, n, length, 0, tail);
+            System.arraycopy(id, n, id, 0, tail);
+            System.arraycopy(scheme, n, scheme, 0, tail);
+        }
+        count = tail;
+    }
+
+    /**
+     * Removes the entry at the given index, shifting the following entries by one.
+     *
+     * @param index
+     */
+    void remove(int index) {
+        assert index >= 0 && index < count;
+        final int tail = count - index - 1;
+        if (tail > 0) {
+            System.arraycopy(rearPosition, index + 1, rearPosition, index, tail);
+            System.arraycopy(frontPosition, index + 1, frontPosition, index, tail);
+            System.arraycopy(frontPositionOld, index + 1, frontPositionOld, index, tail);
+            System.arraycopy(speed, index + 1, speed, index, tail);
+            System.arraycopy(acc, index + 1, acc, index, tail);
+            System.arraycopy(length, index + 1, length, index, tail);
+            System.arraycopy(id, index + 1, id, index, tail);
+            System.arraycopy(scheme, index + 1, scheme, index, tail);
+        }
+        --count;
+    }
+
+    /**
+     * Copies the current kinematic state of the given vehicle into the entry at the given index.
+     *
+     * @param index
+     * @param vehicle
+     */
+    void set(int index, Vehicle vehicle) {
+        rearPosition[index] = vehicle.getRearPosition();
+        frontPosition[index] = vehicle.getFrontPosition();
+        frontPositionOld[index] = vehicle.getFrontPositionOld();
+        speed[index] = vehicle.getSpeed();
+        acc[index] = vehicle.getAcc();
+        length[index] = vehicle.getLength();
+        id[index] = vehicle.getId();
+        scheme[index] = scheme(vehicle.getLongitudinalModel());
+    }
+
+    /**
+     * Records the speed and acceleration of the given vehicle in the entry at the given index, after its acceleration has
+     * been updated.
+     *
+     * @param index
+     * @param vehicle
+     */
+    void setAcceleration(int index, Vehicle vehicle) {
+        speed[index] = vehicle.getSpeed();
+        acc[index] = vehicle.getAcc();
+    }
+
+    /**
+     * Integrates the position and speed of the entry at the given index over the time interval and writes the result
+     * back to the given vehicle. Case distinction between cellular automata, Newell and continuous models/iterated maps.
+     *
+     * @param index
+     * @param vehicle
+     *            the vehicle at the given index
+     * @param dt
+     *            delta-t, simulation time interval, seconds
+     */
+    void updatePositionAndSpeed(int index, Vehicle vehicle, double dt) {
+        final double position = frontPosition[index];
+        double v = speed[index];
+        double a = acc[index];
+        final double advance;
+        final double newPosition;
+        switch (scheme[index]) {
+        case CELLULAR_AUTOMATON:
+            v = (int) (v + dt * a + 0.5);
+            // the position is rounded, not advanced, so that it stays integral
+            newPosition = (int) (position + dt * v + 0.5);
+            advance = newPosition - position;
+            break;
+        case NEWELL:
+            // Newell position update: Different to continuous microscopic models and iterated maps.
+            // See chapter 10.7 english book version
+            if (v < 0) {
+                v = 0;
+            }
+            advance = v * dt + a * dt * dt;
+            newPosition = position + advance;
+            v += dt * a;
+            if (v < 0) {
+                v = 0;
+                a = 0;
+            }
+            break;
+        default:
+            // continuous microscopic models and iterated maps
+            if (v < 0) {
+                v = 0;
+            }
+            advance = (a * dt >= -v) ? v * dt + 0.5 * a * dt * dt : -0.5 * v * v / a;
+            newPosition = position + advance;
+            v += dt * a;
+            if (v < 0) {
+                v = 0;
+                a = 0;
+            }
+            break;
+        }
+        frontPositionOld[index] = position;
+        frontPosition[index] = newPosition;
+        rearPosition[index] = newPosition - length[index];
+        speed[index] = v;
+        acc[index] = a;
+        vehicle.updatePositionAndSpeed(dt, newPosition, advance, v, a);
+    }
+
+    double rearPosition(int index) {
+        return rearPosition[index];
+    }
+
+    double frontPosition(int index) {
+        return frontPosition[index];
+    }
+
+    double frontPositionOld(int index) {
+        return frontPositionOld[index];
+    }
+
+    double speed(int index) {
+        return speed[index];
+    }
+
+    double acc(int index) {
+        return acc[index];
+    }
+
+    double length(int index) {
+        return length[index];
+    }
+
+    long id(int index) {
+        return id[index];
+    }
+
+    /**
+     * Returns the index of the entry with the given id, or -1 if there is none.
+     *
+     * @param vehicleId
+     * @return index of the vehicle
+     */
+    int indexOf(long vehicleId) {
+        for (int i = 0; i < count; ++i) {
+            if (id[i] == vehicleId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Binary search of the rear positions, which are sorted in decreasing order.
+     *
+     * @param vehiclePos
+     * @return index of the matching entry, or (-(insertion point) - 1) if there is none
+     */
+    int positionBinarySearch(double vehiclePos) {
+        final double[] positions = rearPosition;
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            final int mid = (low + high) >> 1;
+            // note vehicles are sorted in reverse order of position
+            final int compare = Double.compare(vehiclePos, positions[mid]);
+            if (compare < 0) {
+                low = mid + 1;
+            } else if (compare > 0) {
+                high = mid - 1;
+            } else {
+                return mid; // key found
+            }
+        }
+        return -(low + 1); // key not found
+    }
+
+    private static byte scheme(LongitudinalModelBase longitudinalModel) {
+        if (longitudinalModel == null) {
+            return CONTINUOUS;
+        }
+        if (longitudinalModel.isCA()) {
+            return CELLULAR_AUTOMATON;
+        }
+        return longitudinalModel.modelName() == ModelName.NEWELL ? NEWELL : CONTINUOUS;
+    }
+
+    private void grow() {
+        final int capacity = 2 * rearPosition.length;
+        rearPosition = Arrays.copyOf(rearPosition, capacity);
+        frontPosition = Arrays.copyOf(frontPosition, capacity);
+        frontPositionOld = Arrays.copyOf(frontPositionOld, capacity);
+        speed = Arrays.copyOf(speed, capacity);
+        acc = Arrays.copyOf(acc, capacity);
+        length = Arrays.copyOf(length, capacity);
+        id = Arrays.copyOf(id, capacity);
+        scheme = Arrays.copyOf(scheme, capacity);
+    }
+}
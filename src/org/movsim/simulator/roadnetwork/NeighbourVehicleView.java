@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2010, 2011, 2012 by Arne Kesting, Martin Treiber, Ralph Germ, Martin Budden
+ * <movsim.org@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSim - the multi-model open-source vehicular-traffic simulator.
+ * 
+ * MovSim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+
+package org.movsim.simulator.roadnetwork;
+
+import org.movsim.simulator.vehicles.Vehicle;
+
+import maop.MaopVehicle;
+
+/**
+ * <p>
+ * Reusable copy of a vehicle on a neighbouring lane segment with its position shifted into the coordinates of the
+ * lane segment performing the lookup.
+ * </p>
+ * <p>
+ * A new copy is created whenever the vehicle being viewed changes; repeated lookups of the same vehicle update its
+ * copy in place. A returned copy therefore always describes the same vehicle and may be kept, for example in a
+ * perception, but it follows the state of that vehicle on later lookups through the same view.
+ * </p>
+ * <p>
+ * A view is not thread-safe: it belongs to the lane segment performing the lookup and must only be used by the task
+ * updating that lane segment's road segment.
+ * </p>
+ */
+final class NeighbourVehicleView {
+
+    private Vehicle copy;
+
+    /**
+     * Returns a copy of the given vehicle with its front position shifted by the given offset.
+     * 
+     * @param vehicle
+     *            the vehicle on the neighbouring lane segment
+     * @param positionOffset
+     *            offset to add to the vehicle's position
+     * @return the shifted copy, owned by this view
+     */
+    Vehicle of(Vehicle vehicle, double positionOffset) {
+        if (copy == null || copy.getId() != vehicle.getId()) {
+            copy = newCopy(vehicle, positionOffset);
+        } else {
+            copy.updateCopy(vehicle);
+            copy.setFrontPosition(vehicle.getFrontPosition() + positionOffset);
+        }
+        return copy;
+    }
+
+    /**
+     * Returns a new copy of the given vehicle with its front position shifted by the given offset, for lookups which
+     * cannot use a view.
+     * 
+     * @param vehicle
+     *            the vehicle on the neighbouring lane segment
+     * @param positionOffset
+     *            offset to add to the vehicle's position
+     * @return the shifted copy, owned by the caller
+     */
+    static Vehicle newCopy(Vehicle vehicle, double positionOffset) {
+        final Vehicle copy = new MaopVehicle(vehicle);
+        copy.setFrontPosition(vehicle.getFrontPosition() + positionOffset);
+        return copy;
+    }
+
+    /**
+     * Releases the copy, for example when the lane segment is cleared.
+     */
+    void clear() {
+        copy = null;
+    }
+}
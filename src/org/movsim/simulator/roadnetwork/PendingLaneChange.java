@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2010, 2011, 2012 by Arne Kesting, Martin Treiber, Ralph Germ, Martin Budden
+ * <movsim.org@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSim - the multi-model open-source vehicular-traffic simulator.
+ * 
+ * MovSim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+
+package org.movsim.simulator.roadnetwork;
+
+import org.movsim.simulator.vehicles.Vehicle;
+
+/**
+ * <p>
+ * Lane-changing decision of a vehicle, made on the state of the network before any lane change of the time step and
+ * applied by {@link RoadSegment#commitLaneChanges(double)}.
+ * </p>
+ * <p>
+ * Besides the target lane and the vehicles next to the changing vehicle in the target lane at the time of the
+ * decision, it holds the speed to which the lane-changing model adjusts the vehicle, such as the cooperative braking of
+ * the CCS model. Deciding therefore modifies neither the vehicle nor its lane-changing model.
+ * </p>
+ */
+public final class PendingLaneChange {
+
+    static final long NO_VEHICLE = Long.MIN_VALUE;
+
+    private Vehicle vehicle;
+    private int targetLane;
+    private long frontId;
+    private long rearId;
+    private double adjustedSpeed;
+
+    /**
+     * Constructor.
+     * 
+     * @param vehicle
+     *            the deciding vehicle
+     */
+    public PendingLaneChange(Vehicle vehicle) {
+        reset(vehicle);
+    }
+
+    /**
+     * Reuses this object for the decision of another vehicle.
+     * 
+     * @param vehicle
+     *            the deciding vehicle
+     */
+    void reset(Vehicle vehicle) {
+        this.vehicle = vehicle;
+        targetLane = Lanes.NONE;
+        frontId = NO_VEHICLE;
+        rearId = NO_VEHICLE;
+        adjustedSpeed = Double.NaN;
+    }
+
+    void setTarget(int targetLane, long frontId, long rearId) {
+        this.targetLane = targetLane;
+        this.frontId = frontId;
+        this.rearId = rearId;
+    }
+
+    public Vehicle vehicle() {
+        return vehicle;
+    }
+
+    int targetLane() {
+        return targetLane;
+    }
+
+    long frontId() {
+        return frontId;
+    }
+
+    long rearId() {
+        return rearId;
+    }
+
+    boolean isLaneChange() {
+        return targetLane != Lanes.NONE;
+    }
+
+    /**
+     * Returns the speed of the vehicle including the adjustments decided so far.
+     * 
+     * @return the adjusted speed, or the current speed of the vehicle if there is no adjustment
+     */
+    public double speed() {
+        return hasSpeedAdjustment() ? adjustedSpeed : vehicle.getSpeed();
+    }
+
+    /**
+     * Sets the speed the vehicle is to be given when the decision is applied.
+     * 
+     * @param speed
+     *            the adjusted speed
+     */
+    public void adjustSpeed(double speed) {
+        adjustedSpeed = speed;
+    }
+
+    public boolean hasSpeedAdjustment() {
+        return !Double.isNaN(adjustedSpeed);
+    }
+
+    /**
+     * Gives the vehicle its adjusted speed, if any.
+     * 
+     * @return true if the speed has been changed
+     */
+    public boolean applySpeedAdjustment() {
+        if (!hasSpeedAdjustment()) {
+            return false;
+        }
+        vehicle.setSpeed(adjustedSpeed);
+        return true;
+    }
+}
@@ -34,7 +34,13 @@ import org.movsim.simulator.roadnetwork.routing.Route;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import fr.ifsttar.licit.simulator.agents.perception.sensors.Sensor;
+import fr.ifsttar.licit.simulator.agents.perception.sensors.infrastructure.RSUBroadcaster;
+import fr.ifsttar.licit.simulator.agents.perception.sensors.infrastructure.RSUDevice;
+import fr.ifsttar.licit.simulator.environment.CommunicationIndex;
 import fr.ifsttar.licit.simulator.environment.PerceptibleEnvironment;
+import fr.ifsttar.licit.simulator.infrastructure.RoadSideUnit;
+import fr.ifsttar.licit.simulator.network.server.Server;
 
 /**
  * Iterable collection of the road segments in the road network.
@@ -50,6 +56,15 @@ public class RoadNetwork implements SimulationTimeStep, Iterable<RoadSegment>, P
     private boolean isWithCrashExit;
     private boolean hasVariableMessageSign;
 
+    /** runs the segment-local update phases in parallel, null for serial execution. */
+    private RoadSegmentPhaseExecutor phaseExecutor;
+
+    /** world positions of vehicles and road side units for the communication range queries. */
+    private final CommunicationIndex communicationIndex = new CommunicationIndex();
+
+    /** exchanges perceptions and actions with the external controllers before the decisions, null if none. */
+    private Server externalControlServer;
+
     /**
      * Sets the name of the road network.
      * 
@@ -185,6 +200,14 @@ public class RoadNetwork implements SimulationTimeStep, Iterable<RoadSegment>, P
      * <p>
      * The blocks can be swapped as long as each block is done serially for the whole network in exactly the above order (i),(ii),(iii).
      * </p>
+     *
+     * <p>
+     * If a parallelism greater than one is set, the segment-local steps are distributed over the road segments on a fork-join
+     * pool and each step is completed for the whole network before the next one starts. Steps which modify other road segments
+     * (infrastructure communication, lane changes, outflow and inflow) are always performed serially in the order in which
+     * the road segments were added, so that the result does not depend on the number of threads. The lane-changing decisions
+     * only modify state owned by their road segment and are made in parallel; only their commit is serial.
+     * </p>
      * 
      * @param dt
      *            simulation time interval, seconds.
@@ -194,61 +217,96 @@ public class RoadNetwork implements SimulationTimeStep, Iterable<RoadSegment>, P
      *            the counter of performed update steps
      */
     @Override
-    public void timeStep(double dt, double simulationTime, long iterationCount) {
+    public void timeStep(final double dt, final double simulationTime, final long iterationCount) {
         // Make each type of update for each road segment, this avoids problems with vehicles
         // being updated twice (for example when a vehicle moves of the end of a road segment
         // onto the next road segment.
 
         LOG.debug("called timeStep: time={}, timestep=", simulationTime, dt);
-        for (final RoadSegment roadSegment : roadSegments) {
-            roadSegment.updateRoadConditions(dt, simulationTime, iterationCount);
-        }
+        forEachRoadSegment(new RoadSegmentPhaseExecutor.Phase() {
+            @Override
+            void apply(RoadSegment roadSegment) {
+                roadSegment.updateRoadConditions(dt, simulationTime, iterationCount);
+            }
+        });
 
-        for (final RoadSegment roadSegment : roadSegments) {
-            roadSegment.computePerception(this, simulationTime);
-        }
+        forEachRoadSegment(new RoadSegmentPhaseExecutor.Phase() {
+            @Override
+            void apply(RoadSegment roadSegment) {
+                roadSegment.computePerception(RoadNetwork.this, simulationTime);
+            }
+        });
         
         /**
          * two communication steps : the first one deals with infrastructure, the second one with vehicles
          */
+        communicationIndex.update(this);
+        computeInfrastructureCommunication(simulationTime);
         for (final RoadSegment roadSegment : roadSegments) {
             roadSegment.computeCommunication(this, simulationTime);
         }
   
-        for (final RoadSegment roadSegment : roadSegments) {
-            roadSegment.handleCommunication(simulationTime);
-        }
+        forEachRoadSegment(new RoadSegmentPhaseExecutor.Phase() {
+            @Override
+            void apply(RoadSegment roadSegment) {
+                roadSegment.handleCommunication(simulationTime);
+            }
+        });
        
         // Note: must do lane changes before vehicle positions are updated (or after outFlow) to ensure
         // the vehicle's roadSegmentId is correctly set
+        // the lane changes are decided on the same state for the whole network, then committed in road segment order
+        forEachRoadSegment(new RoadSegmentPhaseExecutor.Phase() {
+            @Override
+            void apply(RoadSegment roadSegment) {
+                roadSegment.decideLaneChanges();
+            }
+        });
         for (final RoadSegment roadSegment : roadSegments) {
-            roadSegment.makeLaneChanges(dt, simulationTime, iterationCount);
+            roadSegment.commitLaneChanges(dt);
+        }
+
+        if (externalControlServer != null) {
+            externalControlServer.exchangeActions(this);
         }
 
         /**
          * @author Maxime Guriau
          */
-        for (final RoadSegment roadSegment : roadSegments) {
-            roadSegment.makeDecisions(dt, simulationTime, iterationCount);
-        }
+        forEachRoadSegment(new RoadSegmentPhaseExecutor.Phase() {
+            @Override
+            void apply(RoadSegment roadSegment) {
+                roadSegment.makeDecisions(dt, simulationTime, iterationCount);
+            }
+        });
         
             
-        for (final RoadSegment roadSegment : roadSegments) {
-            roadSegment.updateVehicleAccelerationsUsingPerception(dt, simulationTime, iterationCount);
-        }
+        forEachRoadSegment(new RoadSegmentPhaseExecutor.Phase() {
+            @Override
+            void apply(RoadSegment roadSegment) {
+                roadSegment.updateVehicleAccelerationsUsingPerception(dt, simulationTime, iterationCount);
+            }
+        });
         
         /**
          * 
          */
 
-        for (final RoadSegment roadSegment : roadSegments) {
-            roadSegment.updateVehiclePositionsAndSpeeds(dt, simulationTime, iterationCount);
-        }
+        forEachRoadSegment(new RoadSegmentPhaseExecutor.Phase() {
+            @Override
+            void apply(RoadSegment roadSegment) {
+                roadSegment.updateVehiclePositionsAndSpeeds(dt, simulationTime, iterationCount);
+            }
+        });
 
-        for (final RoadSegment roadSegment : roadSegments) {
-            roadSegment.checkForInconsistencies(simulationTime, iterationCount, isWithCrashExit);
-        }
+        forEachRoadSegment(new RoadSegmentPhaseExecutor.Phase() {
+            @Override
+            void apply(RoadSegment roadSegment) {
+                roadSegment.checkForInconsistencies(simulationTime, iterationCount, isWithCrashExit);
+            }
+        });
 
+        // outflow and inflow move vehicles between road segments: always commit them in road segment order
         for (final RoadSegment roadSegment : roadSegments) {
             roadSegment.outFlow(dt, simulationTime, iterationCount);
         }
@@ -257,11 +315,101 @@ public class RoadNetwork implements SimulationTimeStep, Iterable<RoadSegment>, P
             roadSegment.inFlow(dt, simulationTime, iterationCount);
         }
 
+        forEachRoadSegment(new RoadSegmentPhaseExecutor.Phase() {
+            @Override
+            void apply(RoadSegment roadSegment) {
+                roadSegment.updateDetectors(dt, simulationTime, iterationCount);
+            }
+        });
+    }
+
+    /**
+     * Infrastructure side communication: each road side unit of the network gathers the information of the vehicles
+     * within range of its devices. Performed once per time step, before the vehicle side communication of the road
+     * segments.
+     * 
+     * @param simulationTime
+     */
+    void computeInfrastructureCommunication(double simulationTime) {
+        final int rsuCount = communicationIndex.roadSideUnitCount();
+        for (int i = 0; i < rsuCount; ++i) {
+            final RoadSideUnit rsu = communicationIndex.roadSideUnit(i);
+            for (final Sensor sensor : rsu.getSensors()) {
+                if (sensor instanceof RSUDevice) {
+                    rsu.addPerception(((RSUDevice) sensor).perceive(rsu, communicationIndex, i));
+                } else if (sensor instanceof RSUBroadcaster) {
+                    rsu.addPerception(((RSUBroadcaster) sensor).perceive(rsu, communicationIndex, i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the given phase to all road segments, in parallel if a parallelism greater than one has been set.
+     *
+     * @param phase
+     */
+    private void forEachRoadSegment(RoadSegmentPhaseExecutor.Phase phase) {
+        if (phaseExecutor != null) {
+            phaseExecutor.invoke(roadSegments, phase);
+            return;
+        }
         for (final RoadSegment roadSegment : roadSegments) {
-            roadSegment.updateDetectors(dt, simulationTime, iterationCount);
+            phase.apply(roadSegment);
+        }
+    }
+
+    /**
+     * Sets the number of threads used for the segment-local update phases of {@link #timeStep(double, double, long)}. A
+     * parallelism of one (or less) selects the serial execution.
+     *
+     * @param parallelism
+     *            number of worker threads
+     */
+    public void setParallelism(int parallelism) {
+        if (phaseExecutor != null) {
+            if (phaseExecutor.parallelism() == parallelism) {
+                return;
+            }
+            phaseExecutor.shutdown();
+            phaseExecutor = null;
+        }
+        if (parallelism > 1) {
+            LOG.info("update road segments in parallel with {} threads", parallelism);
+            phaseExecutor = new RoadSegmentPhaseExecutor(parallelism);
         }
     }
 
+    /**
+     * Returns the number of threads used for the segment-local update phases.
+     *
+     * @return the parallelism, 1 for serial execution
+     */
+    public int parallelism() {
+        return phaseExecutor == null ? 1 : phaseExecutor.parallelism();
+    }
+
+    /**
+     * Returns the spatial index used by the communication devices. It is rebuilt at the start of the communication
+     * phase of each time step.
+     * 
+     * @return the communication index
+     */
+    public CommunicationIndex communicationIndex() {
+        return communicationIndex;
+    }
+
+    /**
+     * Sets the external control server whose controllers are asked for their actions at each time step, in lockstep
+     * before the decision phase.
+     * 
+     * @param externalControlServer
+     *            the server, null to disable the exchange
+     */
+    public void setExternalControlServer(Server externalControlServer) {
+        this.externalControlServer = externalControlServer;
+    }
+
     public void setWithCrashExit(boolean isWithCrashExit) {
         this.isWithCrashExit = isWithCrashExit;
     }
@@ -40,6 +40,7 @@ import org.movsim.network.autogen.opendrive.OpenDRIVE.Road.ElevationProfile;
 import org.movsim.output.detector.LoopDetectors;
 import org.movsim.roadmappings.RoadMapping;
 import org.movsim.simulator.MovsimConstants;
+import org.movsim.simulator.SimulationContext;
 import org.movsim.simulator.trafficlights.TrafficLightLocation;
 import org.movsim.simulator.vehicles.Vehicle;
 import org.slf4j.Logger;
@@ -50,8 +51,6 @@ import com.google.common.collect.ImmutableList;
 
 import fr.ifsttar.licit.simulator.agents.AgentType;
 import fr.ifsttar.licit.simulator.agents.perception.sensors.Sensor;
-import fr.ifsttar.licit.simulator.agents.perception.sensors.infrastructure.RSUBroadcaster;
-import fr.ifsttar.licit.simulator.agents.perception.sensors.infrastructure.RSUDevice;
 import fr.ifsttar.licit.simulator.agents.perception.sensors.infrastructure.RSULoopDetector;
 import fr.ifsttar.licit.simulator.agents.perception.sensors.infrastructure.control.RSUController;
 import fr.ifsttar.licit.simulator.agents.perception.sensors.vehicles.CommunicationDevice;
@@ -102,7 +101,6 @@ public class RoadSegment extends DefaultWeightedEdge implements Iterable<Vehicle
 
     public static final int ID_NOT_SET = -1;
     public static final int INITIAL_ID = 1;
-    private static int nextId = INITIAL_ID;
 
     /** the id is an internally used unique identifier for the road. */
     private final int id;
@@ -117,6 +115,9 @@ public class RoadSegment extends DefaultWeightedEdge implements Iterable<Vehicle
     private final int laneCount;
     private final LaneSegment laneSegments[];
     private LoopDetectors loopDetectors;
+
+    /** lane changes decided by {@link #decideLaneChanges()}, in the order of the lane segments and vehicles. */
+    private final ArrayList<PendingLaneChange> pendingLaneChanges = new ArrayList<>();
     
     /**
      * 
@@ -163,7 +164,7 @@ public class RoadSegment extends DefaultWeightedEdge implements Iterable<Vehicle
      * Resets the next id.
      */
     public static void resetNextId() {
-        nextId = INITIAL_ID;
+        SimulationContext.current().roadSegmentIds().reset();
     }
 
     /**
@@ -172,7 +173,7 @@ public class RoadSegment extends DefaultWeightedEdge implements Iterable<Vehicle
      * @return the number of road segment that have been created
      */
     public static int count() {
-        return nextId - INITIAL_ID;
+        return (int) SimulationContext.current().roadSegmentIds().count();
     }
 
     /**
@@ -190,7 +191,7 @@ public class RoadSegment extends DefaultWeightedEdge implements Iterable<Vehicle
         for (int index = 0; index < laneCount; ++index) {
             laneSegments[index] = new LaneSegment(this, index + 1);
         }
-        id = nextId++;
+        id = INITIAL_ID + (int) SimulationContext.current().roadSegmentIds().next();
         assert roadLength > 0;
         this.roadLength = roadLength;
         this.laneCount = laneCount;
@@ -850,28 +851,13 @@ public class RoadSegment extends DefaultWeightedEdge implements Iterable<Vehicle
 	}
     
     /**
+     * Vehicle side communication: the vehicles of this road segment get the information of the other vehicles and of
+     * the infrastructure within range. The infrastructure gathers its information before, once per time step for the
+     * whole network (see {@link RoadNetwork#computeInfrastructureCommunication(double)}).
      * 
      * @param network
      */
     public void computeCommunication(RoadNetwork network, double simulationTime) {
-   	 
-    	/**
-    	 * Two steps are needed : 
-    	 * first, infrastructure gather information, and then vehicles get it
-    	 */
-    	for(final RoadSegment roadSegment : network) {
-	    	for(final RoadSideUnit rsu : roadSegment.rsus){
-		     	for(Sensor sensor : rsu.getSensors()){
-		           	 if(sensor instanceof RSUDevice){
-		           		rsu.addPerception(((RSUDevice)sensor).perceive(rsu, this, roadSegment));
-		           	 } else if(sensor instanceof RSUBroadcaster){
-		           		rsu.addPerception(((RSUBroadcaster)sensor).perceive(rsu, this));
-		           	 }
-		        }
-		     }
-    	}
-    	
-    	
     	for (final LaneSegment laneSegment : laneSegments) {
             assert laneSegment.laneIsSorted();
             assert laneSegment.assertInvariant();
@@ -957,7 +943,8 @@ public class RoadSegment extends DefaultWeightedEdge implements Iterable<Vehicle
     /**
      * Lanes change.
      * <p>
-     * For each vehicle check if a lane change is desired and safe and, if so, make the lane change.
+     * For each vehicle check if a lane change is desired and safe and, if so, make the lane change. Equivalent to
+     * {@link #decideLaneChanges()} followed by {@link #commitLaneChanges(double)}.
      * </p>
      * 
      * <p>
@@ -972,29 +959,102 @@ public class RoadSegment extends DefaultWeightedEdge implements Iterable<Vehicle
      *            the number of iterations that have been executed
      */
     public void makeLaneChanges(double dt, double simulationTime, long iterationCount) {
+        decideLaneChanges();
+        commitLaneChanges(dt);
+    }
+
+    /**
+     * Decides the lane changes of the vehicles on this road segment, without modifying the vehicles or the vehicle
+     * order of the lane segments: the target lanes and the speed adjustments of the lane-changing models are recorded as
+     * {@link PendingLaneChange}s. The lookups of the neighbouring vehicles only refresh the reused copies of the lane
+     * segments of this road segment. All vehicles decide on the same state, so this step can be applied to the road
+     * segments in parallel. The decisions are applied by {@link #commitLaneChanges(double)}.
+     */
+    public void decideLaneChanges() {
+        pendingLaneChanges.clear();
         if (laneCount < 2) {
             // need at least 2 lanes for lane changing
             return;
         }
+        PendingLaneChange decision = null;
         // TODO assure priority for lane changes from slow to fast lanes
         for (final LaneSegment laneSegment : laneSegments) {
             assert laneSegment.assertInvariant();
-            for (Iterator<Vehicle> vehIterator = laneSegment.iterator(); vehIterator.hasNext();) {
-                Vehicle vehicle = vehIterator.next();
+            for (final Vehicle vehicle : laneSegment) {
                 assert vehicle.roadSegmentId() == id;
-                if (vehicle.considerLaneChange(dt, this)) {
-                    final int targetLane = vehicle.getTargetLane();
-                    assert targetLane != Lanes.NONE;
+                if (decision == null) {
+                    decision = new PendingLaneChange(vehicle);
+                } else {
+                    decision.reset(vehicle);
+                }
+                final int targetLane = vehicle.decideLaneChange(this, decision);
+                if (targetLane != Lanes.NONE) {
                     assert laneSegments[targetLane - 1].type() != Lanes.Type.ENTRANCE;
-                    // iteratorRemove avoids ConcurrentModificationException
-                    vehIterator.remove();
-                    vehicle.setLane(targetLane);
-                    laneSegments[targetLane - 1].addVehicle(vehicle);
+                    final LaneSegment targetLaneSegment = laneSegments[targetLane - 1];
+                    decision.setTarget(targetLane, vehicleId(targetLaneSegment.frontVehicle(vehicle)),
+                            vehicleId(targetLaneSegment.rearVehicle(vehicle)));
+                }
+                if (decision.isLaneChange() || decision.hasSpeedAdjustment()) {
+                    pendingLaneChanges.add(decision);
+                    decision = null;
                 }
             }
         }
     }
 
+    /**
+     * Applies the lane changes decided by {@link #decideLaneChanges()} and advances the lane changes in process.
+     * <p>
+     * The lane changes are applied in the order of the decisions. A lane change is dropped if the front or rear vehicle
+     * in the target lane is no longer the one the decision was based on, because another vehicle has changed into or
+     * out of the target lane just before; the vehicle reconsiders in the next time step. The result therefore does not
+     * depend on the order in which the road segments have decided, only on the order of the commits.
+     * </p>
+     * 
+     * @param dt
+     *            delta-t, simulation time interval, seconds
+     */
+    public void commitLaneChanges(double dt) {
+        if (laneCount < 2) {
+            return;
+        }
+        for (final LaneSegment laneSegment : laneSegments) {
+            for (final Vehicle vehicle : laneSegment) {
+                vehicle.updateLaneChangeProcess(dt);
+            }
+        }
+        // the speed adjustments are applied before the lane changes, in the lanes the vehicles decided in
+        for (final PendingLaneChange laneChange : pendingLaneChanges) {
+            if (laneChange.applySpeedAdjustment()) {
+                final Vehicle vehicle = laneChange.vehicle();
+                final LaneSegment laneSegment = laneSegments[vehicle.lane() - 1];
+                laneSegment.refreshKinematics(laneSegment.indexOf(vehicle));
+            }
+        }
+        for (final PendingLaneChange laneChange : pendingLaneChanges) {
+            if (!laneChange.isLaneChange()) {
+                continue;
+            }
+            final Vehicle vehicle = laneChange.vehicle();
+            final LaneSegment targetLaneSegment = laneSegments[laneChange.targetLane() - 1];
+            if (vehicleId(targetLaneSegment.frontVehicle(vehicle)) != laneChange.frontId()
+                    || vehicleId(targetLaneSegment.rearVehicle(vehicle)) != laneChange.rearId()) {
+                LOG.debug("lane change of vehicle id={} dropped, target lane has changed", vehicle.getId());
+                continue;
+            }
+            vehicle.startLaneChange(dt, laneChange.targetLane());
+            final LaneSegment laneSegment = laneSegments[vehicle.lane() - 1];
+            laneSegment.removeVehicle(laneSegment.indexOf(vehicle));
+            vehicle.setLane(laneChange.targetLane());
+            targetLaneSegment.addVehicle(vehicle);
+        }
+        pendingLaneChanges.clear();
+    }
+
+    private static long vehicleId(Vehicle vehicle) {
+        return vehicle == null ? PendingLaneChange.NO_VEHICLE : vehicle.getId();
+    }
+
 	public void makeDecisions(double dt, double simulationTime,
 			long iterationCount) {
 		
@@ -1032,7 +1092,8 @@ public class RoadSegment extends DefaultWeightedEdge implements Iterable<Vehicle
 	            // final int leftlane = laneSegment.getLaneIndex()+MovsimConstants.TO_LEFT;
 	            final LaneSegment leftLaneSegment = null; // TODO get left laneIndex ( leftLaneIndex < vehContainers.size() ) ?
 	                                                      // vehContainers.get(leftLaneIndex) : null;
-	            for (final Vehicle vehicle : laneSegment) {
+	            for (int i = 0, count = laneSegment.vehicleCount(); i < count; ++i) {
+	                final Vehicle vehicle = laneSegment.getVehicle(i);
 	                final double x = vehicle.getFrontPosition();
 	                final double alphaT = (flowConservingBottlenecks == null) ? 1 : flowConservingBottlenecks.alphaT(x);
 	                final double alphaV0 = (flowConservingBottlenecks == null) ? 1 : flowConservingBottlenecks.alphaV0(x);
@@ -1040,6 +1101,7 @@ public class RoadSegment extends DefaultWeightedEdge implements Iterable<Vehicle
 	                // LOG.debug("alphaT={}, alphaV0={}", alphaT, alphaV0);
 	                // TODO hack for testing acceleration behavior to exit
 	                vehicle.updateAcceleration(dt, this, laneSegment, leftLaneSegment, alphaT, alphaV0);
+	                laneSegment.accelerationUpdated(i);
 	            }
 	        }
     	
@@ -1068,7 +1130,8 @@ public class RoadSegment extends DefaultWeightedEdge implements Iterable<Vehicle
             
             final LaneSegment leftSegment = this.getLeftLane(laneSegment.lane());
            
-            for (final Vehicle vehicle : laneSegment) {
+            for (int i = 0, count = laneSegment.vehicleCount(); i < count; ++i) {
+            	final Vehicle vehicle = laneSegment.getVehicle(i);
             	
             	//if(this.id()!=2){ // FIXME: HACK
             		
@@ -1078,6 +1141,7 @@ public class RoadSegment extends DefaultWeightedEdge implements Iterable<Vehicle
 	
 	               
 	                vehicle.updateAccelerationUsingPerception(dt, this, laneSegment, leftSegment, alphaT, alphaV0);
+	                laneSegment.accelerationUpdated(i);
             	//} else { // FIXME: HACK
             	//		vehicle.cheat(110.0 / 3.6d, 0.0); // FIXME: HACK
             	//} //FIXME: HACK
@@ -1091,7 +1155,7 @@ public class RoadSegment extends DefaultWeightedEdge implements Iterable<Vehicle
     
 
     /**
-     * Update the vehicle positions and velocities by calling vehicle.updatePositionAndSpeed for each vehicle.
+     * Update the vehicle positions and velocities by integrating the kinematic arrays of each lane segment.
      * 
      * @param dt
      *            delta-t, simulation time interval, seconds
@@ -1103,9 +1167,7 @@ public class RoadSegment extends DefaultWeightedEdge implements Iterable<Vehicle
     public void updateVehiclePositionsAndSpeeds(double dt, double simulationTime, long iterationCount) {
         for (final LaneSegment laneSegment : laneSegments) {
             assert laneSegment.laneIsSorted();
-            for (final Vehicle vehicle : laneSegment) {
-                vehicle.updatePositionAndSpeed(dt);
-            }
+            laneSegment.updatePositionsAndSpeeds(dt);
         }
     }
 
@@ -1409,6 +1471,11 @@ public class RoadSegment extends DefaultWeightedEdge implements Iterable<Vehicle
                        // System.exit(-99);
                     	vehFront.cheat(0.0, 0.0);
                     	vehicle.cheat(0.0, 0.0);
+                    	laneSegment.refreshKinematics(index);
+                    	if (index > 0) {
+                    	    // the front vehicle is on this lane segment, otherwise it is a copy of the sink lane's vehicle
+                    	    laneSegment.refreshKinematics(index - 1);
+                    	}
                     }
                 }
             }
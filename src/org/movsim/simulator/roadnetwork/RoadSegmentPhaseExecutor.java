@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2010, 2011, 2012 by Arne Kesting, Martin Treiber, Ralph Germ, Martin Budden
+ * <movsim.org@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSim - the multi-model open-source vehicular-traffic simulator.
+ * 
+ * MovSim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+
+package org.movsim.simulator.roadnetwork;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.movsim.simulator.SimulationContext;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * Applies one update phase of the {@link RoadNetwork} time step to all road segments using a {@link ForkJoinPool}.
+ * </p>
+ * <p>
+ * {@link #invoke(List, Phase)} returns only when the phase has been applied to every road segment, so two consecutive
+ * phases are separated by a barrier. A phase run through this executor must only modify the state of the road
+ * segment it is applied to (and of the vehicles on it); reading other road segments is allowed since they are not
+ * modified during the same phase.
+ * </p>
+ * <p>
+ * The worker threads run the phase in the {@link SimulationContext} of the thread which invoked it.
+ * </p>
+ */
+final class RoadSegmentPhaseExecutor {
+
+    /** road segments handled by a single task before splitting. */
+    private static final int SEGMENTS_PER_TASK = 1;
+
+    /**
+     * An update step which is applied to each road segment independently.
+     */
+    abstract static class Phase {
+        abstract void apply(RoadSegment roadSegment);
+    }
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructor.
+     *
+     * @param parallelism
+     *            number of worker threads, must be greater than one
+     */
+    RoadSegmentPhaseExecutor(int parallelism) {
+        Preconditions.checkArgument(parallelism > 1, "parallelism=" + parallelism);
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    int parallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Applies the phase to all given road segments and waits until all of them have been updated.
+     *
+     * @param roadSegments
+     * @param phase
+     */
+    void invoke(List<RoadSegment> roadSegments, Phase phase) {
+        pool.invoke(new PhaseTask(SimulationContext.current(), roadSegments, phase, 0, roadSegments.size()));
+    }
+
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    private static final class PhaseTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 6427031768465346513L;
+
+        private final SimulationContext context;
+        private final List<RoadSegment> roadSegments;
+        private final Phase phase;
+        private final int from;
+        private final int to;
+
+        PhaseTask(SimulationContext context, List<RoadSegment> roadSegments, Phase phase, int from, int to) {
+            this.context = context;
+            this.roadSegments = roadSegments;
+            this.phase = phase;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SEGMENTS_PER_TASK) {
+                SimulationContext.setCurrent(context);
+                for (int i = from; i < to; ++i) {
+                    phase.apply(roadSegments.get(i));
+                }
+                return;
+            }
+            final int mid = (from + to) >>> 1;
+            invokeAll(new PhaseTask(context, roadSegments, phase, from, mid), new PhaseTask(context, roadSegments, phase,
+                    mid, to));
+        }
+    }
+}
@@ -27,6 +27,7 @@ package org.movsim.simulator.roadnetwork.routing;
 
 import org.jgrapht.WeightedGraph;
 import org.jgrapht.graph.DefaultDirectedWeightedGraph;
+import org.movsim.simulator.SimulationContext;
 import org.movsim.simulator.roadnetwork.LaneSegment;
 import org.movsim.simulator.roadnetwork.RoadNetwork;
 import org.movsim.simulator.roadnetwork.RoadSegment;
@@ -39,8 +40,6 @@ final class NetworkGraph {
     /** The Constant LOG. */
     private static final Logger LOG = LoggerFactory.getLogger(NetworkGraph.class);
 
-    private static long vertexId = 0;
-
     private NetworkGraph() {
         // private constructor
     }
@@ -79,7 +78,7 @@ final class NetworkGraph {
     private static long getOrCreateVertex(NodeType nodeType, RoadSegment roadSegment) {
         Long vertex = roadSegment.getNode(nodeType);
         if (vertex == null) {
-            vertex = vertexId++;
+            vertex = SimulationContext.current().vertexIds().next();
             roadSegment.setNode(nodeType, vertex);
         }
         return vertex;
@@ -27,6 +27,7 @@ package org.movsim.simulator.vehicles;
 
 import org.movsim.autogen.NoiseParameter;
 import org.movsim.utilities.MyRandom;
+import org.movsim.utilities.RandomStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -68,6 +69,9 @@ public class Noise {
     /** The xi acc as dynamic state variable (output) */
     private double xiAcc;
 
+    /** random stream of the vehicle, null if the shared {@link MyRandom} generator is used. */
+    private RandomStream randomStream;
+
     public Noise(NoiseParameter parameters) {
         xiAcc = 0;
         fluctStrength = parameters.getFluctStrength();
@@ -77,6 +81,15 @@ public class Noise {
         LOG.debug("tauRelaxAcc = {}, isWienerProcess = {}", tauRelaxAcc, isWienerProcess);
     }
 
+    /**
+     * Sets the random stream the noise is drawn from. Without a stream the shared {@link MyRandom} generator is used.
+     * 
+     * @param randomStream
+     */
+    public void setRandomStream(RandomStream randomStream) {
+        this.randomStream = randomStream;
+    }
+
     /**
      * Update. Calculates the acceleration noise {code xiAcc} modelled by a Wiener process or as delta-correlated random
      * process.
@@ -105,8 +118,8 @@ public class Noise {
      * 
      * @return random variable realization
      */
-    private static double getUniformlyDistributedRealization() {
-        final double randomVar = MyRandom.nextDouble();
+    private double getUniformlyDistributedRealization() {
+        final double randomVar = (randomStream == null) ? MyRandom.nextDouble() : randomStream.nextDouble();
         final double randomMu0Sigma1 = SQRT12 * (randomVar - 0.5);
         return randomMu0Sigma1;
     }
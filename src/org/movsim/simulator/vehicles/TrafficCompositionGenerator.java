@@ -8,6 +8,7 @@ import java.util.Set;
 import org.movsim.autogen.TrafficComposition;
 import org.movsim.simulator.roadnetwork.routing.Route;
 import org.movsim.utilities.MyRandom;
+import org.movsim.utilities.RandomStream;
 //import org.slf4j.Logger;
 //import org.slf4j.LoggerFactory;
 
@@ -18,16 +19,36 @@ public class TrafficCompositionGenerator {
     /** The Constant LOG. */
     //private static final Logger LOG = LoggerFactory.getLogger(TrafficCompositionGenerator.class);
 
+    /** stream id of the default (network wide) generator. */
+    public static final long DEFAULT_STREAM_ID = -1;
+
     private final org.movsim.autogen.TrafficComposition configuration;
 
     private final Map<String, VehicleType> vehicleTypes = new HashMap<>();
 
     private final VehicleFactory vehicleFactory;
 
+    /** draws the vehicle types, independently of the other random numbers of the simulation. */
+    private final RandomStream randomStream;
+
     public TrafficCompositionGenerator(TrafficComposition configuration, VehicleFactory vehicleFactory) {
+        this(configuration, vehicleFactory, DEFAULT_STREAM_ID);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param configuration
+     * @param vehicleFactory
+     * @param streamId
+     *            id of the random stream used to draw the vehicle types, generators with distinct ids draw independent
+     *            sequences
+     */
+    public TrafficCompositionGenerator(TrafficComposition configuration, VehicleFactory vehicleFactory, long streamId) {
         Preconditions.checkNotNull(configuration);
         this.configuration = configuration;
         this.vehicleFactory = vehicleFactory;
+        this.randomStream = MyRandom.stream(streamId, MyRandom.STREAM_TRAFFIC_COMPOSITION);
         setUpComposition();
     }
 
@@ -66,7 +87,7 @@ public class TrafficCompositionGenerator {
     }
 
     private VehicleType determineVehicleType() {
-        final double randomNumber = MyRandom.nextDouble();
+        final double randomNumber = randomStream.nextDouble();
         double sumFraction = 0;
         for (final VehicleType vehicleType : vehicleTypes.values()) {
             sumFraction += vehicleType.getFraction();
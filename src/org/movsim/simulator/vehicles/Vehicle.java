@@ -26,6 +26,7 @@
 package org.movsim.simulator.vehicles;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 
 import javax.annotation.Nullable;
@@ -33,8 +34,10 @@ import javax.annotation.Nullable;
 import org.movsim.autogen.VehiclePrototypeConfiguration;
 import org.movsim.consumption.model.EnergyFlowModel;
 import org.movsim.simulator.MovsimConstants;
+import org.movsim.simulator.SimulationContext;
 import org.movsim.simulator.roadnetwork.LaneSegment;
 import org.movsim.simulator.roadnetwork.Lanes;
+import org.movsim.simulator.roadnetwork.PendingLaneChange;
 import org.movsim.simulator.roadnetwork.RoadSegment;
 import org.movsim.simulator.roadnetwork.RoadSegment.TrafficLightLocationWithDistance;
 import org.movsim.simulator.roadnetwork.routing.Route;
@@ -44,9 +47,9 @@ import org.movsim.simulator.vehicles.lanechange.LaneChangeModel.LaneChangeDecisi
 import org.movsim.simulator.vehicles.longitudinalmodel.Memory;
 import org.movsim.simulator.vehicles.longitudinalmodel.TrafficLightApproaching;
 import org.movsim.simulator.vehicles.longitudinalmodel.acceleration.LongitudinalModelBase;
-import org.movsim.simulator.vehicles.longitudinalmodel.acceleration.LongitudinalModelBase.ModelName;
 import org.movsim.utilities.Colors;
 import org.movsim.utilities.MyRandom;
+import org.movsim.utilities.RandomStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -54,6 +57,8 @@ import com.google.common.base.Preconditions;
 
 import fr.ifsttar.licit.simulator.agents.Agent;
 import fr.ifsttar.licit.simulator.agents.AgentType;
+import fr.ifsttar.licit.simulator.agents.action.Action;
+import fr.ifsttar.licit.simulator.agents.action.vehicles.VehicleAction;
 import fr.ifsttar.licit.simulator.agents.perception.AgentPerception;
 import fr.ifsttar.licit.simulator.agents.perception.MeasurementPerception;
 import fr.ifsttar.licit.simulator.agents.perception.models.BasedOnMeasurementPerceptionModel;
@@ -116,7 +121,6 @@ public abstract class Vehicle extends Agent {
 	protected static final int INITIAL_ID = 1;
 	protected static final int INITIAL_TEMPLATE_ID = -1;
 
-	private static long nextId = INITIAL_ID;
 	// private static long nextTemplateId = INITIAL_TEMPLATE_ID;
 
 	/**
@@ -181,6 +185,9 @@ public abstract class Vehicle extends Agent {
 	/** constant random number between 0 and 1 used for random output selections */
 	final double randomFix;
 
+	/** random streams of the vehicle, indexed by purpose, created on first use */
+	private RandomStream[] randomStreams;
+
 	/** The vehicle number. */
 	private int vehNumber = VEHICLE_NUMBER_NOT_SET;
 
@@ -309,7 +316,7 @@ public abstract class Vehicle extends Agent {
 	 * Resets the next id.
 	 */
 	public static void resetNextId() {
-		nextId = INITIAL_ID;
+		SimulationContext.current().vehicleIds().reset();
 		// nextTemplateId = INITIAL_TEMPLATE_ID;
 	}
 
@@ -319,7 +326,7 @@ public abstract class Vehicle extends Agent {
 	 * @return the id of the last vehicle created
 	 */
 	public static long lastIdSet() {
-		return nextId - 1;
+		return INITIAL_ID + SimulationContext.current().vehicleIds().count() - 1;
 	}
 
 	public int getLane(){
@@ -333,7 +340,7 @@ public abstract class Vehicle extends Agent {
 	 * @return the number of vehicles that have been created
 	 */
 	public static long count() {
-		return nextId - INITIAL_ID;
+		return SimulationContext.current().vehicleIds().count();
 	}
 
 	public Vehicle(String label, LongitudinalModelBase longitudinalModel,
@@ -348,8 +355,8 @@ public abstract class Vehicle extends Agent {
 		this.width = vehInput.getWidth();
 		this.maxDeceleration = vehInput.getMaximumDeceleration();
 
-		id = nextId++;
-		randomFix = MyRandom.nextDouble();
+		id = INITIAL_ID + SimulationContext.current().vehicleIds().next();
+		randomFix = randomStream(MyRandom.STREAM_VEHICLE).nextDouble();
 
 		/**
 		 * @author gueriau
@@ -388,8 +395,8 @@ public abstract class Vehicle extends Agent {
 		assert rearPosition >= 0.0;
 		assert speed >= 0.0;
 
-		id = nextId++;
-		randomFix = MyRandom.nextDouble();
+		id = INITIAL_ID + SimulationContext.current().vehicleIds().next();
+		randomFix = randomStream(MyRandom.STREAM_VEHICLE).nextDouble();
 
 		/**
 		 * @author gueriau
@@ -462,6 +469,30 @@ public abstract class Vehicle extends Agent {
 
 	}
 
+	/**
+	 * Updates a copy made by {@link #Vehicle(Vehicle)} with the current state of
+	 * the vehicle it was made of, so that the copy can be reused instead of
+	 * creating a new one. A copy always keeps the identity of its vehicle.
+	 * 
+	 * @param source
+	 *            the vehicle this vehicle is a copy of
+	 */
+	public final void updateCopy(Vehicle source) {
+		Preconditions.checkArgument(id == source.id,
+				"copy of vehicle %s cannot be updated from vehicle %s", id,
+				source.id);
+		frontPosition = source.frontPosition;
+		speed = source.speed;
+		lane = source.lane;
+		laneOld = source.laneOld;
+		length = source.length;
+		color = source.color;
+		laneChangeModel = source.laneChangeModel;
+		longitudinalModel = source.longitudinalModel;
+		slope = source.slope;
+		route = source.route;
+	}
+
 	private void initialize() {
 		frontPositionOld = 0;
 		frontPosition = 0;
@@ -517,6 +548,22 @@ public abstract class Vehicle extends Agent {
 		return colorObject;
 	}
 
+	/**
+	 * Applies the color sent by the external controller, the other actions are
+	 * ignored.
+	 */
+	@Override
+	public void applyAction(Action action) {
+		if (action instanceof VehicleAction) {
+			final Integer newColor = ((VehicleAction) action).getNewColorRGB();
+			if (newColor != null) {
+				setColor(newColor);
+				// the color object is rebuilt from the new color when drawn
+				setColorObject(null);
+			}
+		}
+	}
+
 	/**
 	 * Returns this vehicle's length.
 	 * 
@@ -955,6 +1002,24 @@ public abstract class Vehicle extends Agent {
 		return calcAccModel(laneSegment, leftLaneSegment, 1.0, 1.0, 1.0);
 	}
 
+	/**
+	 * Calculates the acceleration of this vehicle behind the given front
+	 * vehicle, as {@link #calcAccModel(LaneSegment, LaneSegment)} without a
+	 * left lane would in a lane where the front vehicle is the next vehicle
+	 * ahead. Used to evaluate hypothetical situations, such as a lane change,
+	 * without modifying the lane segments.
+	 * 
+	 * @param frontVehicle
+	 *            the front vehicle, or null
+	 * @return the acceleration
+	 */
+	public double calcAccModel(Vehicle frontVehicle) {
+		if (longitudinalModel == null) {
+			return 0.0;
+		}
+		return longitudinalModel.calcAcc(this, frontVehicle, 1.0, 1.0, 1.0);
+	}
+
 	private double calcAccModel(LaneSegment laneSegment,
 			LaneSegment leftLaneSegment, double alphaTLocal,
 			double alphaV0Local, double alphaALocal) {
@@ -1040,51 +1105,29 @@ public abstract class Vehicle extends Agent {
 	}
 
 	/**
-	 * Update position and speed. Case distinction between cellular automata,
-	 * Newell and continuos models/iterated maps
+	 * Update position and speed with the values integrated by the lane segment.
+	 * The lane segment makes the case distinction between cellular automata,
+	 * Newell and continuos models/iterated maps on its kinematic arrays.
 	 * 
 	 * @param dt
 	 *            delta-t, simulation time interval, seconds
+	 * @param newFrontPosition
+	 *            front position at the end of the time interval
+	 * @param advance
+	 *            distance travelled in the time interval
+	 * @param newSpeed
+	 *            speed at the end of the time interval
+	 * @param newAcc
+	 *            acceleration, set to zero if the vehicle came to a stop
 	 */
-	public void updatePositionAndSpeed(double dt) {
+	public void updatePositionAndSpeed(double dt, double newFrontPosition,
+			double advance, double newSpeed, double newAcc) {
 		totalTravelTime += dt;
 		frontPositionOld = frontPosition;
-		if (longitudinalModel != null && longitudinalModel.isCA()) {
-			speed = (int) (speed + dt * acc + 0.5);
-			final int advance = (int) (frontPosition + dt * speed + 0.5);
-			totalTravelDistance += (advance - frontPosition);
-			frontPosition = advance;
-		} else if (longitudinalModel != null
-				&& (longitudinalModel.modelName() == ModelName.NEWELL)) {
-			// Newell position update: Different to continuous microscopic
-			// models and iterated maps.
-			// See chapter 10.7 english book version
-			if (speed < 0) {
-				speed = 0;
-			}
-			final double advance = speed * dt + acc * dt * dt;
-			speed += dt * acc;
-			frontPosition += advance;
-			totalTravelDistance += advance;
-			if (speed < 0) {
-				speed = 0;
-				acc = 0;
-			}
-		} else {
-			// continuous microscopic models and iterated maps
-			if (speed < 0) {
-				speed = 0;
-			}
-			final double advance = (acc * dt >= -speed) ? speed * dt + 0.5
-					* acc * dt * dt : -0.5 * speed * speed / acc;
-			frontPosition += advance;
-			totalTravelDistance += advance;
-			speed += dt * acc;
-			if (speed < 0) {
-				speed = 0;
-				acc = 0;
-			}
-		}
+		frontPosition = newFrontPosition;
+		totalTravelDistance += advance;
+		speed = newSpeed;
+		acc = newAcc;
 		if (fuelModel != null) {
 			totalFuelUsedLiters += fuelModel.getFuelFlowInLiterPerS(speed, acc)
 					* dt;
@@ -1123,6 +1166,18 @@ public abstract class Vehicle extends Agent {
 	// lane-changing related methods
 	// ---------------------------------------------------------------------------------
 
+	/**
+	 * Decides on a lane change and starts it at once, for a vehicle updated
+	 * on its own. The road segments decide with
+	 * {@link #decideLaneChange(RoadSegment)} and commit the lane changes
+	 * afterwards.
+	 * 
+	 * @param dt
+	 *            the dt
+	 * @param roadSegment
+	 *            the road segment of this vehicle
+	 * @return true if a lane change has been started
+	 */
 	public boolean considerLaneChange(double dt, RoadSegment roadSegment) {
 
 		// no lane changing when not configured in xml.
@@ -1140,6 +1195,39 @@ public abstract class Vehicle extends Agent {
 			return false;
 		}
 
+		final PendingLaneChange decision = new PendingLaneChange(this);
+		final int newLane = decideLaneChange(roadSegment, decision);
+		decision.applySpeedAdjustment();
+		if (newLane == Lanes.NONE) {
+			return false;
+		}
+		startLaneChange(dt, newLane);
+		return true;
+	}
+
+	/**
+	 * Decides whether this vehicle should change lanes, without modifying this
+	 * vehicle, the other vehicles or the vehicle order of the lane segments: a
+	 * speed adjustment of the lane-changing model is recorded in the given
+	 * decision. The vehicles of a road segment can therefore decide in
+	 * parallel, on the same state of the network; the decision is then
+	 * applied by {@link #startLaneChange(double, int)} and
+	 * {@link PendingLaneChange#applySpeedAdjustment()}.
+	 * 
+	 * @param roadSegment
+	 *            the road segment of this vehicle
+	 * @param decision
+	 *            the decision of this vehicle, receives the speed adjustment
+	 * @return the target lane, or {@link Lanes#NONE} for no lane change
+	 */
+	public int decideLaneChange(RoadSegment roadSegment,
+			PendingLaneChange decision) {
+
+		if (laneChangeModel == null || !laneChangeModel.isInitialized()
+				|| roadSegment.laneCount() < 2 || inProcessOfLaneChange()) {
+			return Lanes.NONE;
+		}
+
 		// if not in lane-changing process do determine if new lane is more
 		// attractive and lane change is possible
 		/**
@@ -1153,27 +1241,52 @@ public abstract class Vehicle extends Agent {
 		LaneChangeDecision lcDecision;
 		if (closedLaneAhead > 0) {
 			lcDecision = laneChangeModel.makeDecision(roadSegment,
-					closedLaneAhead);
+					closedLaneAhead, decision);
 		} else {
-			lcDecision = laneChangeModel.makeDecision(roadSegment);
+			lcDecision = laneChangeModel.makeDecision(roadSegment, decision);
 		}
 		/**
 		 * 
 		 */
 
 		final int laneChangeDirection = lcDecision.getDirection();
+		if (laneChangeDirection == Lanes.NO_CHANGE) {
+			return Lanes.NONE;
+		}
+		return lane + laneChangeDirection;
+	}
 
-		// initiates a lane change: set targetLane to new value the lane will be
-		// assigned by the vehicle container !!
-		if (laneChangeDirection != Lanes.NO_CHANGE) {
-			setTargetLane(lane + laneChangeDirection);
-			resetDelay();
+	/**
+	 * Initiates a lane change: sets the target lane, the lane itself will be
+	 * assigned by the vehicle container !!
+	 * 
+	 * @param dt
+	 *            the dt
+	 * @param newLane
+	 *            the target lane decided by
+	 *            {@link #decideLaneChange(RoadSegment, PendingLaneChange)}
+	 */
+	public void startLaneChange(double dt, int newLane) {
+		setTargetLane(newLane);
+		resetDelay();
+		updateLaneChangeDelay(dt);
+		LOG.debug("do lane change to={} into target lane={}", newLane - lane,
+				targetLane);
+	}
+
+	/**
+	 * Advances a lane change in process.
+	 * 
+	 * @param dt
+	 *            the dt
+	 */
+	public void updateLaneChangeProcess(double dt) {
+		if (laneChangeModel == null || !laneChangeModel.isInitialized()) {
+			return;
+		}
+		if (inProcessOfLaneChange()) {
 			updateLaneChangeDelay(dt);
-			LOG.debug("do lane change to={} into target lane={}",
-					laneChangeDirection, targetLane);
-			return true;
 		}
-		return false;
 	}
 
 	public int getTargetLane() {
@@ -1451,6 +1564,29 @@ public abstract class Vehicle extends Agent {
 
 	public void setNoise(Noise noise) {
 		this.noise = noise;
+		if (noise != null) {
+			noise.setRandomStream(randomStream(MyRandom.STREAM_NOISE));
+		}
+	}
+
+	/**
+	 * Returns the random stream of this vehicle for the given purpose. The
+	 * numbers drawn from the stream depend only on the seed, the vehicle id
+	 * and the purpose, not on the order in which the vehicles are updated.
+	 * 
+	 * @param purpose
+	 *            one of the MyRandom.STREAM_ constants
+	 * @return the random stream
+	 */
+	public final RandomStream randomStream(int purpose) {
+		if (randomStreams == null || purpose >= randomStreams.length) {
+			randomStreams = randomStreams == null ? new RandomStream[purpose + 1]
+					: Arrays.copyOf(randomStreams, purpose + 1);
+		}
+		if (randomStreams[purpose] == null) {
+			randomStreams[purpose] = MyRandom.stream(id, purpose);
+		}
+		return randomStreams[purpose];
 	}
 
 	public void setFuelModel(EnergyFlowModel fuelModel) {
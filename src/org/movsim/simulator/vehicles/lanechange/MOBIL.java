@@ -28,6 +28,7 @@ package org.movsim.simulator.vehicles.lanechange;
 import org.movsim.autogen.ModelParameterMOBIL;
 import org.movsim.simulator.roadnetwork.LaneSegment;
 import org.movsim.simulator.roadnetwork.Lanes;
+import org.movsim.simulator.roadnetwork.PendingLaneChange;
 import org.movsim.simulator.roadnetwork.RoadSegment;
 import org.movsim.simulator.vehicles.Vehicle;
 import org.movsim.simulator.vehicles.longitudinalmodel.acceleration.LongitudinalModelBase.ModelName;
@@ -84,7 +85,23 @@ public class MOBIL {
         return acc <= -param.getSafeDeceleration();
     }
 
-    public double calcAccelerationBalance(Vehicle me, int direction, RoadSegment roadSegment) {
+    /**
+     * Calculates the MOBIL balance of a lane change of a vehicle. The lane segments and the vehicles are not modified:
+     * the accelerations in the new lane are calculated with the hypothetical front and rear vehicles of the vehicle in
+     * that lane, so that several vehicles can be evaluated in parallel.
+     * 
+     * @param me
+     *            the vehicle
+     * @param direction
+     *            the direction of the lane change
+     * @param roadSegment
+     *            the road segment of the vehicle
+     * @param pendingLaneChange
+     *            the decision of the vehicle, receives the cooperative braking of the CCS model
+     * @return the balance, or <code>-Double.MAX_VALUE</code> if the lane change is not safe
+     */
+    public double calcAccelerationBalance(Vehicle me, int direction, RoadSegment roadSegment,
+            PendingLaneChange pendingLaneChange) {
 
         // set prospectiveBalance to large negative to indicate no lane change when not safe
         double prospectiveBalance = -Double.MAX_VALUE;
@@ -128,13 +145,9 @@ public class MOBIL {
         // new situation: newBack with me as leader and following left lane cases
         // TO_LEFT --> just the actual situation
         // TO_RIGHT --> consideration of left-lane (with me's leader) has no effect
-        // temporarily add the current vehicle to the new lane to calculate the new accelerations
-        me.setLane(newLane);
-        final int index = newLaneSegment.addVehicleTemp(me);
-        final double newBackNewAcc = newBack == null ? 0 : newBack.calcAccModel(newLaneSegment, null);
-        final double meNewAcc = me.calcAccModel(newLaneSegment, null);
-        newLaneSegment.removeVehicle(index);
-        me.setLane(currentLane);
+        // in the new lane, me would follow newFront and be followed by newBack
+        final double newBackNewAcc = newBack == null ? 0 : newBack.calcAccModel(me);
+        final double meNewAcc = me.calcAccModel(newFront);
 
         if (safetyCheckAcceleration(newBackNewAcc)) {
             return prospectiveBalance;
@@ -234,19 +247,22 @@ public class MOBIL {
             // (1) cooperative braking of runners/vehicles
             // to make space for agents on congested adjacent lane(s)
 
+            // speed including the braking of the evaluation of the other direction, applied when the decision is committed
+            double speed = pendingLaneChange.speed();
             int vehPerCoopVeh = (int) (1. / (fracCoop + 1e-6));
             double accCoop = 0;
             if (me.getId() % vehPerCoopVeh == 0) {
                 accCoop = -b * Math.max(0., (vc - vAdj) / vc)
-                        * (Math.min(1., Math.max(0, ((me.getSpeed() - vc) / vc))));
+                        * (Math.min(1., Math.max(0, ((speed - vc) / vc))));
                 accCoop = Math.max(-b, accCoop + me.getAcc());
-                me.setSpeed(me.getSpeed() + dt * accCoop);
+                speed += dt * accCoop;
+                pendingLaneChange.adjustSpeed(speed);
             }
 
             // (2) anticipatory lane changes of runners adjacent of congested lanes
             // to the free lane on the other side (if applicable)
 
-            int isEffective = ((vPlus - me.getSpeed()) * (me.getSpeed() - vMinus) > 0) ? 1 : 0;
+            int isEffective = ((vPlus - speed) * (speed - vMinus) > 0) ? 1 : 0;
             double abiasBoth = isEffective * ((vPlus - vMinus > 0) ? 1 : -1) * biasmax * Math.max(0., (vc - vAdj) / vc);
             prospectiveBalance += abiasBoth;
             // System.out.println("currentLane=" + currentLane + " direction=" + direction + " vPlus=" + vPlus
@@ -121,7 +121,7 @@ public class TrafficLightApproaching {
 
     private static double calcAccelerationToTrafficlight(Vehicle me, double distanceToTrafficlight) {
         final double speed = me.getSpeed();
-        return Math.min(0, me.getLongitudinalModel().calcAccSimple(distanceToTrafficlight, speed, speed));
+        return Math.min(0, me.getLongitudinalModel().calcAccSimple(me, distanceToTrafficlight, speed, speed));
     }
 
     /**
@@ -178,11 +178,12 @@ public class TrafficLightApproaching {
     private static double calcEffectiveFrontVehicleLengths(Vehicle me, TrafficLight trafficLight,
             double distanceToSecondTrafficlight) {
         double sumEffectiveLengths = 0;
-        Vehicle frontVehicle = trafficLight.roadSegment().laneSegment(me.lane()).frontVehicle(me);
+        // the traffic light may be on another road segment, which is updated concurrently: do not use its reused copies
+        Vehicle frontVehicle = trafficLight.roadSegment().laneSegment(me.lane()).frontVehicleDetached(me);
         while (frontVehicle != null && me.getBrutDistance(frontVehicle) < distanceToSecondTrafficlight) {
             sumEffectiveLengths += frontVehicle.getEffectiveLength();
             Vehicle prevFront = frontVehicle;
-            frontVehicle = trafficLight.roadSegment().laneSegment(frontVehicle.lane()).frontVehicle(frontVehicle);
+            frontVehicle = trafficLight.roadSegment().laneSegment(frontVehicle.lane()).frontVehicleDetached(frontVehicle);
             if (frontVehicle != null && prevFront.getId() == frontVehicle.getId()) {
                 // FIXME seems to be a real bug: get back the *same* vehicle when its entered the downstream roadsegment
                 break;
@@ -12,6 +12,7 @@ import org.movsim.autogen.ModelParameterBMA;
 import org.movsim.input.ProjectMetaData;
 import org.movsim.simulator.vehicles.Vehicle;
 import org.movsim.simulator.vehicles.longitudinalmodel.acceleration.parameter.IModelParameterBMA;
+import org.movsim.utilities.MyRandom;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -77,7 +78,7 @@ public class BMA extends LongitudinalModelBase implements BasedOnMeasurementPerc
     			
     			List<String[]> data = calibrationData.getData();
     			
-    			int randomLine = (int) Math.floor(Math.random() * (data.size() - 2)) + 1 ;
+    			int randomLine = (int) Math.floor(MyRandom.nextAlternativeDouble() * (data.size() - 2)) + 1 ;
         		
     			String[] line = data.get(randomLine);
     			
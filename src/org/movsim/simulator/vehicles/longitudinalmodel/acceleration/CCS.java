@@ -1,5 +1,6 @@
 package org.movsim.simulator.vehicles.longitudinalmodel.acceleration;
 
+import org.movsim.simulator.SimulationContext;
 import org.movsim.simulator.vehicles.Vehicle;
 import org.movsim.simulator.vehicles.longitudinalmodel.acceleration.parameter.IModelParameterCCS;
 import org.slf4j.Logger;
@@ -18,8 +19,6 @@ public class CCS extends LongitudinalModelBase {
         NOWAVE, FOURWAVES, TENWAVES
     }
 
-    private static Waves wave = Waves.NOWAVE;
-
     // /**
     // * @return the wave
     // */
@@ -28,11 +27,13 @@ public class CCS extends LongitudinalModelBase {
     // }
 
     /**
+     * Sets the wave of the current simulation context.
+     * 
      * @param wave
      *            the wave to set
      */
     public static void setWave(Waves wave) {
-        CCS.wave = wave;
+        SimulationContext.current().setWave(wave);
     }
 
     private int counter = 0;
@@ -111,6 +112,7 @@ public class CCS extends LongitudinalModelBase {
     @Override
     public double calcAcc(Vehicle me, Vehicle frontVehicle, double alphaT, double alphaV0, double alphaA) {
         // wave start hack 300 = 1min
+        final Waves wave = SimulationContext.current().getWave();
         if (wave == Waves.FOURWAVES) {
             if ((me.roadSegmentId() <= 7 && counter < 1500) || (me.roadSegmentId() <= 5 && counter < 3000)
                     || (me.roadSegmentId() <= 2 && counter < 9000)) {
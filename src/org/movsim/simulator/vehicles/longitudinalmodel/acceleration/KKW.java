@@ -89,12 +89,17 @@ class KKW extends LongitudinalModelBase {
         final double v = me.getSpeed();
         final double dv = me.getRelSpeed(frontVehicle);
 
-        return acc(s, v, dv, alphaT, alphaV0);
+        return acc(s, v, dv, alphaT, alphaV0, me.randomStream(MyRandom.STREAM_ACCELERATION).nextDouble());
     }
 
     @Override
     public double calcAccSimple(double s, double v, double dv) {
-        return acc(s, v, dv, 1.0, 1.0);
+        return acc(s, v, dv, 1.0, 1.0, MyRandom.nextDouble());
+    }
+
+    @Override
+    public double calcAccSimple(Vehicle me, double s, double v, double dv) {
+        return acc(s, v, dv, 1.0, 1.0, me.randomStream(MyRandom.STREAM_ACCELERATION).nextDouble());
     }
 
     /**
@@ -110,9 +115,11 @@ class KKW extends LongitudinalModelBase {
      *            the alpha t
      * @param alphaV0
      *            the alpha v0
+     * @param r1
+     *            uniform(0,1) random number for the stochastic part
      * @return the double
      */
-    private double acc(double s, double v, double dv, double alphaT, double alphaV0) {
+    private double acc(double s, double v, double dv, double alphaT, double alphaV0, double r1) {
 
         final int v0Loc = (int) (alphaV0 * getDesiredSpeed() + 0.5); // adapt v0 spatially
         final int vLoc = (int) (v + 0.5);
@@ -134,7 +141,6 @@ class KKW extends LongitudinalModelBase {
         vtilde = Math.max(0, vtilde);
 
         // stochastic part
-        final double r1 = MyRandom.nextDouble(); // noise terms ~ G(0,1)
         final int xi = (r1 < pb) ? -1 : (r1 < pb + pa) ? 1 : 0;
 
         int vNew = 0;
@@ -79,12 +79,17 @@ class Krauss extends LongitudinalModelBase {
         final double localT = alphaT * T;
         final double localV0 = Math.min(alphaV0 * getDesiredSpeed(), me.getSpeedlimit());
 
-        return acc(s, v, dv, localT, localV0);
+        return acc(s, v, dv, localT, localV0, me.randomStream(MyRandom.STREAM_ACCELERATION).nextDouble());
     }
 
     @Override
     public double calcAccSimple(double s, double v, double dv) {
-        return acc(s, v, dv, T, getDesiredSpeed());
+        return acc(s, v, dv, T, getDesiredSpeed(), MyRandom.nextDouble());
+    }
+
+    @Override
+    public double calcAccSimple(Vehicle me, double s, double v, double dv) {
+        return acc(s, v, dv, T, getDesiredSpeed(), me.randomStream(MyRandom.STREAM_ACCELERATION).nextDouble());
     }
 
     /**
@@ -101,10 +106,12 @@ class Krauss extends LongitudinalModelBase {
      *            dt=T=tau_relax making the vSafe formula possibly inconsistent
      * @param v0Local
      *            the v0 local
+     * @param r
+     *            instance of uniform(0,1) distribution
      * 
      * @return the double
      */
-    private double acc(double s, double v, double dv, double TLocal, double v0Local) {
+    private double acc(double s, double v, double dv, double TLocal, double v0Local, double r) {
         final double vp = v - dv;
         /**
          * safe speed; complicated formula in PRE 55, 5601 (1997) is essentially the vSafe formula for the simple Gipps
@@ -129,7 +136,6 @@ class Krauss extends LongitudinalModelBase {
          * recognized/treated in the PRE publication
          */
         final double vLower = (1 - param.getEpsilon()) * vUpper + param.getEpsilon() * Math.max(0, (v - b * TLocal));
-        final double r = MyRandom.nextDouble(); // instance of uniform(0,1) distribution
         final double vNew = vLower + r * (vUpper - vLower);
         final double aWanted = (vNew - v) / TLocal;
 
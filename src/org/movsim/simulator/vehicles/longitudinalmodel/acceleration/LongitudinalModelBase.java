@@ -403,6 +403,23 @@ public abstract class LongitudinalModelBase {
      */
     public abstract double calcAccSimple(double s, double v, double dv);
 
+    /**
+     * Calculates the vehicular acceleration of vehicle me. Stochastic models override this method to draw from the
+     * random stream of the vehicle instead of the shared generator.
+     * 
+     * @param me
+     * @param s
+     *            the s
+     * @param v
+     *            the v
+     * @param dv
+     *            the dv
+     * @return the calculated acceleration
+     */
+    public double calcAccSimple(Vehicle me, double s, double v, double dv) {
+        return calcAccSimple(s, v, dv);
+    }
+
 
 
 }
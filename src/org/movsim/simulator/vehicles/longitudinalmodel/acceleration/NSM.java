@@ -86,12 +86,17 @@ class NSM extends LongitudinalModelBase {
             }
         }
 
-        return acc(s, v, dv, localV0);
+        return acc(s, v, dv, localV0, me.randomStream(MyRandom.STREAM_ACCELERATION).nextDouble());
     }
 
     @Override
     public double calcAccSimple(double s, double v, double dv) {
-        return acc(s, v, dv, getDesiredSpeed());
+        return acc(s, v, dv, getDesiredSpeed(), MyRandom.nextDouble());
+    }
+
+    @Override
+    public double calcAccSimple(Vehicle me, double s, double v, double dv) {
+        return acc(s, v, dv, getDesiredSpeed(), me.randomStream(MyRandom.STREAM_ACCELERATION).nextDouble());
     }
 
     /**
@@ -107,14 +112,15 @@ class NSM extends LongitudinalModelBase {
      *            the local T
      * @param localV0
      *            the local v0
+     * @param r1
+     *            uniform(0,1) random number for the slowdown decision
      * @return the double
      */
-    private double acc(double s, double v, double dv, double localV0) {
+    private double acc(double s, double v, double dv, double localV0, double r1) {
         final int localIntegerV0 = (int) (localV0 + 0.5);
         final int vLocal = (int) (v + 0.5);
         int vNew = 0;
 
-        final double r1 = MyRandom.nextDouble();
         final double pb = (vLocal < 1) ? param.getPSlowStart() : param.getPSlowdown();
         final int slowdown = (r1 < pb) ? 1 : 0;
 
@@ -27,25 +27,67 @@ package org.movsim.utilities;
 
 import java.util.Random;
 
+import org.movsim.simulator.SimulationContext;
+
 /**
  * The Class MyRandom.
+ * 
+ * <p>
+ * The generators are owned by the {@link SimulationContext} of the calling thread.
+ * </p>
  */
 public class MyRandom {
 
-    private static Random rand = new Random();
-    private static Random rand2 = new Random();
+    /** stream purposes, see {@link #stream(long, int)}. */
+    public static final int STREAM_VEHICLE = 0;
+    public static final int STREAM_NOISE = 1;
+    public static final int STREAM_ACCELERATION = 2;
+    public static final int STREAM_TELEMETER = 3;
+    public static final int STREAM_GPS = 4;
+    public static final int STREAM_WIRELESS = 5;
+    public static final int STREAM_TRAFFIC_COMPOSITION = 6;
+
+    /**
+     * Random generators of one simulation run.
+     */
+    public static final class Generators {
+        private Random rand = new Random();
+        private Random rand2 = new Random();
+        private long streamSeed = new Random().nextLong();
+    }
 
     private MyRandom() {
         // enforce singleton property with private constructor.
     }
 
+    private static Generators generators() {
+        return SimulationContext.current().getRandomGenerators();
+    }
+
     public static void initializeWithSeed(long randomSeed) {
-        rand = new Random(randomSeed);
-        rand2 = new Random(randomSeed);
+        final Generators generators = generators();
+        generators.rand = new Random(randomSeed);
+        generators.rand2 = new Random(randomSeed);
+        generators.streamSeed = randomSeed;
+    }
+
+    /**
+     * Returns a new random stream for the given agent and purpose. The stream is derived from the seed of the
+     * scenario, so a given agent always draws the same numbers for a given purpose, independently of the other agents
+     * and of the thread count.
+     * 
+     * @param agentId
+     *            id of the vehicle (or other agent) owning the stream
+     * @param purpose
+     *            one of the STREAM_ constants, e.g. {@link #STREAM_NOISE}
+     * @return the random stream
+     */
+    public static RandomStream stream(long agentId, int purpose) {
+        return new RandomStream(RandomStream.deriveKey(RandomStream.deriveKey(generators().streamSeed, agentId), purpose));
     }
 
     public static boolean isInitialized() {
-        return rand != null;
+        return generators().rand != null;
     }
 
     /**
@@ -54,11 +96,11 @@ public class MyRandom {
      * @return the int
      */
     public static int nextInt() {
-        return rand.nextInt();
+        return generators().rand.nextInt();
     }
 
     public static int nextInt(int n) {
-        return rand.nextInt(n);
+        return generators().rand.nextInt(n);
     }
 
     /**
@@ -67,11 +109,11 @@ public class MyRandom {
      * @return the double
      */
     public static double nextDouble() {
-        return rand.nextDouble();
+        return generators().rand.nextDouble();
     }
     
     public static double nextAlternativeDouble() {
-        return rand2.nextDouble();
+        return generators().rand2.nextDouble();
     }
 
     /**
@@ -88,7 +130,7 @@ public class MyRandom {
     }
 
     public static double getGaussiansDistributedRandomizedFactor(double sigma, double nSigmaCutoff) {
-        return 1 + Math.max(-nSigmaCutoff * sigma, Math.min(nSigmaCutoff, sigma * rand.nextGaussian()));
+        return 1 + Math.max(-nSigmaCutoff * sigma, Math.min(nSigmaCutoff, sigma * generators().rand.nextGaussian()));
     }
 
 }
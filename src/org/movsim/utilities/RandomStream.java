@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2010, 2011, 2012 by Arne Kesting, Martin Treiber, Ralph Germ, Martin Budden
+ * <movsim.org@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSim - the multi-model open-source vehicular-traffic simulator.
+ * 
+ * MovSim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+
+package org.movsim.utilities;
+
+/**
+ * <p>
+ * Counter-based stream of pseudo random numbers.
+ * </p>
+ * <p>
+ * The n-th number of a stream is a hash of the stream key and n, so a stream does not depend on any other stream and
+ * the numbers drawn by an agent are the same whatever the order (or the thread) in which the agents are updated. The
+ * key of a stream is derived from the scenario seed, the id of the agent and the purpose of the stream, see
+ * {@link MyRandom#stream(long, int)}.
+ * </p>
+ * <p>
+ * A stream is not thread-safe, it is meant to be used by a single agent.
+ * </p>
+ */
+public final class RandomStream {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static final double DOUBLE_UNIT = 1.0 / (1L << 53);
+
+    private final long key;
+    private long counter;
+    private double nextGaussian;
+    private boolean haveNextGaussian;
+
+    RandomStream(long key) {
+        this.key = key;
+    }
+
+    /**
+     * Returns the next pseudo random number, uniformly distributed in [0, 1).
+     * 
+     * @return the next number of this stream
+     */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * DOUBLE_UNIT;
+    }
+
+    /**
+     * Returns the next pseudo random integer, uniformly distributed in [0, n).
+     * 
+     * @param n
+     *            the bound, must be positive
+     * @return the next integer of this stream
+     */
+    public int nextInt(int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("n must be positive: " + n);
+        }
+        return (int) (nextDouble() * n);
+    }
+
+    /**
+     * Returns the next pseudo random number, normally distributed with mean 0 and standard deviation 1 (polar method).
+     * 
+     * @return the next gaussian number of this stream
+     */
+    public double nextGaussian() {
+        if (haveNextGaussian) {
+            haveNextGaussian = false;
+            return nextGaussian;
+        }
+        double v1, v2, s;
+        do {
+            v1 = 2 * nextDouble() - 1;
+            v2 = 2 * nextDouble() - 1;
+            s = v1 * v1 + v2 * v2;
+        } while (s >= 1 || s == 0);
+        final double multiplier = StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+        nextGaussian = v2 * multiplier;
+        haveNextGaussian = true;
+        return v1 * multiplier;
+    }
+
+    /**
+     * Returns a new stream derived from this stream's key and the given sub key. Does not change this stream.
+     * 
+     * @param subKey
+     * @return the derived stream
+     */
+    public RandomStream split(long subKey) {
+        return new RandomStream(deriveKey(key, subKey));
+    }
+
+    private long nextLong() {
+        return mix(key + GOLDEN_GAMMA * ++counter);
+    }
+
+    static long deriveKey(long key, long subKey) {
+        return mix(key ^ mix(subKey + GOLDEN_GAMMA));
+    }
+
+    /**
+     * 64 bit finalizer of the SplitMix64 generator.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
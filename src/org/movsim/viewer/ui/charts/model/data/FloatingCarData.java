@@ -1,49 +1,135 @@
-package org.movsim.viewer.ui.charts.model.data;
-
-import java.util.ArrayList;
-
-import org.movsim.viewer.ui.charts.model.FloatingCarDataPoint;
-
-/**
- * FloatingCarData represents a serie of car Data
- * 
- * @author mgueriau
- *
- */
-public class FloatingCarData {
-
-	/**
-	 * Vehicle Reference ID
-	 */
-	private long vehicleID;
-	
-	private ArrayList<FloatingCarDataPoint> floatingCarDataPoints = new ArrayList<FloatingCarDataPoint>();
-	
-	public FloatingCarData(long vehicleID){
-		this.vehicleID=vehicleID;
-	}
-	
-	public int getDataSize(){
-		return this.floatingCarDataPoints.size();
-	}
-	
-	public long getVehicleID() {
-		return this.vehicleID;
-	}
-	
-	public void addFloatingCarDataPoint(double time, double position, double speed/*, double acc*/){
-		this.floatingCarDataPoints.add(new FloatingCarDataPoint(time, position, speed/*, acc*/));
-	}
-	
-	public FloatingCarDataPoint getFloatingCarDataPoint(int index){
-		return this.floatingCarDataPoints.get(index);
-	}
-	
-	public ArrayList<FloatingCarDataPoint> getFloatingCarDataPoints(){
-		return this.floatingCarDataPoints;
-	}
-	
-	public void clear(){
-		this.floatingCarDataPoints.clear();
-	}
-}
+package org.movsim.viewer.ui.charts.model.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.movsim.viewer.ui.charts.model.FloatingCarDataPoint;
+
+/**
+ * FloatingCarData represents a serie of car Data
+ *
+ * The points are stored in primitive arrays, in the order they were added, and the oldest ones can be removed.
+ *
+ * @author mgueriau
+ *
+ */
+public class FloatingCarData {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * Vehicle Reference ID
+	 */
+	private long vehicleID;
+
+	private double[] times = new double[INITIAL_CAPACITY];
+	private float[] positions = new float[INITIAL_CAPACITY];
+	private float[] speeds = new float[INITIAL_CAPACITY];
+
+	// the points are stored from first to end
+	private int first;
+	private int end;
+
+	public FloatingCarData(long vehicleID){
+		this.vehicleID=vehicleID;
+	}
+
+	public int getDataSize(){
+		return this.end - this.first;
+	}
+
+	public long getVehicleID() {
+		return this.vehicleID;
+	}
+
+	public void addFloatingCarDataPoint(double time, double position, double speed/*, double acc*/){
+		if(this.end == this.times.length){
+			this.grow();
+		}
+		this.times[this.end] = time;
+		this.positions[this.end] = (float) position;
+		this.speeds[this.end] = (float) speed;
+		this.end++;
+	}
+
+	/**
+	 * @return the time of a point, or NaN if the index is out of range
+	 */
+	public double getTime(int index){
+		return index >= 0 && index < this.getDataSize() ? this.times[this.first + index] : Double.NaN;
+	}
+
+	/**
+	 * @return the position of a point, or NaN if the index is out of range
+	 */
+	public double getPosition(int index){
+		return index >= 0 && index < this.getDataSize() ? this.positions[this.first + index] : Double.NaN;
+	}
+
+	/**
+	 * @return the speed of a point, or NaN if the index is out of range
+	 */
+	public double getSpeed(int index){
+		return index >= 0 && index < this.getDataSize() ? this.speeds[this.first + index] : Double.NaN;
+	}
+
+	public FloatingCarDataPoint getFloatingCarDataPoint(int index){
+		if(index < 0 || index >= this.getDataSize()){
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.getDataSize());
+		}
+		return new FloatingCarDataPoint(this.getTime(index), this.getPosition(index), this.getSpeed(index));
+	}
+
+	/**
+	 * @return a copy of the points
+	 */
+	public ArrayList<FloatingCarDataPoint> getFloatingCarDataPoints(){
+		final ArrayList<FloatingCarDataPoint> points = new ArrayList<FloatingCarDataPoint>(this.getDataSize());
+		for(int i = 0; i < this.getDataSize(); i++){
+			points.add(this.getFloatingCarDataPoint(i));
+		}
+		return points;
+	}
+
+	/**
+	 * Removes the points older than a time, the points being added in time order.
+	 *
+	 * @param time
+	 *            the time of the oldest point kept
+	 */
+	public void removeBefore(double time){
+		while(this.first < this.end && this.times[this.first] < time){
+			this.first++;
+		}
+		if(this.first == this.end){
+			this.clear();
+		}
+	}
+
+	public void clear(){
+		this.first = 0;
+		this.end = 0;
+		if(this.times.length > INITIAL_CAPACITY){
+			this.times = new double[INITIAL_CAPACITY];
+			this.positions = new float[INITIAL_CAPACITY];
+			this.speeds = new float[INITIAL_CAPACITY];
+		}
+	}
+
+	// makes room at the end, by moving the points back to the start if half of the arrays is free
+	private void grow(){
+		final int size = this.getDataSize();
+		if(this.first > this.times.length / 2){
+			System.arraycopy(this.times, this.first, this.times, 0, size);
+			System.arraycopy(this.positions, this.first, this.positions, 0, size);
+			System.arraycopy(this.speeds, this.first, this.speeds, 0, size);
+		} else {
+			final int capacity = 2 * this.times.length;
+			this.times = Arrays.copyOfRange(this.times, this.first, this.first + capacity);
+			this.positions = Arrays.copyOfRange(this.positions, this.first, this.first + capacity);
+			this.speeds = Arrays.copyOfRange(this.speeds, this.first, this.first + capacity);
+		}
+		this.first = 0;
+		this.end = size;
+	}
+}
@@ -1,7 +1,8 @@
 package org.movsim.viewer.ui.charts.model.data.sets;
 
 import java.util.ArrayList;
-import java.util.Hashtable;
+import java.util.HashMap;
+import java.util.Iterator;
 
 import org.movsim.input.ProjectMetaData;
 import org.movsim.simulator.roadnetwork.Lanes;
@@ -9,13 +10,19 @@ import org.movsim.viewer.ui.charts.model.data.FloatingCarData;
 
 import fr.ifsttar.licit.simulator.util.units.Unit;
 
+/**
+ * Trajectories of the vehicles on a lane, one serie per vehicle.
+ * 
+ * The data set is filled by the simulation thread and drawn by the event dispatch thread, so its methods are
+ * synchronized. A serie or an item removed meanwhile reads as empty.
+ */
 public class SpaceTimeSpeedDataSet extends XYZDataSet {
 
 	private static final long serialVersionUID = -5620279359158175121L;
 	
 	private ArrayList<FloatingCarData> cars = new ArrayList<FloatingCarData>();
 	
-	private Hashtable<Long, Integer> correspondingIDs = new Hashtable<Long, Integer>();
+	private HashMap<Long, FloatingCarData> correspondingIDs = new HashMap<Long, FloatingCarData>();
 	
 	private int lane = Lanes.MOST_INNER_LANE;
 
@@ -50,22 +57,42 @@ public class SpaceTimeSpeedDataSet extends XYZDataSet {
 	//	super(/*simulator, roadSegment, */"Vehicles Trajectories on right lane" + simulator.generateScenarioName(), "Time", Unit.Second, "Position", Unit.Meters, "Speed", Unit.KilometersPerHour); ;
 	//}
 	
-	public void addFloatingCarData(long vehicleID, double time, double position, double speed){
+	public synchronized void addFloatingCarData(long vehicleID, double time, double position, double speed){
 		
-		if(!correspondingIDs.containsKey(new Long(vehicleID))){
-			this.cars.add(new FloatingCarData(vehicleID));
-			//System.out.println("Add car " + vehicleID);
-			int index = this.cars.size()-1;
-			this.correspondingIDs.put(vehicleID, index);
-			//System.out.println(this.cars.size());
+		FloatingCarData car = correspondingIDs.get(vehicleID);
+		if(car == null){
+			car = new FloatingCarData(vehicleID);
+			this.cars.add(car);
+			this.correspondingIDs.put(vehicleID, car);
 		}
 		
-		cars.get(correspondingIDs.get(vehicleID)).addFloatingCarDataPoint(time, position, speed);
+		car.addFloatingCarDataPoint(time, position, speed);
 	
 	}
 	
-	public ArrayList<FloatingCarData> getCarsData(){
-		return this.cars;
+	/**
+	 * Removes the data older than a time, and the vehicles left without data.
+	 * 
+	 * @param time
+	 *            the time of the oldest data kept
+	 */
+	public synchronized void removeDataBefore(double time){
+		final Iterator<FloatingCarData> it = this.cars.iterator();
+		while(it.hasNext()){
+			final FloatingCarData car = it.next();
+			car.removeBefore(time);
+			if(car.getDataSize() == 0){
+				this.correspondingIDs.remove(car.getVehicleID());
+				it.remove();
+			}
+		}
+	}
+	
+	/**
+	 * @return a copy of the list of the vehicles
+	 */
+	public synchronized ArrayList<FloatingCarData> getCarsData(){
+		return new ArrayList<FloatingCarData>(this.cars);
 	}
 
 	public void fireDataChanged(){
@@ -73,28 +100,28 @@ public class SpaceTimeSpeedDataSet extends XYZDataSet {
 	}
 	
 	@Override
-	public int getItemCount(int serie) {
-		return cars.get(serie).getDataSize();
+	public synchronized int getItemCount(int serie) {
+		return serie < cars.size() ? cars.get(serie).getDataSize() : 0;
 	}
 
 	@Override
-	public Number getX(int serie, int item) {
-		return cars.get(serie).getFloatingCarDataPoint(item).getTime();
+	public synchronized Number getX(int serie, int item) {
+		return serie < cars.size() ? cars.get(serie).getTime(item) : Double.NaN;
 	}
 	
 	@Override
-	public Number getY(int serie, int item) {
-		return cars.get(serie).getFloatingCarDataPoint(item).getPosition();
+	public synchronized Number getY(int serie, int item) {
+		return serie < cars.size() ? cars.get(serie).getPosition(item) : Double.NaN;
 		
 	}
 	
 	@Override
-	public Number getZ(int serie, int item) {
-		return cars.get(serie).getFloatingCarDataPoint(item).getSpeed();
+	public synchronized Number getZ(int serie, int item) {
+		return serie < cars.size() ? cars.get(serie).getSpeed(item) : Double.NaN;
 	}
 
 	@Override
-	public int getSeriesCount() {
+	public synchronized int getSeriesCount() {
 		return cars.size();
 	}
 
@@ -130,7 +157,7 @@ public class SpaceTimeSpeedDataSet extends XYZDataSet {
 
 
 
-	public void clear(){
+	public synchronized void clear(){
 		for(FloatingCarData data : this.cars){
 			data.clear();
 		}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2010, 2011, 2012 by Arne Kesting, Martin Treiber, Ralph Germ, Martin Budden
+ * <movsim.org@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSim - the multi-model open-source vehicular-traffic simulator.
+ * 
+ * MovSim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+
+package org.movsim.consumption.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+
+import org.junit.Test;
+import org.movsim.autogen.ConsumptionModel;
+import org.movsim.autogen.FuelFlowTable;
+import org.movsim.xml.MovsimInputLoader;
+
+public class EnergyFlowModelsTest {
+
+    private static ConsumptionModel loadModel() throws Exception {
+        return MovsimInputLoader.validateAndLoadScenarioInput(new File("sim/games/ramp_metering.xprj"))
+                .getConsumption().getConsumptionModels().getConsumptionModel().get(0);
+    }
+
+    @Test
+    public void testTableIsBuiltOncePerConfiguration() throws Exception {
+        final ConsumptionModel configuration = loadModel();
+        final FuelFlowTable table = new FuelFlowTable();
+        table.setMaxSpeed(10.0);
+        table.setMinAcceleration(-1.0);
+        table.setMaxAcceleration(1.0);
+        table.setMinGrade(0.0);
+        table.setMaxGrade(0.0);
+        configuration.setFuelFlowTable(table);
+
+        final EnergyFlowModel model = EnergyFlowModels.create(configuration);
+        assertTrue(model instanceof EnergyFlowModelTable);
+        assertSame(model, EnergyFlowModels.create(configuration));
+
+        final double exact = EnergyFlowModels.create(loadModel()).getFuelFlowInLiterPerS(5.25, 0.3);
+        assertEquals(exact, model.getFuelFlowInLiterPerS(5.25, 0.3), table.getMaxRelativeError() * exact);
+    }
+
+    @Test
+    public void testTableNeedsTwoSpeeds() throws Exception {
+        final ConsumptionModel configuration = loadModel();
+        final FuelFlowTable table = new FuelFlowTable();
+        table.setMaxSpeed(0.0);
+        configuration.setFuelFlowTable(table);
+        try {
+            EnergyFlowModels.create(configuration);
+            fail("a table with a single speed is accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
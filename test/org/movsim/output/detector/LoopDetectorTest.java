@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2010, 2011, 2012 by Arne Kesting, Martin Treiber, Ralph Germ, Martin Budden
+ * <movsim.org@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSim - the multi-model open-source vehicular-traffic simulator.
+ * 
+ * MovSim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+
+package org.movsim.output.detector;
+
+import static org.junit.Assert.assertEquals;
+
+import maop.MaopVehicle;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.movsim.simulator.SimulationContext;
+import org.movsim.simulator.roadnetwork.LaneSegment;
+import org.movsim.simulator.roadnetwork.RoadSegment;
+
+public class LoopDetectorTest {
+
+    private static final double DET_POSITION = 500.0;
+    private static final double LENGTH = 5.0;
+
+    @Before
+    public void setUp() {
+        SimulationContext.setCurrent(new SimulationContext());
+    }
+
+    @After
+    public void tearDown() {
+        SimulationContext.setCurrent(null);
+    }
+
+    @Test
+    public void testCountsTheVehiclesCrossingTheDetector() {
+        final RoadSegment roadSegment = new RoadSegment(1000.0, 2);
+        final double dt = 1.0;
+        final int steps = 5;
+        final LoopDetector detector = new LoopDetector(roadSegment, 1, DET_POSITION, steps * dt, false, false);
+        for (int lane = 1; lane <= 2; lane++) {
+            for (int k = 0; k < 12; k++) {
+                // the sixth vehicle of the first lane starts on the detector, which is not a crossing
+                final double frontPosition = 420.0 + 15.0 * k + (lane == 2 ? 0.0 : 5.0);
+                // faster downstream, so that the vehicles keep their order
+                final double speed = 5.0 + 2.0 * k + lane;
+                roadSegment.addVehicle(new MaopVehicle(frontPosition - LENGTH, speed, lane, LENGTH, 2.0));
+            }
+        }
+
+        // brute force search over all vehicles, as the detector used to do
+        final int[] expectedCount = new int[2];
+        final double[] expectedSpeedSum = new double[2];
+        for (int step = 1; step <= steps; step++) {
+            roadSegment.updateVehiclePositionsAndSpeeds(dt, step * dt, step);
+            for (final LaneSegment laneSegment : roadSegment.laneSegments()) {
+                for (int i = 0; i < laneSegment.vehicleCount(); i++) {
+                    if (laneSegment.frontPositionOld(i) < DET_POSITION && laneSegment.frontPosition(i) >= DET_POSITION) {
+                        expectedCount[laneSegment.lane() - 1]++;
+                        expectedSpeedSum[laneSegment.lane() - 1] += laneSegment.speed(i);
+                    }
+                }
+            }
+            detector.timeStep(dt, step * dt, step);
+        }
+
+        int total = 0;
+        for (int lane = 0; lane < 2; lane++) {
+            assertEquals(expectedCount[lane], detector.getVehCountOutput(lane));
+            assertEquals(expectedCount[lane] == 0 ? 0 : expectedSpeedSum[lane] / expectedCount[lane],
+                    detector.getMeanSpeed(lane), 1e-12);
+            total += expectedCount[lane];
+        }
+        assertEquals(total, detector.getVehCountOutputAllLanes());
+        // the scenario is meant to cross the detector
+        assertEquals(true, total > 4);
+    }
+}
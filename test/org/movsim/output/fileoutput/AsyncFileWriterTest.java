@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2010, 2011, 2012 by Arne Kesting, Martin Treiber, Ralph Germ, Martin Budden
+ * <movsim.org@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSim - the multi-model open-source vehicular-traffic simulator.
+ * 
+ * MovSim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+
+package org.movsim.output.fileoutput;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.movsim.simulator.SimulationContext;
+
+public class AsyncFileWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        SimulationContext.setCurrent(null);
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), Charset.defaultCharset());
+    }
+
+    private static AsyncFileWriter open(SimulationContext context, File file) throws IOException {
+        SimulationContext.setCurrent(context);
+        try {
+            return new AsyncFileWriter(file.getPath());
+        } finally {
+            SimulationContext.setCurrent(null);
+        }
+    }
+
+    @Test
+    public void testCloseAllClosesOnlyTheFilesOfTheContext() throws IOException {
+        final SimulationContext completed = new SimulationContext();
+        final SimulationContext running = new SimulationContext();
+        final File completedFile = folder.newFile("completed.csv");
+        final File runningFile = folder.newFile("running.csv");
+        final AsyncFileWriter completedWriter = open(completed, completedFile);
+        final AsyncFileWriter runningWriter = open(running, runningFile);
+        completedWriter.write("a line\n");
+        runningWriter.write("a line\n");
+
+        AsyncFileWriter.closeAll(completed);
+
+        assertEquals("a line\n", read(completedFile));
+        try {
+            completedWriter.write("too late\n");
+            fail("the file of the completed simulation is still open");
+        } catch (IOException e) {
+            // expected
+        }
+        runningWriter.write("another line\n");
+        runningWriter.sync();
+        assertEquals("a line\nanother line\n", read(runningFile));
+        runningWriter.close();
+    }
+}
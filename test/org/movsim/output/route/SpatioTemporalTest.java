@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2010, 2011, 2012 by Arne Kesting, Martin Treiber, Ralph Germ, Martin Budden
+ * <movsim.org@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSim - the multi-model open-source vehicular-traffic simulator.
+ * 
+ * MovSim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+
+package org.movsim.output.route;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import maop.MaopVehicle;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.movsim.simulator.SimulationContext;
+import org.movsim.simulator.roadnetwork.LaneSegment;
+import org.movsim.simulator.roadnetwork.Lanes;
+import org.movsim.simulator.roadnetwork.Link;
+import org.movsim.simulator.roadnetwork.RoadNetwork;
+import org.movsim.simulator.roadnetwork.RoadSegment;
+import org.movsim.simulator.roadnetwork.routing.Route;
+import org.movsim.simulator.vehicles.Vehicle;
+import org.movsim.utilities.Tables;
+
+public class SpatioTemporalTest {
+
+    private static final double ROAD_LENGTH = 500.0;
+    private static final double LENGTH = 5.0;
+    private static final double DX = 7.0;
+
+    private RoadSegment upstream;
+    private RoadSegment downstream;
+    private Route route;
+
+    @Before
+    public void setUp() {
+        SimulationContext.setCurrent(new SimulationContext());
+        upstream = new RoadSegment(ROAD_LENGTH, 2);
+        downstream = new RoadSegment(ROAD_LENGTH, 2);
+        Link.addJoin(upstream, downstream);
+        route = new Route("route");
+        route.add(upstream);
+        route.add(downstream);
+    }
+
+    @After
+    public void tearDown() {
+        SimulationContext.setCurrent(null);
+    }
+
+    private static Vehicle addVehicle(RoadSegment roadSegment, int lane, double frontPosition, double speed,
+            double acc) {
+        final Vehicle vehicle = new MaopVehicle(frontPosition - LENGTH, speed, lane, LENGTH, 2.0);
+        vehicle.cheat(speed, acc);
+        roadSegment.addVehicle(vehicle);
+        return vehicle;
+    }
+
+    private SpatioTemporal calculate() {
+        final SpatioTemporal spatioTemporal = new SpatioTemporal(DX, 1.0, new RoadNetwork(), route, false);
+        spatioTemporal.timeStep(0.1, 1.0, 10);
+        return spatioTemporal;
+    }
+
+    @Test
+    public void testGridMatchesTheInterpolationOfTheSortedVehicles() {
+        final Random random = new Random(1);
+        for (final RoadSegment roadSegment : route) {
+            for (int lane = Lanes.LANE1; lane <= 2; lane++) {
+                for (double position = LENGTH + 20 * random.nextDouble(); position < ROAD_LENGTH; position += 10 + 30 * random
+                        .nextDouble()) {
+                    addVehicle(roadSegment, lane, position, 30 * random.nextDouble(), 2 * random.nextDouble() - 1);
+                }
+            }
+        }
+        // vehicles side by side: the first lane is kept, as the sorted set used to keep the first one added
+        addVehicle(upstream, Lanes.LANE1, 250.0, 10.0, 0.5);
+        addVehicle(upstream, 2, 250.0, 20.0, -0.5);
+
+        // the interpolation of the vehicles in the order of the route, first vehicle kept at equal positions
+        final TreeMap<Double, Vehicle> sorted = new TreeMap<Double, Vehicle>();
+        double positionOnRoute = 0;
+        for (final RoadSegment roadSegment : route) {
+            for (final Vehicle vehicle : roadSegment) {
+                final double position = positionOnRoute + vehicle.getFrontPosition();
+                if (!sorted.containsKey(position)) {
+                    sorted.put(position, vehicle);
+                }
+            }
+            positionOnRoute += roadSegment.roadLength();
+        }
+        final double[] x = new double[sorted.size()];
+        final double[] v = new double[sorted.size()];
+        final double[] a = new double[sorted.size()];
+        int i = 0;
+        for (final Map.Entry<Double, Vehicle> entry : sorted.entrySet()) {
+            x[i] = entry.getKey();
+            v[i] = entry.getValue().getSpeed();
+            a[i] = entry.getValue().getAcc();
+            i++;
+        }
+
+        final SpatioTemporal spatioTemporal = calculate();
+        assertEquals((int) (2 * ROAD_LENGTH / DX) + 1, spatioTemporal.size());
+        for (int cell = 0; cell < spatioTemporal.size(); cell++) {
+            final double position = cell * DX;
+            assertEquals(Tables.intpextp(x, v, position), spatioTemporal.getAverageSpeed(cell), 1e-9);
+            assertEquals(Tables.intpextp(x, a, position), spatioTemporal.getAverageAcceleration(cell), 1e-9);
+        }
+    }
+
+    @Test
+    public void testDensityIsTheInverseDistanceToTheFrontVehicle() {
+        // on grid positions, so the grid values are those of the vehicles
+        addVehicle(upstream, Lanes.LANE1, 7 * DX, 10.0, 0.0);
+        addVehicle(upstream, Lanes.LANE1, 3 * DX, 8.0, 0.0);
+        // front vehicle of the last one on the upstream road segment
+        addVehicle(downstream, Lanes.LANE1, 2 * DX, 12.0, 0.0);
+
+        final SpatioTemporal spatioTemporal = calculate();
+        assertEquals(1 / (4 * DX), spatioTemporal.getAverageDensity(3), 1e-12);
+        assertEquals(8.0 / (4 * DX), spatioTemporal.getAverageFlow(3), 1e-12);
+        assertEquals(1 / (ROAD_LENGTH - 5 * DX), spatioTemporal.getAverageDensity(7), 1e-12);
+        // no front vehicle
+        assertEquals(0.0, spatioTemporal.getAverageDensity(spatioTemporal.size() - 1), 0.0);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2010, 2011, 2012 by Arne Kesting, Martin Treiber, Ralph Germ, Martin Budden
+ * <movsim.org@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSim - the multi-model open-source vehicular-traffic simulator.
+ * 
+ * MovSim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+
+package org.movsim.roadmappings;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class RoadMappingPolyBezierTest {
+
+    private static final double DELTA = 1e-9;
+
+    // four bezier curves, so that the inner points can be moved
+    private static RoadMappingPolyBezier createRoadMapping() {
+        final RoadMappingPolyBezier roadMapping = new RoadMappingPolyBezier(1, 0.0, 0.0, 100.0, 0.0, 50.0, 0.0);
+        roadMapping.addPointRelative(100.0, 20.0);
+        roadMapping.addPointRelative(100.0, -20.0);
+        roadMapping.addPointRelative(100.0, 0.0);
+        return roadMapping;
+    }
+
+    private static void assertMapsOnto(RoadMappingPolyBezier roadMapping, int index, double pos) {
+        double start = 0.0;
+        RoadMappingBezier part = null;
+        int i = 0;
+        for (final RoadMappingBezier bezier : roadMapping) {
+            if (i++ == index) {
+                part = bezier;
+                break;
+            }
+            start += bezier.roadLength();
+        }
+        final RoadMapping.PosTheta expected = part.map(pos, 0.0, new RoadMapping.PosTheta());
+        final RoadMapping.PosTheta actual = roadMapping.map(start + pos, 0.0, new RoadMapping.PosTheta(),
+                new RoadMapping.Cursor());
+        assertEquals(expected.x, actual.x, DELTA);
+        assertEquals(expected.y, actual.y, DELTA);
+    }
+
+    @Test
+    public void testMapAfterMovePoint() {
+        final RoadMappingPolyBezier roadMapping = createRoadMapping();
+        assertMapsOnto(roadMapping, 2, 10.0);
+        roadMapping.movePoint(2, 30.0, 40.0);
+        assertMapsOnto(roadMapping, 2, 10.0);
+        assertMapsOnto(roadMapping, 3, 10.0);
+    }
+}
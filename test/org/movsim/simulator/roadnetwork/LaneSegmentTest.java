@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2010, 2011, 2012 by Arne Kesting, Martin Treiber, Ralph Germ, Martin Budden
+ * <movsim.org@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSim - the multi-model open-source vehicular-traffic simulator.
+ * 
+ * MovSim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+
+package org.movsim.simulator.roadnetwork;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import maop.MaopVehicle;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.movsim.simulator.SimulationContext;
+import org.movsim.simulator.vehicles.Vehicle;
+import org.movsim.simulator.vehicles.longitudinalmodel.acceleration.LongitudinalModelBase;
+import org.movsim.simulator.vehicles.longitudinalmodel.acceleration.parameter.IModelParameter;
+
+public class LaneSegmentTest {
+
+    private static final double LENGTH = 7.5;
+    private static final double WIDTH = 2.0;
+
+    /**
+     * Cellular automaton whose accelerations are set by the test.
+     */
+    private static class CellularAutomaton extends LongitudinalModelBase {
+
+        CellularAutomaton() {
+            super(ModelName.NSM);
+        }
+
+        @Override
+        protected IModelParameter getParameter() {
+            return null;
+        }
+
+        @Override
+        public double calcAcc(Vehicle me, Vehicle frontVehicle, double alphaT, double alphaV0, double alphaA) {
+            return me.getAcc();
+        }
+
+        @Override
+        public double calcAccSimple(double s, double v, double dv) {
+            return 0;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        SimulationContext.setCurrent(new SimulationContext());
+    }
+
+    @After
+    public void tearDown() {
+        SimulationContext.setCurrent(null);
+    }
+
+    private static Vehicle addVehicle(RoadSegment roadSegment, double rearPosition) {
+        final Vehicle vehicle = new MaopVehicle(rearPosition, 10.0, Lanes.LANE1, LENGTH, WIDTH);
+        roadSegment.addVehicle(vehicle);
+        return vehicle;
+    }
+
+    private static void assertKinematics(LaneSegment laneSegment) {
+        for (int i = 0; i < laneSegment.vehicleCount(); ++i) {
+            final Vehicle vehicle = laneSegment.getVehicle(i);
+            assertEquals(vehicle.getFrontPosition(), laneSegment.frontPosition(i), 0.0);
+            assertEquals(vehicle.getRearPosition(), laneSegment.rearPosition(i), 0.0);
+        }
+    }
+
+    @Test
+    public void testCellularAutomatonPositionsAreRounded() {
+        final RoadSegment roadSegment = new RoadSegment(1000.0, 1);
+        final Vehicle vehicle = addVehicle(roadSegment, 10.3);
+        vehicle.setLongitudinalModel(new CellularAutomaton());
+        final LaneSegment laneSegment = roadSegment.laneSegment(Lanes.LANE1);
+        laneSegment.refreshKinematics(0);
+        vehicle.cheat(2.6, 1.4);
+        laneSegment.accelerationUpdated(0);
+
+        final double dt = 1.0;
+        final double front = vehicle.getFrontPosition();
+        final double speed = (int) (2.6 + dt * 1.4 + 0.5);
+        roadSegment.updateVehiclePositionsAndSpeeds(dt, 0.0, 0);
+
+        // the update of a cellular automaton rounds the position, as Vehicle did before the kinematic arrays
+        assertEquals((int) (front + dt * speed + 0.5), vehicle.getFrontPosition(), 0.0);
+        assertEquals(speed, vehicle.getSpeed(), 0.0);
+        assertKinematics(laneSegment);
+    }
+
+    @Test
+    public void testCrossingCallbacksOfThePositionsPassed() {
+        final RoadSegment roadSegment = new RoadSegment(1000.0, 1);
+        final LaneSegment laneSegment = roadSegment.laneSegment(Lanes.LANE1);
+        final List<Double> crossed = new ArrayList<>();
+        for (final double position : new double[] { 30.0, 10.0, 25.0, 20.0 }) {
+            laneSegment.addCrossingCallback(position, new LaneSegment.CrossingCallback() {
+                @Override
+                public void crossed(LaneSegment lane, Vehicle vehicle) {
+                    assertSame(laneSegment, lane);
+                    crossed.add(position);
+                }
+            });
+        }
+        // front position from 10 to 25: the start position is not crossed, the end position is
+        addVehicle(roadSegment, 10.0 - LENGTH);
+        roadSegment.updateVehiclePositionsAndSpeeds(1.5, 0.0, 0);
+        assertEquals(25.0, laneSegment.frontPosition(0), 0.0);
+        assertEquals(2, crossed.size());
+        assertEquals(20.0, crossed.get(0), 0.0);
+        assertEquals(25.0, crossed.get(1), 0.0);
+    }
+
+    @Test
+    public void testOutflowMovesThePastEndVehiclesInOrder() {
+        final RoadSegment source = new RoadSegment(100.0, 1);
+        final RoadSegment sink = new RoadSegment(100.0, 1);
+        Link.addJoin(source, sink);
+        final Vehicle first = addVehicle(source, 105.0);
+        final Vehicle second = addVehicle(source, 101.0);
+        final Vehicle staying = addVehicle(source, 50.0);
+
+        source.outFlow(0.1, 0.0, 0);
+
+        final LaneSegment sourceLane = source.laneSegment(Lanes.LANE1);
+        final LaneSegment sinkLane = sink.laneSegment(Lanes.LANE1);
+        assertEquals(1, sourceLane.vehicleCount());
+        assertSame(staying, sourceLane.getVehicle(0));
+        assertEquals(2, sourceLane.getRemovedVehicleCount());
+        assertEquals(2, sinkLane.vehicleCount());
+        assertSame(first, sinkLane.getVehicle(0));
+        assertSame(second, sinkLane.getVehicle(1));
+        assertEquals(5.0, first.getRearPosition(), 1e-12);
+        assertKinematics(sourceLane);
+        assertKinematics(sinkLane);
+    }
+
+    @Test
+    public void testOutflowOfARoadJoinedToItself() {
+        final RoadSegment ring = new RoadSegment(100.0, 1);
+        Link.addJoin(ring, ring);
+        final Vehicle first = addVehicle(ring, 103.0);
+        final Vehicle second = addVehicle(ring, 100.5);
+        final Vehicle third = addVehicle(ring, 60.0);
+        final Vehicle last = addVehicle(ring, 20.0);
+
+        ring.outFlow(0.1, 0.0, 0);
+
+        final LaneSegment laneSegment = ring.laneSegment(Lanes.LANE1);
+        assertEquals(4, laneSegment.vehicleCount());
+        assertSame(third, laneSegment.getVehicle(0));
+        assertSame(last, laneSegment.getVehicle(1));
+        assertSame(first, laneSegment.getVehicle(2));
+        assertSame(second, laneSegment.getVehicle(3));
+        assertKinematics(laneSegment);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2010, 2011, 2012 by Arne Kesting, Martin Treiber, Ralph Germ, Martin Budden
+ * <movsim.org@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSim - the multi-model open-source vehicular-traffic simulator.
+ * 
+ * MovSim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+
+package org.movsim.simulator.roadnetwork;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import maop.MaopVehicle;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.movsim.simulator.SimulationContext;
+import org.movsim.simulator.vehicles.Vehicle;
+
+public class NeighbourVehicleViewTest {
+
+    @Before
+    public void setUp() {
+        SimulationContext.setCurrent(new SimulationContext());
+    }
+
+    @After
+    public void tearDown() {
+        SimulationContext.setCurrent(null);
+    }
+
+    private static Vehicle newVehicle(double rearPosition) {
+        return new MaopVehicle(rearPosition, 10.0, Lanes.LANE1, 5.0, 2.0);
+    }
+
+    @Test
+    public void testCopyIsReusedForTheSameVehicle() {
+        final NeighbourVehicleView view = new NeighbourVehicleView();
+        final Vehicle vehicle = newVehicle(20.0);
+        final Vehicle copy = view.of(vehicle, 100.0);
+        assertNotSame(vehicle, copy);
+        assertEquals(vehicle.getId(), copy.getId());
+        assertEquals(125.0, copy.getFrontPosition(), 0.0);
+
+        vehicle.setFrontPosition(30.0);
+        vehicle.setSpeed(12.0);
+        assertSame(copy, view.of(vehicle, 100.0));
+        assertEquals(130.0, copy.getFrontPosition(), 0.0);
+        assertEquals(12.0, copy.getSpeed(), 0.0);
+        // the viewed vehicle is not changed by the lookup
+        assertEquals(30.0, vehicle.getFrontPosition(), 0.0);
+    }
+
+    @Test
+    public void testCopyOfAnotherVehicleDoesNotChangeTheFormerCopy() {
+        final NeighbourVehicleView view = new NeighbourVehicleView();
+        final Vehicle first = newVehicle(20.0);
+        final Vehicle second = newVehicle(40.0);
+        final Vehicle firstCopy = view.of(first, 100.0);
+        final Vehicle secondCopy = view.of(second, 100.0);
+        assertNotSame(firstCopy, secondCopy);
+        assertEquals(first.getId(), firstCopy.getId());
+        assertEquals(125.0, firstCopy.getFrontPosition(), 0.0);
+        assertEquals(second.getId(), secondCopy.getId());
+        assertEquals(145.0, secondCopy.getFrontPosition(), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCopyCannotBeUpdatedFromAnotherVehicle() {
+        final Vehicle copy = NeighbourVehicleView.newCopy(newVehicle(20.0), 0.0);
+        copy.updateCopy(newVehicle(40.0));
+    }
+
+    @Test
+    public void testFrontVehicleOnTheSinkLaneSegment() {
+        final RoadSegment source = new RoadSegment(100.0, 1);
+        final RoadSegment sink = new RoadSegment(100.0, 1);
+        Link.addJoin(source, sink);
+        final Vehicle leader = newVehicle(10.0);
+        sink.addVehicle(leader);
+        final Vehicle follower = newVehicle(80.0);
+        source.addVehicle(follower);
+
+        final LaneSegment laneSegment = source.laneSegment(Lanes.LANE1);
+        final Vehicle front = laneSegment.frontVehicle(follower);
+        assertEquals(leader.getId(), front.getId());
+        assertEquals(115.0, front.getFrontPosition(), 0.0);
+        assertSame(front, laneSegment.frontVehicle(follower));
+
+        final Vehicle detached = laneSegment.frontVehicleDetached(follower);
+        assertNotSame(front, detached);
+        assertEquals(115.0, detached.getFrontPosition(), 0.0);
+    }
+}
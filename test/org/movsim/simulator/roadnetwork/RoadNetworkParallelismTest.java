@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2010, 2011, 2012 by Arne Kesting, Martin Treiber, Ralph Germ, Martin Budden
+ * <movsim.org@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSim - the multi-model open-source vehicular-traffic simulator.
+ * 
+ * MovSim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+
+package org.movsim.simulator.roadnetwork;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.movsim.input.MovsimCommandLine;
+import org.movsim.simulator.SimulationContext;
+import org.movsim.simulator.Simulator;
+import org.movsim.simulator.vehicles.Vehicle;
+
+/**
+ * Checks that the road network gives the same result whatever the number of threads used for its update.
+ */
+public class RoadNetworkParallelismTest {
+
+    private static final int STEPS = 1500;
+    private static final int SAMPLE_INTERVAL = 10;
+    private static final int THREADS = 4;
+
+    @Rule
+    public TemporaryFolder outputFolder = new TemporaryFolder();
+
+    /**
+     * Traffic lights on several road segments: the approaching vehicles look at the lane segments downstream of the
+     * traffic lights.
+     */
+    @Test
+    public void testTrafficLightsSerialAndParallelMatch() throws Exception {
+        assertSameStates("sim/buildingBlocks/four_way_junction.xprj");
+    }
+
+    /**
+     * Lane changes on a multi-lane road with an on-ramp: the decisions are made in parallel and committed serially.
+     */
+    @Test
+    public void testLaneChangesSerialAndParallelMatch() throws Exception {
+        assertSameStates("sim/buildingBlocks/onramp.xprj");
+    }
+
+    private void assertSameStates(String projectFile) throws Exception {
+        final List<String> serial = run(projectFile, 1);
+        final List<String> parallel = run(projectFile, THREADS);
+        assertEquals(serial.size(), parallel.size());
+        for (int i = 0; i < serial.size(); ++i) {
+            assertEquals("state after " + i * SAMPLE_INTERVAL + " steps", serial.get(i), parallel.get(i));
+        }
+    }
+
+    /**
+     * Runs the project in a new simulation context and returns the state of all vehicles every
+     * {@link #SAMPLE_INTERVAL} steps.
+     */
+    private List<String> run(String projectFile, int threads) throws Exception {
+        final List<String> states = new ArrayList<String>();
+        SimulationContext.setCurrent(new SimulationContext());
+        try {
+            MovsimCommandLine.parse(new String[] { "-f", projectFile, "-o",
+                    outputFolder.newFolder("threads" + threads).getPath(), "-p", Integer.toString(threads) });
+            final Simulator simulator = new Simulator();
+            simulator.initialize();
+            final RoadNetwork roadNetwork = simulator.getRoadNetwork();
+            assertEquals(threads, roadNetwork.parallelism());
+            final double dt = simulator.getSimulationRunnable().timeStep();
+            double simulationTime = 0;
+            boolean withVehicles = false;
+            for (long iterationCount = 0; iterationCount < STEPS; ++iterationCount) {
+                if (iterationCount % SAMPLE_INTERVAL == 0) {
+                    final String state = state(roadNetwork);
+                    withVehicles |= !state.isEmpty();
+                    states.add(state);
+                }
+                simulator.timeStep(dt, simulationTime, iterationCount);
+                simulationTime += dt;
+            }
+            roadNetwork.setParallelism(1);
+            assertTrue("no vehicles in " + projectFile, withVehicles);
+        } finally {
+            SimulationContext.setCurrent(null);
+        }
+        return states;
+    }
+
+    private static String state(RoadNetwork roadNetwork) {
+        final StringBuilder state = new StringBuilder();
+        for (final RoadSegment roadSegment : roadNetwork) {
+            for (final LaneSegment laneSegment : roadSegment.laneSegments()) {
+                for (final Vehicle vehicle : laneSegment) {
+                    state.append(roadSegment.id()).append(' ').append(vehicle.getId()).append(' ')
+                            .append(vehicle.lane()).append(' ').append(vehicle.getFrontPosition()).append(' ')
+                            .append(vehicle.getSpeed()).append(' ').append(vehicle.getAcc()).append('\n');
+                }
+            }
+        }
+        return state.toString();
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2010, 2011, 2012 by Arne Kesting, Martin Treiber, Ralph Germ, Martin Budden
+ * <movsim.org@gmail.com>
+ * -----------------------------------------------------------------------------------------
+ * 
+ * This file is part of
+ * 
+ * MovSim - the multi-model open-source vehicular-traffic simulator.
+ * 
+ * MovSim is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * MovSim is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with MovSim. If not, see <http://www.gnu.org/licenses/>
+ * or <http://www.movsim.org>.
+ * 
+ * -----------------------------------------------------------------------------------------
+ */
+
+package org.movsim.utilities;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.movsim.simulator.SimulationContext;
+
+public class RandomStreamTest {
+
+    private static final long SEED = 42;
+    private static final int COUNT = 100;
+
+    @Before
+    public void setUp() {
+        SimulationContext.setCurrent(new SimulationContext());
+        MyRandom.initializeWithSeed(SEED);
+    }
+
+    @After
+    public void tearDown() {
+        SimulationContext.setCurrent(null);
+    }
+
+    private static double[] draw(RandomStream stream) {
+        final double[] values = new double[COUNT];
+        for (int i = 0; i < COUNT; ++i) {
+            values[i] = stream.nextDouble();
+        }
+        return values;
+    }
+
+    @Test
+    public void testStreamDependsOnlyOnSeedAgentAndPurpose() {
+        final double[] expected = draw(MyRandom.stream(7, MyRandom.STREAM_NOISE));
+
+        // interleaved draws of other streams do not change the stream
+        final RandomStream stream = MyRandom.stream(7, MyRandom.STREAM_NOISE);
+        final RandomStream other = MyRandom.stream(8, MyRandom.STREAM_NOISE);
+        final double[] values = new double[COUNT];
+        for (int i = 0; i < COUNT; ++i) {
+            other.nextDouble();
+            values[i] = stream.nextDouble();
+            MyRandom.nextDouble();
+        }
+        assertArrayEquals(expected, values, 0.0);
+    }
+
+    @Test
+    public void testStreamsDifferByAgentPurposeAndSeed() {
+        final double[] values = draw(MyRandom.stream(7, MyRandom.STREAM_NOISE));
+        assertFalse(Arrays.equals(values, draw(MyRandom.stream(8, MyRandom.STREAM_NOISE))));
+        assertFalse(Arrays.equals(values, draw(MyRandom.stream(7, MyRandom.STREAM_TELEMETER))));
+        MyRandom.initializeWithSeed(SEED + 1);
+        assertFalse(Arrays.equals(values, draw(MyRandom.stream(7, MyRandom.STREAM_NOISE))));
+    }
+
+    @Test
+    public void testStreamIsTheSameInAnotherThread() throws InterruptedException {
+        final double[] expected = draw(MyRandom.stream(3, MyRandom.STREAM_GPS));
+        final double[][] values = new double[1][];
+        final Thread thread = new Thread() {
+            @Override
+            public void run() {
+                SimulationContext.setCurrent(new SimulationContext());
+                MyRandom.initializeWithSeed(SEED);
+                values[0] = draw(MyRandom.stream(3, MyRandom.STREAM_GPS));
+            }
+        };
+        thread.start();
+        thread.join();
+        assertArrayEquals(expected, values[0], 0.0);
+    }
+
+    @Test
+    public void testSplitDoesNotChangeTheStream() {
+        final double[] expected = draw(MyRandom.stream(5, MyRandom.STREAM_VEHICLE));
+        final RandomStream stream = MyRandom.stream(5, MyRandom.STREAM_VEHICLE);
+        final double[] split = draw(stream.split(1));
+        assertArrayEquals(expected, draw(stream), 0.0);
+        assertFalse(Arrays.equals(expected, split));
+    }
+
+    @Test
+    public void testRanges() {
+        final RandomStream stream = MyRandom.stream(1, MyRandom.STREAM_ACCELERATION);
+        for (int i = 0; i < 10000; ++i) {
+            final double value = stream.nextDouble();
+            assertTrue(value >= 0 && value < 1);
+            final int n = stream.nextInt(10);
+            assertTrue(n >= 0 && n < 10);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNextIntRejectsEmptyRange() {
+        MyRandom.stream(1, MyRandom.STREAM_ACCELERATION).nextInt(0);
+    }
+}